@@ -0,0 +1,63 @@
+#include "AudioRingBuffer.h"
+
+#include <new>
+
+const int AudioRingBuffer::kWriteIndexOffset = 0;
+const int AudioRingBuffer::kReadIndexOffset = 64;
+const int AudioRingBuffer::kLineQueuedOffset = 128;
+const int AudioRingBuffer::kHeaderSize = 192;
+
+AudioRingBuffer::AudioRingBuffer(uint8_t *p_memory, long capacity)
+    : p_write_index_(reinterpret_cast<std::atomic<int64_t> *>(
+          p_memory + kWriteIndexOffset)),
+      p_read_index_(reinterpret_cast<std::atomic<int64_t> *>(
+          p_memory + kReadIndexOffset)),
+      p_line_queued_(reinterpret_cast<std::atomic<int64_t> *>(
+          p_memory + kLineQueuedOffset)),
+      p_data_(p_memory + kHeaderSize), capacity_(capacity) {}
+
+AudioRingBuffer *AudioRingBuffer::Create(uint8_t *p_memory, long len) {
+  long capacity = len - kHeaderSize;
+  // Indices are masked into the data region and must be 8 byte aligned
+  if (p_memory == nullptr || capacity <= 0 ||
+      (capacity & (capacity - 1)) != 0 ||
+      (reinterpret_cast<uintptr_t>(p_memory) & 7) != 0) {
+    return nullptr;
+  }
+  return new (std::nothrow) AudioRingBuffer(p_memory, capacity);
+}
+
+long AudioRingBuffer::GetFill() const {
+  int64_t write_index = p_write_index_->load(std::memory_order_relaxed);
+  int64_t read_index = p_read_index_->load(std::memory_order_acquire);
+  return (long)(write_index - read_index);
+}
+
+long AudioRingBuffer::GetLineQueuedBytes() const {
+  return (long)p_line_queued_->load(std::memory_order_relaxed);
+}
+
+long AudioRingBuffer::Write(const std::function<void(uint8_t *, int)> &fill,
+                            long len) {
+  // Only this thread stores the write index
+  int64_t write_index = p_write_index_->load(std::memory_order_relaxed);
+  // Acquire so that java is done reading the bytes we are about to overwrite
+  int64_t read_index = p_read_index_->load(std::memory_order_acquire);
+  long free = capacity_ - (long)(write_index - read_index);
+  if (len > free) {
+    len = free;
+  }
+  long written = 0;
+  while (written < len) {
+    long offset = (long)((write_index + written) & (capacity_ - 1));
+    long chunk = capacity_ - offset;
+    if (chunk > len - written) {
+      chunk = len - written;
+    }
+    fill(p_data_ + offset, (int)chunk);
+    written += chunk;
+  }
+  // Publish the data to java
+  p_write_index_->store(write_index + written, std::memory_order_release);
+  return written;
+}
@@ -0,0 +1,57 @@
+#include <atomic>
+#include <functional>
+#include <stdint.h>
+
+#ifndef AUDIO_RING_BUFFER_H_
+#define AUDIO_RING_BUFFER_H_
+
+// Single producer/single consumer byte ring over memory shared with a java
+// direct buffer
+//
+// The native side is the only producer and the java AudioPlayerThread the only
+// consumer, so no locks are needed: each side owns one index and publishes it
+// with release semantics after touching the data. The indices are byte counts
+// that only grow and are masked into the data region, which must be a power of
+// two. The layout must match AudioRingBuffer.java:
+//
+//   [0, 8)      write index, stored by native code
+//   [64, 72)    read index, stored by java
+//   [128, 136)  bytes queued in the java sound line, stored by java
+//   [192, ...)  data
+//
+// Each index sits on its own cache line to avoid false sharing.
+class AudioRingBuffer {
+public:
+  static const int kWriteIndexOffset;
+  static const int kReadIndexOffset;
+  static const int kLineQueuedOffset;
+  static const int kHeaderSize;
+
+  // Returns nullptr if the memory cannot hold a power of two data region
+  static AudioRingBuffer *Create(uint8_t *p_memory, long len);
+
+  inline long GetCapacity() const { return capacity_; }
+
+  // Bytes written but not yet read by java
+  long GetFill() const;
+
+  inline long GetFree() const { return capacity_ - GetFill(); }
+
+  // Bytes java reported as queued in its sound line but not yet played
+  long GetLineQueuedBytes() const;
+
+  // Writes len bytes by calling fill for each contiguous chunk of the data
+  // region; returns the number of bytes written which may be less than len
+  long Write(const std::function<void(uint8_t *, int)> &fill, long len);
+
+private:
+  AudioRingBuffer(uint8_t *p_memory, long capacity);
+
+  std::atomic<int64_t> *p_write_index_;
+  std::atomic<int64_t> *p_read_index_;
+  std::atomic<int64_t> *p_line_queued_;
+  uint8_t *p_data_;
+  long capacity_;
+};
+
+#endif AUDIO_RING_BUFFER_H_
@@ -11,7 +11,7 @@ void AudioFormat::ToAudioParams(AudioParams *pAudioParams) const {
   pAudioParams->num_channels_ = num_channels_;
   pAudioParams->frame_size_ = frame_size_;
   pAudioParams->frequency_ = sample_rate_;
-  pAudioParams->bytes_per_sec_ = frame_rate_;
+  pAudioParams->bytes_per_sec_ = frame_rate_ * frame_size_;
   pAudioParams->channel_layout_ = av_get_default_channel_layout(num_channels_);
   // TODO(fraudies): Support more formats (currently not necessary because of
   // the javax SoundLine does not support more formats
@@ -22,4 +22,5 @@ void AudioFormat::ToAudioParams(AudioParams *pAudioParams) const {
   }
 }
 
-PixelFormat::PixelFormat() {}
+PixelFormat::PixelFormat()
+    : pixel_format_(AV_PIX_FMT_NONE), num_components_(0), bytes_per_pixel_(0) {}
@@ -34,6 +34,9 @@ class PixelFormat {
 public:
   AVPixelFormat pixel_format_;
   int num_components_;
+  // Packed bytes per pixel in the java buffer: 3 for RGB24 and 4 for a
+  // native-endian 0RGB int that backs a TYPE_INT_RGB image
+  int bytes_per_pixel_;
   PixelFormat();
 };
 
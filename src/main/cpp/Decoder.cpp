@@ -1,12 +1,14 @@
 #include "Decoder.h"
 
 Decoder::Decoder(AVCodecContext *avctx, PacketQueue *queue,
-                 std::condition_variable *empty_queue_cond)
+                 const std::function<void()> &empty_queue_callback)
     : p_codec_context_(avctx), p_packet_queue_(queue),
-      p_is_empty_condition_(empty_queue_cond), serial_(-1), is_finished_(false),
+      empty_queue_callback_(empty_queue_callback), serial_(-1),
+      is_finished_(false),
       is_packet_pending_(false), do_reorder_(-1), start_pts_(AV_NOPTS_VALUE),
       start_pts_timebase_(av_make_q(0, 0)), next_pts_(0),
-      next_pts_timebase_(av_make_q(0, 0)), p_decoder_thread_(nullptr) {
+      next_pts_timebase_(av_make_q(0, 0)), skip_frame_(AVDISCARD_DEFAULT),
+      p_decoder_thread_(nullptr) {
   // Note, that pkt will need to be initialized for the case when decode_frame
   // is never run Sidenote: the move ref code will clean this initialization
   av_init_packet(&packet_);
@@ -70,7 +72,7 @@ int Decoder::Decode(AVFrame *frame) {
 
     do {
       if (p_packet_queue_->getNumberOfPackets() == 0)
-        p_is_empty_condition_->notify_one();
+        empty_queue_callback_();
       if (is_packet_pending_) {
         av_packet_move_ref(&packet, &packet_);
         is_packet_pending_ = false;
@@ -86,6 +88,7 @@ int Decoder::Decode(AVFrame *frame) {
       next_pts_ = start_pts_;
       next_pts_timebase_ = start_pts_timebase_;
     } else {
+      p_codec_context_->skip_frame = static_cast<AVDiscard>(skip_frame_.load());
       if (p_codec_context_->codec_type != AVMEDIA_TYPE_SUBTITLE &&
           avcodec_send_packet(p_codec_context_, &packet) == AVERROR(EAGAIN)) {
         av_log(p_codec_context_, AV_LOG_ERROR,
@@ -1,6 +1,7 @@
 #include "FrameQueue.h"
 #include "PacketQueue.h"
-#include <condition_variable>
+#include <atomic>
+#include <functional>
 #include <thread>
 
 extern "C" {
@@ -15,7 +16,7 @@ extern "C" {
 class Decoder {
 public:
   Decoder(AVCodecContext *avctx, PacketQueue *queue,
-          std::condition_variable *empty_queue_cond);
+          const std::function<void()> &empty_queue_callback);
   virtual ~Decoder();
 
   int Decode(AVFrame *frame);
@@ -33,6 +34,11 @@ public:
     return p_codec_context_->pts_correction_num_faulty_pts;
   }
 
+  // Applied by the decoding thread before it sends the next packet
+  inline void SetSkipFrame(enum AVDiscard skip_frame) {
+    skip_frame_ = skip_frame;
+  }
+
   inline bool IsFinished() const { return is_finished_; }
   inline void setFinished(bool finished) { is_finished_ = finished; }
 
@@ -43,7 +49,7 @@ private:
   AVPacket packet_;
   AVCodecContext *p_codec_context_;
   PacketQueue *p_packet_queue_;
-  std::condition_variable *p_is_empty_condition_;
+  std::function<void()> empty_queue_callback_;
   int serial_;
   bool is_finished_;
   bool is_packet_pending_;
@@ -52,6 +58,7 @@ private:
   AVRational start_pts_timebase_;
   int64_t next_pts_;
   AVRational next_pts_timebase_;
+  std::atomic<int> skip_frame_; // enum AVDiscard
   std::thread *p_decoder_thread_;
 };
 
@@ -0,0 +1,107 @@
+#include "EventRing.h"
+
+#include <chrono>
+#include <new>
+#include <string.h>
+
+const int EventRing::kHeaderSize = 128;
+const int EventRing::kSlotSize = 40;
+
+static const int kTailOffset = 0;
+static const int kCapacityOffset = 64;
+static const int kOverflowsOffset = 72;
+static const int kParkedOffset = 80;
+
+static const int kSequenceOffset = 0;
+static const int kTypeOffset = 8;
+static const int kCodeOffset = 12;
+static const int kTimeOffset = 16;
+static const int kSeekIdOffset = 24;
+static const int kPostTimeOffset = 32;
+
+// Shared by all rings, a java thread waits for the wake ups of any of them
+static std::mutex wake_up_mutex;
+static std::condition_variable wake_up_cond;
+static int64_t wake_up_count = 0;
+
+static int64_t NowNanos() {
+  return std::chrono::duration_cast<std::chrono::nanoseconds>(
+             std::chrono::steady_clock::now().time_since_epoch())
+      .count();
+}
+
+EventRing::EventRing(uint8_t *p_memory, int capacity, int64_t java_now)
+    : p_memory_(p_memory), capacity_(capacity),
+      clock_offset_(java_now - NowNanos()) {}
+
+EventRing *EventRing::Create(uint8_t *p_memory, long len, int64_t java_now) {
+  if (p_memory == nullptr || len < kHeaderSize ||
+      (reinterpret_cast<uintptr_t>(p_memory) & 7) != 0) {
+    return nullptr;
+  }
+  int capacity =
+      reinterpret_cast<std::atomic<int32_t> *>(p_memory + kCapacityOffset)
+          ->load(std::memory_order_acquire);
+  if (capacity <= 0 || (capacity & (capacity - 1)) != 0 ||
+      len < kHeaderSize + (int64_t)capacity * kSlotSize) {
+    return nullptr;
+  }
+  return new (std::nothrow) EventRing(p_memory, capacity, java_now);
+}
+
+bool EventRing::Post(Type type, int code, double time, int64_t seek_id) {
+  std::atomic<int64_t> *p_tail = At<int64_t>(kTailOffset);
+  int64_t position = p_tail->load(std::memory_order_relaxed);
+  int64_t slot;
+  while (true) {
+    slot = SlotOffset(position);
+    int64_t sequence =
+        At<int64_t>(slot + kSequenceOffset)->load(std::memory_order_acquire);
+    if (sequence == position) {
+      // Free for this lap, claim it unless another poster was faster
+      if (p_tail->compare_exchange_weak(position, position + 1,
+                                        std::memory_order_relaxed)) {
+        break;
+      }
+    } else if (sequence < position) {
+      // Java has not read the slot of the previous lap yet
+      At<int64_t>(kOverflowsOffset)->fetch_add(1, std::memory_order_relaxed);
+      return false;
+    } else {
+      position = p_tail->load(std::memory_order_relaxed);
+    }
+  }
+  int64_t time_bits;
+  memcpy(&time_bits, &time, sizeof(time_bits));
+  At<int32_t>(slot + kTypeOffset)->store(type, std::memory_order_relaxed);
+  At<int32_t>(slot + kCodeOffset)->store(code, std::memory_order_relaxed);
+  At<int64_t>(slot + kTimeOffset)->store(time_bits, std::memory_order_relaxed);
+  At<int64_t>(slot + kSeekIdOffset)->store(seek_id, std::memory_order_relaxed);
+  At<int64_t>(slot + kPostTimeOffset)
+      ->store(NowNanos() + clock_offset_, std::memory_order_relaxed);
+  At<int64_t>(slot + kSequenceOffset)
+      ->store(position + 1, std::memory_order_release);
+  return true;
+}
+
+bool EventRing::Unpark() {
+  // Java parks and then looks at the slot, the poster fills the slot and then
+  // looks at the flag; one of them sees the other
+  std::atomic_thread_fence(std::memory_order_seq_cst);
+  std::atomic<int32_t> *p_parked = At<int32_t>(kParkedOffset);
+  return p_parked->load(std::memory_order_relaxed) != 0 &&
+         p_parked->exchange(0, std::memory_order_relaxed) != 0;
+}
+
+void EventRing::WakeUp() {
+  std::unique_lock<std::mutex> locker(wake_up_mutex);
+  wake_up_count++;
+  wake_up_cond.notify_all();
+}
+
+int64_t EventRing::WaitForWakeUp(int64_t wake_ups, int64_t timeout_ms) {
+  std::unique_lock<std::mutex> locker(wake_up_mutex);
+  wake_up_cond.wait_for(locker, std::chrono::milliseconds(timeout_ms),
+                        [wake_ups] { return wake_up_count != wake_ups; });
+  return wake_up_count;
+}
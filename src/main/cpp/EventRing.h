@@ -0,0 +1,76 @@
+#include <atomic>
+#include <condition_variable>
+#include <mutex>
+#include <stdint.h>
+
+#ifndef EVENT_RING_H_
+#define EVENT_RING_H_
+
+// Player events posted into memory shared with a java direct buffer
+//
+// Instead of a JNI upcall per event from the decoding and display threads,
+// the native side writes a compact record into this ring and the java event
+// thread drains it in batches. Any thread may post without locks: a poster
+// claims a slot by advancing the tail and hands the slot over to java through
+// the slot's sequence, which java sets to the position of the next lap when
+// it has read the slot. Java does not poll: once drained it parks the ring
+// and the first poster after that signals the java thread waiting in
+// WaitForWakeUp, no poster calls up into java. The layout must match
+// NativeEventRing.java:
+//
+//   [0, 8)      tail, the number of slots claimed so far
+//   [64, 68)    capacity in slots, a power of two, written by java
+//   [72, 80)    number of events that did not fit
+//   [80, 84)    parked, set by java once drained, cleared by the poster that
+//               wakes it
+//   [128, ...)  slots of kSlotSize bytes each:
+//     [0, 8)    sequence, the slot's position if free, position + 1 if full
+//     [8, 12)   type
+//     [12, 16)  code: the java player event id or the error code
+//     [16, 24)  time in sec (double)
+//     [24, 32)  seek id
+//     [32, 40)  posting time in java System.nanoTime() nanoseconds
+class EventRing {
+public:
+  enum Type { kPlayerState = 1, kMediaError = 2, kSeekCompleted = 3 };
+
+  static const int kHeaderSize;
+  static const int kSlotSize;
+
+  // Returns nullptr if the memory is not 8 byte aligned or does not hold the
+  // capacity that java wrote. The java System.nanoTime() of the registration
+  // call lines up the native steady clock with the java clock.
+  static EventRing *Create(uint8_t *p_memory, long len, int64_t java_now);
+
+  // Safe to call from any thread. Returns false if the ring is full, i.e.
+  // java stopped draining, and the event has to go another way.
+  bool Post(Type type, int code, double time, int64_t seek_id = 0);
+
+  // Call after a successful Post. Returns true for the one poster that has
+  // to wake java because it parked the ring, and unparks it.
+  bool Unpark();
+
+  // Counts a wake up and signals the waiting java thread; for any ring
+  static void WakeUp();
+
+  // Blocks until the count of wake ups differs from wake_ups or for at most
+  // timeout_ms; returns the count
+  static int64_t WaitForWakeUp(int64_t wake_ups, int64_t timeout_ms);
+
+private:
+  EventRing(uint8_t *p_memory, int capacity, int64_t java_now);
+
+  template <typename T> inline std::atomic<T> *At(int64_t offset) const {
+    return reinterpret_cast<std::atomic<T> *>(p_memory_ + offset);
+  }
+
+  inline int64_t SlotOffset(int64_t position) const {
+    return kHeaderSize + (position & (capacity_ - 1)) * kSlotSize;
+  }
+
+  uint8_t *p_memory_;
+  int capacity_;
+  int64_t clock_offset_; // java clock - steady clock
+};
+
+#endif EVENT_RING_H_
@@ -48,8 +48,7 @@ void FfmpegAvPlayback::TogglePauseAndStopStep(bool mute) {
 int FfmpegAvPlayback::SetSpeed(double speed) {
   int err = ERROR_NONE;
   if (speed < 0) {
-    err = ERROR_FFMPEG_FILTER_NOT_FOUND; // no filter available for backward
-                                         // playback
+    return ERROR_SYSTEM_EINVAL; // this playback has no backward display
   } else if (speed < std::numeric_limits<double>::epsilon()) {
     Pause();
   } else {
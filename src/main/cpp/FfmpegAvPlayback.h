@@ -1,6 +1,8 @@
 #ifndef FFMPEGAVPLAYBACK_H_
 #define FFMPEGAVPLAYBACK_H_
 
+#include <atomic>
+
 #include "PlayerState.h"
 #include "VideoState.h"
 
@@ -17,7 +19,9 @@ public:
   virtual void Stop();
   virtual void Pause();
 
-  inline virtual void Seek(double dSeekTime) {
+  inline virtual void Seek(double dSeekTime,
+                           VideoState::SeekMode mode = VideoState::SEEK_AUTO,
+                           int64_t seek_id = 0) {
 
     double pos = GetTime();
 
@@ -36,13 +40,56 @@ public:
     double incr = dSeekTime - pos;
 
     p_video_state_->Seek((int64_t)(dSeekTime * AV_TIME_BASE),
-                         (int64_t)(incr * AV_TIME_BASE));
+                         (int64_t)(incr * AV_TIME_BASE), mode, seek_id);
+  }
+
+  // Seeks to the frame exactly, without the one frame back off of Seek
+  inline virtual void SeekToFrame(int frame_number, int64_t seek_id = 0) {
+    p_video_state_->SeekToFrame(frame_number, seek_id);
+  }
+
+  inline virtual int GetFrameNumber() const {
+    return p_video_state_->GetFrameNumber();
+  }
+
+  inline void
+  SetSeekCompletedCallback(const std::function<void(int64_t, double)> &func) {
+    p_video_state_->SetSeekCompletedCallback(func);
+  }
+
+  inline void SetGroupClock(const std::function<double(double)> &group_clock) {
+    p_video_state_->SetGroupClock(group_clock);
+  }
+
+  inline double GetGroupDrift() const {
+    return p_video_state_->GetGroupDrift();
+  }
+
+  inline void SetMemoryPriority(double priority) {
+    p_video_state_->SetMemoryPriority(priority);
+  }
+
+  inline int64_t GetMemoryBudget() const {
+    return p_video_state_->GetMemoryBudget();
+  }
+
+  inline int64_t GetMemoryUsage() const {
+    return p_video_state_->GetMemoryUsage();
+  }
+
+  inline double GetSeekLatency() const {
+    return p_video_state_->GetSeekLatency();
   }
 
   inline virtual double GetDuration() const {
     return p_video_state_->GetDuration();
   }
 
+  // In sec, 0 if the stream has no start time
+  inline double GetStreamStartTime() const {
+    return p_video_state_->GetStartTime() / (double)AV_TIME_BASE;
+  }
+
   inline virtual double GetTime() const { return p_video_state_->GetTime(); }
 
   inline virtual double GetFrameRate() const {
@@ -63,7 +110,24 @@ public:
 
   inline int64_t GetSeekTime() const { return p_video_state_->GetSeekTime(); }
 
-  inline void StepToNextFrame() {
+  // Call before starting the stream
+  inline void SetMediaCacheDirectory(const char *cache_dir) {
+    p_video_state_->SetMediaCacheDirectory(cache_dir);
+  }
+
+  inline MediaCache::Status GetMediaCacheStatus() const {
+    return p_video_state_->GetMediaCacheStatus();
+  }
+
+  inline bool IsKeyframeIndexReady() const {
+    return p_video_state_->GetKeyframeIndex() != nullptr;
+  }
+
+  inline void SetKeyframeOnlySpeed(double speed) {
+    p_video_state_->SetKeyframeOnlySpeed(speed);
+  }
+
+  inline virtual void StepToNextFrame() {
     // if the stream is paused/stopped unpause it, then step
     if (IsPaused() || IsStopped() || IsReady()) {
       // Mute player, keep the same statebecause the display loop will stop the
@@ -74,7 +138,7 @@ public:
     p_video_state_->SetStepping(true);
   }
 
-  inline void StepToPreviousFrame() {
+  inline virtual void StepToPreviousFrame() {
 
     if (IsPlaying()) {
       SetPaused(true, false);
@@ -111,8 +175,9 @@ protected:
   int frame_width_;
   int frame_height_;
 
-  // Force a refresh of the display
-  bool force_refresh_;
+  // Force a refresh of the display; any thread requests one, the display
+  // thread clears it once the refresh is shown
+  std::atomic<bool> force_refresh_;
 
   // Disable the display
   bool display_disabled_;
@@ -2,12 +2,36 @@
 #include "FfmpegErrorUtils.h"
 #include "MediaPlayerErrors.h"
 
+#include <chrono>
+#include <thread>
+
+// sws_scale takes its SIMD path only for destinations aligned to this value
+const int FfmpegJavaAvPlayback::kImageAlignment = 32;
+// Time until the next display refresh in sec while frames are coming but none
+// is due yet
+const double FfmpegJavaAvPlayback::kRefreshRate = 0.01;
+// Bounds the audio decoded ahead, everything in the ring plays after a seek
+const int FfmpegJavaAvPlayback::kAudioRingLeadChunks = 4;
+// Holds a GOP of HD video; the memory governor may allow less
+const int64_t FfmpegJavaAvPlayback::kDefaultFrameCacheBytes = 64 << 20;
+// Tolerates jitter in the timestamps of constant frame rate video
+const double FfmpegJavaAvPlayback::kMaxFrameGap = 1.5;
+
 FfmpegJavaAvPlayback::FfmpegJavaAvPlayback(const AudioFormat *pAudioFormat,
                                            const PixelFormat *pPixelFormat,
                                            const int audioBufferSizeInBy)
     : FfmpegAvPlayback(), kPtrAudioFormat(pAudioFormat),
       kPtrPixelFormat(pPixelFormat), kAudioBufferSizeInBy(audioBufferSizeInBy),
-      p_img_convert_ctx_(nullptr), remaining_time_to_display_(0) {}
+      p_img_convert_ctx_(nullptr), remaining_time_to_display_(0),
+      image_frame_number_(0), output_width_(0), output_height_(0),
+      scaler_flags_(SWS_BICUBIC),
+      p_image_buffer_(nullptr), image_buffer_size_(0),
+      p_staging_pixels_{nullptr}, staging_pitch_{0}, staging_width_(0),
+      staging_height_(0), p_audio_ring_(nullptr),
+      p_audio_fill_thread_(nullptr), stop_audio_fill_(false),
+      audio_chunk_size_(audioBufferSizeInBy), p_frame_cache_(nullptr),
+      p_gop_prefiller_(nullptr), prefill_pts_(NAN), p_cached_frame_(nullptr),
+      cached_frame_pts_(NAN), queue_frame_pts_(NAN) {}
 
 FfmpegJavaAvPlayback::~FfmpegJavaAvPlayback() {}
 
@@ -36,8 +60,18 @@ int FfmpegJavaAvPlayback::Init(const char *filename, AVInputFormat *iformat) {
                          wanted_sample_rate, audio_hw_params);
       });
 
+  // The reader steps to show the frame after a seek while paused, that step
+  // always decodes and never goes through the frame cache
   p_video_state_->SetStepToNextFrameCallback(
-      [this] { this->StepToNextFrame(); });
+      [this] { this->FfmpegAvPlayback::StepToNextFrame(); });
+
+  p_frame_cache_ = new (std::nothrow) FrameCache(kDefaultFrameCacheBytes);
+  if (!p_frame_cache_) {
+    return ERROR_SYSTEM_ENOMEM;
+  }
+  p_video_state_->SetFrameCacheCallbacks(
+      [this](int64_t bytes) { p_frame_cache_->SetBudget(bytes); },
+      [this] { return p_frame_cache_->GetBytes(); });
 
   return ERROR_NONE;
 }
@@ -56,9 +90,28 @@ int FfmpegJavaAvPlayback::AudioOpen(int64_t wanted_channel_layout,
 
 void FfmpegJavaAvPlayback::Destroy() {
 
+  // Stop filling the ring before the video state goes away
+  stop_audio_fill_ = true;
+  if (p_audio_fill_thread_) {
+    p_audio_fill_thread_->join();
+    delete p_audio_fill_thread_;
+    p_audio_fill_thread_ = nullptr;
+  }
+  delete p_audio_ring_;
+  p_audio_ring_ = nullptr;
+
+  // The prefill reads the keyframe index of the video state
+  delete p_gop_prefiller_;
+  p_gop_prefiller_ = nullptr;
+  av_frame_free(&p_cached_frame_);
+
   sws_freeContext(p_img_convert_ctx_);
+  av_freep(&p_staging_pixels_[0]);
 
   delete p_video_state_;
+  // The memory governor sizes the cache until the video state leaves it
+  delete p_frame_cache_;
+  p_frame_cache_ = nullptr;
   avformat_network_deinit();
 
   av_log(NULL, AV_LOG_QUIET, "%s", "");
@@ -68,13 +121,160 @@ int FfmpegJavaAvPlayback::StartStream() {
   return FfmpegToJavaErrNo(p_video_state_->StartStream());
 }
 
+int FfmpegJavaAvPlayback::SetSpeed(double speed) {
+  // The video state plays backward, the base class has no display for it;
+  // media without video has no backward rates
+  if (speed < 0) {
+    return p_video_state_->SetSpeed(speed) ? ERROR_SYSTEM_EINVAL : ERROR_NONE;
+  }
+  return FfmpegAvPlayback::SetSpeed(speed);
+}
+
+void FfmpegJavaAvPlayback::Play() {
+  double pts = LeaveCachedFrame();
+  double frame_rate = GetFrameRate();
+  // Continue from the cached frame, the decoder is still at the frame where
+  // stepping backward started
+  if (!isnan(pts) && fabs(pts - queue_frame_pts_) > 0.5 / frame_rate) {
+    FfmpegAvPlayback::Seek(pts);
+  }
+  FfmpegAvPlayback::Play();
+}
+
+void FfmpegJavaAvPlayback::Stop() {
+  LeaveCachedFrame();
+  FfmpegAvPlayback::Stop();
+}
+
+void FfmpegJavaAvPlayback::Seek(double time, VideoState::SeekMode mode,
+                                int64_t seek_id) {
+  LeaveCachedFrame();
+  FfmpegAvPlayback::Seek(time, mode, seek_id);
+}
+
+void FfmpegJavaAvPlayback::SeekToFrame(int frame_number, int64_t seek_id) {
+  LeaveCachedFrame();
+  FfmpegAvPlayback::SeekToFrame(frame_number, seek_id);
+}
+
+double FfmpegJavaAvPlayback::GetTime() const {
+  std::unique_lock<std::mutex> locker(cached_frame_mutex_);
+  return p_cached_frame_ ? cached_frame_pts_ : FfmpegAvPlayback::GetTime();
+}
+
+int FfmpegJavaAvPlayback::GetFrameNumber() const {
+  std::unique_lock<std::mutex> locker(cached_frame_mutex_);
+  return p_cached_frame_ ? p_video_state_->GetFrameNumber(cached_frame_pts_)
+                         : FfmpegAvPlayback::GetFrameNumber();
+}
+
+void FfmpegJavaAvPlayback::StepToNextFrame() {
+  std::unique_lock<std::mutex> locker(cached_frame_mutex_);
+  if (!p_cached_frame_) {
+    locker.unlock();
+    FfmpegAvPlayback::StepToNextFrame();
+    return;
+  }
+  double frame_rate = GetFrameRate();
+  double pts = cached_frame_pts_;
+  double next_pts;
+  AVFrame *p_frame =
+      p_frame_cache_->GetNext(pts, kMaxFrameGap / frame_rate, &next_pts);
+  if (p_frame && next_pts < queue_frame_pts_) {
+    av_frame_free(&p_cached_frame_);
+    p_cached_frame_ = p_frame;
+    cached_frame_pts_ = next_pts;
+    force_refresh_ = true;
+    return;
+  }
+  av_frame_free(&p_frame);
+  locker.unlock();
+  LeaveCachedFrame();
+  // Unless the next frame is the one in the frame queue, decode it
+  if (queue_frame_pts_ - pts > kMaxFrameGap / frame_rate) {
+    FfmpegAvPlayback::Seek(pts + 1.0 / frame_rate);
+  }
+}
+
+void FfmpegJavaAvPlayback::StepToPreviousFrame() {
+  double frame_rate = GetFrameRate();
+  if (frame_rate <= 0) {
+    FfmpegAvPlayback::StepToPreviousFrame();
+    return;
+  }
+  if (IsPlaying()) {
+    SetPaused(true, false);
+  }
+  std::unique_lock<std::mutex> locker(cached_frame_mutex_);
+  double pts = p_cached_frame_ ? cached_frame_pts_ : queue_frame_pts_;
+  double previous_pts;
+  AVFrame *p_frame =
+      isnan(pts) ? nullptr
+                 : p_frame_cache_->GetPrevious(pts, kMaxFrameGap / frame_rate,
+                                               &previous_pts);
+  if (p_frame) {
+    av_frame_free(&p_cached_frame_);
+    p_cached_frame_ = p_frame;
+    cached_frame_pts_ = previous_pts;
+    force_refresh_ = true;
+    return;
+  }
+  bool is_cached = p_cached_frame_ != nullptr;
+  locker.unlock();
+  if (!is_cached) {
+    FfmpegAvPlayback::StepToPreviousFrame();
+    return;
+  }
+  // The prefill has not caught up, decode the frame before the cached one
+  LeaveCachedFrame();
+  FfmpegAvPlayback::Seek(pts - 1.0 / frame_rate);
+}
+
+void FfmpegJavaAvPlayback::SetFrameCacheSize(int64_t max_bytes) {
+  p_frame_cache_->SetMaxBytes(max_bytes);
+}
+
+double FfmpegJavaAvPlayback::LeaveCachedFrame() {
+  std::unique_lock<std::mutex> locker(cached_frame_mutex_);
+  if (!p_cached_frame_) {
+    return NAN;
+  }
+  av_frame_free(&p_cached_frame_);
+  // Show the frame queue's frame again
+  force_refresh_ = true;
+  return cached_frame_pts_;
+}
+
+void FfmpegJavaAvPlayback::PrefillFrameCache(double pts) {
+  double frame_rate = GetFrameRate();
+  if (isnan(pts) || pts == prefill_pts_ || frame_rate <= 0 ||
+      p_frame_cache_->HasPrevious(pts, kMaxFrameGap / frame_rate)) {
+    return;
+  }
+  if (!p_gop_prefiller_) {
+    char *filename = nullptr;
+    p_video_state_->GetFilename(&filename);
+    p_gop_prefiller_ = new (std::nothrow) GopPrefiller(
+        filename, p_video_state_->GetImageStreamIndex(), p_frame_cache_);
+    if (!p_gop_prefiller_) {
+      return;
+    }
+  }
+  prefill_pts_ = pts;
+  p_gop_prefiller_->Start(pts, p_video_state_->GetKeyframeIndex());
+}
+
 void FfmpegJavaAvPlayback::SetBalance(float balance) {}
 
 float FfmpegJavaAvPlayback::GetBalance() { return 0.0f; }
 
-void FfmpegJavaAvPlayback::SetAudioSyncDelay(long millis) {}
+void FfmpegJavaAvPlayback::SetAudioSyncDelay(long millis) {
+  p_video_state_->SetAudioSyncDelay(millis / 1000.0);
+}
 
-long FfmpegJavaAvPlayback::getAudioSyncDelay() { return 0; }
+long FfmpegJavaAvPlayback::getAudioSyncDelay() {
+  return (long)round(p_video_state_->GetAudioSyncDelay() * 1000.0);
+}
 
 int FfmpegJavaAvPlayback::GetImageWidth() const {
   return p_video_state_->GetFrameWidth();
@@ -171,15 +371,17 @@ bool FfmpegJavaAvPlayback::DoDisplay(double *remaining_time) {
 
       frame_queue->Next();
       force_refresh_ = true;
+      // The next frame is due about as far apart
+      *remaining_time = FFMIN(delay, *remaining_time);
       if (p_video_state_->IsStepping() && !IsPaused() && !IsStopped()) {
         TogglePauseAndStopStep();
       }
     }
   display:
     /* display picture */
-    if (!display_disabled_ && force_refresh_ && frame_queue->HasShownFrame()) {
+    if (!display_disabled_ && frame_queue->HasShownFrame() &&
+        force_refresh_.exchange(false)) {
       display = true;
-      force_refresh_ = false;
     }
   }
 
@@ -249,39 +451,240 @@ bool FfmpegJavaAvPlayback::DoDisplay(double *remaining_time) {
   return display;
 }
 
-void FfmpegJavaAvPlayback::UpdateImageBuffer(uint8_t *p_image_data,
-                                             const long len) {
-  bool doUpdate = DoDisplay(&remaining_time_to_display_);
-  FrameQueue *queue = nullptr;
-  p_video_state_->GetImageFrameQueue(&queue);
-  if (doUpdate) {
+int FfmpegJavaAvPlayback::ConvertFrame(const AVFrame *p_frame,
+                                       uint8_t *p_image_data, const long len) {
+  AVPixelFormat dst_format = kPtrPixelFormat->pixel_format_;
+  int src_height = p_frame->height;
+  // Scale to the requested output size, if any, in the same sws_scale pass
+  int width = output_width_ > 0 ? output_width_ : p_frame->width;
+  int height = output_height_ > 0 ? output_height_ : src_height;
+  if ((int64_t)width * height * kPtrPixelFormat->bytes_per_pixel_ > len) {
+    av_log(NULL, AV_LOG_ERROR, "Image buffer too small for %dx%d frame\n",
+           width, height);
+    return ERROR_FFMPEG_BUFFER_TOO_SMALL;
+  }
+  p_img_convert_ctx_ = sws_getCachedContext(
+      p_img_convert_ctx_, p_frame->width, src_height,
+      static_cast<AVPixelFormat>(p_frame->format), width, height,
+      dst_format, scaler_flags_, NULL, NULL, NULL);
+  if (p_img_convert_ctx_ == NULL) {
+    return ERROR_NONE;
+  }
+
+  // The caller's buffer is tightly packed (no row padding)
+  uint8_t *pixels[4];
+  int pitch[4];
+  av_image_fill_arrays(pixels, pitch, p_image_data, dst_format, width, height,
+                       1);
+
+  bool is_aligned = ((uintptr_t)pixels[0] % kImageAlignment) == 0 &&
+                    (pitch[0] % kImageAlignment) == 0;
+  if (is_aligned) {
+    sws_scale(p_img_convert_ctx_, (const uint8_t *const *)p_frame->data,
+              p_frame->linesize, 0, src_height, pixels, pitch);
+    return ERROR_NONE;
+  }
+
+  // Strides don't match the alignment sws_scale wants, go through the staging
+  // planes which are kept around until the frame size changes
+  if (p_staging_pixels_[0] == nullptr || staging_width_ != width ||
+      staging_height_ != height) {
+    av_freep(&p_staging_pixels_[0]);
+    if (av_image_alloc(p_staging_pixels_, staging_pitch_, width, height,
+                       dst_format, kImageAlignment) < 0) {
+      staging_width_ = staging_height_ = 0;
+      return ERROR_SYSTEM_ENOMEM;
+    }
+    staging_width_ = width;
+    staging_height_ = height;
+  }
+  sws_scale(p_img_convert_ctx_, (const uint8_t *const *)p_frame->data,
+            p_frame->linesize, 0, src_height, p_staging_pixels_,
+            staging_pitch_);
+  av_image_copy(pixels, pitch, (const uint8_t **)p_staging_pixels_,
+                staging_pitch_, dst_format, width, height);
+  return ERROR_NONE;
+}
+
+bool FfmpegJavaAvPlayback::DisplayImage(uint8_t *p_image_data,
+                                        const long len, int *p_err) {
+  double shown_pts;
+  *p_err = ERROR_NONE;
+  std::unique_lock<std::mutex> locker(cached_frame_mutex_);
+  if (p_cached_frame_) {
+    // Stepping through the cache, the frame queue waits at a later frame
+    if (!force_refresh_.exchange(false)) {
+      return false;
+    }
+    *p_err = ConvertFrame(p_cached_frame_, p_image_data, len);
+    shown_pts = cached_frame_pts_;
+    locker.unlock();
+  } else if (p_video_state_->IsReversing()) {
+    locker.unlock();
+    AVFrame *p_frame = p_video_state_->GetReverseFrame(
+        &remaining_time_to_display_, &shown_pts);
+    if (!p_frame) {
+      return false;
+    }
+    *p_err = ConvertFrame(p_frame, p_image_data, len);
+    queue_frame_pts_ = shown_pts;
+    // The reverse playback budgets its frames already, don't cache them on
+    // top; once paused the prefill caches the GOP of the shown frame
+    av_frame_free(&p_frame);
+  } else {
+    // DoDisplay may call back into the player, don't hold the lock
+    locker.unlock();
+    if (!DoDisplay(&remaining_time_to_display_)) {
+      return false;
+    }
+    FrameQueue *queue = nullptr;
+    p_video_state_->GetImageFrameQueue(&queue);
     Frame *vp = nullptr;
     queue->PeekLast(&vp);
     av_log(NULL, AV_LOG_DEBUG, "Update Image Buffer - Number %d - PTS %2.7f\n",
            vp->frame_pos_, vp->p_frame_->pts);
-    p_img_convert_ctx_ = sws_getCachedContext(
-        p_img_convert_ctx_, vp->p_frame_->width, vp->p_frame_->height,
-        static_cast<AVPixelFormat>(vp->p_frame_->format), vp->p_frame_->width,
-        vp->p_frame_->height, kPtrPixelFormat->pixel_format_, SWS_BICUBIC, NULL,
-        NULL, NULL);
-    if (p_img_convert_ctx_ != NULL) {
-      // TODO(fraudies): Add switch case statement for the different pixel
-      // formats Left the pixels allocation/free here to support resizing
-      // through sws_scale natively
-      uint8_t *pixels[4];
-      int pitch[4];
-      av_image_alloc(pixels, pitch, vp->width_, vp->height_, AV_PIX_FMT_RGB24,
-                     1);
-      sws_scale(p_img_convert_ctx_, (const uint8_t *const *)vp->p_frame_->data,
-                vp->p_frame_->linesize, 0, vp->p_frame_->height, pixels, pitch);
-      // Maybe check that we have 3 components
-      memcpy(p_image_data, pixels[0],
-             vp->p_frame_->width * vp->p_frame_->height * 3 * sizeof(uint8_t));
-      av_freep(&pixels[0]);
+    *p_err = ConvertFrame(vp->p_frame_, p_image_data, len);
+    shown_pts = queue_frame_pts_ = vp->pts_;
+    // Only frames shown while paused or stepping are stepped back to; caching
+    // every frame played would evict them
+    if (IsPaused() || p_video_state_->IsStepping()) {
+      p_frame_cache_->Put(vp->p_frame_, vp->pts_);
+    }
+  }
+  if (IsPaused()) {
+    PrefillFrameCache(shown_pts);
+  }
+  return true;
+}
+
+void FfmpegJavaAvPlayback::UpdateImageBuffer(uint8_t *p_image_data,
+                                             const long len) {
+  int err;
+  DisplayImage(p_image_data, len, &err);
+}
+
+int FfmpegJavaAvPlayback::SetAudioRingBuffer(uint8_t *p_memory,
+                                             const long len) {
+  if (p_audio_ring_ != nullptr) {
+    return ERROR_SYSTEM_EBUSY;
+  }
+  if (!HasAudioData() ||
+      p_video_state_->GetAudioParamsTarget().bytes_per_sec_ <= 0) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+  p_audio_ring_ = AudioRingBuffer::Create(p_memory, len);
+  if (p_audio_ring_ == nullptr) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+  p_audio_fill_thread_ =
+      new (std::nothrow) std::thread([this] { FillAudioRing(); });
+  if (p_audio_fill_thread_ == nullptr) {
+    delete p_audio_ring_;
+    p_audio_ring_ = nullptr;
+    return ERROR_SYSTEM_ENOMEM;
+  }
+  return ERROR_NONE;
+}
+
+int FfmpegJavaAvPlayback::SetAudioBufferSize(int size) {
+  int frame_size = p_video_state_->GetAudioParamsTarget().frame_size_;
+  if (frame_size <= 0) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+  // Keep whole frames so the audio clock lines up with the sound line
+  size -= size % frame_size;
+  if (size <= 0) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+  if (p_audio_ring_ != nullptr &&
+      (long)size * kAudioRingLeadChunks > p_audio_ring_->GetCapacity()) {
+    return ERROR_FFMPEG_BUFFER_TOO_SMALL;
+  }
+  audio_chunk_size_ = size;
+  return ERROR_NONE;
+}
+
+void FfmpegJavaAvPlayback::FillAudioRing() {
+  double bytes_per_sec = p_video_state_->GetAudioParamsTarget().bytes_per_sec_;
+  while (!stop_audio_fill_) {
+    int chunk_size = audio_chunk_size_;
+    long lead = FFMIN(kAudioRingLeadChunks * (long)chunk_size,
+                      p_audio_ring_->GetCapacity());
+    if (p_audio_ring_->GetFill() + chunk_size > lead) {
+      // Sleep for about half a chunk
+      std::this_thread::sleep_for(std::chrono::microseconds(
+          (int64_t)(MICRO * chunk_size / bytes_per_sec / 2)));
+      continue;
+    }
+    // Everything queued ahead of a chunk, in the ring and in the sound line,
+    // plays before it; the audio clock needs that to stay in sync
+    long queued = p_audio_ring_->GetFill() + p_audio_ring_->GetLineQueuedBytes();
+    p_audio_ring_->Write(
+        [this, &queued, bytes_per_sec](uint8_t *p_data, int len) {
+          queued += len;
+          p_video_state_->SetAudioOutputLatency(queued / bytes_per_sec);
+#ifndef SDL_ENABLED
+          p_video_state_->GetAudioCallback(p_data, len);
+#endif // !SDL_ENABLED
+        },
+        chunk_size);
+    if (!HasImageData() && publish_state_callback) {
+      publish_state_callback();
     }
   }
 }
 
+void FfmpegJavaAvPlayback::SetImageOutputSize(int width, int height) {
+  // Only scale down natively, the image buffer is sized for the source frame
+  output_width_ = FFMIN(width, GetImageWidth());
+  output_height_ = FFMIN(height, GetImageHeight());
+  // Re-convert the frame on display even if paused
+  force_refresh_ = true;
+}
+
+void FfmpegJavaAvPlayback::SetScalerFlags(int flags) {
+  scaler_flags_ = flags;
+  force_refresh_ = true;
+}
+
+int FfmpegJavaAvPlayback::SetImageBuffer(uint8_t *p_image_data,
+                                         const long len) {
+  if (len < (int64_t)GetImageWidth() * GetImageHeight() *
+                kPtrPixelFormat->bytes_per_pixel_) {
+    return ERROR_FFMPEG_BUFFER_TOO_SMALL;
+  }
+  p_image_buffer_ = p_image_data;
+  image_buffer_size_ = len;
+  return ERROR_NONE;
+}
+
+int FfmpegJavaAvPlayback::UpdateImageBuffer(int64_t *p_frame_number,
+                                            double *p_remaining_time) {
+  if (p_image_buffer_ == nullptr) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+  // The display lowers the remaining time to when the next frame is due. With
+  // none due it polls while frames are coming, like the ffplay refresh loop;
+  // paused no frame comes until java changes the state or seeks
+  remaining_time_to_display_ = INFINITY;
+  int err;
+  if (DisplayImage(p_image_buffer_, image_buffer_size_, &err) &&
+      err == ERROR_NONE) {
+    image_frame_number_++;
+  }
+  if (isinf(remaining_time_to_display_) &&
+      (IsPlaying() || p_video_state_->IsStepping() ||
+       p_video_state_->IsSeeking())) {
+    remaining_time_to_display_ = kRefreshRate;
+  }
+  *p_frame_number = image_frame_number_;
+  *p_remaining_time = remaining_time_to_display_;
+  if (publish_state_callback) {
+    publish_state_callback();
+  }
+  return err;
+}
+
 void FfmpegJavaAvPlayback::UpdateAudioBuffer(uint8_t *p_audio_data,
                                              const long len) {
   // IMPORTANT: Always set the volume to SDL_MIX_MAXVOLUME
@@ -1,7 +1,10 @@
 #ifndef FFMPEGJAVAAVPLAYBACK_H_
 #define FFMPEGJAVAAVPLAYBACK_H_
 
+#include "AudioRingBuffer.h"
 #include "FfmpegAVPlayback.h"
+#include "FrameCache.h"
+#include "GopPrefiller.h"
 #include "VideoState.h"
 
 class FfmpegJavaAvPlayback : public FfmpegAvPlayback {
@@ -12,6 +15,67 @@ private:
 
   struct SwsContext *p_img_convert_ctx_;
   double remaining_time_to_display_;
+  // Incremented for every frame converted into the java buffer
+  int64_t image_frame_number_;
+  // Size java displays the image at, 0 keeps the source size
+  int output_width_;
+  int output_height_;
+  int scaler_flags_;
+
+  // Direct buffer registered once by java, sws_scale writes straight into it
+  uint8_t *p_image_buffer_;
+  long image_buffer_size_;
+
+  // Aligned scratch planes, only used when the destination is not aligned
+  static const int kImageAlignment;
+  static const double kRefreshRate;
+  uint8_t *p_staging_pixels_[4];
+  int staging_pitch_[4];
+  int staging_width_;
+  int staging_height_;
+
+  int ConvertFrame(const AVFrame *p_frame, uint8_t *p_image_data,
+                   const long len);
+  bool DisplayImage(uint8_t *p_image_data, const long len, int *p_err);
+
+  // Decoded frames around the paused position, stepping backward shows them
+  // instead of seeking
+  static const int64_t kDefaultFrameCacheBytes;
+  // Cached frames farther apart than this many frame durations are not
+  // considered neighbours
+  static const double kMaxFrameGap;
+  FrameCache *p_frame_cache_;
+  // Fills the cache with the frames before the paused position
+  GopPrefiller *p_gop_prefiller_;
+  double prefill_pts_;
+
+  // While stepping through the cache the cached frame is shown instead of
+  // the last frame of the frame queue, which stays at queue_frame_pts_. The
+  // lock guards the cached frame only; force_refresh_ and queue_frame_pts_,
+  // which the display thread sets, are atomic and read with or without it.
+  mutable std::mutex cached_frame_mutex_;
+  AVFrame *p_cached_frame_;
+  double cached_frame_pts_;
+  std::atomic<double> queue_frame_pts_;
+
+  // Goes back to showing the frame queue; returns the time of the cached
+  // frame that was shown or NaN if none was
+  double LeaveCachedFrame();
+  void PrefillFrameCache(double pts);
+
+  // Ring buffer java drains, filled ahead of time by the audio fill thread
+  AudioRingBuffer *p_audio_ring_;
+  std::thread *p_audio_fill_thread_;
+  std::atomic<bool> stop_audio_fill_;
+  // Bytes decoded per chunk, java resizes it with the playback rate
+  std::atomic<int> audio_chunk_size_;
+  // The fill thread stays at most this many chunks ahead of java
+  static const int kAudioRingLeadChunks;
+
+  void FillAudioRing();
+
+  // Called whenever the display or, without one, the audio moves on
+  std::function<void()> publish_state_callback;
 
 public:
   FfmpegJavaAvPlayback(const AudioFormat *kPtrAudioFormat,
@@ -30,6 +94,23 @@ public:
 
   int StartStream();
 
+  // Negative speeds play backward
+  int SetSpeed(double speed);
+
+  void Play();
+  void Stop();
+  void Seek(double time, VideoState::SeekMode mode = VideoState::SEEK_AUTO,
+            int64_t seek_id = 0);
+
+  void SeekToFrame(int frame_number, int64_t seek_id = 0);
+  double GetTime() const;
+  int GetFrameNumber() const;
+  void StepToNextFrame();
+  void StepToPreviousFrame();
+
+  // Byte budget of the cache of decoded frames, 0 disables it
+  void SetFrameCacheSize(int64_t max_bytes);
+
   void SetBalance(float balance);
   float GetBalance();
 
@@ -47,6 +128,18 @@ public:
   void UpdateImageBuffer(uint8_t *p_image_data, const long len);
   void UpdateAudioBuffer(uint8_t *p_audio_data, const long len);
 
+  int SetAudioRingBuffer(uint8_t *p_memory, const long len);
+  int SetAudioBufferSize(int size);
+
+  // The buffer has to hold a source frame of packed pixels
+  int SetImageBuffer(uint8_t *p_image_data, const long len);
+  void SetImageOutputSize(int width, int height);
+  void SetScalerFlags(int flags);
+  inline void SetPublishStateCallback(const std::function<void()> &func) {
+    publish_state_callback = func;
+  }
+  int UpdateImageBuffer(int64_t *p_frame_number, double *p_remaining_time);
+
   void GetAudioFormat(AudioFormat *p_audio_format);
   void GetPixelFormat(PixelFormat *p_pixel_format);
 };
@@ -23,6 +23,8 @@ uint32_t FfmpegJavaAvPlaybackPipline::Init(const char *input_file) {
     delete p_java_playback_;
     return err;
   }
+  p_java_playback_->SetMediaCacheDirectory(
+      p_options_->GetMediaCacheDirectory());
 
   // Assign the callback functions
   p_java_playback_->SetUpdatePlayerStateCallbackFunction(
@@ -46,6 +48,13 @@ uint32_t FfmpegJavaAvPlaybackPipline::Init(const char *input_file) {
   p_java_playback_->SetUpdatePlayerStateCallbackFunction(
       PlayerState::Finished,
       [this] { this->UpdatePlayerState(PlayerState::Finished); });
+  p_java_playback_->SetSeekCompletedCallback([this](int64_t seek_id,
+                                                    double pts) {
+    if (nullptr != p_event_dispatcher_) {
+      p_event_dispatcher_->SendSeekCompletedEvent(seek_id, pts);
+    }
+  });
+  p_java_playback_->SetPublishStateCallback([this] { this->PublishState(); });
 
   return p_java_playback_->StartStream();
 }
@@ -54,11 +63,13 @@ void FfmpegJavaAvPlaybackPipline::Dispose() {
   p_java_playback_->Destroy();
   delete p_java_playback_;
   p_java_playback_ = nullptr;
+  delete p_state_snapshot_.exchange(nullptr);
 }
 
 FfmpegJavaAvPlaybackPipline::FfmpegJavaAvPlaybackPipline(
     CPipelineOptions *p_options)
-    : CPipelineData(p_options), p_java_playback_(nullptr) {}
+    : CPipelineData(p_options), p_java_playback_(nullptr),
+      p_state_snapshot_(nullptr) {}
 
 FfmpegJavaAvPlaybackPipline::~FfmpegJavaAvPlaybackPipline() {
   // Clean-up done in dispose that is called from the destructor of the
@@ -71,6 +82,7 @@ uint32_t FfmpegJavaAvPlaybackPipline::Play() {
   }
 
   p_java_playback_->Play();
+  PublishState();
 
   return ERROR_NONE;
 }
@@ -81,6 +93,7 @@ uint32_t FfmpegJavaAvPlaybackPipline::Stop() {
   }
 
   p_java_playback_->Stop();
+  PublishState();
 
   return ERROR_NONE;
 }
@@ -91,6 +104,7 @@ uint32_t FfmpegJavaAvPlaybackPipline::Pause() {
   }
 
   p_java_playback_->Pause();
+  PublishState();
 
   return ERROR_NONE;
 }
@@ -101,6 +115,7 @@ uint32_t FfmpegJavaAvPlaybackPipline::StepForward() {
   }
 
   p_java_playback_->StepToNextFrame();
+  PublishState();
 
   return ERROR_NONE;
 }
@@ -111,6 +126,7 @@ uint32_t FfmpegJavaAvPlaybackPipline::StepBackward() {
   }
 
   p_java_playback_->StepToPreviousFrame();
+  PublishState();
 
   return ERROR_NONE;
 }
@@ -125,6 +141,19 @@ uint32_t FfmpegJavaAvPlaybackPipline::Seek(double time) {
     return ERROR_PLAYBACK_NULL;
   }
   p_java_playback_->Seek(time);
+  PublishState();
+
+  return ERROR_NONE;
+}
+
+uint32_t FfmpegJavaAvPlaybackPipline::SeekWithMode(double time, int mode,
+                                                   int64_t seek_id) {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+  p_java_playback_->Seek(time, static_cast<VideoState::SeekMode>(mode),
+                         seek_id);
+  PublishState();
 
   return ERROR_NONE;
 }
@@ -139,6 +168,16 @@ uint32_t FfmpegJavaAvPlaybackPipline::GetDuration(double *p_duration) {
   return ERROR_NONE;
 }
 
+uint32_t FfmpegJavaAvPlaybackPipline::GetStartTime(double *p_start_time) {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+
+  *p_start_time = p_java_playback_->GetStreamStartTime();
+
+  return ERROR_NONE;
+}
+
 uint32_t FfmpegJavaAvPlaybackPipline::GetStreamTime(double *p_stream_time) {
   if (p_java_playback_ == nullptr) {
     return ERROR_PLAYBACK_NULL;
@@ -164,7 +203,10 @@ uint32_t FfmpegJavaAvPlaybackPipline::SetRate(float rate) {
     return ERROR_PLAYBACK_NULL;
   }
 
-  return p_java_playback_->SetSpeed(rate);
+  uint32_t err = p_java_playback_->SetSpeed(rate);
+  PublishState();
+
+  return err;
 }
 
 uint32_t FfmpegJavaAvPlaybackPipline::GetRate(float *p_rate) {
@@ -328,3 +370,216 @@ uint32_t FfmpegJavaAvPlaybackPipline::UpdateAudioBuffer(uint8_t *p_audio_data,
 
   return ERROR_NONE;
 }
+
+uint32_t FfmpegJavaAvPlaybackPipline::SetAudioRingBuffer(uint8_t *p_memory,
+                                                         const long len) {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+
+  return p_java_playback_->SetAudioRingBuffer(p_memory, len);
+}
+
+uint32_t FfmpegJavaAvPlaybackPipline::SetAudioBufferSize(int size) {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+
+  return p_java_playback_->SetAudioBufferSize(size);
+}
+
+uint32_t FfmpegJavaAvPlaybackPipline::SetImageBuffer(uint8_t *p_image_data,
+                                                     const long len) {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+
+  return p_java_playback_->SetImageBuffer(p_image_data, len);
+}
+
+uint32_t
+FfmpegJavaAvPlaybackPipline::UpdateImageBuffer(int64_t *p_frame_number,
+                                               double *p_remaining_time) {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+
+  return p_java_playback_->UpdateImageBuffer(p_frame_number, p_remaining_time);
+}
+
+uint32_t FfmpegJavaAvPlaybackPipline::SetImageOutputSize(int width,
+                                                         int height) {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+
+  p_java_playback_->SetImageOutputSize(width, height);
+
+  return ERROR_NONE;
+}
+
+uint32_t FfmpegJavaAvPlaybackPipline::SetScalerFlags(int flags) {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+
+  p_java_playback_->SetScalerFlags(flags);
+
+  return ERROR_NONE;
+}
+
+uint32_t FfmpegJavaAvPlaybackPipline::GetMediaCacheStatus(
+    int *p_status) const {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+
+  *p_status = p_java_playback_->GetMediaCacheStatus();
+
+  return ERROR_NONE;
+}
+
+uint32_t FfmpegJavaAvPlaybackPipline::IsKeyframeIndexReady(
+    bool *p_ready) const {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+
+  *p_ready = p_java_playback_->IsKeyframeIndexReady();
+
+  return ERROR_NONE;
+}
+
+uint32_t FfmpegJavaAvPlaybackPipline::SetFrameCacheSize(int64_t max_bytes) {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+
+  p_java_playback_->SetFrameCacheSize(max_bytes);
+
+  return ERROR_NONE;
+}
+
+uint32_t FfmpegJavaAvPlaybackPipline::SetKeyframeOnlySpeed(double speed) {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+
+  p_java_playback_->SetKeyframeOnlySpeed(speed);
+
+  return ERROR_NONE;
+}
+
+uint32_t FfmpegJavaAvPlaybackPipline::GetSeekLatency(double *p_latency) const {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+
+  *p_latency = p_java_playback_->GetSeekLatency();
+
+  return ERROR_NONE;
+}
+
+uint32_t FfmpegJavaAvPlaybackPipline::SeekToFrame(int64_t frame_number,
+                                                  int64_t seek_id) {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+
+  p_java_playback_->SeekToFrame((int)FFMIN(frame_number, INT_MAX), seek_id);
+  PublishState();
+
+  return ERROR_NONE;
+}
+
+uint32_t
+FfmpegJavaAvPlaybackPipline::GetFrameNumber(int64_t *p_frame_number) const {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+
+  *p_frame_number = p_java_playback_->GetFrameNumber();
+
+  return ERROR_NONE;
+}
+
+uint32_t FfmpegJavaAvPlaybackPipline::SetStateSnapshot(uint8_t *p_memory,
+                                                      const long len) {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+  if (p_state_snapshot_ != nullptr) {
+    return ERROR_SYSTEM_EBUSY;
+  }
+  PlayerStateSnapshot *p_snapshot = PlayerStateSnapshot::Create(p_memory, len);
+  if (p_snapshot == nullptr) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+  p_state_snapshot_ = p_snapshot;
+  PublishState();
+
+  return ERROR_NONE;
+}
+
+uint32_t FfmpegJavaAvPlaybackPipline::SetGroupClock(
+    const std::function<double(double)> &group_clock) {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+
+  p_java_playback_->SetGroupClock(group_clock);
+
+  return ERROR_NONE;
+}
+
+uint32_t FfmpegJavaAvPlaybackPipline::GetGroupDrift(double *p_drift) const {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+
+  *p_drift = p_java_playback_->GetGroupDrift();
+
+  return ERROR_NONE;
+}
+
+uint32_t FfmpegJavaAvPlaybackPipline::SetMemoryPriority(double priority) {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+
+  p_java_playback_->SetMemoryPriority(priority);
+
+  return ERROR_NONE;
+}
+
+uint32_t FfmpegJavaAvPlaybackPipline::GetMemoryUsage(int64_t *p_budget,
+                                                    int64_t *p_usage) const {
+  if (p_java_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+
+  *p_budget = p_java_playback_->GetMemoryBudget();
+  *p_usage = p_java_playback_->GetMemoryUsage();
+
+  return ERROR_NONE;
+}
+
+void FfmpegJavaAvPlaybackPipline::PublishState() {
+  PlayerStateSnapshot *p_snapshot = p_state_snapshot_;
+  if (p_snapshot == nullptr) {
+    return;
+  }
+  PacketQueue *p_image_packet_queue = nullptr;
+  p_java_playback_->GetVideoState()->GetImagePacketQueue(&p_image_packet_queue);
+  PlayerStateSnapshot::State state;
+  state.time_ = p_java_playback_->GetTime();
+  state.speed_ = p_java_playback_->GetSpeed();
+  state.frame_rate_ = p_java_playback_->GetFrameRate();
+  state.duration_ = p_java_playback_->GetDuration();
+  state.frame_number_ = p_java_playback_->GetFrameNumber();
+  state.player_state_ = player_state_;
+  state.serial_ = p_image_packet_queue ? p_image_packet_queue->GetSerial() : 0;
+  state.image_width_ = p_java_playback_->GetImageWidth();
+  state.image_height_ = p_java_playback_->GetImageHeight();
+  p_snapshot->Publish(state);
+}
@@ -4,6 +4,7 @@
 #include "FfmpegJavaAvPlayback.h"
 #include "MediaPlayerErrors.h";
 #include "PipelineData.h"
+#include "PlayerStateSnapshot.h"
 
 class FfmpegJavaAvPlaybackPipline : public CPipelineData {
 public:
@@ -21,8 +22,10 @@ private:
   virtual uint32_t Finish();
 
   virtual uint32_t Seek(double seek_time);
+  virtual uint32_t SeekWithMode(double seek_time, int mode, int64_t seek_id);
 
   virtual uint32_t GetDuration(double *p_duration);
+  virtual uint32_t GetStartTime(double *p_start_time);
   virtual uint32_t GetStreamTime(double *p_stream_time);
   virtual uint32_t GetFps(double *p_fps);
 
@@ -47,8 +50,33 @@ private:
   virtual uint32_t GetPixelFormat(PixelFormat *p_pixel_format) const;
   virtual uint32_t UpdateImageBuffer(uint8_t *p_image_data, const long len);
   virtual uint32_t UpdateAudioBuffer(uint8_t *p_audio_data, const long len);
+  virtual uint32_t SetAudioRingBuffer(uint8_t *p_memory, const long len);
+  virtual uint32_t SetAudioBufferSize(int size);
+  virtual uint32_t SetImageBuffer(uint8_t *p_image_data, const long len);
+  virtual uint32_t UpdateImageBuffer(int64_t *p_frame_number,
+                                     double *p_remaining_time);
+  virtual uint32_t SetImageOutputSize(int width, int height);
+  virtual uint32_t SetScalerFlags(int flags);
+  virtual uint32_t GetMediaCacheStatus(int *p_status) const;
+  virtual uint32_t IsKeyframeIndexReady(bool *p_ready) const;
+  virtual uint32_t SetFrameCacheSize(int64_t max_bytes);
+  virtual uint32_t SetKeyframeOnlySpeed(double speed);
+  virtual uint32_t GetSeekLatency(double *p_latency) const;
+  virtual uint32_t SeekToFrame(int64_t frame_number, int64_t seek_id);
+  virtual uint32_t GetFrameNumber(int64_t *p_frame_number) const;
+  virtual uint32_t SetStateSnapshot(uint8_t *p_memory, const long len);
+  virtual uint32_t
+  SetGroupClock(const std::function<double(double)> &group_clock);
+  virtual uint32_t GetGroupDrift(double *p_drift) const;
+  virtual uint32_t SetMemoryPriority(double priority);
+  virtual uint32_t GetMemoryUsage(int64_t *p_budget, int64_t *p_usage) const;
 
   FfmpegJavaAvPlayback *p_java_playback_;
+  // Set once by java, then published from the player and display threads
+  std::atomic<PlayerStateSnapshot *> p_state_snapshot_;
+
+  // Publishes the state to java if it registered a snapshot
+  void PublishState();
 };
 
 #endif // !FFMPEGJAVAAVPLAYBACKPIPELINE_H_
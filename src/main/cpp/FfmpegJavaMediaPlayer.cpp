@@ -6,7 +6,9 @@
 #include "JniUtils.h"
 #include "Media.h"
 #include "MediaPlayerErrors.h"
+#include "MemoryGovernor.h"
 #include "Pipeline.h"
+#include "PlaybackGroup.h"
 
 using namespace std;
 
@@ -18,12 +20,13 @@ extern "C" {
  * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
  * Method:    ffmpegInitPlayer
  * Signature:
- * ([JLjava/lang/String;Ljavax/sound/sampled/AudioFormat;Ljava/awt/color/ColorSpace;I)I
+ * ([JLjava/lang/String;Ljavax/sound/sampled/AudioFormat;Ljava/awt/color/ColorSpace;IILjava/lang/String;)I
  */
 JNIEXPORT jint JNICALL
 Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegInitPlayer(
     JNIEnv *env, jobject obj, jlongArray jlMediaHandle, jstring sourcePath,
-    jobject jAudioFormat, jobject jColorSpace, jint jAudioBufferSizeInBy) {
+    jobject jAudioFormat, jobject jColorSpace, jint jBytesPerPixel,
+    jint jAudioBufferSizeInBy, jstring jMediaCacheDir) {
   uint32_t uRetCode;
   AudioFormat audioFormat;
   uRetCode = GetAudioFormat(env, jAudioFormat, &audioFormat);
@@ -32,13 +35,19 @@ Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegInitPlayer(
   }
 
   PixelFormat pixelFormat;
-  uRetCode = GetPixelFormat(env, jColorSpace, &pixelFormat);
+  uRetCode = GetPixelFormat(env, jColorSpace, jBytesPerPixel, &pixelFormat);
   if (ERROR_NONE != uRetCode) {
     return uRetCode;
   }
 
-  CPipelineOptions *pOptions = new (nothrow)
-      CPipelineOptions(audioFormat, pixelFormat, jAudioBufferSizeInBy);
+  // A null directory disables the media cache
+  const char *mediaCacheDir =
+      jMediaCacheDir ? env->GetStringUTFChars(jMediaCacheDir, 0) : NULL;
+  CPipelineOptions *pOptions = new (nothrow) CPipelineOptions(
+      audioFormat, pixelFormat, jAudioBufferSizeInBy, mediaCacheDir);
+  if (mediaCacheDir) {
+    env->ReleaseStringUTFChars(jMediaCacheDir, mediaCacheDir);
+  }
   if (NULL == pOptions) {
     return ERROR_SYSTEM_ENOMEM;
   }
@@ -408,6 +417,32 @@ Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetDuration(
   return ERROR_NONE;
 }
 
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegGetStartTime
+ * Signature: (J[D)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetStartTime(
+    JNIEnv *env, jobject obj, jlong ref_media, jdoubleArray jrgdStartTime) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia)
+    return ERROR_MEDIA_NULL;
+
+  CPipeline *pPipeline = (CPipeline *)pMedia->GetPipeline();
+  if (NULL == pPipeline)
+    return ERROR_PIPELINE_NULL;
+
+  double dStartTime;
+  uint32_t uErrCode = pPipeline->GetStartTime(&dStartTime);
+  if (ERROR_NONE != uErrCode)
+    return uErrCode;
+  jdouble jdStartTime = (jdouble)dStartTime;
+  env->SetDoubleArrayRegion(jrgdStartTime, 0, 1, &jdStartTime);
+
+  return ERROR_NONE;
+}
+
 /*
  * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
  * Method:    ffmpegSeek
@@ -649,6 +684,711 @@ Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegUpdateAudioData(
   return uErrCode;
 }
 
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetAudioRingBuffer
+ * Signature: (JLjava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetAudioRingBuffer(
+    JNIEnv *env, jobject obj, jlong ref_media, jobject buffer) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  // The java side keeps the buffer alive until the player is disposed, which
+  // joins the native thread filling it
+  void *pData = env->GetDirectBufferAddress(buffer);
+  jlong len = env->GetDirectBufferCapacity(buffer);
+  if (NULL == pData || len <= 0) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+  return pPipeline->SetAudioRingBuffer((uint8_t *)pData, len);
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetAudioBufferSize
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetAudioBufferSize(
+    JNIEnv *env, jobject obj, jlong ref_media, jint size) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  return pPipeline->SetAudioBufferSize(size);
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetImageBuffer
+ * Signature: (JLjava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetImageBuffer(
+    JNIEnv *env, jobject obj, jlong ref_media, jobject buffer) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  // The java side holds a reference to the buffer for the lifetime of the
+  // player, so the address stays valid until it is replaced or disposed
+  void *pData = env->GetDirectBufferAddress(buffer);
+  jlong len = env->GetDirectBufferCapacity(buffer);
+  if (NULL == pData || len <= 0) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+  return pPipeline->SetImageBuffer((uint8_t *)pData, len);
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegUpdateImageBuffer
+ * Signature: (J[J[D)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegUpdateImageBuffer(
+    JNIEnv *env, jobject obj, jlong ref_media, jlongArray jlFrameNumber,
+    jdoubleArray jdRemainingTime) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  int64_t frameNumber = 0;
+  double remainingTime = 0;
+  uint32_t uErrCode =
+      pPipeline->UpdateImageBuffer(&frameNumber, &remainingTime);
+  if (ERROR_NONE != uErrCode) {
+    return uErrCode;
+  }
+  jlong jlFrame = (jlong)frameNumber;
+  env->SetLongArrayRegion(jlFrameNumber, 0, 1, &jlFrame);
+  jdouble jdTime = (jdouble)remainingTime;
+  env->SetDoubleArrayRegion(jdRemainingTime, 0, 1, &jdTime);
+  return ERROR_NONE;
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetImageOutputSize
+ * Signature: (JII)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetImageOutputSize(
+    JNIEnv *env, jobject obj, jlong ref_media, jint width, jint height) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  return pPipeline->SetImageOutputSize(width, height);
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetScalerFlags
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetScalerFlags(
+    JNIEnv *env, jobject obj, jlong ref_media, jint flags) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  return pPipeline->SetScalerFlags(flags);
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegGetMediaCacheStatus
+ * Signature: (J[I)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetMediaCacheStatus(
+    JNIEnv *env, jobject obj, jlong ref_media, jintArray jStatus) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  int status;
+  uint32_t uErrCode = pPipeline->GetMediaCacheStatus(&status);
+  if (ERROR_NONE != uErrCode) {
+    return uErrCode;
+  }
+  jint jiStatus = (jint)status;
+  env->SetIntArrayRegion(jStatus, 0, 1, &jiStatus);
+
+  return ERROR_NONE;
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegIsKeyframeIndexReady
+ * Signature: (J[Z)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegIsKeyframeIndexReady(
+    JNIEnv *env, jobject obj, jlong ref_media, jbooleanArray jReady) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  bool ready;
+  uint32_t uErrCode = pPipeline->IsKeyframeIndexReady(&ready);
+  if (ERROR_NONE != uErrCode) {
+    return uErrCode;
+  }
+  jboolean jbReady = (jboolean)ready;
+  env->SetBooleanArrayRegion(jReady, 0, 1, &jbReady);
+
+  return ERROR_NONE;
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetFrameCacheSize
+ * Signature: (JJ)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetFrameCacheSize(
+    JNIEnv *env, jobject obj, jlong ref_media, jlong max_bytes) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  return pPipeline->SetFrameCacheSize((int64_t)max_bytes);
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetKeyframeOnlyRate
+ * Signature: (JF)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetKeyframeOnlyRate(
+    JNIEnv *env, jobject obj, jlong ref_media, jfloat rate) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  return pPipeline->SetKeyframeOnlySpeed((double)rate);
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSeekWithMode
+ * Signature: (JDIJ)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSeekWithMode(
+    JNIEnv *env, jobject obj, jlong ref_media, jdouble stream_time, jint mode,
+    jlong seek_id) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  return pPipeline->SeekWithMode(stream_time, (int)mode, (int64_t)seek_id);
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegGetSeekLatency
+ * Signature: (J[D)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetSeekLatency(
+    JNIEnv *env, jobject obj, jlong ref_media, jdoubleArray jLatency) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  double latency;
+  uint32_t uErrCode = pPipeline->GetSeekLatency(&latency);
+  if (ERROR_NONE != uErrCode) {
+    return uErrCode;
+  }
+  jdouble jdLatency = (jdouble)latency;
+  env->SetDoubleArrayRegion(jLatency, 0, 1, &jdLatency);
+
+  return ERROR_NONE;
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSeekToFrame
+ * Signature: (JJJ)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSeekToFrame(
+    JNIEnv *env, jobject obj, jlong ref_media, jlong frame_number,
+    jlong seek_id) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  return pPipeline->SeekToFrame((int64_t)frame_number, (int64_t)seek_id);
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegGetFrameNumber
+ * Signature: (J[J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetFrameNumber(
+    JNIEnv *env, jobject obj, jlong ref_media, jlongArray jFrameNumber) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  int64_t frame_number;
+  uint32_t uErrCode = pPipeline->GetFrameNumber(&frame_number);
+  if (ERROR_NONE != uErrCode) {
+    return uErrCode;
+  }
+  jlong jlFrameNumber = (jlong)frame_number;
+  env->SetLongArrayRegion(jFrameNumber, 0, 1, &jlFrameNumber);
+
+  return ERROR_NONE;
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetStateSnapshot
+ * Signature: (JLjava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetStateSnapshot(
+    JNIEnv *env, jobject obj, jlong ref_media, jobject buffer) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  // The java side keeps the buffer alive until the player is disposed
+  void *pData = env->GetDirectBufferAddress(buffer);
+  jlong len = env->GetDirectBufferCapacity(buffer);
+  if (NULL == pData || len <= 0) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+  return pPipeline->SetStateSnapshot((uint8_t *)pData, len);
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetEventRing
+ * Signature: (JLjava/nio/ByteBuffer;J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetEventRing(
+    JNIEnv *env, jobject obj, jlong ref_media, jobject buffer, jlong now) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipeline *pPipeline = (CPipeline *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  // The java side keeps the buffer alive until the player is disposed
+  void *pData = env->GetDirectBufferAddress(buffer);
+  jlong len = env->GetDirectBufferCapacity(buffer);
+  if (NULL == pData || len <= 0) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+  return pPipeline->SetEventRing((uint8_t *)pData, len, now);
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegWaitForEventRings
+ * Signature: (JJ)J
+ */
+JNIEXPORT jlong JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegWaitForEventRings(
+    JNIEnv *env, jclass cls, jlong wake_ups, jlong timeout_ms) {
+  return EventRing::WaitForWakeUp(wake_ups, timeout_ms);
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegCreatePlaybackGroup
+ * Signature: ([J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegCreatePlaybackGroup(
+    JNIEnv *env, jclass cls, jlongArray jlGroupHandle) {
+  PlaybackGroup *pGroup = new (std::nothrow) PlaybackGroup();
+  if (NULL == pGroup) {
+    return ERROR_SYSTEM_ENOMEM;
+  }
+  jlong lGroupHandle = (jlong)ptr_to_jlong(pGroup);
+  env->SetLongArrayRegion(jlGroupHandle, 0, 1, &lGroupHandle);
+
+  return ERROR_NONE;
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegDisposePlaybackGroup
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegDisposePlaybackGroup(
+    JNIEnv *env, jclass cls, jlong ref_group) {
+  PlaybackGroup *pGroup = (PlaybackGroup *)jlong_to_ptr(ref_group);
+  if (NULL == pGroup) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+  delete pGroup;
+
+  return ERROR_NONE;
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegJoinPlaybackGroup
+ * Signature: (JJD)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegJoinPlaybackGroup(
+    JNIEnv *env, jclass cls, jlong ref_group, jlong ref_media, jdouble offset) {
+  PlaybackGroup *pGroup = (PlaybackGroup *)jlong_to_ptr(ref_group);
+  if (NULL == pGroup) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  return pGroup->Add(pPipeline, (double)offset);
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegLeavePlaybackGroup
+ * Signature: (JJ)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegLeavePlaybackGroup(
+    JNIEnv *env, jclass cls, jlong ref_group, jlong ref_media) {
+  PlaybackGroup *pGroup = (PlaybackGroup *)jlong_to_ptr(ref_group);
+  if (NULL == pGroup) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  return pGroup->Remove(pPipeline);
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegPlayPlaybackGroup
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegPlayPlaybackGroup(
+    JNIEnv *env, jclass cls, jlong ref_group) {
+  PlaybackGroup *pGroup = (PlaybackGroup *)jlong_to_ptr(ref_group);
+  if (NULL == pGroup) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+
+  return pGroup->Play();
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegPausePlaybackGroup
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegPausePlaybackGroup(
+    JNIEnv *env, jclass cls, jlong ref_group) {
+  PlaybackGroup *pGroup = (PlaybackGroup *)jlong_to_ptr(ref_group);
+  if (NULL == pGroup) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+
+  return pGroup->Pause();
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetPlaybackGroupRate
+ * Signature: (JF)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetPlaybackGroupRate(
+    JNIEnv *env, jclass cls, jlong ref_group, jfloat rate) {
+  PlaybackGroup *pGroup = (PlaybackGroup *)jlong_to_ptr(ref_group);
+  if (NULL == pGroup) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+
+  return pGroup->SetRate((float)rate);
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSeekPlaybackGroup
+ * Signature: (JD)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSeekPlaybackGroup(
+    JNIEnv *env, jclass cls, jlong ref_group, jdouble time) {
+  PlaybackGroup *pGroup = (PlaybackGroup *)jlong_to_ptr(ref_group);
+  if (NULL == pGroup) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+
+  return pGroup->Seek((double)time);
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegGetPlaybackGroupTime
+ * Signature: (J[D)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetPlaybackGroupTime(
+    JNIEnv *env, jclass cls, jlong ref_group, jdoubleArray jTime) {
+  PlaybackGroup *pGroup = (PlaybackGroup *)jlong_to_ptr(ref_group);
+  if (NULL == pGroup) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+
+  jdouble jdTime = (jdouble)pGroup->GetTime();
+  env->SetDoubleArrayRegion(jTime, 0, 1, &jdTime);
+
+  return ERROR_NONE;
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegGetPlaybackGroupDrift
+ * Signature: (JJ[D)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetPlaybackGroupDrift(
+    JNIEnv *env, jclass cls, jlong ref_group, jlong ref_media, jdoubleArray
+    jDrift) {
+  PlaybackGroup *pGroup = (PlaybackGroup *)jlong_to_ptr(ref_group);
+  if (NULL == pGroup) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  double drift;
+  uint32_t uErrCode = pGroup->GetDrift(pPipeline, &drift);
+  if (ERROR_NONE != uErrCode) {
+    return uErrCode;
+  }
+  jdouble jdDrift = (jdouble)drift;
+  env->SetDoubleArrayRegion(jDrift, 0, 1, &jdDrift);
+
+  return ERROR_NONE;
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegGetPlaybackGroupDriftSpread
+ * Signature: (J[D)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetPlaybackGroupDriftSpread(
+    JNIEnv *env, jclass cls, jlong ref_group, jdoubleArray jSpread) {
+  PlaybackGroup *pGroup = (PlaybackGroup *)jlong_to_ptr(ref_group);
+  if (NULL == pGroup) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+
+  double spread;
+  uint32_t uErrCode = pGroup->GetDriftSpread(&spread);
+  if (ERROR_NONE != uErrCode) {
+    return uErrCode;
+  }
+  jdouble jdSpread = (jdouble)spread;
+  env->SetDoubleArrayRegion(jSpread, 0, 1, &jdSpread);
+
+  return ERROR_NONE;
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetMemoryPriority
+ * Signature: (JD)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetMemoryPriority(
+    JNIEnv *env, jobject obj, jlong ref_media, jdouble priority) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  return pPipeline->SetMemoryPriority((double)priority);
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegGetMemoryUsage
+ * Signature: (J[J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetMemoryUsage(
+    JNIEnv *env, jobject obj, jlong ref_media, jlongArray jUsage) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia) {
+    return ERROR_MEDIA_NULL;
+  }
+  CPipelineData *pPipeline = (CPipelineData *)pMedia->GetPipeline();
+  if (NULL == pPipeline) {
+    return ERROR_PIPELINE_NULL;
+  }
+
+  int64_t budget, usage;
+  uint32_t uErrCode = pPipeline->GetMemoryUsage(&budget, &usage);
+  if (ERROR_NONE != uErrCode) {
+    return uErrCode;
+  }
+  jlong jlUsage[2] = {(jlong)budget, (jlong)usage};
+  env->SetLongArrayRegion(jUsage, 0, 2, jlUsage);
+
+  return ERROR_NONE;
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetMemoryBudget
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetMemoryBudget(
+    JNIEnv *env, jclass cls, jlong bytes) {
+  if (bytes < 0) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+  MemoryGovernor::GetInstance().SetBudget((int64_t)bytes);
+
+  return ERROR_NONE;
+}
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegGetProcessMemoryUsage
+ * Signature: ([J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetProcessMemoryUsage(
+    JNIEnv *env, jclass cls, jlongArray jUsage) {
+  MemoryGovernor &governor = MemoryGovernor::GetInstance();
+  jlong jlUsage[2] = {(jlong)governor.GetBudget(), (jlong)governor.GetUsage()};
+  env->SetLongArrayRegion(jUsage, 0, 2, jlUsage);
+
+  return ERROR_NONE;
+}
+
 #ifdef __cplusplus
 }
 #endif
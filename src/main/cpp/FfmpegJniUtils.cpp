@@ -104,6 +104,7 @@ uint32_t SetJPixelFormat(JNIEnv *env, jobject j_color_space,
   // TODO(fraudies): Add support for more pixel formats
   switch (pixelFormat.pixel_format_) {
   case AV_PIX_FMT_RGB24:
+  case AV_PIX_FMT_0RGB32:
     type = TYPE_RGB;
     break;
   }
@@ -206,7 +207,7 @@ uint32_t GetAudioFormat(JNIEnv *env, jobject j_audio_format,
 }
 
 uint32_t GetPixelFormat(JNIEnv *env, jobject j_color_space,
-                        PixelFormat *p_pixel_format) {
+                        int bytes_per_pixel, PixelFormat *p_pixel_format) {
 
   // Get the audio format class
   jclass color_space_class = env->GetObjectClass(j_color_space);
@@ -221,11 +222,19 @@ uint32_t GetPixelFormat(JNIEnv *env, jobject j_color_space,
   }
   int type = env->GetIntField(j_color_space, type_id);
 
+  // The java buffer holds packed RGB24 or packed ints
+  if (bytes_per_pixel != 3 && bytes_per_pixel != 4) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+
   // TODO(fraudies): Add support for more pixel formats
   p_pixel_format->pixel_format_ = AV_PIX_FMT_NONE;
+  p_pixel_format->bytes_per_pixel_ = bytes_per_pixel;
   switch (type) {
   case TYPE_RGB:
-    p_pixel_format->pixel_format_ = AV_PIX_FMT_RGB24; // CS_sRGB = 1000
+    // CS_sRGB = 1000, packed ints are 0x00RRGGBB in native byte order
+    p_pixel_format->pixel_format_ =
+        bytes_per_pixel == 4 ? AV_PIX_FMT_0RGB32 : AV_PIX_FMT_RGB24;
     break;
   }
 
@@ -17,6 +17,6 @@ uint32_t GetAudioFormat(JNIEnv *env, jobject j_audio_format,
                         AudioFormat *p_audio_format);
 
 uint32_t GetPixelFormat(JNIEnv *env, jobject j_pixel_format,
-                        PixelFormat *p_pixel_format);
+                        int bytes_per_pixel, PixelFormat *p_pixel_format);
 
 #endif //_FFMPEG_JNI_UTILS_H_
@@ -1008,7 +1008,11 @@ void FfmpegSdlAvPlayback::InitializeAndListenForEvents(
         if (p_format_context->start_time != AV_NOPTS_VALUE) {
           ts += p_format_context->start_time;
         }
-        p_video_state->Seek(ts, 0);
+        // Dragging shows keyframes until the mouse rests
+        p_video_state->Seek(ts, 0,
+                            event.type == SDL_MOUSEMOTION
+                                ? VideoState::SEEK_APPROXIMATE
+                                : VideoState::SEEK_AUTO);
       }
       break;
     case SDL_WINDOWEVENT:
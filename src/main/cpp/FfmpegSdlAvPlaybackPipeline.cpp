@@ -145,6 +145,16 @@ uint32_t FfmpegSdlAvPlaybackPipeline::GetDuration(double *pdDuration) {
   return ERROR_NONE; // no error
 }
 
+uint32_t FfmpegSdlAvPlaybackPipeline::GetStartTime(double *p_start_time) {
+  if (p_sdl_playback_ == nullptr) {
+    return ERROR_PLAYBACK_NULL;
+  }
+
+  *p_start_time = p_sdl_playback_->GetStreamStartTime();
+
+  return ERROR_NONE; // no error
+}
+
 uint32_t FfmpegSdlAvPlaybackPipeline::GetStreamTime(double *pdStreamTime) {
   if (p_sdl_playback_ == nullptr) {
     return ERROR_PLAYBACK_NULL;
@@ -30,6 +30,7 @@ private:
   virtual uint32_t Seek(double seek_time);
 
   virtual uint32_t GetDuration(double *p_duration);
+  virtual uint32_t GetStartTime(double *p_start_time);
   virtual uint32_t GetStreamTime(double *p_stream_time);
   virtual uint32_t GetFps(double *p_fps);
 
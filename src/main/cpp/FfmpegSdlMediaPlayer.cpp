@@ -452,6 +452,32 @@ Java_org_datavyu_plugins_ffmpeg_FfmpegSdlMediaPlayer_ffmpegGetDuration(
   return ERROR_NONE;
 }
 
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegSdlMediaPlayer
+ * Method:    ffmpegGetStartTime
+ * Signature: (J[D)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegSdlMediaPlayer_ffmpegGetStartTime(
+    JNIEnv *env, jobject obj, jlong ref_media, jdoubleArray jrgdStartTime) {
+  CMedia *pMedia = (CMedia *)jlong_to_ptr(ref_media);
+  if (NULL == pMedia)
+    return ERROR_MEDIA_NULL;
+
+  CPipeline *pPipeline = (CPipeline *)pMedia->GetPipeline();
+  if (NULL == pPipeline)
+    return ERROR_PIPELINE_NULL;
+
+  double dStartTime;
+  uint32_t uErrCode = pPipeline->GetStartTime(&dStartTime);
+  if (ERROR_NONE != uErrCode)
+    return uErrCode;
+  jdouble jdStartTime = (jdouble)dStartTime;
+  env->SetDoubleArrayRegion(jrgdStartTime, 0, 1, &jdStartTime);
+
+  return ERROR_NONE;
+}
+
 /*
  * Class:     org_datavyu_plugins_ffmpeg_FfmpegSdlMediaPlayer
  * Method:    ffmpegSeek
@@ -0,0 +1,131 @@
+#include "FrameCache.h"
+
+#include <math.h>
+#include <stdint.h>
+
+FrameCache::FrameCache(int64_t max_bytes)
+    : max_bytes_(max_bytes), budget_(INT64_MAX), bytes_(0) {}
+
+FrameCache::~FrameCache() { Clear(); }
+
+void FrameCache::SetMaxBytes(int64_t max_bytes) {
+  std::unique_lock<std::mutex> locker(mutex_);
+  max_bytes_ = max_bytes;
+  Evict();
+}
+
+int64_t FrameCache::GetMaxBytes() const {
+  std::unique_lock<std::mutex> locker(mutex_);
+  return max_bytes_;
+}
+
+void FrameCache::SetBudget(int64_t budget) {
+  std::unique_lock<std::mutex> locker(mutex_);
+  budget_ = budget;
+  Evict();
+}
+
+int64_t FrameCache::GetBytes() const {
+  std::unique_lock<std::mutex> locker(mutex_);
+  return bytes_;
+}
+
+int FrameCache::GetNumberOfFrames() const {
+  std::unique_lock<std::mutex> locker(mutex_);
+  return (int)frames_.size();
+}
+
+int64_t FrameCache::ToKey(double pts) { return llrint(pts * 1000000.0); }
+
+int64_t FrameCache::GetFrameSize(const AVFrame *p_frame) {
+  int64_t size = 0;
+  for (int i = 0; i < AV_NUM_DATA_POINTERS && p_frame->buf[i]; i++) {
+    size += p_frame->buf[i]->size;
+  }
+  return size;
+}
+
+void FrameCache::Put(const AVFrame *p_frame, double pts) {
+  if (isnan(pts)) {
+    return;
+  }
+  int64_t key = ToKey(pts);
+  std::unique_lock<std::mutex> locker(mutex_);
+  auto it = frames_.find(key);
+  if (it != frames_.end()) {
+    lru_.splice(lru_.begin(), lru_, it->second.p_lru_);
+    return;
+  }
+  int64_t size = GetFrameSize(p_frame);
+  if (size > GetLimit()) {
+    return;
+  }
+  AVFrame *p_clone = av_frame_clone(p_frame);
+  if (!p_clone) {
+    return;
+  }
+  lru_.push_front(key);
+  Entry entry = {p_clone, size, lru_.begin()};
+  frames_[key] = entry;
+  bytes_ += size;
+  Evict();
+}
+
+AVFrame *FrameCache::Get(std::map<int64_t, Entry>::const_iterator it,
+                         double *p_pts) {
+  lru_.splice(lru_.begin(), lru_, it->second.p_lru_);
+  *p_pts = it->first / 1000000.0;
+  return av_frame_clone(it->second.p_frame_);
+}
+
+std::map<int64_t, FrameCache::Entry>::const_iterator
+FrameCache::FindPrevious(int64_t key, int64_t max_distance) const {
+  auto it = frames_.lower_bound(key);
+  if (it == frames_.begin()) {
+    return frames_.end();
+  }
+  --it;
+  return key - it->first > max_distance ? frames_.end() : it;
+}
+
+AVFrame *FrameCache::GetPrevious(double pts, double max_distance,
+                                 double *p_pts) {
+  std::unique_lock<std::mutex> locker(mutex_);
+  auto it = FindPrevious(ToKey(pts), ToKey(max_distance));
+  return it != frames_.end() ? Get(it, p_pts) : nullptr;
+}
+
+bool FrameCache::HasPrevious(double pts, double max_distance) const {
+  std::unique_lock<std::mutex> locker(mutex_);
+  return FindPrevious(ToKey(pts), ToKey(max_distance)) != frames_.end();
+}
+
+AVFrame *FrameCache::GetNext(double pts, double max_distance, double *p_pts) {
+  int64_t key = ToKey(pts);
+  std::unique_lock<std::mutex> locker(mutex_);
+  auto it = frames_.upper_bound(key);
+  if (it == frames_.end() || it->first - key > ToKey(max_distance)) {
+    return nullptr;
+  }
+  return Get(it, p_pts);
+}
+
+void FrameCache::Clear() {
+  std::unique_lock<std::mutex> locker(mutex_);
+  for (auto &frame : frames_) {
+    av_frame_free(&frame.second.p_frame_);
+  }
+  frames_.clear();
+  lru_.clear();
+  bytes_ = 0;
+}
+
+void FrameCache::Evict() {
+  while (bytes_ > GetLimit() && !lru_.empty()) {
+    auto it = frames_.find(lru_.back());
+    bytes_ -= it->second.size_;
+    av_frame_free(&it->second.p_frame_);
+    frames_.erase(it);
+    lru_.pop_back();
+  }
+}
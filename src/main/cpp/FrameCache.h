@@ -0,0 +1,82 @@
+#include <list>
+#include <map>
+#include <mutex>
+#include <stdint.h>
+
+extern "C" {
+#include <libavutil/frame.h>
+}
+
+#ifndef FRAME_CACHE_H_
+#define FRAME_CACHE_H_
+
+// Cache of decoded frames keyed by their presentation time
+//
+// Holds references to the decoder's frames, so adding a frame copies no
+// pixels. The frames' buffers count against a byte budget and the least
+// recently used frames are evicted first when it is exceeded. Stepping
+// backward looks up the previous frame here instead of seeking and decoding
+// the GOP again.
+//
+// All methods are thread-safe.
+class FrameCache {
+public:
+  FrameCache(int64_t max_bytes);
+  virtual ~FrameCache();
+
+  void SetMaxBytes(int64_t max_bytes);
+  int64_t GetMaxBytes() const;
+  // Share of the memory governor's budget; the cache holds at most the lower
+  // of this and the max bytes, and no limit applies until it is set
+  void SetBudget(int64_t budget);
+  int64_t GetBytes() const;
+  int GetNumberOfFrames() const;
+
+  // Adds a reference to the frame with the presentation time pts in seconds;
+  // refreshes the frame if it is cached already
+  void Put(const AVFrame *p_frame, double pts);
+
+  // Returns a new reference to the latest frame before pts or to the earliest
+  // frame after pts, at most max_distance seconds away, and sets p_pts to its
+  // presentation time; returns nullptr if there is no such frame. The caller
+  // frees the frame with av_frame_free.
+  AVFrame *GetPrevious(double pts, double max_distance, double *p_pts);
+  AVFrame *GetNext(double pts, double max_distance, double *p_pts);
+
+  // Returns true if GetPrevious would find a frame
+  bool HasPrevious(double pts, double max_distance) const;
+
+  void Clear();
+
+  // Bytes held by the frame's buffers
+  static int64_t GetFrameSize(const AVFrame *p_frame);
+
+private:
+  typedef struct Entry {
+    AVFrame *p_frame_;
+    int64_t size_;
+    std::list<int64_t>::iterator p_lru_;
+  } Entry;
+
+  mutable std::mutex mutex_;
+  // Keyed by the presentation time in microseconds
+  std::map<int64_t, Entry> frames_;
+  // Keys from the most to the least recently used
+  std::list<int64_t> lru_;
+  int64_t max_bytes_;
+  int64_t budget_;
+  int64_t bytes_;
+
+  static int64_t ToKey(double pts);
+  // With the lock
+  inline int64_t GetLimit() const {
+    return max_bytes_ < budget_ ? max_bytes_ : budget_;
+  }
+  std::map<int64_t, Entry>::const_iterator FindPrevious(int64_t key,
+                                                        int64_t max_distance)
+      const;
+  AVFrame *Get(std::map<int64_t, Entry>::const_iterator it, double *p_pts);
+  void Evict();
+};
+
+#endif FRAME_CACHE_H_
@@ -4,7 +4,8 @@ void unref_item(Frame *vp) { av_frame_unref(vp->p_frame_); }
 
 FrameQueue::FrameQueue(const PacketQueue *pktq, int max_size, bool keep_last)
     : read_index_(0), write_index_(0), size_(0), max_size_(max_size),
-      keep_last_(keep_last), read_index_shown_(0), p_packet_queue_(pktq) {}
+      max_num_frames_(max_size), keep_last_(keep_last), read_index_shown_(0),
+      p_packet_queue_(pktq) {}
 
 FrameQueue::~FrameQueue() {
   for (int i = 0; i < max_size_; i++) {
@@ -59,13 +60,21 @@ void FrameQueue::PeekWritable(Frame **pp_frame) {
   // waits until we have space to put a new frame
   std::unique_lock<std::mutex> locker(mutex_);
   condition_.wait(locker, [&] {
-    return size_ < max_size_ || p_packet_queue_->IsAbortRequested();
+    return size_ < max_num_frames_ || p_packet_queue_->IsAbortRequested();
   });
   locker.unlock();
   *pp_frame =
       p_packet_queue_->IsAbortRequested() ? nullptr : &p_frames_[write_index_];
 }
 
+void FrameQueue::SetMaxNumFrames(int num_frames) {
+  std::unique_lock<std::mutex> locker(mutex_);
+  // The shown frame is kept, the writer needs one more
+  max_num_frames_ = FFMAX(FFMIN(num_frames, max_size_), keep_last_ ? 2 : 1);
+  // Readers wait on the same condition
+  condition_.notify_all();
+}
+
 void FrameQueue::PeekReadable(Frame **pp_frame) {
   // waits until we have a readable new frame
   std::unique_lock<std::mutex> locker(mutex_);
@@ -101,6 +110,9 @@ void FrameQueue::Next() {
   size_--;
   condition_.notify_one();
   locker.unlock();
+  if (frame_released_callback_) {
+    frame_released_callback_();
+  }
 }
 
 // return last shown position
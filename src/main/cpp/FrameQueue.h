@@ -1,5 +1,7 @@
 #include "PacketQueue.h"
+#include <atomic>
 #include <condition_variable>
+#include <functional>
 #include <mutex>
 
 extern "C" {
@@ -87,9 +89,21 @@ public:
 
   void Next();
 
+  // Called outside of the lock whenever Next releases a frame
+  inline void SetFrameReleasedCallback(const std::function<void()> &callback) {
+    frame_released_callback_ = callback;
+  }
+
   // return the number of undisplayed frames in the queue
   inline int GetNumToDisplay() const { return size_ - read_index_shown_; }
 
+  // return the number of frames held, including the one shown
+  inline int GetNumFrames() const { return size_; }
+
+  // Limits the frames held to fewer than the queue was created for; a writer
+  // waits while the queue holds as many
+  void SetMaxNumFrames(int num_frames);
+
   // return the byte position of the frame last shown
   int64_t GetBytePosOfLastFrame();
 
@@ -97,13 +111,15 @@ private:
   Frame *p_frames_; // container for the frames
   int read_index_;  // read index
   int write_index_; // write index
-  int size_;        // size in bytes
+  std::atomic<int> size_; // size in bytes, read unlocked by GetNumFrames
   int max_size_;
+  int max_num_frames_; // at most max_size_
   bool keep_last_;
   int read_index_shown_; // read index shown
   std::mutex mutex_;
   std::condition_variable condition_;
   const PacketQueue *p_packet_queue_; // packet queue
+  std::function<void()> frame_released_callback_;
 
   static void unref_item(Frame *vp) { av_frame_unref(vp->p_frame_); }
 
@@ -0,0 +1,152 @@
+#include "GopDecoder.h"
+
+extern "C" {
+#include <libavutil/avstring.h>
+}
+
+static int InterruptDecodeBridge(void *p_abort) {
+  return *static_cast<const std::atomic<bool> *>(p_abort);
+}
+
+GopDecoder::GopDecoder(const char *filename, int stream_index,
+                       const std::atomic<bool> *p_abort)
+    : filename_(av_strdup(filename)), stream_index_(stream_index),
+      p_abort_(p_abort), p_format_context_(nullptr),
+      p_codec_context_(nullptr), time_base_(av_make_q(0, 1)), start_time_(0),
+      keyframes_only_(false) {}
+
+GopDecoder::~GopDecoder() {
+  Close();
+  av_free(filename_);
+}
+
+int GopDecoder::Open() {
+  AVCodec *p_codec = nullptr;
+  AVStream *p_stream = nullptr;
+  int ret;
+
+  if (p_codec_context_) {
+    return 0;
+  }
+  if (!filename_) {
+    return AVERROR(ENOMEM);
+  }
+  p_format_context_ = avformat_alloc_context();
+  if (!p_format_context_) {
+    return AVERROR(ENOMEM);
+  }
+  p_format_context_->interrupt_callback.callback = InterruptDecodeBridge;
+  p_format_context_->interrupt_callback.opaque = (void *)p_abort_;
+  ret = avformat_open_input(&p_format_context_, filename_, NULL, NULL);
+  if (ret < 0) {
+    return ret; // frees the context
+  }
+  // Probe like the player does so that the stream indices match
+  ret = avformat_find_stream_info(p_format_context_, NULL);
+  if (ret < 0) {
+    goto fail;
+  }
+  if (stream_index_ < 0 || stream_index_ >= p_format_context_->nb_streams) {
+    ret = AVERROR_STREAM_NOT_FOUND;
+    goto fail;
+  }
+  for (int i = 0; i < p_format_context_->nb_streams; i++) {
+    p_format_context_->streams[i]->discard =
+        i == stream_index_ ? AVDISCARD_DEFAULT : AVDISCARD_ALL;
+  }
+
+  p_stream = p_format_context_->streams[stream_index_];
+  p_codec = avcodec_find_decoder(p_stream->codecpar->codec_id);
+  if (!p_codec) {
+    ret = AVERROR_DECODER_NOT_FOUND;
+    goto fail;
+  }
+  p_codec_context_ = avcodec_alloc_context3(p_codec);
+  if (!p_codec_context_) {
+    ret = AVERROR(ENOMEM);
+    goto fail;
+  }
+  ret = avcodec_parameters_to_context(p_codec_context_, p_stream->codecpar);
+  if (ret < 0) {
+    goto fail;
+  }
+  p_codec_context_->pkt_timebase = p_stream->time_base;
+  // Decode on all cores, the callers race the display
+  p_codec_context_->thread_count = 0;
+  ret = avcodec_open2(p_codec_context_, p_codec, NULL);
+  if (ret < 0) {
+    goto fail;
+  }
+  time_base_ = p_stream->time_base;
+  start_time_ =
+      p_stream->start_time != AV_NOPTS_VALUE ? p_stream->start_time : 0;
+  return 0;
+
+fail:
+  Close();
+  return ret;
+}
+
+void GopDecoder::Close() {
+  avcodec_free_context(&p_codec_context_);
+  avformat_close_input(&p_format_context_);
+}
+
+int GopDecoder::Decode(int64_t start, int64_t end, const KeyframeIndex *p_index,
+                       const std::function<void(AVFrame *, int64_t)> &put) {
+  AVPacket packet;
+  AVFrame *p_frame = nullptr;
+  KeyframeIndex::Keyframe keyframe;
+  bool done = false;
+  bool end_of_file = false;
+  int ret;
+
+  if ((ret = Open()) < 0) {
+    return ret;
+  }
+  // Demuxers that know the keyframes do not even read the other packets
+  p_format_context_->streams[stream_index_]->discard =
+      keyframes_only_ ? AVDISCARD_NONKEY : AVDISCARD_DEFAULT;
+  p_codec_context_->skip_frame =
+      keyframes_only_ ? AVDISCARD_NONKEY : AVDISCARD_DEFAULT;
+  if (p_index && p_index->FindKeyframe(start, &keyframe)) {
+    start = keyframe.dts_ != AV_NOPTS_VALUE ? keyframe.dts_ : keyframe.pts_;
+  }
+  ret = av_seek_frame(p_format_context_, stream_index_, start,
+                      AVSEEK_FLAG_BACKWARD);
+  if (ret < 0) {
+    return ret;
+  }
+  avcodec_flush_buffers(p_codec_context_);
+
+  p_frame = av_frame_alloc();
+  if (!p_frame) {
+    return AVERROR(ENOMEM);
+  }
+  av_init_packet(&packet);
+  while (!done && !*p_abort_ && !end_of_file) {
+    if (av_read_frame(p_format_context_, &packet) < 0) {
+      // Drain the frames the decoder still holds
+      end_of_file = true;
+      avcodec_send_packet(p_codec_context_, NULL);
+    } else if (packet.stream_index != stream_index_ ||
+               (keyframes_only_ && !(packet.flags & AV_PKT_FLAG_KEY)) ||
+               avcodec_send_packet(p_codec_context_, &packet) < 0) {
+      av_packet_unref(&packet);
+      continue;
+    }
+    av_packet_unref(&packet);
+    while (!done && avcodec_receive_frame(p_codec_context_, p_frame) >= 0) {
+      // Frames come out in presentation order
+      int64_t timestamp = p_frame->best_effort_timestamp;
+      if (timestamp >= end) {
+        done = true;
+      } else if (timestamp != AV_NOPTS_VALUE) {
+        put(p_frame, timestamp);
+      }
+      av_frame_unref(p_frame);
+    }
+  }
+  av_frame_free(&p_frame);
+  return 0;
+}
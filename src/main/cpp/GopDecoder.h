@@ -0,0 +1,60 @@
+#include <atomic>
+#include <functional>
+#include <stdint.h>
+
+#include "KeyframeIndex.h"
+
+extern "C" {
+#include <libavcodec/avcodec.h>
+#include <libavformat/avformat.h>
+}
+
+#ifndef GOP_DECODER_H_
+#define GOP_DECODER_H_
+
+// Decodes ranges of one video stream outside of the player's pipeline
+//
+// Uses a demuxer and decoder of its own, opened on first use, so the player's
+// queues and decoder are not disturbed. Background work that needs the
+// frames of a GOP, e.g. prefilling the frame cache or reverse playback,
+// decodes them here.
+class GopDecoder {
+public:
+  // Decoding stops as soon as p_abort turns true
+  GopDecoder(const char *filename, int stream_index,
+             const std::atomic<bool> *p_abort);
+  virtual ~GopDecoder();
+
+  // Opens the file and decoder unless they are open already
+  int Open();
+
+  // Seeks to the keyframe at or before start and decodes forward, passing
+  // every frame before end to put with its timestamp; timestamps are in the
+  // stream time base. The frame is only valid during the call. The index, if
+  // any, locates the keyframe. Returns a negative error code on failure.
+  int Decode(int64_t start, int64_t end, const KeyframeIndex *p_index,
+             const std::function<void(AVFrame *, int64_t)> &put);
+
+  // Decodes keyframes only, skipping the frames between them
+  inline void SetKeyframesOnly(bool keyframes_only) {
+    keyframes_only_ = keyframes_only;
+  }
+
+  // Valid once open
+  inline AVRational GetTimeBase() const { return time_base_; }
+  inline int64_t GetStartTime() const { return start_time_; }
+
+private:
+  char *filename_;
+  int stream_index_;
+  const std::atomic<bool> *p_abort_;
+  AVFormatContext *p_format_context_;
+  AVCodecContext *p_codec_context_;
+  AVRational time_base_;
+  int64_t start_time_;
+  bool keyframes_only_;
+
+  void Close();
+};
+
+#endif GOP_DECODER_H_
@@ -0,0 +1,76 @@
+#include "GopPrefiller.h"
+
+#include <math.h>
+#include <new>
+
+GopPrefiller::GopPrefiller(const char *filename, int stream_index,
+                           FrameCache *p_cache)
+    : p_cache_(p_cache), abort_(false),
+      decoder_(filename, stream_index, &abort_), p_thread_(nullptr),
+      has_request_(false), quit_(false), request_pts_(0),
+      p_request_index_(nullptr) {}
+
+GopPrefiller::~GopPrefiller() { Stop(); }
+
+void GopPrefiller::Start(double pts, const KeyframeIndex *p_index) {
+  std::unique_lock<std::mutex> locker(mutex_);
+  if (!p_thread_) {
+    quit_ = false;
+    p_thread_ = new (std::nothrow) std::thread([this] { Run(); });
+    if (!p_thread_) {
+      return;
+    }
+  }
+  request_pts_ = pts;
+  p_request_index_ = p_index;
+  has_request_ = true;
+  // The thread clears the flag when it takes the request
+  abort_ = true;
+  cond_.notify_one();
+}
+
+void GopPrefiller::Stop() {
+  std::unique_lock<std::mutex> locker(mutex_);
+  quit_ = true;
+  abort_ = true;
+  cond_.notify_one();
+  std::thread *p_thread = p_thread_;
+  p_thread_ = nullptr;
+  locker.unlock();
+  if (p_thread) {
+    p_thread->join();
+    delete p_thread;
+  }
+}
+
+void GopPrefiller::Run() {
+  std::unique_lock<std::mutex> locker(mutex_);
+  while (true) {
+    cond_.wait(locker, [this] { return quit_ || has_request_; });
+    if (quit_) {
+      has_request_ = false;
+      return;
+    }
+    double pts = request_pts_;
+    const KeyframeIndex *p_index = p_request_index_;
+    has_request_ = false;
+    abort_ = false;
+    locker.unlock();
+    Prefill(pts, p_index);
+    locker.lock();
+  }
+}
+
+void GopPrefiller::Prefill(double pts, const KeyframeIndex *p_index) {
+  if (decoder_.Open() < 0) {
+    return;
+  }
+  AVRational time_base = decoder_.GetTimeBase();
+  int64_t end = llrint(pts / av_q2d(time_base));
+  // Start at the keyframe of the frame before pts, which is the previous
+  // keyframe if pts is a keyframe itself
+  decoder_.Decode(end - 1, end, p_index,
+                  [this, time_base](AVFrame *p_frame, int64_t timestamp) {
+                    p_cache_->Put(p_frame, timestamp * av_q2d(time_base));
+                  });
+}
@@ -0,0 +1,52 @@
+#include <atomic>
+#include <condition_variable>
+#include <mutex>
+#include <thread>
+
+#include "FrameCache.h"
+#include "GopDecoder.h"
+#include "KeyframeIndex.h"
+
+#ifndef GOP_PREFILLER_H_
+#define GOP_PREFILLER_H_
+
+// Decodes the frames before a position into the frame cache in the background
+//
+// A prefill decodes from the keyframe preceding the last frame before the
+// position up to the position. Stepping backward from the position then finds
+// every frame of the GOP in the cache; at a keyframe the prefill reaches into
+// the previous GOP. A thread of the prefiller decodes the latest requested
+// prefill, so the display thread never waits for a cancelled one.
+class GopPrefiller {
+public:
+  GopPrefiller(const char *filename, int stream_index, FrameCache *p_cache);
+  virtual ~GopPrefiller();
+
+  // Starts prefilling the frames before pts (in seconds) without waiting for
+  // a running prefill, which is cancelled; the index, if any, locates the
+  // keyframe and must outlive the prefill
+  void Start(double pts, const KeyframeIndex *p_index);
+
+  // Cancels and waits for a running prefill and ends the thread
+  void Stop();
+
+private:
+  FrameCache *p_cache_;
+  // Cancels the running prefill
+  std::atomic<bool> abort_;
+  GopDecoder decoder_;
+  std::thread *p_thread_;
+
+  // The latest request, taken by the thread
+  std::mutex mutex_;
+  std::condition_variable cond_;
+  bool has_request_;
+  bool quit_;
+  double request_pts_;
+  const KeyframeIndex *p_request_index_;
+
+  void Run();
+  void Prefill(double pts, const KeyframeIndex *p_index);
+};
+
+#endif GOP_PREFILLER_H_
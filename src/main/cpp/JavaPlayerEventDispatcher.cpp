@@ -27,18 +27,30 @@
 #include "JniUtils.h"
 #include "org_datavyu_plugins_ffmpeg_NativeMediaPlayer.h"
 
+#ifdef SDL_ENABLED
+static const char *kPlayerClassName =
+    "org/datavyu/plugins/ffmpeg/FfmpegSdlMediaPlayer";
+#else
+static const char *kPlayerClassName = "org/datavyu/plugins/NativeMediaPlayer";
+#endif // SDL_ENABLED
+
 static bool areJMethodIDsInitialized = false;
 
 jmethodID CJavaPlayerEventDispatcher::send_player_media_error_event_method_ = 0;
 jmethodID CJavaPlayerEventDispatcher::send_player_state_event_method_ = 0;
+jmethodID CJavaPlayerEventDispatcher::send_seek_completed_event_method_ = 0;
 #ifdef SDL_ENABLED
 jmethodID CJavaPlayerEventDispatcher::send_sdl_player_key_event_method_ = 0;
 #endif // SDL_ENABLED
 
 CJavaPlayerEventDispatcher::CJavaPlayerEventDispatcher()
-    : p_player_vm_(NULL), player_instance_(NULL), media_reference_(0L) {}
+    : p_player_vm_(NULL), player_instance_(NULL), media_reference_(0L),
+      p_event_ring_(nullptr) {}
 
-CJavaPlayerEventDispatcher::~CJavaPlayerEventDispatcher() { Dispose(); }
+CJavaPlayerEventDispatcher::~CJavaPlayerEventDispatcher() {
+  Dispose();
+  delete p_event_ring_.exchange(nullptr);
+}
 
 void CJavaPlayerEventDispatcher::Init(JNIEnv *env, jobject PlayerInstance,
                                       CMedia *pMedia) {
@@ -51,33 +63,42 @@ void CJavaPlayerEventDispatcher::Init(JNIEnv *env, jobject PlayerInstance,
   player_instance_ = env->NewGlobalRef(PlayerInstance);
   media_reference_ = (jlong)ptr_to_jlong(pMedia);
 
-  // Initialize jmethodID data members. These are derived from the class of
-  // the object and not its instance. No, this particular implementation is
-  // not thread-safe, but the worst that can happen is that the jmethodIDs are
-  // initialized more than once which is still better than once per player.
+  // Normally done in JNI_OnLoad; otherwise use the class of the instance
   if (false == areJMethodIDsInitialized) {
-    CJavaEnvironment javaEnv(env);
-    bool hasException = false;
     jclass klass = env->GetObjectClass(player_instance_);
+    InitJMethodIDs(env, klass);
+    env->DeleteLocalRef(klass);
+  }
+}
 
-    send_player_media_error_event_method_ =
-        env->GetMethodID(klass, "sendPlayerMediaErrorEvent", "(I)V");
-    hasException = javaEnv.ReportException();
+// No, this is not thread-safe, but the worst that can happen is that the
+// jmethodIDs are initialized more than once which is still better than once
+// per player.
+bool CJavaPlayerEventDispatcher::InitJMethodIDs(JNIEnv *env, jclass klass) {
+  if (areJMethodIDsInitialized) {
+    return true;
+  }
+  CJavaEnvironment javaEnv(env);
+  bool hasException = false;
+
+  send_player_media_error_event_method_ =
+      env->GetMethodID(klass, "sendPlayerMediaErrorEvent", "(I)V");
+  hasException = javaEnv.ReportException();
 
-    if (!hasException) {
-      send_player_state_event_method_ =
-          env->GetMethodID(klass, "sendPlayerStateEvent", "(ID)V");
+  if (!hasException) {
+    send_player_state_event_method_ =
+        env->GetMethodID(klass, "sendPlayerStateEvent", "(ID)V");
+    send_seek_completed_event_method_ =
+        env->GetMethodID(klass, "sendSeekCompletedEvent", "(JD)V");
 #ifdef SDL_ENABLED
-      send_sdl_player_key_event_method_ =
-          env->GetMethodID(klass, "sendSdlPlayerKeyEvent", "(I)V");
+    send_sdl_player_key_event_method_ =
+        env->GetMethodID(klass, "sendSdlPlayerKeyEvent", "(I)V");
 #endif // SDL_ENABLED
-      hasException = javaEnv.ReportException();
-    }
-
-    env->DeleteLocalRef(klass);
-
-    areJMethodIDsInitialized = !hasException;
+    hasException = javaEnv.ReportException();
   }
+
+  areJMethodIDsInitialized = !hasException;
+  return areJMethodIDsInitialized;
 }
 
 void CJavaPlayerEventDispatcher::Dispose() {
@@ -89,7 +110,36 @@ void CJavaPlayerEventDispatcher::Dispose() {
   }
 }
 
+bool CJavaPlayerEventDispatcher::SetEventRing(uint8_t *p_memory, long len,
+                                              int64_t java_now) {
+  EventRing *p_ring = EventRing::Create(p_memory, len, java_now);
+  EventRing *p_none = nullptr;
+  if (p_ring == nullptr ||
+      !p_event_ring_.compare_exchange_strong(p_none, p_ring)) {
+    delete p_ring;
+    return false;
+  }
+  return true;
+}
+
+bool CJavaPlayerEventDispatcher::PostToEventRing(EventRing::Type type,
+                                                 int code, double time,
+                                                 int64_t seek_id) {
+  EventRing *pRing = p_event_ring_;
+  if (!pRing) {
+    return false;
+  }
+  if (pRing->Post(type, code, time, seek_id) && pRing->Unpark()) {
+    EventRing::WakeUp();
+  }
+  return true;
+}
+
 bool CJavaPlayerEventDispatcher::SendPlayerMediaErrorEvent(int errorCode) {
+  if (PostToEventRing(EventRing::kMediaError, errorCode, 0)) {
+    return true;
+  }
+
   bool bSucceeded = false;
   CJavaEnvironment jenv(p_player_vm_);
   JNIEnv *pEnv = jenv.GetEnvironment();
@@ -148,6 +198,11 @@ bool CJavaPlayerEventDispatcher::SendPlayerStateEvent(int newState,
     return false;
   }
 
+  if (PostToEventRing(EventRing::kPlayerState, (int)newJavaState,
+                      presentTime)) {
+    return true;
+  }
+
   bool bSucceeded = false;
   CJavaEnvironment jenv(p_player_vm_);
   JNIEnv *pEnv = jenv.GetEnvironment();
@@ -165,6 +220,29 @@ bool CJavaPlayerEventDispatcher::SendPlayerStateEvent(int newState,
   return bSucceeded;
 }
 
+bool CJavaPlayerEventDispatcher::SendSeekCompletedEvent(int64_t seekId,
+                                                        double presentTime) {
+  if (PostToEventRing(EventRing::kSeekCompleted, 0, presentTime, seekId)) {
+    return true;
+  }
+
+  bool bSucceeded = false;
+  CJavaEnvironment jenv(p_player_vm_);
+  JNIEnv *pEnv = jenv.GetEnvironment();
+  if (pEnv) {
+    jobject localPlayer = pEnv->NewLocalRef(player_instance_);
+    if (localPlayer) {
+      pEnv->CallVoidMethod(localPlayer, send_seek_completed_event_method_,
+                           (jlong)seekId, presentTime);
+      pEnv->DeleteLocalRef(localPlayer);
+
+      bSucceeded = !jenv.ReportException();
+    }
+  }
+
+  return bSucceeded;
+}
+
 #ifdef SDL_ENABLED
 bool CJavaPlayerEventDispatcher::SendSdlPlayerKeyEvent(int keyId) {
   bool bSucceeded = false;
@@ -184,3 +262,21 @@ bool CJavaPlayerEventDispatcher::SendSdlPlayerKeyEvent(int keyId) {
   return bSucceeded;
 }
 #endif // SDL_ENABLED
+
+// Called by System.load on the thread loading the player class, i.e. with its
+// class loader, so the player class can be found here once for all players
+JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved) {
+  JNIEnv *env = NULL;
+  if (vm->GetEnv((void **)&env, JNI_VERSION_1_4) != JNI_OK) {
+    return JNI_ERR;
+  }
+  InitJniUtils(env);
+  jclass klass = env->FindClass(kPlayerClassName);
+  if (env->ExceptionCheck()) {
+    env->ExceptionClear(); // Init falls back to the class of the instance
+  } else {
+    CJavaPlayerEventDispatcher::InitJMethodIDs(env, klass);
+    env->DeleteLocalRef(klass);
+  }
+  return JNI_VERSION_1_4;
+}
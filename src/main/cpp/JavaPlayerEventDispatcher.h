@@ -26,8 +26,10 @@
 #ifndef _JAVA_PLAYER_EVENT_DISPATCHER_H_
 #define _JAVA_PLAYER_EVENT_DISPATCHER_H_
 
+#include <atomic>
 #include <jni.h>
 
+#include "EventRing.h"
 #include "Media.h"
 #include "Pipeline.h"
 
@@ -38,11 +40,22 @@ public:
   CJavaPlayerEventDispatcher();
   ~CJavaPlayerEventDispatcher();
 
+  // Caches the ids of the player's send methods, the first call that succeeds
+  // wins; called from JNI_OnLoad with the player class and again from Init
+  static bool InitJMethodIDs(JNIEnv *env, jclass klass);
+
   void Init(JNIEnv *env, jobject PlayerInstance, CMedia *pMedia);
   void Dispose();
 
+  // Posts the events into the ring from now on, the java side keeps the
+  // memory alive until the player is disposed. Returns false if the memory
+  // holds no ring or a ring is already set.
+  bool SetEventRing(uint8_t *p_memory, long len, int64_t java_now);
+
   virtual bool SendPlayerMediaErrorEvent(int errorCode);
   virtual bool SendPlayerStateEvent(int newState, double presentTime);
+  // NaN for a seek that a newer one replaced
+  virtual bool SendSeekCompletedEvent(int64_t seekId, double presentTime);
 #ifdef SDL_ENABLED
   virtual bool SendSdlPlayerKeyEvent(int keyId);
 #endif // SDL_ENABLED
@@ -51,15 +64,24 @@ private:
   JavaVM *p_player_vm_;
   jobject player_instance_;
   jlong media_reference_; // FIXME: Nuke this field, it's completely unused
+  // Events go up by JNI calls while null, are dropped and counted if full
+  std::atomic<EventRing *> p_event_ring_;
 
   static jmethodID send_warning_method_;
 
   static jmethodID send_player_media_error_event_method_;
   static jmethodID send_player_state_event_method_;
+  static jmethodID send_seek_completed_event_method_;
 #ifdef SDL_ENABLED
   static jmethodID send_sdl_player_key_event_method_;
 #endif // SDL_ENABLED
 
+  // Posts into the ring and wakes java if it parked the ring; returns false
+  // if there is no ring. A full ring drops and counts the event, so that the
+  // decode and display threads never call up into java.
+  bool PostToEventRing(EventRing::Type type, int code, double time,
+                       int64_t seek_id = 0);
+
   static jobject CreateObject(JNIEnv *env, jmethodID *cid,
                               const char *class_name, const char *signature,
                               jvalue *value);
@@ -25,18 +25,58 @@
 
 #include "JniUtils.h"
 
-JNIEnv *GetJavaEnvironment(JavaVM *jvm, jboolean &didAttach) {
+// Cached by InitJniUtils, NULL if JNI_OnLoad did not run
+static jclass throwable_class = NULL;
+static jmethodID throwable_to_string_method = NULL;
+
+// Detaches the owning thread from the JVM when the thread exits, if
+// GetJavaEnvironment attached it
+class CThreadAttachment {
+public:
+  CThreadAttachment() : p_jvm(NULL) {}
+  ~CThreadAttachment() {
+    if (p_jvm) {
+      p_jvm->DetachCurrentThread();
+    }
+  }
+
+  JavaVM *p_jvm;
+};
+
+static thread_local CThreadAttachment thread_attachment;
+
+JNIEnv *GetJavaEnvironment(JavaVM *jvm) {
   JNIEnv *env = NULL;
-  didAttach = false;
   if (jvm) {
     if (jvm->GetEnv((void **)&env, JNI_VERSION_1_4) != JNI_OK) {
-      didAttach = true;
-      jvm->AttachCurrentThreadAsDaemon((void **)&env, NULL);
+      if (jvm->AttachCurrentThreadAsDaemon((void **)&env, NULL) == JNI_OK) {
+        thread_attachment.p_jvm = jvm;
+      } else {
+        env = NULL;
+      }
     }
   }
   return env;
 }
 
+bool InitJniUtils(JNIEnv *env) {
+  jclass klass = env->FindClass("java/lang/Throwable");
+  if (env->ExceptionCheck()) {
+    env->ExceptionClear();
+    return false;
+  }
+  throwable_to_string_method =
+      env->GetMethodID(klass, "toString", "()Ljava/lang/String;");
+  if (env->ExceptionCheck()) {
+    env->ExceptionClear();
+    env->DeleteLocalRef(klass);
+    return false;
+  }
+  throwable_class = (jclass)env->NewGlobalRef(klass);
+  env->DeleteLocalRef(klass);
+  return throwable_class != NULL;
+}
+
 bool CJavaEnvironment::HasException() {
   return (p_environment ? (bool)p_environment->ExceptionCheck() : false);
 }
@@ -58,18 +98,14 @@ bool CJavaEnvironment::ReportException() {
     jthrowable exc = p_environment->ExceptionOccurred();
     if (exc) {
       p_environment->ExceptionClear(); // Clear current exception
-      jclass cid = p_environment->FindClass("java/lang/Throwable");
-      if (!ClearException()) {
-        jmethodID mid =
-            p_environment->GetMethodID(cid, "toString", "()Ljava/lang/String;");
+      if (throwable_class) {
+        jstring jmsg = (jstring)p_environment->CallObjectMethod(
+            exc, throwable_to_string_method);
         if (!ClearException()) {
-          jstring jmsg = (jstring)p_environment->CallObjectMethod(exc, mid);
-          if (!ClearException()) {
-            char *pmsg = (char *)p_environment->GetStringUTFChars(jmsg, NULL);
-            p_environment->ReleaseStringUTFChars(jmsg, pmsg);
-          }
+          char *pmsg = (char *)p_environment->GetStringUTFChars(jmsg, NULL);
+          p_environment->ReleaseStringUTFChars(jmsg, pmsg);
+          p_environment->DeleteLocalRef(jmsg);
         }
-        p_environment->DeleteLocalRef(cid);
       }
       p_environment->DeleteLocalRef(exc);
       return true;
@@ -78,24 +114,15 @@ bool CJavaEnvironment::ReportException() {
   return false;
 }
 
-CJavaEnvironment::CJavaEnvironment(JavaVM *jvm)
-    : attached(false), p_environment(NULL) {
+CJavaEnvironment::CJavaEnvironment(JavaVM *jvm) : p_environment(NULL) {
   if (jvm) {
-    p_environment = GetJavaEnvironment(jvm, attached);
+    p_environment = GetJavaEnvironment(jvm);
   }
 }
 
-CJavaEnvironment::CJavaEnvironment(JNIEnv *env) : attached(false) {
-  p_environment = env;
-}
+CJavaEnvironment::CJavaEnvironment(JNIEnv *env) { p_environment = env; }
 
-CJavaEnvironment::~CJavaEnvironment() {
-  if (attached && p_environment) {
-    JavaVM *jvm;
-    if (p_environment->GetJavaVM(&jvm) == JNI_OK) {
-      jvm->DetachCurrentThread();
-    }
-  }
-}
+// The thread stays attached, see GetJavaEnvironment
+CJavaEnvironment::~CJavaEnvironment() {}
 
 JNIEnv *CJavaEnvironment::GetEnvironment() { return p_environment; }
@@ -37,10 +37,14 @@
 #define ptr_to_jlong(a) ((jlong)(int)(a))
 #endif
 
-// Gets a valid, usable JNIEnv for the current thread
-// if didAttach is true on return then you should call
-// jvm->DetachCurrentThread() when done
-JNIEnv *GetJavaEnvironment(JavaVM *jvm, jboolean &didAttach);
+// Gets a valid, usable JNIEnv for the current thread. A native thread is
+// attached on the first call and stays attached until it exits, when it is
+// detached again; callers never detach.
+JNIEnv *GetJavaEnvironment(JavaVM *jvm);
+
+// Caches the global class refs and method ids used by CJavaEnvironment, call
+// from JNI_OnLoad. Returns false if a class or method could not be found.
+bool InitJniUtils(JNIEnv *env);
 
 /*
  * Example usage of this class:
@@ -66,7 +70,6 @@ public:
 
 private:
   JNIEnv *p_environment;
-  jboolean attached;
 };
 
 #endif //_JNI_UTILS_H_
@@ -0,0 +1,257 @@
+#include "KeyframeIndex.h"
+
+#include <algorithm>
+#include <new>
+#include <string.h>
+
+const int KeyframeIndex::kFramesPerCheckpoint = 64;
+
+static int InterruptScanBridge(void *p_abort) {
+  return *static_cast<const std::atomic<bool> *>(p_abort);
+}
+
+KeyframeIndex::KeyframeIndex(int stream_index)
+    : num_frames_(0), first_pts_(0), bucket_duration_(1), max_gop_length_(0),
+      stream_index_(stream_index), time_base_(av_make_q(0, 1)) {}
+
+KeyframeIndex *KeyframeIndex::Build(const char *filename, int stream_index,
+                                    const std::atomic<bool> *p_abort) {
+  AVFormatContext *p_format_context = nullptr;
+  AVPacket packet;
+  KeyframeIndex *p_index = nullptr;
+  std::vector<int64_t> frame_pts;
+  int gop_length = 0;
+  int ret;
+
+  // Scanning a remote stream would download all of it
+  const char *protocol = avio_find_protocol_name(filename);
+  if (!protocol || strcmp(protocol, "file")) {
+    return nullptr;
+  }
+  p_format_context = avformat_alloc_context();
+  if (!p_format_context) {
+    return nullptr;
+  }
+  p_format_context->interrupt_callback.callback = InterruptScanBridge;
+  p_format_context->interrupt_callback.opaque = (void *)p_abort;
+  if (avformat_open_input(&p_format_context, filename, NULL, NULL) < 0) {
+    return nullptr; // frees the context
+  }
+  // Probe like the player does so that the stream indices match
+  if (avformat_find_stream_info(p_format_context, NULL) < 0 ||
+      stream_index < 0 || stream_index >= p_format_context->nb_streams) {
+    goto fail;
+  }
+  for (int i = 0; i < p_format_context->nb_streams; i++) {
+    p_format_context->streams[i]->discard =
+        i == stream_index ? AVDISCARD_DEFAULT : AVDISCARD_ALL;
+  }
+
+  p_index = new (std::nothrow) KeyframeIndex(stream_index);
+  if (!p_index) {
+    goto fail;
+  }
+  p_index->time_base_ = p_format_context->streams[stream_index]->time_base;
+
+  av_init_packet(&packet);
+  while ((ret = av_read_frame(p_format_context, &packet)) >= 0) {
+    if (packet.stream_index == stream_index) {
+      int64_t pts = packet.pts == AV_NOPTS_VALUE ? packet.dts : packet.pts;
+      if (pts != AV_NOPTS_VALUE) {
+        frame_pts.push_back(pts);
+      }
+      if (packet.flags & AV_PKT_FLAG_KEY) {
+        if (!p_index->keyframes_.empty()) {
+          p_index->keyframes_.back().gop_length_ = gop_length;
+        }
+        Keyframe keyframe;
+        keyframe.dts_ = packet.dts;
+        keyframe.pts_ = pts;
+        keyframe.byte_pos_ = packet.pos;
+        keyframe.gop_length_ = 0;
+        if (keyframe.pts_ != AV_NOPTS_VALUE) {
+          p_index->keyframes_.push_back(keyframe);
+          gop_length = 0;
+        }
+      }
+      gop_length++;
+    }
+    av_packet_unref(&packet);
+  }
+  if (ret != AVERROR_EOF || p_index->keyframes_.empty()) {
+    // Aborted, read error, or nothing to index
+    goto fail;
+  }
+  p_index->keyframes_.back().gop_length_ = gop_length;
+  p_index->Finish(&frame_pts);
+
+  avformat_close_input(&p_format_context);
+  av_log(NULL, AV_LOG_INFO, "Indexed %d keyframes in %s\n",
+         p_index->GetNumberOfKeyframes(), filename);
+  return p_index;
+
+fail:
+  delete p_index;
+  avformat_close_input(&p_format_context);
+  return nullptr;
+}
+
+void KeyframeIndex::Finish(std::vector<int64_t> *p_frame_pts) {
+  // Keyframes are in decode order which matches presentation order except for
+  // broken streams
+  std::sort(keyframes_.begin(), keyframes_.end(),
+            [](const Keyframe &a, const Keyframe &b) {
+              return a.pts_ < b.pts_;
+            });
+  // Packets come in decode order
+  std::sort(p_frame_pts->begin(), p_frame_pts->end());
+  frame_pts_checkpoints_.clear();
+  frame_pts_deltas_.clear();
+  frame_pts_deltas_.reserve(p_frame_pts->size());
+  for (size_t i = 0; i < p_frame_pts->size(); i++) {
+    int64_t pts = (*p_frame_pts)[i];
+    int64_t delta = i ? pts - (*p_frame_pts)[i - 1] : 0;
+    if (delta > UINT32_MAX) {
+      // A gap of hours in a fine time base; number the frames up to it only
+      av_log(NULL, AV_LOG_WARNING, "Frame numbers end at a gap at pts %lld\n",
+             (long long)pts);
+      break;
+    }
+    if (i % kFramesPerCheckpoint == 0) {
+      frame_pts_checkpoints_.push_back(pts);
+    }
+    frame_pts_deltas_.push_back((uint32_t)delta);
+  }
+  frame_pts_deltas_.shrink_to_fit();
+  num_frames_ = (int)frame_pts_deltas_.size();
+  max_gop_length_ = 0;
+  for (const Keyframe &keyframe : keyframes_) {
+    max_gop_length_ = FFMAX(max_gop_length_, keyframe.gop_length_);
+  }
+
+  first_pts_ = keyframes_.front().pts_;
+  int64_t span = keyframes_.back().pts_ - first_pts_;
+  int num_buckets = (int)keyframes_.size();
+  bucket_duration_ = FFMAX(span / num_buckets, 1);
+  num_buckets = (int)(span / bucket_duration_) + 1;
+  bucket_index_.resize(num_buckets);
+  int index = 0;
+  for (int bucket = 0; bucket < num_buckets; bucket++) {
+    int64_t bucket_pts = first_pts_ + bucket * bucket_duration_;
+    while (index + 1 < (int)keyframes_.size() &&
+           keyframes_[index + 1].pts_ <= bucket_pts) {
+      index++;
+    }
+    bucket_index_[bucket] = index;
+  }
+}
+
+bool KeyframeIndex::FindKeyframe(int64_t pts, Keyframe *p_keyframe) const {
+  if (keyframes_.empty() || pts < first_pts_) {
+    return false;
+  }
+  int64_t bucket = FFMIN((pts - first_pts_) / bucket_duration_,
+                         (int64_t)bucket_index_.size() - 1);
+  int index = bucket_index_[bucket];
+  while (index + 1 < (int)keyframes_.size() &&
+         keyframes_[index + 1].pts_ <= pts) {
+    index++;
+  }
+  *p_keyframe = keyframes_[index];
+  return true;
+}
+
+bool KeyframeIndex::GetFramePts(int frame_number, int64_t *p_pts) const {
+  if (frame_number < 0 || frame_number >= num_frames_) {
+    return false;
+  }
+  int checkpoint = frame_number / kFramesPerCheckpoint;
+  int64_t pts = frame_pts_checkpoints_[checkpoint];
+  for (int i = checkpoint * kFramesPerCheckpoint + 1; i <= frame_number; i++) {
+    pts += frame_pts_deltas_[i];
+  }
+  *p_pts = pts;
+  return true;
+}
+
+int KeyframeIndex::GetFrameNumber(int64_t pts) const {
+  auto it = std::upper_bound(frame_pts_checkpoints_.begin(),
+                             frame_pts_checkpoints_.end(), pts);
+  if (it == frame_pts_checkpoints_.begin()) {
+    return 0;
+  }
+  int checkpoint = (int)(it - frame_pts_checkpoints_.begin()) - 1;
+  int frame_number = checkpoint * kFramesPerCheckpoint;
+  int64_t frame_pts = frame_pts_checkpoints_[checkpoint];
+  // Frames of equal pts keep the number of the last of them
+  while (frame_number + 1 < num_frames_ &&
+         frame_pts + frame_pts_deltas_[frame_number + 1] <= pts) {
+    frame_number++;
+    frame_pts += frame_pts_deltas_[frame_number];
+  }
+  return frame_number;
+}
+
+// Writes the stream index, time base, keyframes, and frame timestamps as the
+// first one followed by the distances, all little endian
+void KeyframeIndex::Write(AVIOContext *p_io) const {
+  avio_wl32(p_io, stream_index_);
+  avio_wl32(p_io, time_base_.num);
+  avio_wl32(p_io, time_base_.den);
+  avio_wl32(p_io, (unsigned int)keyframes_.size());
+  for (const Keyframe &keyframe : keyframes_) {
+    avio_wl64(p_io, keyframe.pts_);
+    avio_wl64(p_io, keyframe.dts_);
+    avio_wl64(p_io, keyframe.byte_pos_);
+    avio_wl32(p_io, keyframe.gop_length_);
+  }
+  avio_wl32(p_io, (unsigned int)num_frames_);
+  if (num_frames_ > 0) {
+    avio_wl64(p_io, frame_pts_checkpoints_.front());
+    for (int i = 1; i < num_frames_; i++) {
+      avio_wl32(p_io, frame_pts_deltas_[i]);
+    }
+  }
+}
+
+KeyframeIndex *KeyframeIndex::Read(AVIOContext *p_io) {
+  std::vector<int64_t> frame_pts;
+  int num_keyframes, num_frames;
+  int stream_index = avio_rl32(p_io);
+  KeyframeIndex *p_index = new (std::nothrow) KeyframeIndex(stream_index);
+  if (!p_index) {
+    return nullptr;
+  }
+  p_index->time_base_.num = avio_rl32(p_io);
+  p_index->time_base_.den = avio_rl32(p_io);
+  num_keyframes = avio_rl32(p_io);
+  // Bound the counts by the bytes left so a corrupt file cannot make us
+  // allocate a huge index
+  if (num_keyframes <= 0 || num_keyframes > avio_size(p_io) / 28) {
+    goto fail;
+  }
+  p_index->keyframes_.resize(num_keyframes);
+  for (Keyframe &keyframe : p_index->keyframes_) {
+    keyframe.pts_ = avio_rl64(p_io);
+    keyframe.dts_ = avio_rl64(p_io);
+    keyframe.byte_pos_ = avio_rl64(p_io);
+    keyframe.gop_length_ = avio_rl32(p_io);
+  }
+  num_frames = avio_rl32(p_io);
+  if (num_frames < 0 || num_frames > avio_size(p_io) / 4) {
+    goto fail;
+  }
+  frame_pts.resize(num_frames);
+  for (int i = 0; i < num_frames; i++) {
+    frame_pts[i] = i ? frame_pts[i - 1] + avio_rl32(p_io) : avio_rl64(p_io);
+  }
+  if (p_io->eof_reached || p_io->error) {
+    goto fail;
+  }
+  p_index->Finish(&frame_pts);
+  return p_index;
+
+fail:
+  delete p_index;
+  return nullptr;
+}
@@ -0,0 +1,86 @@
+#include <atomic>
+#include <stdint.h>
+#include <vector>
+
+extern "C" {
+#include <libavformat/avformat.h>
+}
+
+#ifndef KEYFRAME_INDEX_H_
+#define KEYFRAME_INDEX_H_
+
+// Index of the keyframes and frames of one video stream
+//
+// Built by a demux-only scan over the file, which reads packet headers but
+// decodes nothing. Seeks use it to land exactly on the keyframe preceding the
+// target, independent of the quality of the container's own index. It also
+// maps frame numbers to presentation timestamps and back. The MediaCache
+// persists it so that later opens skip the scan.
+//
+// Lookups take constant time for regular GOPs: a table of time buckets, about
+// one keyframe wide, points at the last keyframe before each bucket and the
+// lookup scans forward from there.
+//
+// The frame timestamps take 4 bytes per frame: each is stored as the distance
+// to the one before, with the full timestamp of every 64th frame to start the
+// sums from. Three hours at 60 fps take less than 3 MB.
+class KeyframeIndex {
+public:
+  typedef struct Keyframe {
+    int64_t pts_;      // in stream time base
+    int64_t dts_;      // in stream time base
+    int64_t byte_pos_; // position of the packet in the file, -1 if unknown
+    int gop_length_;   // number of packets up to the next keyframe
+  } Keyframe;
+
+  // Scans a local media file; returns nullptr for other protocols, if aborted,
+  // or on failure
+  static KeyframeIndex *Build(const char *filename, int stream_index,
+                              const std::atomic<bool> *p_abort);
+
+  // Reads an index written by Write; returns nullptr if it is truncated
+  static KeyframeIndex *Read(AVIOContext *p_io);
+  void Write(AVIOContext *p_io) const;
+
+  // Finds the last keyframe at or before pts (in stream time base); returns
+  // false if pts lies before the first keyframe
+  bool FindKeyframe(int64_t pts, Keyframe *p_keyframe) const;
+
+  // Presentation timestamp of the frame counted from 0 in presentation order;
+  // returns false if there is no such frame
+  bool GetFramePts(int frame_number, int64_t *p_pts) const;
+
+  // Number of the last frame at or before pts; 0 if pts lies before the first
+  // frame
+  int GetFrameNumber(int64_t pts) const;
+
+  inline int GetNumberOfKeyframes() const { return (int)keyframes_.size(); }
+  inline int GetNumberOfFrames() const { return num_frames_; }
+  inline int GetMaxGopLength() const { return max_gop_length_; }
+  inline int GetStreamIndex() const { return stream_index_; }
+  inline AVRational GetTimeBase() const { return time_base_; }
+
+private:
+  static const int kFramesPerCheckpoint;
+
+  std::vector<Keyframe> keyframes_;
+  // Presentation timestamps of all frames in presentation order, see above
+  std::vector<int64_t> frame_pts_checkpoints_;
+  std::vector<uint32_t> frame_pts_deltas_;
+  int num_frames_;
+  // bucket_index_[i] is the index of the last keyframe with a pts at or before
+  // first_pts_ + i * bucket_duration_
+  std::vector<int> bucket_index_;
+  int64_t first_pts_;
+  int64_t bucket_duration_;
+  int max_gop_length_;
+  int stream_index_;
+  AVRational time_base_;
+
+  KeyframeIndex(int stream_index);
+
+  // Sorts the keyframes and frames and builds the lookup tables
+  void Finish(std::vector<int64_t> *p_frame_pts);
+};
+
+#endif KEYFRAME_INDEX_H_
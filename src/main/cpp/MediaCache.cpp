@@ -0,0 +1,413 @@
+#include "MediaCache.h"
+
+#include <errno.h>
+#include <new>
+#include <stdio.h>
+#include <string.h>
+#include <sys/stat.h>
+
+extern "C" {
+#include <libavutil/avstring.h>
+#include <libavutil/md5.h>
+}
+
+const uint32_t MediaCache::kFileTag = MKTAG('D', 'V', 'M', 'C');
+const int MediaCache::kFileVersion = 2;
+const char *MediaCache::kFileSuffix = ".mediacache";
+const int MediaCache::kFingerprintBytes = 64 * 1024;
+
+MediaCache::MediaCache()
+    : p_entry_path_(nullptr), media_size_(-1), media_mtime_(0),
+      start_time_(AV_NOPTS_VALUE), duration_(AV_NOPTS_VALUE), bit_rate_(0),
+      p_keyframe_index_(nullptr) {
+  memset(media_hash_, 0, sizeof(media_hash_));
+}
+
+MediaCache::~MediaCache() {
+  ClearProbe();
+  delete p_keyframe_index_;
+  av_free(p_entry_path_);
+}
+
+MediaCache *MediaCache::Create(const char *cache_dir, const char *filename) {
+  uint8_t path_hash[16];
+  char name[33];
+
+  if (!cache_dir || !*cache_dir) {
+    return nullptr;
+  }
+  // Only local files have a size and a modification time to key on
+  const char *protocol = avio_find_protocol_name(filename);
+  if (!protocol || strcmp(protocol, "file")) {
+    return nullptr;
+  }
+  MediaCache *p_cache = new (std::nothrow) MediaCache();
+  if (!p_cache) {
+    return nullptr;
+  }
+  if (p_cache->Fingerprint(filename) < 0) {
+    delete p_cache;
+    return nullptr;
+  }
+  av_md5_sum(path_hash, (const uint8_t *)filename, (int)strlen(filename));
+  for (int i = 0; i < 16; i++) {
+    snprintf(name + 2 * i, 3, "%02x", path_hash[i]);
+  }
+  p_cache->p_entry_path_ =
+      av_asprintf("%s/%s%s", cache_dir, name, kFileSuffix);
+  if (!p_cache->p_entry_path_) {
+    delete p_cache;
+    return nullptr;
+  }
+  return p_cache;
+}
+
+int MediaCache::Fingerprint(const char *filename) {
+  AVIOContext *p_io = nullptr;
+  struct AVMD5 *p_md5 = av_md5_alloc();
+  uint8_t *p_buffer = (uint8_t *)av_malloc(kFingerprintBytes);
+  const char *path = filename;
+  struct stat file_stat;
+  int ret = AVERROR(ENOMEM);
+
+  if (!p_md5 || !p_buffer) {
+    goto fail;
+  }
+  ret = avio_open(&p_io, filename, AVIO_FLAG_READ);
+  if (ret < 0) {
+    goto fail;
+  }
+  media_size_ = avio_size(p_io);
+  if (media_size_ < 0) {
+    ret = (int)media_size_;
+    goto fail;
+  }
+  // Without a modification time the size and hash still key the entry
+  av_strstart(filename, "file:", &path);
+  media_mtime_ = stat(path, &file_stat) ? 0 : (int64_t)file_stat.st_mtime;
+
+  // Hash the head and the tail, which hold the headers and indices of most
+  // containers, instead of the whole media
+  av_md5_init(p_md5);
+  ret = avio_read(p_io, p_buffer, kFingerprintBytes);
+  if (ret > 0) {
+    av_md5_update(p_md5, p_buffer, ret);
+  }
+  if (media_size_ > kFingerprintBytes) {
+    avio_seek(p_io, FFMAX(media_size_ - kFingerprintBytes, kFingerprintBytes),
+              SEEK_SET);
+    ret = avio_read(p_io, p_buffer, kFingerprintBytes);
+    if (ret > 0) {
+      av_md5_update(p_md5, p_buffer, ret);
+    }
+  }
+  av_md5_final(p_md5, media_hash_);
+  ret = p_io->error;
+
+fail:
+  avio_closep(&p_io);
+  av_free(p_buffer);
+  av_free(p_md5);
+  return ret;
+}
+
+void MediaCache::ClearProbe() {
+  for (StreamProbe &stream : streams_) {
+    avcodec_parameters_free(&stream.p_codecpar_);
+  }
+  streams_.clear();
+}
+
+void MediaCache::WriteCodecParameters(AVIOContext *p_io,
+                                      const AVCodecParameters *p_codecpar) {
+  avio_wl32(p_io, p_codecpar->codec_type);
+  avio_wl32(p_io, p_codecpar->codec_id);
+  avio_wl32(p_io, p_codecpar->codec_tag);
+  avio_wl32(p_io, p_codecpar->format);
+  avio_wl64(p_io, p_codecpar->bit_rate);
+  avio_wl32(p_io, p_codecpar->bits_per_coded_sample);
+  avio_wl32(p_io, p_codecpar->bits_per_raw_sample);
+  avio_wl32(p_io, p_codecpar->profile);
+  avio_wl32(p_io, p_codecpar->level);
+  avio_wl32(p_io, p_codecpar->width);
+  avio_wl32(p_io, p_codecpar->height);
+  avio_wl32(p_io, p_codecpar->sample_aspect_ratio.num);
+  avio_wl32(p_io, p_codecpar->sample_aspect_ratio.den);
+  avio_wl32(p_io, p_codecpar->field_order);
+  avio_wl32(p_io, p_codecpar->color_range);
+  avio_wl32(p_io, p_codecpar->color_primaries);
+  avio_wl32(p_io, p_codecpar->color_trc);
+  avio_wl32(p_io, p_codecpar->color_space);
+  avio_wl32(p_io, p_codecpar->chroma_location);
+  avio_wl32(p_io, p_codecpar->video_delay);
+  avio_wl64(p_io, p_codecpar->channel_layout);
+  avio_wl32(p_io, p_codecpar->channels);
+  avio_wl32(p_io, p_codecpar->sample_rate);
+  avio_wl32(p_io, p_codecpar->block_align);
+  avio_wl32(p_io, p_codecpar->frame_size);
+  avio_wl32(p_io, p_codecpar->initial_padding);
+  avio_wl32(p_io, p_codecpar->trailing_padding);
+  avio_wl32(p_io, p_codecpar->seek_preroll);
+  avio_wl32(p_io, p_codecpar->extradata_size);
+  avio_write(p_io, p_codecpar->extradata, p_codecpar->extradata_size);
+}
+
+int MediaCache::ReadCodecParameters(AVIOContext *p_io,
+                                    AVCodecParameters *p_codecpar) {
+  p_codecpar->codec_type = (enum AVMediaType)(int)avio_rl32(p_io);
+  p_codecpar->codec_id = (enum AVCodecID)avio_rl32(p_io);
+  p_codecpar->codec_tag = avio_rl32(p_io);
+  p_codecpar->format = avio_rl32(p_io);
+  p_codecpar->bit_rate = avio_rl64(p_io);
+  p_codecpar->bits_per_coded_sample = avio_rl32(p_io);
+  p_codecpar->bits_per_raw_sample = avio_rl32(p_io);
+  p_codecpar->profile = avio_rl32(p_io);
+  p_codecpar->level = avio_rl32(p_io);
+  p_codecpar->width = avio_rl32(p_io);
+  p_codecpar->height = avio_rl32(p_io);
+  p_codecpar->sample_aspect_ratio.num = avio_rl32(p_io);
+  p_codecpar->sample_aspect_ratio.den = avio_rl32(p_io);
+  p_codecpar->field_order = (enum AVFieldOrder)avio_rl32(p_io);
+  p_codecpar->color_range = (enum AVColorRange)avio_rl32(p_io);
+  p_codecpar->color_primaries = (enum AVColorPrimaries)avio_rl32(p_io);
+  p_codecpar->color_trc = (enum AVColorTransferCharacteristic)avio_rl32(p_io);
+  p_codecpar->color_space = (enum AVColorSpace)avio_rl32(p_io);
+  p_codecpar->chroma_location = (enum AVChromaLocation)avio_rl32(p_io);
+  p_codecpar->video_delay = avio_rl32(p_io);
+  p_codecpar->channel_layout = avio_rl64(p_io);
+  p_codecpar->channels = avio_rl32(p_io);
+  p_codecpar->sample_rate = avio_rl32(p_io);
+  p_codecpar->block_align = avio_rl32(p_io);
+  p_codecpar->frame_size = avio_rl32(p_io);
+  p_codecpar->initial_padding = avio_rl32(p_io);
+  p_codecpar->trailing_padding = avio_rl32(p_io);
+  p_codecpar->seek_preroll = avio_rl32(p_io);
+  int extradata_size = avio_rl32(p_io);
+  if (extradata_size < 0 || extradata_size > avio_size(p_io)) {
+    return AVERROR_INVALIDDATA;
+  }
+  if (extradata_size > 0) {
+    p_codecpar->extradata = (uint8_t *)av_mallocz(
+        extradata_size + AV_INPUT_BUFFER_PADDING_SIZE);
+    if (!p_codecpar->extradata) {
+      return AVERROR(ENOMEM);
+    }
+    p_codecpar->extradata_size = extradata_size;
+    if (avio_read(p_io, p_codecpar->extradata, extradata_size) !=
+        extradata_size) {
+      return AVERROR_INVALIDDATA;
+    }
+  }
+  return 0;
+}
+
+// The entry holds a header with the tag, version, and key of the media,
+// followed by the probe and optionally the keyframe index, all little endian
+int MediaCache::Save(const KeyframeIndex *p_index) const {
+  AVIOContext *p_io = nullptr;
+  char *p_temp_path = av_asprintf("%s.tmp", p_entry_path_);
+  int ret;
+
+  if (!p_temp_path) {
+    return AVERROR(ENOMEM);
+  }
+  // Write to a temporary file and rename it so that a concurrent open of the
+  // same media never reads a partial entry
+  ret = avio_open(&p_io, p_temp_path, AVIO_FLAG_WRITE);
+  if (ret < 0) {
+    av_log(NULL, AV_LOG_WARNING, "Unable to write media cache entry %s\n",
+           p_temp_path);
+    av_free(p_temp_path);
+    return ret;
+  }
+  avio_wl32(p_io, kFileTag);
+  avio_wl32(p_io, kFileVersion);
+  avio_wl64(p_io, media_size_);
+  avio_wl64(p_io, media_mtime_);
+  avio_write(p_io, media_hash_, sizeof(media_hash_));
+
+  avio_wl64(p_io, start_time_);
+  avio_wl64(p_io, duration_);
+  avio_wl64(p_io, bit_rate_);
+  avio_wl32(p_io, (unsigned int)streams_.size());
+  for (const StreamProbe &stream : streams_) {
+    avio_wl32(p_io, stream.time_base_.num);
+    avio_wl32(p_io, stream.time_base_.den);
+    avio_wl32(p_io, stream.r_frame_rate_.num);
+    avio_wl32(p_io, stream.r_frame_rate_.den);
+    avio_wl32(p_io, stream.avg_frame_rate_.num);
+    avio_wl32(p_io, stream.avg_frame_rate_.den);
+    avio_wl32(p_io, stream.sample_aspect_ratio_.num);
+    avio_wl32(p_io, stream.sample_aspect_ratio_.den);
+    avio_wl64(p_io, stream.start_time_);
+    avio_wl64(p_io, stream.duration_);
+    avio_wl64(p_io, stream.nb_frames_);
+    WriteCodecParameters(p_io, stream.p_codecpar_);
+  }
+
+  avio_wl32(p_io, p_index ? 1 : 0);
+  if (p_index) {
+    p_index->Write(p_io);
+  }
+  avio_flush(p_io);
+  ret = p_io->error;
+  avio_closep(&p_io);
+
+  if (ret >= 0) {
+    // Windows does not rename over an existing file
+    remove(p_entry_path_);
+    ret = rename(p_temp_path, p_entry_path_) ? AVERROR(errno) : 0;
+  }
+  if (ret < 0) {
+    remove(p_temp_path);
+  }
+  av_free(p_temp_path);
+  return ret;
+}
+
+bool MediaCache::Load() {
+  AVIOContext *p_io = nullptr;
+  uint8_t hash[16];
+  int num_streams;
+
+  if (avio_open(&p_io, p_entry_path_, AVIO_FLAG_READ) < 0) {
+    return false;
+  }
+  // A different key means the media was replaced or edited since it was
+  // cached
+  if (avio_rl32(p_io) != kFileTag || (int)avio_rl32(p_io) != kFileVersion ||
+      (int64_t)avio_rl64(p_io) != media_size_ ||
+      (int64_t)avio_rl64(p_io) != media_mtime_ ||
+      avio_read(p_io, hash, sizeof(hash)) != (int)sizeof(hash) ||
+      memcmp(hash, media_hash_, sizeof(hash))) {
+    goto fail;
+  }
+
+  start_time_ = avio_rl64(p_io);
+  duration_ = avio_rl64(p_io);
+  bit_rate_ = avio_rl64(p_io);
+  num_streams = avio_rl32(p_io);
+  if (num_streams <= 0 || num_streams > avio_size(p_io)) {
+    goto fail;
+  }
+  streams_.resize(num_streams);
+  for (StreamProbe &stream : streams_) {
+    stream.p_codecpar_ = avcodec_parameters_alloc();
+  }
+  for (StreamProbe &stream : streams_) {
+    stream.time_base_.num = avio_rl32(p_io);
+    stream.time_base_.den = avio_rl32(p_io);
+    stream.r_frame_rate_.num = avio_rl32(p_io);
+    stream.r_frame_rate_.den = avio_rl32(p_io);
+    stream.avg_frame_rate_.num = avio_rl32(p_io);
+    stream.avg_frame_rate_.den = avio_rl32(p_io);
+    stream.sample_aspect_ratio_.num = avio_rl32(p_io);
+    stream.sample_aspect_ratio_.den = avio_rl32(p_io);
+    stream.start_time_ = avio_rl64(p_io);
+    stream.duration_ = avio_rl64(p_io);
+    stream.nb_frames_ = avio_rl64(p_io);
+    if (!stream.p_codecpar_ ||
+        ReadCodecParameters(p_io, stream.p_codecpar_) < 0) {
+      goto fail;
+    }
+  }
+
+  // The index is missing if the player closed before it was built
+  if (avio_rl32(p_io)) {
+    p_keyframe_index_ = KeyframeIndex::Read(p_io);
+  }
+  if (p_io->eof_reached || p_io->error) {
+    goto fail;
+  }
+  avio_closep(&p_io);
+  return true;
+
+fail:
+  ClearProbe();
+  delete p_keyframe_index_;
+  p_keyframe_index_ = nullptr;
+  avio_closep(&p_io);
+  return false;
+}
+
+bool MediaCache::RestoreProbe(AVFormatContext *p_format_context) const {
+  if (streams_.empty() || p_format_context->nb_streams != streams_.size()) {
+    return false;
+  }
+  for (int i = 0; i < p_format_context->nb_streams; i++) {
+    const AVStream *p_stream = p_format_context->streams[i];
+    const StreamProbe &stream = streams_[i];
+    // The demuxer may not know the codec before probing but what it knows has
+    // to agree with the entry
+    if (p_stream->codecpar->codec_type != stream.p_codecpar_->codec_type ||
+        (p_stream->codecpar->codec_id != AV_CODEC_ID_NONE &&
+         p_stream->codecpar->codec_id != stream.p_codecpar_->codec_id) ||
+        av_cmp_q(p_stream->time_base, stream.time_base_)) {
+      return false;
+    }
+  }
+  for (int i = 0; i < p_format_context->nb_streams; i++) {
+    AVStream *p_stream = p_format_context->streams[i];
+    const StreamProbe &stream = streams_[i];
+    if (avcodec_parameters_copy(p_stream->codecpar, stream.p_codecpar_) < 0) {
+      return false;
+    }
+    // Known frame rates spare avformat_find_stream_info the frame rate
+    // analysis
+    p_stream->r_frame_rate = stream.r_frame_rate_;
+    p_stream->avg_frame_rate = stream.avg_frame_rate_;
+    p_stream->sample_aspect_ratio = stream.sample_aspect_ratio_;
+    p_stream->start_time = stream.start_time_;
+    p_stream->duration = stream.duration_;
+    p_stream->nb_frames = stream.nb_frames_;
+  }
+  return true;
+}
+
+void MediaCache::RestoreTimings(AVFormatContext *p_format_context) const {
+  p_format_context->start_time = start_time_;
+  p_format_context->duration = duration_;
+  p_format_context->bit_rate = bit_rate_;
+  for (int i = 0; i < p_format_context->nb_streams &&
+                  i < (int)streams_.size();
+       i++) {
+    p_format_context->streams[i]->start_time = streams_[i].start_time_;
+    p_format_context->streams[i]->duration = streams_[i].duration_;
+  }
+}
+
+void MediaCache::StoreProbe(const AVFormatContext *p_format_context) {
+  ClearProbe();
+  start_time_ = p_format_context->start_time;
+  duration_ = p_format_context->duration;
+  bit_rate_ = p_format_context->bit_rate;
+  for (int i = 0; i < p_format_context->nb_streams; i++) {
+    const AVStream *p_stream = p_format_context->streams[i];
+    StreamProbe stream;
+    stream.p_codecpar_ = avcodec_parameters_alloc();
+    if (!stream.p_codecpar_ ||
+        avcodec_parameters_copy(stream.p_codecpar_, p_stream->codecpar) < 0) {
+      avcodec_parameters_free(&stream.p_codecpar_);
+      ClearProbe();
+      return;
+    }
+    stream.time_base_ = p_stream->time_base;
+    stream.r_frame_rate_ = p_stream->r_frame_rate;
+    stream.avg_frame_rate_ = p_stream->avg_frame_rate;
+    stream.sample_aspect_ratio_ = p_stream->sample_aspect_ratio;
+    stream.start_time_ = p_stream->start_time;
+    stream.duration_ = p_stream->duration;
+    stream.nb_frames_ = p_stream->nb_frames;
+    streams_.push_back(stream);
+  }
+}
+
+KeyframeIndex *MediaCache::TakeKeyframeIndex(int stream_index) {
+  KeyframeIndex *p_index = p_keyframe_index_;
+  p_keyframe_index_ = nullptr;
+  if (p_index && p_index->GetStreamIndex() != stream_index) {
+    delete p_index;
+    return nullptr;
+  }
+  return p_index;
+}
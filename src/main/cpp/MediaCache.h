@@ -0,0 +1,95 @@
+#include <stdint.h>
+#include <vector>
+
+#include "KeyframeIndex.h"
+
+extern "C" {
+#include <libavformat/avformat.h>
+}
+
+#ifndef MEDIA_CACHE_H_
+#define MEDIA_CACHE_H_
+
+// Persistent cache of what opening a media file computes
+//
+// Holds the probed stream parameters, the durations and frame rates, and the
+// keyframe index with its frame number to timestamp map. Entries live in a
+// cache directory, one file per media named after a hash of its path, and are
+// keyed by the size, the modification time, and a hash of the first and last
+// kFingerprintBytes of the media. An entry whose key no longer matches is
+// ignored and overwritten.
+//
+// Restoring the probe fills in the stream parameters so that
+// avformat_find_stream_info only has to read the first packet of each stream
+// instead of decoding seconds of media.
+class MediaCache {
+public:
+  // Reported to java, keep in sync with FfmpegJavaMediaPlayer.MediaCacheStatus
+  enum Status {
+    kDisabled = 0, // no cache directory or not a local file
+    kMiss = 1,     // probed the media and created the entry
+    kHit = 2,      // restored the probe from the entry
+  };
+
+  // Returns nullptr if cache_dir is empty or the media is not a local file
+  static MediaCache *Create(const char *cache_dir, const char *filename);
+  virtual ~MediaCache();
+
+  // Reads the entry; returns false if there is none or it is stale or corrupt
+  bool Load();
+
+  // Restores the probe into a context just opened by avformat_open_input;
+  // returns false and leaves the context alone if its streams do not match
+  bool RestoreProbe(AVFormatContext *p_format_context) const;
+
+  // Restores the durations once avformat_find_stream_info has run
+  void RestoreTimings(AVFormatContext *p_format_context) const;
+
+  void StoreProbe(const AVFormatContext *p_format_context);
+
+  // Returns the loaded keyframe index for the stream and passes its ownership
+  // to the caller; nullptr if the entry has none
+  KeyframeIndex *TakeKeyframeIndex(int stream_index);
+
+  // Writes the probe and, if given, the keyframe index to the cache directory
+  int Save(const KeyframeIndex *p_index) const;
+
+private:
+  static const uint32_t kFileTag;
+  static const int kFileVersion;
+  static const char *kFileSuffix;
+  static const int kFingerprintBytes;
+
+  typedef struct StreamProbe {
+    AVCodecParameters *p_codecpar_;
+    AVRational time_base_;
+    AVRational r_frame_rate_;
+    AVRational avg_frame_rate_;
+    AVRational sample_aspect_ratio_;
+    int64_t start_time_;
+    int64_t duration_;
+    int64_t nb_frames_;
+  } StreamProbe;
+
+  char *p_entry_path_;
+  int64_t media_size_;
+  int64_t media_mtime_;
+  uint8_t media_hash_[16];
+
+  std::vector<StreamProbe> streams_;
+  int64_t start_time_;
+  int64_t duration_;
+  int64_t bit_rate_;
+  KeyframeIndex *p_keyframe_index_;
+
+  MediaCache();
+
+  int Fingerprint(const char *filename);
+  void ClearProbe();
+  static void WriteCodecParameters(AVIOContext *p_io,
+                                   const AVCodecParameters *p_codecpar);
+  static int ReadCodecParameters(AVIOContext *p_io,
+                                 AVCodecParameters *p_codecpar);
+};
+
+#endif MEDIA_CACHE_H_
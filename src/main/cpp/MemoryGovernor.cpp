@@ -0,0 +1,129 @@
+#include "MemoryGovernor.h"
+
+#include <algorithm>
+
+const int64_t MemoryGovernor::kDefaultBudget = 512LL * 1024 * 1024;
+const int64_t MemoryGovernor::kMinWeightBytes = 1024 * 1024;
+
+MemoryGovernor &MemoryGovernor::GetInstance() {
+  static MemoryGovernor governor;
+  return governor;
+}
+
+MemoryGovernor::MemoryGovernor(int64_t budget)
+    : budget_(budget), next_id_(0) {}
+
+int MemoryGovernor::Add(int64_t frame_bytes, int64_t min_bytes,
+                        double priority,
+                        const std::function<void(int64_t)> &set_budget,
+                        const std::function<int64_t()> &get_usage) {
+  std::lock_guard<std::mutex> lock(mutex_);
+  int id = next_id_++;
+  players_.push_back(
+      {id, frame_bytes, min_bytes, priority, -1, set_budget, get_usage});
+  Rebalance();
+  return id;
+}
+
+void MemoryGovernor::Remove(int id) {
+  std::lock_guard<std::mutex> lock(mutex_);
+  players_.erase(std::remove_if(players_.begin(), players_.end(),
+                                [id](const Player &player) {
+                                  return player.id_ == id;
+                                }),
+                 players_.end());
+  Rebalance();
+}
+
+void MemoryGovernor::SetPriority(int id, double priority) {
+  std::lock_guard<std::mutex> lock(mutex_);
+  for (Player &player : players_) {
+    if (player.id_ == id) {
+      player.priority_ = priority;
+    }
+  }
+  Rebalance();
+}
+
+void MemoryGovernor::SetBudget(int64_t bytes) {
+  std::lock_guard<std::mutex> lock(mutex_);
+  budget_ = bytes;
+  Rebalance();
+}
+
+int64_t MemoryGovernor::GetBudget() const {
+  std::lock_guard<std::mutex> lock(mutex_);
+  return budget_;
+}
+
+int64_t MemoryGovernor::GetBudget(int id) const {
+  std::lock_guard<std::mutex> lock(mutex_);
+  for (const Player &player : players_) {
+    if (player.id_ == id) {
+      return player.budget_;
+    }
+  }
+  return 0;
+}
+
+int64_t MemoryGovernor::GetUsage() const {
+  std::lock_guard<std::mutex> lock(mutex_);
+  int64_t usage = 0;
+  for (const Player &player : players_) {
+    usage += player.get_usage_();
+  }
+  return usage;
+}
+
+int MemoryGovernor::GetNumPlayers() const {
+  std::lock_guard<std::mutex> lock(mutex_);
+  return (int)players_.size();
+}
+
+double MemoryGovernor::GetWeight(const Player &player) {
+  return std::max(player.frame_bytes_, kMinWeightBytes) *
+         std::max(player.priority_, 0.0);
+}
+
+void MemoryGovernor::Rebalance() {
+  // Players whose share falls below their minimum get the minimum, which
+  // leaves less for the others; repeat until no more share falls below
+  std::vector<bool> at_min(players_.size(), false);
+  int64_t budget;
+  double weight;
+  bool changed = true;
+  while (changed) {
+    changed = false;
+    budget = budget_;
+    weight = 0.0;
+    for (size_t i = 0; i < players_.size(); i++) {
+      if (at_min[i]) {
+        budget -= players_[i].min_bytes_;
+      } else {
+        weight += GetWeight(players_[i]);
+      }
+    }
+    for (size_t i = 0; i < players_.size(); i++) {
+      if (at_min[i]) {
+        continue;
+      }
+      double share =
+          weight > 0.0 ? budget * GetWeight(players_[i]) / weight : 0.0;
+      if (share < players_[i].min_bytes_) {
+        at_min[i] = true;
+        changed = true;
+      }
+    }
+  }
+  for (size_t i = 0; i < players_.size(); i++) {
+    Player &player = players_[i];
+    int64_t share = player.min_bytes_;
+    if (!at_min[i] && weight > 0.0) {
+      share = (int64_t)(budget * GetWeight(player) / weight);
+    }
+    if (share != player.budget_) {
+      player.budget_ = share;
+      player.set_budget_(share);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+#include <functional>
+#include <mutex>
+#include <stdint.h>
+#include <vector>
+
+#ifndef MEMORY_GOVERNOR_H_
+#define MEMORY_GOVERNOR_H_
+
+// Shares one memory budget among the players of the process
+//
+// Each player holds packets read ahead and decoded frames. Fixed limits per
+// player let ten 4K players exceed the memory of the machine while an SD
+// player wastes its share. Instead the governor splits one budget among the
+// players in proportion to their weight: the bytes of a decoded frame, which
+// grow with the resolution, times the priority of the player, e.g. lower while
+// hidden. It splits the budget again whenever a player is added or removed or
+// changes its priority. A player never gets less than its minimum, what it
+// needs to play at all, so the usage may exceed a budget that is too small.
+class MemoryGovernor {
+public:
+  static const int64_t kDefaultBudget;
+  // Weight of a player without images, and the least weight of any player
+  static const int64_t kMinWeightBytes;
+
+  // The governor of the players of the process
+  static MemoryGovernor &GetInstance();
+
+  MemoryGovernor(int64_t budget = kDefaultBudget);
+
+  // Adds a player and returns its id. The governor calls set_budget with the
+  // share of the player in bytes from the thread that rebalances, while
+  // holding its lock, so the callbacks must not call the governor.
+  int Add(int64_t frame_bytes, int64_t min_bytes, double priority,
+          const std::function<void(int64_t)> &set_budget,
+          const std::function<int64_t()> &get_usage);
+  // Once it returns the callbacks of the player are not called anymore
+  void Remove(int id);
+  void SetPriority(int id, double priority);
+
+  void SetBudget(int64_t bytes);
+  int64_t GetBudget() const;
+  // Share of the player in bytes, 0 if unknown
+  int64_t GetBudget(int id) const;
+  // Bytes used by all players
+  int64_t GetUsage() const;
+  int GetNumPlayers() const;
+
+private:
+  struct Player {
+    int id_;
+    int64_t frame_bytes_;
+    int64_t min_bytes_;
+    double priority_;
+    int64_t budget_;
+    std::function<void(int64_t)> set_budget_;
+    std::function<int64_t()> get_usage_;
+  };
+
+  mutable std::mutex mutex_;
+  std::vector<Player> players_;
+  int64_t budget_;
+  int next_id_;
+
+  static double GetWeight(const Player &player);
+
+  // Splits the budget and hands out the shares that changed; with the lock
+  void Rebalance();
+};
+
+#endif MEMORY_GOVERNOR_H_
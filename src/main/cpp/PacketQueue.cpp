@@ -1,18 +1,38 @@
 #include "PacketQueue.h"
 
+// Enough for about a second of audio and video packets of most files
+const int PacketQueue::kInitialCapacity = 128;
+
+int PacketQueue::Grow() {
+  int capacity = capacity_ ? 2 * capacity_ : kInitialCapacity;
+  PacketEntry *p_entries =
+      (PacketEntry *)av_malloc_array(capacity, sizeof(PacketEntry));
+  if (!p_entries) {
+    return -1;
+  }
+  // Unwrap the entries into the start of the new ring
+  for (int i = 0; i < num_packets_; i++) {
+    p_entries[i] = p_entries_[(first_index_ + i) & (capacity_ - 1)];
+  }
+  av_freep(&p_entries_);
+  p_entries_ = p_entries;
+  capacity_ = capacity;
+  first_index_ = 0;
+  return 0;
+}
+
 int PacketQueue::_Put(AVPacket *p_packet) {
-  MyAVPacketList *pkt1;
+  PacketEntry *p_entry;
 
   if (is_abort_requested_) {
     return -1;
   }
 
-  pkt1 = (struct MyAVPacketList *)av_malloc(sizeof(MyAVPacketList));
-  if (!pkt1) {
+  if (num_packets_ == capacity_ && Grow() < 0) {
     return -1;
   }
-  pkt1->packet_ = *p_packet;
-  pkt1->p_next_ = NULL;
+  p_entry = &p_entries_[(first_index_ + num_packets_) & (capacity_ - 1)];
+  p_entry->packet_ = *p_packet;
 
   // If we request a flush, then increase the serial to flush all dependent
   // queues
@@ -20,17 +40,11 @@ int PacketQueue::_Put(AVPacket *p_packet) {
     serial_++;
   }
 
-  pkt1->serial_ = serial_;
+  p_entry->serial_ = serial_;
 
-  if (!p_last_packet_) {
-    p_first_packet_ = pkt1;
-  } else {
-    p_last_packet_->p_next_ = pkt1;
-  }
-  p_last_packet_ = pkt1;
   num_packets_++;
-  size_ += pkt1->packet_.size + sizeof(*pkt1);
-  duration_ += pkt1->packet_.duration;
+  size_ += p_entry->packet_.size + sizeof(*p_entry);
+  duration_ += p_entry->packet_.duration;
   /* XXX: should duplicate packet data in DV case */
   put_condition_ = true;
   condition_.notify_one();
@@ -39,28 +53,27 @@ int PacketQueue::_Put(AVPacket *p_packet) {
 
 PacketQueue::PacketQueue()
     : is_abort_requested_(true), serial_(0), num_packets_(0),
-      p_first_packet_(nullptr), p_last_packet_(nullptr), size_(0), duration_(0),
-      put_condition_(false) {
+      p_entries_(nullptr), capacity_(0), first_index_(0), size_(0),
+      max_size_(0), duration_(0), put_condition_(false) {
 
   av_init_packet(&flush_packet_);
   flush_packet_.data = (uint8_t *)&flush_packet_;
 }
 
 void PacketQueue::Flush() {
-  MyAVPacketList *pkt, *pkt1;
-
   std::unique_lock<std::mutex> locker(mutex_);
-  for (pkt = p_first_packet_; pkt; pkt = pkt1) {
-    pkt1 = pkt->p_next_;
-    av_packet_unref(&pkt->packet_);
-    av_freep(&pkt);
+  for (int i = 0; i < num_packets_; i++) {
+    av_packet_unref(&p_entries_[(first_index_ + i) & (capacity_ - 1)].packet_);
   }
-  p_last_packet_ = NULL;
-  p_first_packet_ = NULL;
+  // Keep the entries for reuse
+  first_index_ = 0;
   num_packets_ = 0;
   size_ = 0;
   duration_ = 0;
   locker.unlock();
+  if (space_available_callback_) {
+    space_available_callback_();
+  }
 }
 
 void PacketQueue::Abort() {
@@ -108,7 +121,7 @@ int PacketQueue::PutFlushPacket() { return Put(&flush_packet_); }
 
 /* return < 0 if aborted, 0 if no packet and > 0 if packet.  */
 int PacketQueue::Get(AVPacket *pkt, int block, int *serial) {
-  MyAVPacketList *pkt1;
+  PacketEntry *p_entry;
   int ret;
 
   std::unique_lock<std::mutex> locker(mutex_);
@@ -119,20 +132,16 @@ int PacketQueue::Get(AVPacket *pkt, int block, int *serial) {
       break;
     }
 
-    pkt1 = p_first_packet_;
-    if (pkt1) {
-      p_first_packet_ = pkt1->p_next_;
-      if (!p_first_packet_) {
-        p_last_packet_ = NULL;
-      }
+    if (num_packets_ > 0) {
+      p_entry = &p_entries_[first_index_];
+      first_index_ = (first_index_ + 1) & (capacity_ - 1);
       num_packets_--;
-      size_ -= pkt1->packet_.size + sizeof(*pkt1);
-      duration_ -= pkt1->packet_.duration;
-      *pkt = pkt1->packet_;
+      size_ -= p_entry->packet_.size + sizeof(*p_entry);
+      duration_ -= p_entry->packet_.duration;
+      *pkt = p_entry->packet_;
       if (serial) {
-        *serial = pkt1->serial_;
+        *serial = p_entry->serial_;
       }
-      av_free(pkt1);
       ret = 1;
       break;
     } else if (!block) {
@@ -144,5 +153,8 @@ int PacketQueue::Get(AVPacket *pkt, int block, int *serial) {
     }
   }
   locker.unlock();
+  if (ret > 0 && space_available_callback_) {
+    space_available_callback_();
+  }
   return ret;
 }
@@ -1,4 +1,6 @@
+#include <atomic>
 #include <condition_variable>
+#include <functional>
 #include <mutex>
 
 extern "C" {
@@ -12,6 +14,13 @@ extern "C" {
 // Port of the packet queue from ffplay.c into c++
 //
 // Replaces the SDL mutex through c++ std mutex/condition variable
+//
+// Instead of ffplay's linked list with one allocation per packet the packets
+// are kept in a ring of entries that doubles when full and is never shrunk,
+// so after warm up Put and Get do not allocate. The byte size limit is soft:
+// Put still accepts packets beyond it, the reader only learns which stream a
+// packet belongs to once it has read it. Instead the reader does not read
+// while any queue IsFull, which bounds each ring to its limit plus a packet.
 class PacketQueue {
 public:
   AVPacket
@@ -23,6 +32,7 @@ public:
     Flush();
     av_packet_unref(&flush_packet_);
     av_freep(&flush_packet_);
+    av_freep(&p_entries_);
   }
 
   void Flush();
@@ -41,6 +51,14 @@ public:
 
   inline int64_t GetDuration() const { return duration_; }
 
+  // Number of packets the ring holds before it grows
+  inline int GetCapacity() const { return capacity_; }
+
+  // Limit for GetSize in bytes, 0 for no limit; any thread may set or check it
+  inline void SetMaxSize(int max_size) { max_size_ = max_size; }
+  inline int GetMaxSize() const { return max_size_; }
+  inline bool IsFull() const { return max_size_ > 0 && size_ >= max_size_; }
+
   void Start();
 
   int Put(AVPacket *p_packet); // Must remain a pointer to cleanup package
@@ -56,27 +74,39 @@ public:
   /* return < 0 if aborted, 0 if no packet and > 0 if packet.  */
   int Get(AVPacket *pkt, int block, int *serial);
 
+  // Called outside of the lock whenever Get or Flush frees space, so that the
+  // producer can block until there is room instead of polling
+  inline void SetSpaceAvailableCallback(const std::function<void()> &callback) {
+    space_available_callback_ = callback;
+  }
+
 private:
-  // This list maintains the next for the queue
-  typedef struct MyAVPacketList {
+  typedef struct PacketEntry {
     AVPacket packet_;
-    struct MyAVPacketList *p_next_;
     int serial_;
-  } MyAVPacketList;
+  } PacketEntry;
+
+  static const int kInitialCapacity;
 
   bool is_abort_requested_;
   int serial_;
   int num_packets_;
 
-  MyAVPacketList *p_first_packet_;
-  MyAVPacketList *p_last_packet_;
-  int size_;
+  // Ring of capacity_ entries, a power of two; the oldest packet is at
+  // first_index_
+  PacketEntry *p_entries_;
+  int capacity_;
+  int first_index_;
+  std::atomic<int> size_; // written with the lock
+  std::atomic<int> max_size_;
   int64_t duration_;
   bool put_condition_;
   std::mutex mutex_;
   std::condition_variable condition_;
+  std::function<void()> space_available_callback_;
 
   int _Put(AVPacket *p_packet);
+  int Grow();
 };
 
 #endif PACKET_QUEUE_H_
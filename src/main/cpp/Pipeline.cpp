@@ -49,6 +49,17 @@ void CPipeline::SetEventDispatcher(
   p_event_dispatcher_ = pEventDispatcher;
 }
 
+uint32_t CPipeline::SetEventRing(uint8_t *p_memory, long len,
+                                 int64_t java_now) {
+  if (nullptr == p_event_dispatcher_) {
+    return ERROR_PIPELINE_NULL;
+  }
+  if (!p_event_dispatcher_->SetEventRing(p_memory, len, java_now)) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+  return ERROR_NONE;
+}
+
 void CPipeline::Dispose() {}
 
 bool CPipeline::IsPlayerState(PlayerState::State state) {
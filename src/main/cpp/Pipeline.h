@@ -50,6 +50,8 @@ public:
   virtual ~CPipeline();
 
   void SetEventDispatcher(CJavaPlayerEventDispatcher *p_event_dispatcher);
+  // Has the dispatcher post the events into the ring in the memory
+  uint32_t SetEventRing(uint8_t *p_memory, long len, int64_t java_now);
 
   virtual uint32_t Init(const char *filename) = 0;
   virtual void Dispose();
@@ -64,6 +66,8 @@ public:
   virtual uint32_t Seek(double dSeekTime) = 0;
 
   virtual uint32_t GetDuration(double *pdDuration) = 0;
+  // Presentation time of the first frame in sec, 0 if the stream has none
+  virtual uint32_t GetStartTime(double *pdStartTime) = 0;
   virtual uint32_t GetStreamTime(double *pdStreamTime) = 0;
   virtual uint32_t GetFps(double *pdFps) = 0;
   virtual uint32_t GetImageWidth(int *iWidth) const = 0;
@@ -4,6 +4,7 @@
 #include "AudioVideoFormats.h"
 #include "Pipeline.h"
 #include "PipelineOptions.h"
+#include <functional>
 #include <stdint.h>
 #include <sys/stat.h>
 
@@ -22,8 +23,13 @@ public:
   virtual uint32_t Finish() = 0;
 
   virtual uint32_t Seek(double seek_time) = 0;
+  // The mode is a VideoState::SeekMode, a seek with an id is reported to the
+  // event dispatcher once it lands
+  virtual uint32_t SeekWithMode(double seek_time, int mode,
+                                int64_t seek_id) = 0;
 
   virtual uint32_t GetDuration(double *p_duration) = 0;
+  virtual uint32_t GetStartTime(double *p_start_time) = 0;
   virtual uint32_t GetStreamTime(double *p_stream_time) = 0;
   virtual uint32_t GetFps(double *p_fps) = 0;
 
@@ -49,6 +55,35 @@ public:
                                      const long len) = 0;
   virtual uint32_t UpdateAudioBuffer(uint8_t *p_audio_buffer,
                                      const long len) = 0;
+  virtual uint32_t SetAudioRingBuffer(uint8_t *p_memory, const long len) = 0;
+  virtual uint32_t SetAudioBufferSize(int size) = 0;
+  virtual uint32_t SetImageBuffer(uint8_t *p_image_buffer,
+                                  const long len) = 0;
+  virtual uint32_t UpdateImageBuffer(int64_t *p_frame_number,
+                                     double *p_remaining_time) = 0;
+  virtual uint32_t SetImageOutputSize(int width, int height) = 0;
+  virtual uint32_t SetScalerFlags(int flags) = 0;
+  virtual uint32_t GetMediaCacheStatus(int *p_status) const = 0;
+  virtual uint32_t IsKeyframeIndexReady(bool *p_ready) const = 0;
+  virtual uint32_t SetFrameCacheSize(int64_t max_bytes) = 0;
+  virtual uint32_t SetKeyframeOnlySpeed(double speed) = 0;
+  virtual uint32_t GetSeekLatency(double *p_latency) const = 0;
+  // Frames are counted from 0 in presentation order
+  virtual uint32_t SeekToFrame(int64_t frame_number, int64_t seek_id) = 0;
+  virtual uint32_t GetFrameNumber(int64_t *p_frame_number) const = 0;
+  // The memory must stay valid until the pipeline is disposed
+  virtual uint32_t SetStateSnapshot(uint8_t *p_memory, const long len) = 0;
+  // Times display and audio against the clock of a PlaybackGroup, which maps a
+  // wall time in sec to the stream time to show; nullptr returns to the own
+  // clocks once no thread of the pipeline reads the group clock anymore
+  virtual uint32_t
+  SetGroupClock(const std::function<double(double)> &group_clock) = 0;
+  // Stream time shown minus the time of the group clock in sec, NaN if none
+  virtual uint32_t GetGroupDrift(double *p_drift) const = 0;
+  // Weighs the share of the pipeline in the memory budget of the process
+  virtual uint32_t SetMemoryPriority(double priority) = 0;
+  virtual uint32_t GetMemoryUsage(int64_t *p_budget,
+                                  int64_t *p_usage) const = 0;
 };
 
 #endif //_PIPELINEDATA_H_
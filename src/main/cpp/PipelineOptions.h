@@ -38,9 +38,11 @@ class CPipelineOptions {
 public:
   CPipelineOptions(AudioFormat audioFormat = AudioFormat(),
                    PixelFormat pixelFormat = PixelFormat(),
-                   int audioBufferSizeInBy = 0)
+                   int audioBufferSizeInBy = 0,
+                   const char *mediaCacheDir = nullptr)
       : audio_format_(audioFormat), pixel_format_(pixelFormat),
-        audio_buffer_size_in_by_(audioBufferSizeInBy) {}
+        audio_buffer_size_in_by_(audioBufferSizeInBy),
+        media_cache_dir_(mediaCacheDir ? mediaCacheDir : "") {}
 
   virtual ~CPipelineOptions() {}
   inline const AudioFormat *GetAudioFormat() const { return &audio_format_; }
@@ -48,11 +50,16 @@ public:
   inline const int GetAudioBufferSizeInBy() const {
     return audio_buffer_size_in_by_;
   }
+  // Empty if the media cache is disabled
+  inline const char *GetMediaCacheDirectory() const {
+    return media_cache_dir_.c_str();
+  }
 
 private:
   AudioFormat audio_format_;
   PixelFormat pixel_format_;
   int audio_buffer_size_in_by_;
+  string media_cache_dir_;
 };
 
 #endif //_PIPELINE_OPTIONS_H_
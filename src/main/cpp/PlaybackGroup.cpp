@@ -0,0 +1,195 @@
+#include "PlaybackGroup.h"
+
+#include <algorithm>
+#include <math.h>
+
+#include "MediaPlayerErrors.h"
+
+extern "C" {
+#include <libavutil/time.h>
+}
+
+PlaybackGroup::PlaybackGroup()
+    : anchor_time_(0.0), anchor_wall_time_(av_gettime_relative() / 1000000.0),
+      rate_(1.0F), is_paused_(true) {}
+
+PlaybackGroup::~PlaybackGroup() {
+  std::lock_guard<std::mutex> lock(members_mutex_);
+  for (const Member &member : members_) {
+    member.p_pipeline_->SetGroupClock(nullptr);
+  }
+  members_.clear();
+}
+
+std::vector<PlaybackGroup::Member>::const_iterator
+PlaybackGroup::Find(const CPipelineData *p_member) const {
+  return std::find_if(members_.begin(), members_.end(),
+                      [p_member](const Member &member) {
+                        return member.p_pipeline_ == p_member;
+                      });
+}
+
+uint32_t PlaybackGroup::Add(CPipelineData *p_member, double offset) {
+  if (p_member == nullptr) {
+    return ERROR_PIPELINE_NULL;
+  }
+  std::lock_guard<std::mutex> lock(members_mutex_);
+  if (Find(p_member) != members_.end()) {
+    return ERROR_SYSTEM_EEXIST;
+  }
+  uint32_t err = p_member->SetGroupClock([this, offset](double wall_time) {
+    return GetTimeAt(wall_time) + offset;
+  });
+  if (err != ERROR_NONE) {
+    return err;
+  }
+  members_.push_back({p_member, offset});
+
+  bool is_paused;
+  float rate;
+  {
+    std::lock_guard<std::mutex> clock_lock(clock_mutex_);
+    is_paused = is_paused_;
+    rate = rate_;
+  }
+  err = p_member->SetRate(rate);
+  if (err == ERROR_NONE) {
+    err = p_member->Seek(GetTime() + offset);
+  }
+  if (err == ERROR_NONE) {
+    err = is_paused ? p_member->Pause() : p_member->Play();
+  }
+  if (err != ERROR_NONE) {
+    members_.pop_back();
+    p_member->SetGroupClock(nullptr);
+  }
+  return err;
+}
+
+uint32_t PlaybackGroup::Remove(CPipelineData *p_member) {
+  std::lock_guard<std::mutex> lock(members_mutex_);
+  auto it = Find(p_member);
+  if (it == members_.end()) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+  members_.erase(it);
+  // Waits until the member's threads stopped reading the clock of the group
+  return p_member->SetGroupClock(nullptr);
+}
+
+void PlaybackGroup::Rebase() {
+  double now = av_gettime_relative() / 1000000.0;
+  if (!is_paused_) {
+    anchor_time_ += (now - anchor_wall_time_) * rate_;
+  }
+  anchor_wall_time_ = now;
+}
+
+// The members run the commands one after the other, but under the lock no
+// other command gets in between and the clock of the group moves only once;
+// members that take longer catch up by dropping frames
+uint32_t PlaybackGroup::Play() {
+  std::lock_guard<std::mutex> lock(members_mutex_);
+  uint32_t err = ERROR_NONE;
+  for (const Member &member : members_) {
+    uint32_t member_err = member.p_pipeline_->Play();
+    if (err == ERROR_NONE) {
+      err = member_err;
+    }
+  }
+  std::lock_guard<std::mutex> clock_lock(clock_mutex_);
+  Rebase();
+  is_paused_ = false;
+  return err;
+}
+
+uint32_t PlaybackGroup::Pause() {
+  std::lock_guard<std::mutex> lock(members_mutex_);
+  {
+    std::lock_guard<std::mutex> clock_lock(clock_mutex_);
+    Rebase();
+    is_paused_ = true;
+  }
+  uint32_t err = ERROR_NONE;
+  for (const Member &member : members_) {
+    uint32_t member_err = member.p_pipeline_->Pause();
+    if (err == ERROR_NONE) {
+      err = member_err;
+    }
+  }
+  return err;
+}
+
+uint32_t PlaybackGroup::SetRate(float rate) {
+  if (rate < 0) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+  std::lock_guard<std::mutex> lock(members_mutex_);
+  {
+    std::lock_guard<std::mutex> clock_lock(clock_mutex_);
+    Rebase();
+    rate_ = rate;
+  }
+  uint32_t err = ERROR_NONE;
+  for (const Member &member : members_) {
+    uint32_t member_err = member.p_pipeline_->SetRate(rate);
+    if (err == ERROR_NONE) {
+      err = member_err;
+    }
+  }
+  return err;
+}
+
+uint32_t PlaybackGroup::Seek(double time) {
+  std::lock_guard<std::mutex> lock(members_mutex_);
+  {
+    std::lock_guard<std::mutex> clock_lock(clock_mutex_);
+    anchor_time_ = time;
+    anchor_wall_time_ = av_gettime_relative() / 1000000.0;
+  }
+  uint32_t err = ERROR_NONE;
+  for (const Member &member : members_) {
+    uint32_t member_err = member.p_pipeline_->Seek(time + member.offset_);
+    if (err == ERROR_NONE) {
+      err = member_err;
+    }
+  }
+  return err;
+}
+
+double PlaybackGroup::GetTimeAt(double wall_time) const {
+  std::lock_guard<std::mutex> lock(clock_mutex_);
+  if (is_paused_) {
+    return anchor_time_;
+  }
+  return anchor_time_ + (wall_time - anchor_wall_time_) * rate_;
+}
+
+double PlaybackGroup::GetTime() const {
+  return GetTimeAt(av_gettime_relative() / 1000000.0);
+}
+
+uint32_t PlaybackGroup::GetDrift(const CPipelineData *p_member,
+                                 double *p_drift) const {
+  std::lock_guard<std::mutex> lock(members_mutex_);
+  if (Find(p_member) == members_.end()) {
+    return ERROR_SYSTEM_EINVAL;
+  }
+  return p_member->GetGroupDrift(p_drift);
+}
+
+uint32_t PlaybackGroup::GetDriftSpread(double *p_spread) const {
+  std::lock_guard<std::mutex> lock(members_mutex_);
+  double min_drift = INFINITY;
+  double max_drift = -INFINITY;
+  for (const Member &member : members_) {
+    double drift = NAN;
+    if (member.p_pipeline_->GetGroupDrift(&drift) == ERROR_NONE &&
+        !isnan(drift)) {
+      min_drift = std::min(min_drift, drift);
+      max_drift = std::max(max_drift, drift);
+    }
+  }
+  *p_spread = max_drift > min_drift ? max_drift - min_drift : 0.0;
+  return ERROR_NONE;
+}
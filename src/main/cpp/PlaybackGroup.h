@@ -0,0 +1,77 @@
+#include <mutex>
+#include <vector>
+
+#include "PipelineData.h"
+
+#ifndef PLAYBACK_GROUP_H_
+#define PLAYBACK_GROUP_H_
+
+// Plays the media of several pipelines on one timeline
+//
+// Datavyu shows several recordings of a session side by side. Instead of
+// seeking the players back in line from time to time, the members of a group
+// time their display and audio against the clock of the group, each shifted
+// by its offset: a member shows the stream time group time + offset. The group
+// applies play, pause, rate, and seek to all its members under one lock and
+// moves its clock in one step, so that no member runs on a timeline of its own.
+//
+// The clock of the group maps the wall time of av_gettime_relative to the
+// group time; it runs at the rate of the group unless paused. Members drop or
+// repeat frames and stretch the audio to follow it, like they follow the audio
+// clock when playing alone.
+//
+// A pipeline has to leave the group before it is disposed, the group has no
+// hold on it.
+class PlaybackGroup {
+public:
+  PlaybackGroup();
+  // Members leave the group
+  virtual ~PlaybackGroup();
+
+  // Seeks the member to the group time + offset and sets it to the rate and
+  // play state of the group; the member is not added if that fails
+  uint32_t Add(CPipelineData *p_member, double offset);
+  uint32_t Remove(CPipelineData *p_member);
+
+  uint32_t Play();
+  uint32_t Pause();
+  // Forward rates only, the members play backward on their own clocks;
+  // returns ERROR_SYSTEM_EINVAL for a negative rate
+  uint32_t SetRate(float rate);
+  uint32_t Seek(double time);
+
+  // Group time in sec at the wall time in sec
+  double GetTimeAt(double wall_time) const;
+  double GetTime() const;
+
+  // Stream time of the frame the member shows minus where the group wants it,
+  // in sec; NaN until it shows a frame
+  uint32_t GetDrift(const CPipelineData *p_member, double *p_drift) const;
+  // Largest drift minus smallest drift of the members, 0 for fewer than two
+  // members with a drift
+  uint32_t GetDriftSpread(double *p_spread) const;
+
+private:
+  struct Member {
+    CPipelineData *p_pipeline_;
+    double offset_;
+  };
+
+  // Guards the members and orders the group commands
+  mutable std::mutex members_mutex_;
+  std::vector<Member> members_;
+
+  // Guards the clock, which members read from their display and audio threads
+  mutable std::mutex clock_mutex_;
+  double anchor_time_;      // group time at the anchor
+  double anchor_wall_time_; // wall time of the anchor in sec
+  float rate_;
+  bool is_paused_;
+
+  // Restarts the clock from its current time at the current wall time
+  void Rebase();
+
+  std::vector<Member>::const_iterator Find(const CPipelineData *p_member) const;
+};
+
+#endif PLAYBACK_GROUP_H_
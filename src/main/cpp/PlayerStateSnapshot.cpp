@@ -0,0 +1,63 @@
+#include "PlayerStateSnapshot.h"
+
+#include <new>
+#include <string.h>
+
+const int PlayerStateSnapshot::kSize = 64;
+
+static const int kSequenceOffset = 0;
+static const int kTimeOffset = 8;
+static const int kSpeedOffset = 16;
+static const int kFrameRateOffset = 24;
+static const int kDurationOffset = 32;
+static const int kFrameNumberOffset = 40;
+static const int kPlayerStateOffset = 48;
+static const int kSerialOffset = 52;
+static const int kImageWidthOffset = 56;
+static const int kImageHeightOffset = 60;
+
+// Java reads the doubles as their long bits
+static int64_t DoubleBits(double value) {
+  int64_t bits;
+  memcpy(&bits, &value, sizeof(bits));
+  return bits;
+}
+
+PlayerStateSnapshot::PlayerStateSnapshot(uint8_t *p_memory)
+    : p_memory_(p_memory) {}
+
+PlayerStateSnapshot *PlayerStateSnapshot::Create(uint8_t *p_memory,
+                                                 long len) {
+  if (p_memory == nullptr || len < kSize ||
+      (reinterpret_cast<uintptr_t>(p_memory) & 7) != 0) {
+    return nullptr;
+  }
+  return new (std::nothrow) PlayerStateSnapshot(p_memory);
+}
+
+void PlayerStateSnapshot::Publish(const State &state) {
+  std::unique_lock<std::mutex> locker(writer_mutex_);
+  std::atomic<int64_t> *p_sequence = At<int64_t>(kSequenceOffset);
+  int64_t sequence = p_sequence->load(std::memory_order_relaxed);
+  p_sequence->store(sequence + 1, std::memory_order_relaxed);
+  // Readers that see a field written below also see the odd sequence
+  std::atomic_thread_fence(std::memory_order_release);
+  At<int64_t>(kTimeOffset)->store(DoubleBits(state.time_),
+                                  std::memory_order_relaxed);
+  At<int64_t>(kSpeedOffset)->store(DoubleBits(state.speed_),
+                                   std::memory_order_relaxed);
+  At<int64_t>(kFrameRateOffset)->store(DoubleBits(state.frame_rate_),
+                                       std::memory_order_relaxed);
+  At<int64_t>(kDurationOffset)->store(DoubleBits(state.duration_),
+                                      std::memory_order_relaxed);
+  At<int64_t>(kFrameNumberOffset)->store(state.frame_number_,
+                                         std::memory_order_relaxed);
+  At<int32_t>(kPlayerStateOffset)->store(state.player_state_,
+                                         std::memory_order_relaxed);
+  At<int32_t>(kSerialOffset)->store(state.serial_, std::memory_order_relaxed);
+  At<int32_t>(kImageWidthOffset)->store(state.image_width_,
+                                        std::memory_order_relaxed);
+  At<int32_t>(kImageHeightOffset)->store(state.image_height_,
+                                         std::memory_order_relaxed);
+  p_sequence->store(sequence + 2, std::memory_order_release);
+}
@@ -0,0 +1,59 @@
+#include <atomic>
+#include <mutex>
+#include <stdint.h>
+
+#ifndef PLAYER_STATE_SNAPSHOT_H_
+#define PLAYER_STATE_SNAPSHOT_H_
+
+// Player state published into memory shared with a java direct buffer
+//
+// Java reads the state many times per second per player; instead of a JNI
+// call each, the native side writes the state here whenever it changes or a
+// frame is shown, and java reads it without locks. A sequence counter guards
+// the fields: it is odd while a write is in progress and java retries a read
+// that saw it odd or changed. The layout must match PlayerStateSnapshot.java:
+//
+//   [0, 8)    sequence, 0 until the first publish
+//   [8, 16)   presentation time in sec (double)
+//   [16, 24)  playback speed (double)
+//   [24, 32)  frame rate (double)
+//   [32, 40)  duration in sec (double)
+//   [40, 48)  frame number, -1 if unknown
+//   [48, 52)  PlayerState::State
+//   [52, 56)  image packet queue serial, changes with every seek
+//   [56, 60)  image width
+//   [60, 64)  image height
+class PlayerStateSnapshot {
+public:
+  typedef struct State {
+    double time_;
+    double speed_;
+    double frame_rate_;
+    double duration_;
+    int64_t frame_number_;
+    int player_state_;
+    int serial_;
+    int image_width_;
+    int image_height_;
+  } State;
+
+  static const int kSize;
+
+  // Returns nullptr if the memory is too small or not 8 byte aligned
+  static PlayerStateSnapshot *Create(uint8_t *p_memory, long len);
+
+  // Safe to call from any thread, writers take turns
+  void Publish(const State &state);
+
+private:
+  explicit PlayerStateSnapshot(uint8_t *p_memory);
+
+  template <typename T> inline std::atomic<T> *At(int offset) const {
+    return reinterpret_cast<std::atomic<T> *>(p_memory_ + offset);
+  }
+
+  uint8_t *p_memory_;
+  std::mutex writer_mutex_;
+};
+
+#endif PLAYER_STATE_SNAPSHOT_H_
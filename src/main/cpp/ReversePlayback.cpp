@@ -0,0 +1,143 @@
+#include "ReversePlayback.h"
+#include "FrameCache.h"
+
+#include <math.h>
+#include <new>
+
+ReversePlayback::ReversePlayback(const char *filename, int stream_index,
+                                 int64_t max_bytes)
+    : kMaxBytes(max_bytes), abort_(false),
+      decoder_(filename, stream_index, &abort_), p_thread_(nullptr),
+      bytes_(0), chunk_bytes_(0), budget_(INT64_MAX) {}
+
+ReversePlayback::~ReversePlayback() { Stop(); }
+
+void ReversePlayback::Start(double pts, const KeyframeIndex *p_index,
+                            bool keyframes_only) {
+  Stop();
+  abort_ = false;
+  decoder_.SetKeyframesOnly(keyframes_only);
+  p_thread_ = new (std::nothrow)
+      std::thread([this, pts, p_index] { DecodeBackward(pts, p_index); });
+}
+
+void ReversePlayback::Stop() {
+  std::unique_lock<std::mutex> locker(mutex_);
+  abort_ = true;
+  has_room_.notify_one();
+  locker.unlock();
+  if (p_thread_) {
+    p_thread_->join();
+    delete p_thread_;
+    p_thread_ = nullptr;
+  }
+  locker.lock();
+  Free(&frames_);
+  bytes_ = 0;
+  chunk_bytes_ = 0;
+}
+
+bool ReversePlayback::Peek(double *p_pts) {
+  std::unique_lock<std::mutex> locker(mutex_);
+  if (frames_.empty()) {
+    return false;
+  }
+  *p_pts = frames_.front().pts_;
+  return true;
+}
+
+AVFrame *ReversePlayback::Pop(double *p_pts) {
+  std::unique_lock<std::mutex> locker(mutex_);
+  if (frames_.empty()) {
+    return nullptr;
+  }
+  Entry entry = frames_.front();
+  frames_.pop_front();
+  bytes_ -= entry.size_;
+  has_room_.notify_one();
+  *p_pts = entry.pts_;
+  return entry.p_frame_;
+}
+
+void ReversePlayback::SetBudget(int64_t budget) {
+  std::unique_lock<std::mutex> locker(mutex_);
+  budget_ = budget;
+  has_room_.notify_one();
+}
+
+int64_t ReversePlayback::GetBytes() const {
+  std::unique_lock<std::mutex> locker(mutex_);
+  return bytes_ + chunk_bytes_;
+}
+
+void ReversePlayback::Free(std::deque<Entry> *p_entries) {
+  for (Entry &entry : *p_entries) {
+    av_frame_free(&entry.p_frame_);
+  }
+  p_entries->clear();
+}
+
+void ReversePlayback::DecodeBackward(double pts, const KeyframeIndex *p_index) {
+  if (decoder_.Open() < 0) {
+    return;
+  }
+  AVRational time_base = decoder_.GetTimeBase();
+  int64_t start_time = decoder_.GetStartTime();
+  int64_t end = llrint(pts / av_q2d(time_base));
+  // Frames of the current chunk, in presentation order
+  std::deque<Entry> chunk;
+  int64_t chunk_bytes = 0;
+  auto put = [&](AVFrame *p_frame, int64_t timestamp) {
+    Entry entry = {av_frame_clone(p_frame), timestamp,
+                   timestamp * av_q2d(time_base),
+                   FrameCache::GetFrameSize(p_frame)};
+    if (!entry.p_frame_) {
+      return;
+    }
+    chunk.push_back(entry);
+    chunk_bytes += entry.size_;
+    // Keep the latest frames of an oversized GOP, the next chunk decodes the
+    // GOP again for the earlier ones
+    std::unique_lock<std::mutex> locker(mutex_);
+    while (chunk_bytes > GetLimit() / 2 && chunk.size() > 1) {
+      chunk_bytes -= chunk.front().size_;
+      av_frame_free(&chunk.front().p_frame_);
+      chunk.pop_front();
+    }
+    chunk_bytes_ = chunk_bytes;
+  };
+
+  while (!abort_) {
+    // Decode the GOP of the frame before end; if the seek lands after it, e.g.
+    // without an index, back off further
+    int64_t start = end - 1;
+    int64_t back_off = llrint(1.0 / av_q2d(time_base)); // 1 sec
+    chunk_bytes = 0;
+    while (decoder_.Decode(start, end, p_index, put) >= 0 && chunk.empty() &&
+           !abort_ && start > start_time) {
+      start = FFMAX(start - back_off, start_time);
+      back_off *= 2;
+    }
+    if (chunk.empty()) {
+      break; // the first frame has been decoded, or the decoding failed
+    }
+    end = chunk.front().timestamp_;
+
+    std::unique_lock<std::mutex> locker(mutex_);
+    has_room_.wait(locker, [this, chunk_bytes] {
+      return abort_ || frames_.empty() || bytes_ + chunk_bytes <= GetLimit();
+    });
+    if (abort_) {
+      break;
+    }
+    while (!chunk.empty()) {
+      frames_.push_back(chunk.back());
+      chunk.pop_back();
+    }
+    bytes_ += chunk_bytes;
+    chunk_bytes_ = 0;
+  }
+  Free(&chunk);
+  std::unique_lock<std::mutex> locker(mutex_);
+  chunk_bytes_ = 0;
+}
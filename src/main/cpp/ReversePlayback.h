@@ -0,0 +1,79 @@
+#include <atomic>
+#include <condition_variable>
+#include <deque>
+#include <mutex>
+#include <thread>
+
+#include "GopDecoder.h"
+#include "KeyframeIndex.h"
+
+#ifndef REVERSE_PLAYBACK_H_
+#define REVERSE_PLAYBACK_H_
+
+// Decodes a video stream backward for playback at negative speeds
+//
+// A worker thread decodes the stream in chunks, each from a keyframe forward
+// up to where the previous chunk began, and stacks the frames so that they
+// come out latest first. The frames ready to be shown and the chunk being
+// decoded share a byte budget: a chunk takes at most half of it, a GOP that
+// does not fit is decoded again for its earlier frames.
+class ReversePlayback {
+public:
+  ReversePlayback(const char *filename, int stream_index, int64_t max_bytes);
+  virtual ~ReversePlayback();
+
+  // Starts decoding backward from the frame before pts (in seconds), dropping
+  // the frames of a previous start; the index, if any, locates the keyframes
+  // and must outlive the playback. Fast rates decode keyframes only.
+  void Start(double pts, const KeyframeIndex *p_index, bool keyframes_only);
+
+  // Cancels the decoding and drops all frames
+  void Stop();
+
+  // Sets p_pts to the presentation time of the next frame; returns false if
+  // it is not decoded yet or the start of the stream has been reached
+  bool Peek(double *p_pts);
+
+  // Takes the next frame; returns nullptr if there is none. The caller frees
+  // the frame with av_frame_free.
+  AVFrame *Pop(double *p_pts);
+
+  // Share of the memory governor's budget; the frames take at most the lower
+  // of this and the max bytes, and no limit applies until it is set
+  void SetBudget(int64_t budget);
+
+  // Returns the bytes of the frames ready to be shown and being decoded
+  int64_t GetBytes() const;
+
+private:
+  typedef struct Entry {
+    AVFrame *p_frame_;
+    int64_t timestamp_; // in stream time base
+    double pts_;        // in seconds
+    int64_t size_;      // in bytes
+  } Entry;
+
+  const int64_t kMaxBytes;
+  std::atomic<bool> abort_;
+  GopDecoder decoder_;
+  std::thread *p_thread_;
+
+  mutable std::mutex mutex_;
+  std::condition_variable has_room_;
+  // Frames ready to be shown, the latest first
+  std::deque<Entry> frames_;
+  int64_t bytes_;
+  // Of the chunk being decoded
+  int64_t chunk_bytes_;
+  int64_t budget_;
+
+  // With the lock
+  inline int64_t GetLimit() const {
+    return kMaxBytes < budget_ ? kMaxBytes : budget_;
+  }
+
+  void DecodeBackward(double pts, const KeyframeIndex *p_index);
+  static void Free(std::deque<Entry> *p_entries);
+};
+
+#endif REVERSE_PLAYBACK_H_
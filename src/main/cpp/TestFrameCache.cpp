@@ -0,0 +1,119 @@
+#include "gtest/gtest.h"
+
+#include "FrameCache.h"
+
+extern "C" {
+#include <libavutil/frame.h>
+#include <libavutil/pixfmt.h>
+}
+
+static AVFrame *AllocFrame() {
+  AVFrame *p_frame = av_frame_alloc();
+  p_frame->width = 64;
+  p_frame->height = 48;
+  p_frame->format = AV_PIX_FMT_GRAY8;
+  av_frame_get_buffer(p_frame, 32);
+  return p_frame;
+}
+
+TEST(FrameCacheTest, PutGetPreviousNextTest) {
+  FrameCache frameCache(1 << 20);
+  AVFrame *p_frame = AllocFrame();
+  for (int i = 0; i < 5; i++) {
+    frameCache.Put(p_frame, i * 0.04);
+  }
+  ASSERT_EQ(5, frameCache.GetNumberOfFrames());
+
+  double pts = 0;
+  AVFrame *p_cached = frameCache.GetPrevious(0.08, 0.06, &pts);
+  ASSERT_NE(nullptr, p_cached);
+  ASSERT_DOUBLE_EQ(0.04, pts);
+  // The cache holds a reference, not a copy
+  ASSERT_EQ(p_frame->data[0], p_cached->data[0]);
+  av_frame_free(&p_cached);
+
+  p_cached = frameCache.GetNext(0.08, 0.06, &pts);
+  ASSERT_NE(nullptr, p_cached);
+  ASSERT_DOUBLE_EQ(0.12, pts);
+  av_frame_free(&p_cached);
+
+  // Nothing before the first and after the last frame
+  ASSERT_EQ(nullptr, frameCache.GetPrevious(0.0, 0.06, &pts));
+  ASSERT_EQ(nullptr, frameCache.GetNext(0.16, 0.06, &pts));
+  ASSERT_TRUE(frameCache.HasPrevious(0.16, 0.06));
+  ASSERT_FALSE(frameCache.HasPrevious(0.0, 0.06));
+  av_frame_free(&p_frame);
+}
+
+TEST(FrameCacheTest, MaxDistanceTest) {
+  FrameCache frameCache(1 << 20);
+  AVFrame *p_frame = AllocFrame();
+  frameCache.Put(p_frame, 1.0);
+  frameCache.Put(p_frame, 2.0);
+  double pts = 0;
+  // A gap, e.g. dropped frames, is not a neighbour
+  ASSERT_EQ(nullptr, frameCache.GetPrevious(2.0, 0.06, &pts));
+  ASSERT_EQ(nullptr, frameCache.GetNext(1.0, 0.06, &pts));
+  ASSERT_FALSE(frameCache.HasPrevious(2.0, 0.06));
+  av_frame_free(&p_frame);
+}
+
+TEST(FrameCacheTest, EvictLeastRecentlyUsedTest) {
+  AVFrame *p_frame = AllocFrame();
+  int64_t size = p_frame->buf[0]->size;
+  FrameCache frameCache(3 * size);
+  frameCache.Put(p_frame, 0.0);
+  frameCache.Put(p_frame, 0.04);
+  frameCache.Put(p_frame, 0.08);
+  ASSERT_EQ(3 * size, frameCache.GetBytes());
+
+  // Use the oldest frame so the one at 0.04 is evicted instead
+  double pts = 0;
+  AVFrame *p_cached = frameCache.GetPrevious(0.04, 0.06, &pts);
+  ASSERT_DOUBLE_EQ(0.0, pts);
+  av_frame_free(&p_cached);
+  frameCache.Put(p_frame, 0.12);
+  ASSERT_EQ(3, frameCache.GetNumberOfFrames());
+  ASSERT_FALSE(frameCache.HasPrevious(0.08, 0.06));
+  ASSERT_TRUE(frameCache.HasPrevious(0.04, 0.06));
+
+  // Shrinking the budget evicts right away
+  frameCache.SetMaxBytes(size);
+  ASSERT_EQ(1, frameCache.GetNumberOfFrames());
+  ASSERT_EQ(size, frameCache.GetBytes());
+
+  frameCache.Clear();
+  ASSERT_EQ(0, frameCache.GetNumberOfFrames());
+  ASSERT_EQ(0, frameCache.GetBytes());
+  av_frame_free(&p_frame);
+}
+
+TEST(FrameCacheTest, BudgetLimitsMaxBytesTest) {
+  AVFrame *p_frame = AllocFrame();
+  int64_t size = p_frame->buf[0]->size;
+  FrameCache frameCache(3 * size);
+  frameCache.Put(p_frame, 0.0);
+  frameCache.Put(p_frame, 0.04);
+  frameCache.Put(p_frame, 0.08);
+
+  // The lower of budget and max bytes applies
+  frameCache.SetBudget(2 * size);
+  ASSERT_EQ(2, frameCache.GetNumberOfFrames());
+  frameCache.Put(p_frame, 0.12);
+  ASSERT_EQ(2 * size, frameCache.GetBytes());
+  frameCache.SetMaxBytes(size);
+  ASSERT_EQ(1, frameCache.GetNumberOfFrames());
+  ASSERT_EQ(size, frameCache.GetMaxBytes());
+
+  // A budget below a single frame keeps none
+  frameCache.SetMaxBytes(3 * size);
+  frameCache.SetBudget(size - 1);
+  ASSERT_EQ(0, frameCache.GetNumberOfFrames());
+  frameCache.Put(p_frame, 0.16);
+  ASSERT_EQ(0, frameCache.GetNumberOfFrames());
+
+  frameCache.Clear();
+  ASSERT_EQ(0, frameCache.GetNumberOfFrames());
+  ASSERT_EQ(0, frameCache.GetBytes());
+  av_frame_free(&p_frame);
+}
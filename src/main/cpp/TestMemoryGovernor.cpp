@@ -0,0 +1,57 @@
+#include "gtest/gtest.h"
+
+#include "MemoryGovernor.h"
+
+static const int64_t kMiB = 1024 * 1024;
+
+TEST(MemoryGovernorTest, SharesByResolutionAndPriorityTest) {
+  MemoryGovernor governor(300 * kMiB);
+  int64_t sd_budget = 0;
+  int64_t hd_budget = 0;
+  int sd = governor.Add(1 * kMiB, 0, 1.0,
+                        [&](int64_t bytes) { sd_budget = bytes; },
+                        [] { return 10 * kMiB; });
+  ASSERT_EQ(300 * kMiB, sd_budget);
+
+  // Adding a player rebalances
+  int hd = governor.Add(2 * kMiB, 0, 1.0,
+                        [&](int64_t bytes) { hd_budget = bytes; },
+                        [] { return 20 * kMiB; });
+  ASSERT_EQ(100 * kMiB, sd_budget);
+  ASSERT_EQ(200 * kMiB, hd_budget);
+  ASSERT_EQ(200 * kMiB, governor.GetBudget(hd));
+  ASSERT_EQ(30 * kMiB, governor.GetUsage());
+
+  // Hiding the HD player halves its weight
+  governor.SetPriority(hd, 0.5);
+  ASSERT_EQ(150 * kMiB, sd_budget);
+  ASSERT_EQ(150 * kMiB, hd_budget);
+
+  // Removing a player rebalances
+  governor.Remove(sd);
+  ASSERT_EQ(1, governor.GetNumPlayers());
+  ASSERT_EQ(300 * kMiB, hd_budget);
+  ASSERT_EQ(0, governor.GetBudget(sd));
+
+  governor.SetBudget(100 * kMiB);
+  ASSERT_EQ(100 * kMiB, hd_budget);
+}
+
+TEST(MemoryGovernorTest, KeepsTheMinimumTest) {
+  MemoryGovernor governor(100 * kMiB);
+  int64_t budgets[3] = {0, 0, 0};
+  // A 4K player needs 60 MiB, its share would be 50 MiB
+  governor.Add(8 * kMiB, 60 * kMiB, 1.0,
+               [&](int64_t bytes) { budgets[0] = bytes; }, [] { return 0; });
+  governor.Add(4 * kMiB, 0, 1.0, [&](int64_t bytes) { budgets[1] = bytes; },
+               [] { return 0; });
+  governor.Add(4 * kMiB, 0, 1.0, [&](int64_t bytes) { budgets[2] = bytes; },
+               [] { return 0; });
+  ASSERT_EQ(60 * kMiB, budgets[0]);
+  ASSERT_EQ(20 * kMiB, budgets[1]);
+  ASSERT_EQ(20 * kMiB, budgets[2]);
+
+  // Too small a budget still gives every player its minimum
+  governor.SetBudget(10 * kMiB);
+  ASSERT_EQ(60 * kMiB, budgets[0]);
+}
@@ -97,3 +97,135 @@ TEST(PacketQueueTest, MultiThreadPutGetPacketTest) {
   writer.join();
   reader.join();
 }
+
+TEST(PacketQueueTest, WrapAroundPacketTest) {
+  PacketQueue packetQueue;
+  packetQueue.Start();
+  packetQueue.Flush();
+
+  // Keep a few packets queued so that the reads and writes wrap many times
+  // around the ring without growing it
+  AVPacket putPkt;
+  AVPacket getPkt;
+  int64_t next_read = 0;
+  for (int writes = 0; writes < 1000; writes++) {
+    av_init_packet(&putPkt);
+    putPkt.pos = writes;
+    ASSERT_EQ(0, packetQueue.Put(&putPkt));
+    if (writes >= 5) {
+      ASSERT_LT(0, packetQueue.Get(&getPkt, 0, nullptr));
+      ASSERT_EQ(next_read++, getPkt.pos);
+    }
+  }
+  int capacity = packetQueue.GetCapacity();
+  ASSERT_LT(0, capacity);
+  ASSERT_GT(1000, capacity);
+  ASSERT_EQ(5, packetQueue.getNumberOfPackets());
+  while (packetQueue.Get(&getPkt, 0, nullptr) > 0) {
+    ASSERT_EQ(next_read++, getPkt.pos);
+  }
+  ASSERT_EQ(1000, next_read);
+}
+
+TEST(PacketQueueTest, GrowWhileWrappedPacketTest) {
+  PacketQueue packetQueue;
+  packetQueue.Start();
+  packetQueue.Flush();
+
+  AVPacket putPkt;
+  AVPacket getPkt;
+  int64_t next_write = 0;
+  int64_t next_read = 0;
+  // Move the read position into the middle of the ring
+  for (int i = 0; i < 10; i++) {
+    av_init_packet(&putPkt);
+    putPkt.pos = next_write++;
+    packetQueue.Put(&putPkt);
+  }
+  for (int i = 0; i < 10; i++) {
+    ASSERT_LT(0, packetQueue.Get(&getPkt, 0, nullptr));
+    ASSERT_EQ(next_read++, getPkt.pos);
+  }
+  // Fill beyond the capacity so that the ring grows while wrapped
+  int capacity = packetQueue.GetCapacity();
+  for (int i = 0; i < 3 * capacity; i++) {
+    av_init_packet(&putPkt);
+    putPkt.pos = next_write++;
+    ASSERT_EQ(0, packetQueue.Put(&putPkt));
+  }
+  ASSERT_LT(capacity, packetQueue.GetCapacity());
+  while (packetQueue.Get(&getPkt, 0, nullptr) > 0) {
+    ASSERT_EQ(next_read++, getPkt.pos);
+  }
+  ASSERT_EQ(next_write, next_read);
+}
+
+TEST(PacketQueueTest, FlushWrappedPacketTest) {
+  PacketQueue packetQueue;
+  packetQueue.Start();
+  packetQueue.Flush();
+
+  AVPacket putPkt;
+  AVPacket getPkt;
+  int capacity = 0;
+  for (int i = 0; i < 100; i++) {
+    av_init_packet(&putPkt);
+    putPkt.pos = i;
+    putPkt.size = 10;
+    packetQueue.Put(&putPkt);
+    if (i % 2) {
+      packetQueue.Get(&getPkt, 0, nullptr);
+    }
+  }
+  capacity = packetQueue.GetCapacity();
+  ASSERT_LT(0, packetQueue.GetSize());
+
+  // Flush empties the queue but keeps the entries
+  packetQueue.Flush();
+  ASSERT_EQ(0, packetQueue.getNumberOfPackets());
+  ASSERT_EQ(0, packetQueue.GetSize());
+  ASSERT_EQ(0, packetQueue.GetDuration());
+  ASSERT_EQ(capacity, packetQueue.GetCapacity());
+  ASSERT_EQ(0, packetQueue.Get(&getPkt, 0, nullptr));
+
+  // The queue is usable after the flush and the flush packet bumps the serial
+  int serial_before = packetQueue.GetSerial();
+  packetQueue.PutFlushPacket();
+  av_init_packet(&putPkt);
+  putPkt.pos = 42;
+  packetQueue.Put(&putPkt);
+  int serial = -1;
+  ASSERT_LT(0, packetQueue.Get(&getPkt, 0, &serial));
+  ASSERT_TRUE(packetQueue.IsFlushPacket(getPkt));
+  ASSERT_EQ(serial_before + 1, serial);
+  ASSERT_LT(0, packetQueue.Get(&getPkt, 0, &serial));
+  ASSERT_EQ(42, getPkt.pos);
+  ASSERT_EQ(serial_before + 1, serial);
+}
+
+TEST(PacketQueueTest, MaxSizePacketTest) {
+  PacketQueue packetQueue;
+  packetQueue.Start();
+  packetQueue.Flush();
+  ASSERT_FALSE(packetQueue.IsFull()); // no limit by default
+
+  AVPacket putPkt;
+  AVPacket getPkt;
+  packetQueue.SetMaxSize(1000);
+  while (!packetQueue.IsFull()) {
+    av_init_packet(&putPkt);
+    putPkt.size = 100;
+    ASSERT_EQ(0, packetQueue.Put(&putPkt));
+  }
+  ASSERT_LE(1000, packetQueue.GetSize());
+
+  // The limit is soft, puts beyond it still succeed
+  av_init_packet(&putPkt);
+  ASSERT_EQ(0, packetQueue.Put(&putPkt));
+
+  // Draining frees space again
+  while (packetQueue.IsFull()) {
+    ASSERT_LT(0, packetQueue.Get(&getPkt, 0, nullptr));
+  }
+  ASSERT_GT(1000, packetQueue.GetSize());
+}
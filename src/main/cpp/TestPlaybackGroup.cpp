@@ -0,0 +1,50 @@
+#include "gtest/gtest.h"
+
+#include "MediaPlayerErrors.h"
+#include "PlaybackGroup.h"
+
+extern "C" {
+#include <libavutil/time.h>
+}
+
+static double Now() { return av_gettime_relative() / 1000000.0; }
+
+TEST(PlaybackGroupTest, ClockFollowsTheCommandsTest) {
+  PlaybackGroup group;
+  ASSERT_DOUBLE_EQ(0.0, group.GetTime());
+
+  // A paused group stays where it was sought to
+  ASSERT_EQ(ERROR_NONE, group.Seek(5.0));
+  ASSERT_DOUBLE_EQ(5.0, group.GetTimeAt(Now() + 10.0));
+
+  ASSERT_EQ(ERROR_NONE, group.Play());
+  double now = Now();
+  ASSERT_NEAR(6.0, group.GetTimeAt(now + 1.0), 0.05);
+
+  ASSERT_EQ(ERROR_NONE, group.SetRate(-2.0F));
+  now = Now();
+  double time = group.GetTimeAt(now);
+  ASSERT_NEAR(time - 2.0, group.GetTimeAt(now + 1.0), 1e-9);
+
+  ASSERT_EQ(ERROR_NONE, group.Pause());
+  time = group.GetTime();
+  ASSERT_DOUBLE_EQ(time, group.GetTimeAt(Now() + 1.0));
+
+  // A seek keeps the rate and play state
+  ASSERT_EQ(ERROR_NONE, group.Seek(1.0));
+  ASSERT_EQ(ERROR_NONE, group.Play());
+  now = Now();
+  ASSERT_NEAR(group.GetTimeAt(now) - 1.0, group.GetTimeAt(now + 0.5), 1e-9);
+}
+
+TEST(PlaybackGroupTest, MembersTest) {
+  PlaybackGroup group;
+  ASSERT_EQ(ERROR_PIPELINE_NULL, group.Add(nullptr, 0.0));
+  ASSERT_EQ(ERROR_SYSTEM_EINVAL, group.Remove(nullptr));
+
+  double drift = 0.0;
+  ASSERT_EQ(ERROR_SYSTEM_EINVAL, group.GetDrift(nullptr, &drift));
+  double spread = -1.0;
+  ASSERT_EQ(ERROR_NONE, group.GetDriftSpread(&spread));
+  ASSERT_DOUBLE_EQ(0.0, spread);
+}
@@ -7,8 +7,25 @@ bool VideoState::kEnableGeneratePts =
 int VideoState::kEnableSeekByBytes =
     0; // seek by bytes 0=off 1=on -1=auto (Note: we disable seek_by_byte
        // because it raises errors while seeking)
-int VideoState::kMaxQueueSize = (15 * 1024 * 1024);
+/* packet bytes of a player however small its share of the memory budget */
+int VideoState::kMinQueueSize = (2 * 1024 * 1024);
+/* the audio packet queue gets this fraction of the packet bytes */
+int VideoState::kAudioPacketQueueShare = 4;
+/* the frame cache gets this fraction of the memory share of a video */
+int VideoState::kFrameCacheShare = 4;
+/* the reverse playback gets this fraction of the memory share of a video */
+int VideoState::kReversePlaybackShare = 4;
 int VideoState::kMinFrames = 25;
+int64_t VideoState::kCachedProbeSize = 32;
+// Decoded frames held for reverse playback at most, enough for a GOP of HD
+// video; the memory share of the video may bound them further
+int64_t VideoState::kReversePlaybackBytes = 256 << 20;
+/* above this speed only keyframes are decoded */
+double VideoState::kKeyframeOnlySpeed = 8.0;
+/* seeks at least this far apart (in microseconds) and this close in time
+ * scrub */
+int64_t VideoState::kScrubMinDistance = AV_TIME_BASE;
+int64_t VideoState::kScrubInterval = 250000;
 
 /* no AV sync correction is done if below the minimum AV sync threshold */
 double VideoState::kAvSyncThresholdMin = 0.04;
@@ -24,8 +41,9 @@ int VideoState::kSampleCorrectionMaxPercent = 10; // int
 /* we use about AUDIO_DIFF_AVG_NB A-V differences to make the average */
 int VideoState::kAudioDiffAvgNum = 20; // int
 
-int VideoState::kVideoPictureQueueSize = 3; // int
-int VideoState::kSampleQueueSize = 9;       // int
+int VideoState::kVideoPictureQueueSize = 3;     // int, the least
+int VideoState::kMaxVideoPictureQueueSize = 16; // int, with enough memory
+int VideoState::kSampleQueueSize = 9;           // int
 
 int VideoState::OpenStreamComponent(int stream_index) {
   AVCodecContext *p_codec_context;
@@ -131,7 +149,7 @@ int VideoState::OpenStreamComponent(int stream_index) {
     audio_stream_index_ = stream_index;
     p_audio_stream_ = p_format_context->streams[stream_index];
     p_audio_decoder_ = new Decoder(p_codec_context, p_audio_packet_queue_,
-                                   &continue_read_thread_);
+                                   [this] { WakeUpReadThread(); });
     if ((p_format_context->iformat->flags &
          (AVFMT_NOBINSEARCH | AVFMT_NOGENSEARCH | AVFMT_NO_BYTE_SEEK)) &&
         !p_format_context->iformat->read_seek) {
@@ -170,7 +188,7 @@ int VideoState::OpenStreamComponent(int stream_index) {
     }
 
     p_image_decoder_ = new Decoder(p_codec_context, p_image_packet_queue_,
-                                   &continue_read_thread_);
+                                   [this] { WakeUpReadThread(); });
     if ((ret = p_image_decoder_->Start(
              [this] { DecodeImagePacketsToFrames(); })) < 0) {
       goto out;
@@ -192,8 +210,6 @@ out:
 
 int VideoState::GetImageFrame(AVFrame *frame) {
   int got_frame;
-  Clock *p_master_clock = nullptr;
-  GetMasterClock(&p_master_clock);
 
   if ((got_frame = p_image_decoder_->Decode(frame)) < 0) {
     return -1;
@@ -209,7 +225,8 @@ int VideoState::GetImageFrame(AVFrame *frame) {
 
     if (GetMasterSyncType() != AV_SYNC_VIDEO_MASTER) {
       if (frame->pts != AV_NOPTS_VALUE) {
-        double diff = time - p_master_clock->GetTime();
+        double diff =
+            time - GetMasterTime(av_gettime_relative() / MICRO);
 
         av_log(NULL, AV_LOG_TRACE, "diff=%f time=%f np=%d\n", diff, time,
                p_image_packet_queue_->getNumberOfPackets());
@@ -415,10 +432,9 @@ int VideoState::SynchronizeAudio(int nb_samples) {
   if (GetMasterSyncType() != AV_SYNC_AUDIO_MASTER) {
     double diff, avg_diff;
     int min_nb_samples, max_nb_samples;
-    Clock *p_master_clock = nullptr;
-    GetMasterClock(&p_master_clock);
 
-    diff = p_audio_clock_->GetTime() - p_master_clock->GetTime();
+    diff = p_audio_clock_->GetTime() -
+           GetMasterTime(av_gettime_relative() / MICRO);
 
     if (!isnan(diff) && fabs(diff) < kAvNoSyncThreshold) {
       audio_diff_cum_ = diff + audio_diff_avg_coef_ * audio_diff_cum_;
@@ -461,7 +477,8 @@ int VideoState::DecodeAudioFrame() {
   Frame *p_audio_frame = nullptr;
   double original_sample_rate;
 
-  if (is_paused_) {
+  // Audio is silent while playing backward or keyframes only
+  if (is_paused_ || current_speed_ < 0 || is_keyframe_only_) {
     return -1;
   }
 
@@ -590,19 +607,32 @@ int VideoState::DecodeAudioFrame() {
 VideoState::VideoState(int audio_buffer_size)
     : abort_request_(false), is_paused_(true),
       queue_attachments_request_(false), seek_done_(false),
-      seek_request_(false), seek_time_(0), seek_distance_(0),
+      seek_request_(false), seek_taken_(false), seek_time_(0),
+      seek_distance_(0), seek_request_time_(0), seek_id_(0),
+      in_flight_seek_id_(0), in_flight_seek_time_(0), seek_start_time_(0),
+      num_seeks_superseded_(0),
+      seek_latency_(NAN),
       sync_type_(AV_SYNC_AUDIO_MASTER), frame_rate_(0.0),
       image_clock_last_set_time_(0), image_stream_index_(0),
       max_frame_duration_(0), end_of_file_(false), duration_(0),
       frame_width_(0), frame_height_(0), frame_aspect_ratio_(av_make_q(0, 0)),
       is_stepping_(false), speed_request_(false), requested_speed_(1.0),
       current_speed_(1.0), audio_disabled_(false), video_disabled_(false),
-      last_video_stream_(0), last_audio_stream_(0), filename_(nullptr),
+      last_video_stream_(0), last_audio_stream_(0), read_wakeup_count_(0),
+      filename_(nullptr),
       p_audio_packet_queue_(nullptr), p_image_packet_queue_(nullptr),
       p_audio_frame_queue_(nullptr), p_image_frame_queue_(nullptr),
       p_audio_clock_(nullptr), p_image_clock_(nullptr),
       p_external_clock_(nullptr), p_audio_decoder_(nullptr),
       p_image_decoder_(nullptr), p_reader_thread_(nullptr),
+      p_keyframe_index_(nullptr), abort_keyframe_index_(false),
+      p_keyframe_index_thread_(nullptr), media_cache_dir_(nullptr),
+      p_media_cache_(nullptr), media_cache_status_(MediaCache::kDisabled),
+      p_reverse_playback_(nullptr), reverse_playback_budget_(INT64_MAX),
+      is_reversing_(false), reverse_last_pts_(NAN),
+      keyframe_only_speed_(kKeyframeOnlySpeed),
+      is_keyframe_only_(false), is_scrubbing_(false),
+      is_approximate_scrub_(false), last_seek_request_time_(0),
       p_input_format_(nullptr), p_format_context(nullptr), swr_ctx(nullptr),
       p_audio_stream_(nullptr), p_image_stream_(nullptr),
       audio_stream_index_(0), audio_pts_(0.0), audio_serial_(0),
@@ -612,9 +642,11 @@ VideoState::VideoState(int audio_buffer_size)
       p_audio_buffer_(nullptr), p_audio_buffer1_(nullptr),
       audio_buffer_size_(0),                          /* in bytes */
       audio_buffer1_size_(0), audio_buffer_index_(0), /* in bytes */
-      audio_write_buffer_size_(0), is_muted_(false), num_frame_drops_early_(0),
+      audio_write_buffer_size_(0), audio_output_latency_(-1.0),
+      audio_sync_delay_(0.0), is_muted_(false), num_frame_drops_early_(0),
       start_time_(AV_NOPTS_VALUE), max_duration_(AV_NOPTS_VALUE), num_loop_(1),
-      frame_last_shown_time_(0.0) {}
+      frame_last_shown_time_(0.0), has_group_clock_(false),
+      memory_governor_id_(-1), memory_priority_(1.0), image_frame_bytes_(0) {}
 
 int VideoState::CreateVideoState(VideoState **pp_video_state,
                                  int audio_buffer_size) {
@@ -650,11 +682,24 @@ int VideoState::CreateVideoState(VideoState **pp_video_state,
 
   if (FrameQueue::CreateFrameQueue(&(*pp_video_state)->p_image_frame_queue_,
                                    (*pp_video_state)->p_image_packet_queue_,
-                                   kVideoPictureQueueSize, true)) {
+                                   kMaxVideoPictureQueueSize, true)) {
     av_log(NULL, AV_LOG_ERROR, "Unable to create frame queue for video");
     delete *pp_video_state;
     return ENOMEM;
   }
+  // Holds more once the memory governor hands out the budget
+  (*pp_video_state)->p_image_frame_queue_->SetMaxNumFrames(
+      kVideoPictureQueueSize);
+
+  // Wake the reader whenever a consumer frees space
+  VideoState *p_state = *pp_video_state;
+  std::function<void()> wake_up_reader = [p_state] {
+    p_state->WakeUpReadThread();
+  };
+  p_state->p_audio_packet_queue_->SetSpaceAvailableCallback(wake_up_reader);
+  p_state->p_image_packet_queue_->SetSpaceAvailableCallback(wake_up_reader);
+  p_state->p_audio_frame_queue_->SetFrameReleasedCallback(wake_up_reader);
+  p_state->p_image_frame_queue_->SetFrameReleasedCallback(wake_up_reader);
 
   // Create clocks
   int *p_audio_serial = nullptr;
@@ -685,13 +730,28 @@ int VideoState::CreateVideoState(VideoState **pp_video_state,
 }
 
 VideoState::~VideoState() {
+  if (memory_governor_id_ >= 0) {
+    MemoryGovernor::GetInstance().Remove(memory_governor_id_);
+  }
   // From stream close
   abort_request_ = true;
+  WakeUpReadThread();
   if (p_reader_thread_) {
     p_reader_thread_->join();
     delete p_reader_thread_;
     p_reader_thread_ = nullptr;
   }
+  abort_keyframe_index_ = true;
+  if (p_keyframe_index_thread_) {
+    p_keyframe_index_thread_->join();
+    delete p_keyframe_index_thread_;
+    p_keyframe_index_thread_ = nullptr;
+  }
+  // Reverse playback reads the keyframe index
+  delete p_reverse_playback_;
+  delete p_keyframe_index_.load();
+  delete p_media_cache_;
+  av_free(media_cache_dir_);
 
   if (audio_stream_index_ >= 0) {
     CloseStreamComponent(audio_stream_index_);
@@ -737,16 +797,188 @@ VideoState::~VideoState() {
   }
 }
 
+void VideoState::BuildKeyframeIndex() {
+  KeyframeIndex *p_index = nullptr;
+  if (p_media_cache_) {
+    p_index = p_media_cache_->TakeKeyframeIndex(image_stream_index_);
+  }
+  if (!p_index) {
+    p_index = KeyframeIndex::Build(filename_, image_stream_index_,
+                                   &abort_keyframe_index_);
+    if (p_index && p_media_cache_) {
+      p_media_cache_->Save(p_index);
+    }
+  }
+  p_keyframe_index_ = p_index;
+}
+
+void VideoState::SetMediaCacheDirectory(const char *cache_dir) {
+  av_freep(&media_cache_dir_);
+  if (cache_dir && *cache_dir) {
+    media_cache_dir_ = av_strdup(cache_dir);
+  }
+}
+
+int VideoState::SeekToKeyframe(int64_t time) {
+  KeyframeIndex *p_index = p_keyframe_index_;
+  KeyframeIndex::Keyframe keyframe;
+  if (p_index && p_image_stream_ &&
+      p_index->FindKeyframe(av_rescale_q(time, av_make_q(1, AV_TIME_BASE),
+                                         p_image_stream_->time_base),
+                            &keyframe)) {
+    // Seek by bytes only where ffplay would, demuxers with their own seek
+    // resync more reliably on a timestamp
+    AVInputFormat *p_format = p_format_context->iformat;
+    bool by_bytes = keyframe.byte_pos_ >= 0 &&
+                    !(p_format->flags & AVFMT_NO_BYTE_SEEK) &&
+                    (kEnableSeekByBytes > 0 ||
+                     (!p_format->read_seek && !p_format->read_seek2));
+    if (by_bytes && av_seek_frame(p_format_context, -1, keyframe.byte_pos_,
+                                  AVSEEK_FLAG_BYTE) >= 0) {
+      return 0;
+    }
+    // The decode timestamp is at or before the presentation timestamp, so
+    // seeking backward from it lands on this keyframe
+    int64_t timestamp =
+        keyframe.dts_ != AV_NOPTS_VALUE ? keyframe.dts_ : keyframe.pts_;
+    if (av_seek_frame(p_format_context, image_stream_index_, timestamp,
+                      AVSEEK_FLAG_BACKWARD) >= 0) {
+      return 0;
+    }
+  }
+  return av_seek_frame(p_format_context, -1, time, AVSEEK_FLAG_BACKWARD);
+}
+
+void VideoState::StartReverse(double pts) {
+  if (!p_reverse_playback_) {
+    // The memory governor sets the budget of the reverse playback from its
+    // thread
+    std::lock_guard<std::mutex> lock(reverse_playback_mutex_);
+    p_reverse_playback_ = new (std::nothrow) ReversePlayback(
+        filename_, image_stream_index_, kReversePlaybackBytes);
+    if (!p_reverse_playback_) {
+      return;
+    }
+    p_reverse_playback_->SetBudget(reverse_playback_budget_);
+  }
+  p_reverse_playback_->Start(pts, p_keyframe_index_, is_keyframe_only_);
+  reverse_last_pts_ = pts;
+  frame_last_shown_time_ = av_gettime_relative() / MICRO;
+  is_reversing_ = true;
+}
+
+void VideoState::StopReverse() {
+  is_reversing_ = false;
+  p_reverse_playback_->Stop();
+  double pts = reverse_last_pts_;
+  if (!isnan(pts)) {
+    RequestSeek((int64_t)(pts * AV_TIME_BASE), 0);
+  }
+}
+
+double VideoState::ComputeReverseDuration(double last_pts, double pts) const {
+  double duration = last_pts - pts;
+  if (isnan(duration) || duration <= 0 || duration > max_frame_duration_) {
+    return frame_rate_ > 0 ? 1.0 / frame_rate_ : 0;
+  }
+  return duration;
+}
+
+AVFrame *VideoState::GetReverseFrame(double *p_remaining_time,
+                                     double *p_pts) {
+  double pts, next_pts;
+  if (!is_reversing_ || !p_reverse_playback_->Peek(&pts)) {
+    return nullptr;
+  }
+  // Time the frames like the display does going forward, with the image clock
+  // as master while the audio is silent
+  double speed = -current_speed_;
+  double time = av_gettime_relative() / MICRO;
+  double last_duration = ComputeReverseDuration(reverse_last_pts_, pts);
+  double delay = ComputeTargetDelay(last_duration / speed);
+  if (time < frame_last_shown_time_ + delay) {
+    *p_remaining_time =
+        FFMIN(frame_last_shown_time_ + delay - time, *p_remaining_time);
+    return nullptr;
+  }
+  frame_last_shown_time_ += delay;
+  if (delay > 0 && time - frame_last_shown_time_ > kAvSyncThresholdMax) {
+    frame_last_shown_time_ = time;
+  }
+
+  AVFrame *p_frame = p_reverse_playback_->Pop(&pts);
+  // Drop the frames that are late already
+  while (p_frame && p_reverse_playback_->Peek(&next_pts)) {
+    double duration = ComputeReverseDuration(pts, next_pts) / speed;
+    if (time <= frame_last_shown_time_ + duration) {
+      break;
+    }
+    frame_last_shown_time_ += duration;
+    av_frame_free(&p_frame);
+    p_frame = p_reverse_playback_->Pop(&pts);
+  }
+  if (!p_frame) {
+    return nullptr;
+  }
+  SetPts(pts, p_image_packet_queue_->GetSerial());
+  reverse_last_pts_ = pts;
+  if (seek_done_) {
+    CompleteSeek(p_image_packet_queue_, p_image_packet_queue_->GetSerial(),
+                 pts);
+  }
+  *p_pts = pts;
+  return p_frame;
+}
+
+void VideoState::WakeUpReadThread() {
+  std::unique_lock<std::mutex> locker(read_wait_mutex_);
+  read_wakeup_count_++;
+  locker.unlock();
+  continue_read_thread_.notify_one();
+}
+
+uint64_t VideoState::GetReadWakeupCount() {
+  std::unique_lock<std::mutex> locker(read_wait_mutex_);
+  return read_wakeup_count_;
+}
+
+void VideoState::WaitForReadWakeup(uint64_t count) {
+  std::unique_lock<std::mutex> locker(read_wait_mutex_);
+  auto is_woken_up = [this, count] {
+    return read_wakeup_count_ != count || abort_request_;
+  };
+  if (is_scrubbing_ && !is_approximate_scrub_) {
+    int64_t timeout =
+        last_seek_request_time_ + kScrubInterval - av_gettime_relative();
+    continue_read_thread_.wait_for(
+        locker, std::chrono::microseconds(FFMAX(timeout, 0)), is_woken_up);
+  } else {
+    continue_read_thread_.wait(locker, is_woken_up);
+  }
+}
+
+void VideoState::SetKeyframeOnly(bool keyframe_only) {
+  enum AVDiscard discard = keyframe_only ? AVDISCARD_NONKEY : AVDISCARD_DEFAULT;
+  // Demuxers that know the keyframes do not even read the other packets
+  p_image_stream_->discard = discard;
+  // Packets queued before the switch are skipped by the decoder
+  p_image_decoder_->SetSkipFrame(discard);
+  is_keyframe_only_ = keyframe_only;
+}
+
 //* Gets the stream from the disk or the network */
 int VideoState::ReadPacketsToQueues() {
   int ret;
   AVPacket pkt1, *pkt = &pkt1;
-  std::mutex wait_mutex;
+  uint64_t wakeup_count;
   int64_t stream_start_time;
   bool pkt_in_play_range = false;
   int64_t pkt_ts;
 
   for (;;) {
+    // Take the count before looking at any state so that a wake up that
+    // arrives while we check is not lost
+    wakeup_count = GetReadWakeupCount();
     if (abort_request_) {
       break;
     }
@@ -757,9 +989,53 @@ int VideoState::ReadPacketsToQueues() {
       queue_attachments_request_ = true;
     }
 
+    // Once the scrubbing seeks settle, seek again to show the exact frame, or
+    // to continue playing from the frame shown; an approximate scrub waits
+    // for the exact seek that ends it
+    if (is_scrubbing_ && !is_approximate_scrub_ &&
+        av_gettime_relative() - last_seek_request_time_ >= kScrubInterval) {
+      is_scrubbing_ = false;
+      if (!is_paused_ && !isnan(GetTime())) {
+        RequestSeek((int64_t)(GetTime() * AV_TIME_BASE), 0);
+      } else {
+        // Again to the last seek time
+        std::unique_lock<std::mutex> locker(seek_mutex_);
+        seek_request_time_ = av_gettime_relative();
+        seek_request_ = true;
+      }
+    }
+
+    // Decode keyframes only when playing fast or scrubbing
+    bool keyframe_only =
+        p_image_stream_ && p_image_decoder_ &&
+        (is_scrubbing_ || fabs(current_speed_) > keyframe_only_speed_);
+    if (keyframe_only != is_keyframe_only_) {
+      SetKeyframeOnly(keyframe_only);
+      if (is_reversing_) {
+        StartReverse(reverse_last_pts_);
+      } else if (!keyframe_only && !seek_request_ && !isnan(GetTime())) {
+        // Resume decoding every frame, and the audio, from the frame shown
+        RequestSeek((int64_t)(GetTime() * AV_TIME_BASE), 0);
+      }
+    }
+
     if (seek_request_) {
-      ret =
-          av_seek_frame(p_format_context, -1, seek_time_, AVSEEK_FLAG_BACKWARD);
+      // Take the latest request, seeks arriving from now on replace it; so
+      // does it replace the seek under way if its frame has not come yet
+      std::unique_lock<std::mutex> seek_locker(seek_mutex_);
+      int64_t seek_time = seek_time_;
+      in_flight_seek_time_ = seek_time;
+      int64_t superseded_seek_id = in_flight_seek_id_;
+      in_flight_seek_id_ = seek_id_;
+      seek_id_ = 0;
+      seek_done_ = false;
+      seek_start_time_ = seek_request_time_;
+      seek_taken_ = true;
+      seek_request_ = false;
+      seek_locker.unlock();
+      ReportSeek(superseded_seek_id, NAN);
+
+      ret = SeekToKeyframe(seek_time);
 
       if (ret < 0) {
         av_log(NULL, AV_LOG_ERROR, "%s: error while seeking\n",
@@ -774,15 +1050,19 @@ int VideoState::ReadPacketsToQueues() {
           p_image_packet_queue_->PutFlushPacket();
         }
         p_external_clock_->SetTime(
-            seek_time_ / (double)AV_TIME_BASE,
+            seek_time / (double)AV_TIME_BASE,
             0); // 0 != -1 which will return NAN for interim time
       }
-      seek_request_ = false;
       seek_done_ =
           true; // Seek is done here, not in the Audio and Frame packet threads
+      seek_taken_ = false;
       queue_attachments_request_ = true;
       end_of_file_ = false;
 
+      if (is_reversing_) {
+        StartReverse(seek_time / (double)AV_TIME_BASE);
+      }
+
       if (is_paused_) {
         step_to_next_frame_callback(); // Assume that the step callback is set
                                        // -- otherwise fail hard here
@@ -801,17 +1081,29 @@ int VideoState::ReadPacketsToQueues() {
       queue_attachments_request_ = false;
     }
 
+    // Play backward at negative speeds, pauses and steps decode forward
+    bool reverse = current_speed_ < 0 && !is_paused_ && !is_stepping_;
+    if (reverse && !is_reversing_) {
+      double pts = GetTime();
+      StartReverse(isnan(pts) ? seek_time_ / (double)AV_TIME_BASE : pts);
+    } else if (!reverse && is_reversing_) {
+      StopReverse();
+      continue; // to the seek
+    }
+    if (is_reversing_) {
+      WaitForReadWakeup(wakeup_count);
+      continue;
+    }
+
     /* if the queues are full, no need to read more */
-    if (p_audio_packet_queue_->GetSize() + p_image_packet_queue_->GetSize() >
-            kMaxQueueSize ||
-        (StreamHasEnoughPackets(*p_audio_stream_, audio_stream_index_,
-                                *p_audio_packet_queue_) &&
+    if (p_audio_packet_queue_->IsFull() || p_image_packet_queue_->IsFull() ||
+        ((is_keyframe_only_ ||
+          StreamHasEnoughPackets(*p_audio_stream_, audio_stream_index_,
+                                 *p_audio_packet_queue_)) &&
          StreamHasEnoughPackets(*p_image_stream_, image_stream_index_,
                                 *p_image_packet_queue_))) {
-      /* wait 10 ms */
-      std::unique_lock<std::mutex> locker(wait_mutex);
-      continue_read_thread_.wait_for(locker, std::chrono::milliseconds(10));
-      locker.unlock();
+      // Wait until a consumer frees space or a request comes in
+      WaitForReadWakeup(wakeup_count);
       continue;
     }
     if (!is_paused_ &&
@@ -842,10 +1134,8 @@ int VideoState::ReadPacketsToQueues() {
       if (p_format_context->pb && p_format_context->pb->error) {
         break;
       }
-      /* wait 10 ms */
-      std::unique_lock<std::mutex> locker(wait_mutex);
-      continue_read_thread_.wait_for(locker, std::chrono::milliseconds(10));
-      locker.unlock();
+      // Wait for a seek, or for the queues to drain when looping
+      WaitForReadWakeup(wakeup_count);
       continue;
     } else {
       end_of_file_ = false;
@@ -867,10 +1157,12 @@ int VideoState::ReadPacketsToQueues() {
                 (double)GetStartTime() / 1000000 <=
             ((double)max_duration_ / 1000000);
 
-    if (pkt->stream_index == audio_stream_index_ && pkt_in_play_range) {
+    if (pkt->stream_index == audio_stream_index_ && pkt_in_play_range &&
+        !is_keyframe_only_) {
       p_audio_packet_queue_->Put(pkt);
     } else if (pkt->stream_index == image_stream_index_ && pkt_in_play_range &&
-               !(p_image_stream_->disposition & AV_DISPOSITION_ATTACHED_PIC)) {
+               !(p_image_stream_->disposition & AV_DISPOSITION_ATTACHED_PIC) &&
+               (!is_keyframe_only_ || pkt->flags & AV_PKT_FLAG_KEY)) {
       p_image_packet_queue_->Put(pkt);
     } else {
       av_packet_unref(pkt);
@@ -911,15 +1203,18 @@ int VideoState::DecodeAudioPacketsToFrames() {
 
     if (got_frame) {
       int64_t audio_seek_pts =
-          seek_time_ / (audio_time_base * (double)AV_TIME_BASE);
+          in_flight_seek_time_ / (audio_time_base * (double)AV_TIME_BASE);
       if (p_frame->pts < audio_seek_pts) {
         av_frame_unref(p_frame);
         continue;
       }
 
-      if (seek_done_) {
-        queue_attachments_request_ = true;
-        continue_after_seek_.notify_one();
+      // Seeks land on the image when there is one
+      if (seek_done_ && !p_image_stream_) {
+        CompleteSeek(p_audio_packet_queue_, p_audio_decoder_->GetSerial(),
+                     p_frame->pts == AV_NOPTS_VALUE
+                         ? NAN
+                         : p_frame->pts / (double)p_frame->sample_rate);
       }
 
       tb = av_make_q(1, p_frame->sample_rate);
@@ -976,13 +1271,14 @@ int VideoState::DecodeImagePacketsToFrames() {
     }
 
     int64_t image_seek_pts =
-        seek_time_ / (image_time_base * (double)AV_TIME_BASE);
+        in_flight_seek_time_ / (image_time_base * (double)AV_TIME_BASE);
     // Calculate the frame position in the file
     frame_pos =
         (p_frame->pts * time_base.num * p_image_stream_->r_frame_rate.num) /
         (time_base.den * p_image_stream_->r_frame_rate.den);
 
-    if (p_frame->pts < image_seek_pts) {
+    // Keyframes only show the keyframe before the seek time
+    if (p_frame->pts < image_seek_pts && !is_keyframe_only_) {
        av_frame_unref(p_frame);
       continue;
     }
@@ -1002,8 +1298,7 @@ int VideoState::DecodeImagePacketsToFrames() {
     // Actually, it would be best after we displayed an image but
     // we don't have that signal here
     if (seek_done_) {
-      queue_attachments_request_ = true;
-      continue_after_seek_.notify_one();
+      CompleteSeek(p_image_packet_queue_, p_image_decoder_->GetSerial(), pts);
     }
 
     av_frame_unref(p_frame);
@@ -1047,6 +1342,7 @@ int VideoState::StartStream() {
   AVDictionary *p_format_opts = nullptr;
   AVDictionary *codec_opts = nullptr;
   AVDictionary **pp_opts_dict = nullptr;
+  int64_t probe_size;
 
   memset(st_index, -1, sizeof(st_index));
   last_video_stream_ = image_stream_index_ = -1;
@@ -1092,7 +1388,22 @@ int VideoState::StartStream() {
     goto fail;
   }
 
+  // With the parameters restored from the cache, probing stops after the
+  // first packet of each stream; demuxers that find streams while reading
+  // would still read up to the probe size to look for more
+  p_media_cache_ = MediaCache::Create(media_cache_dir_, filename_);
+  if (p_media_cache_) {
+    bool hit = p_media_cache_->Load() &&
+               p_media_cache_->RestoreProbe(p_format_context);
+    media_cache_status_ = hit ? MediaCache::kHit : MediaCache::kMiss;
+  }
+  probe_size = p_format_context->probesize;
+  if (media_cache_status_ == MediaCache::kHit &&
+      (p_format_context->ctx_flags & AVFMTCTX_NOHEADER)) {
+    p_format_context->probesize = kCachedProbeSize;
+  }
   ret = avformat_find_stream_info(p_format_context, pp_opts_dict);
+  p_format_context->probesize = probe_size;
   for (i = 0; i < p_format_context->nb_streams; i++) {
     av_dict_free(&pp_opts_dict[i]);
   }
@@ -1104,6 +1415,16 @@ int VideoState::StartStream() {
     goto fail;
   }
 
+  if (media_cache_status_ == MediaCache::kHit) {
+    // The short probe may have seen too little to estimate these
+    p_media_cache_->RestoreTimings(p_format_context);
+    av_log(NULL, AV_LOG_INFO, "%s: restored probe from media cache\n",
+           filename_);
+  } else if (media_cache_status_ == MediaCache::kMiss) {
+    p_media_cache_->StoreProbe(p_format_context);
+    p_media_cache_->Save(nullptr);
+  }
+
   if (p_format_context->pb) {
     p_format_context->pb->eof_reached =
         0; // FIXME hack, ffplay maybe should not use
@@ -1180,6 +1501,23 @@ int VideoState::StartStream() {
     sync_type_ = AV_SYNC_VIDEO_MASTER;
   }
 
+  if (p_image_stream_) {
+    int frame_bytes = av_image_get_buffer_size(
+        (AVPixelFormat)p_image_stream_->codecpar->format, frame_width_,
+        frame_height_, 1);
+    image_frame_bytes_ =
+        frame_bytes > 0 ? frame_bytes : 4LL * frame_width_ * frame_height_;
+  }
+  int memory_governor_id = MemoryGovernor::GetInstance().Add(
+      image_frame_bytes_,
+      kVideoPictureQueueSize * image_frame_bytes_ + kMinQueueSize,
+      memory_priority_, [this](int64_t bytes) { SetMemoryBudget(bytes); },
+      [this] { return GetMemoryUsage(); });
+  memory_governor_id_ = memory_governor_id;
+  // A priority set between Add and publishing the id did not reach the governor
+  MemoryGovernor::GetInstance().SetPriority(memory_governor_id,
+                                            memory_priority_);
+
   if (update_player_state_callbacks[PlayerState::Ready]) {
     update_player_state_callbacks[PlayerState::Ready]();
   }
@@ -1192,6 +1530,13 @@ int VideoState::StartStream() {
     goto fail;
   }
 
+  // Without the index seeks still work, so a failure here is not fatal
+  if (image_stream_index_ >= 0 && p_format_context->pb &&
+      (p_format_context->pb->seekable & AVIO_SEEKABLE_NORMAL)) {
+    p_keyframe_index_thread_ =
+        new (std::nothrow) std::thread([this] { BuildKeyframeIndex(); });
+  }
+
   return 0;
 
 fail:
@@ -1234,31 +1579,158 @@ void VideoState::SetPts(double pts, int serial) {
 
 // FIXME Seek to end of stream
 /* seek in the stream */
-void VideoState::Seek(int64_t time, int64_t distance) {
+void VideoState::Seek(int64_t time, int64_t distance, SeekMode mode,
+                      int64_t seek_id) {
+  int64_t step = (int64_t)((1 / frame_rate_) * AV_TIME_BASE);
+  int64_t now = av_gettime_relative();
+  switch (mode) {
+  case SEEK_AUTO:
+    is_approximate_scrub_ = false;
+    if (llabs(distance) >= kScrubMinDistance &&
+        now - last_seek_request_time_ < kScrubInterval) {
+      is_scrubbing_ = true;
+    }
+    break;
+  case SEEK_EXACT:
+    is_approximate_scrub_ = false;
+    is_scrubbing_ = false;
+    break;
+  case SEEK_APPROXIMATE:
+    is_approximate_scrub_ = true;
+    is_scrubbing_ = true;
+    break;
+  }
+  last_seek_request_time_ = now;
   // Only seek if
-  // - there is no seek request in progress AND
   // - this seek time is different from the last OR
   //        this seek is different than the current PTS OR
   //		the last seek was not precise (the we might not be at seek time)
-  int64_t step = (int64_t)((1 / frame_rate_) * AV_TIME_BASE);
-  if (!seek_request_ &&
-      (fabs(time - seek_time_) >= step ||
-       fabs(time - (int64_t)(GetTime() * AV_TIME_BASE)) >= step)) {
-    std::mutex mtx;
-
-    seek_time_ = time;
-    seek_distance_ = distance;
-
-    seek_request_ = true;
-    seek_done_ = false;
-    continue_read_thread_.notify_one();
-    std::unique_lock<std::mutex> lck(mtx);
-    // Blocks until the seek request is done which we defined by
-    // enquing either an image frame or audio frame
-    // Important(Reda): Added a time out for the wait, to avoid dead lock while
-    // stressing the jog or seek
-    continue_after_seek_.wait_for(lck, std::chrono::milliseconds(10),
-                                  [this] { return this->seek_done_; });
+  std::unique_lock<std::mutex> locker(seek_mutex_);
+  if (fabs(time - seek_time_) >= step ||
+      fabs(time - (int64_t)(GetTime() * AV_TIME_BASE)) >= step) {
+    locker.unlock();
+    RequestSeek(time, distance, seek_id);
+    return;
+  }
+  // The same seek is under way, it lands for this one instead; or it is shown
+  int64_t superseded_seek_id = 0;
+  bool is_shown = false;
+  if (seek_request_) {
+    superseded_seek_id = seek_id_;
+    seek_id_ = seek_id;
+  } else if (seek_done_) {
+    superseded_seek_id = in_flight_seek_id_;
+    in_flight_seek_id_ = seek_id;
+  } else {
+    is_shown = true;
+  }
+  locker.unlock();
+  ReportSeek(superseded_seek_id, NAN);
+  if (is_shown) {
+    ReportSeek(seek_id, GetTime());
+  }
+}
+
+void VideoState::SeekToFrame(int frame_number, int64_t seek_id) {
+  const KeyframeIndex *p_index = p_keyframe_index_;
+  int64_t time;
+  int64_t pts;
+
+  if (!p_image_stream_) {
+    ReportSeek(seek_id, NAN);
+    return;
+  }
+  if (p_index && p_index->GetNumberOfFrames() > 0) {
+    frame_number = av_clip(frame_number, 0, p_index->GetNumberOfFrames() - 1);
+    p_index->GetFramePts(frame_number, &pts);
+    // Half a tick past the pts: the image seek filter truncates the seek time
+    // to the time base, so it keeps this frame but none before
+    AVRational time_base = p_index->GetTimeBase();
+    time = av_rescale(2 * pts + 1, (int64_t)time_base.num * AV_TIME_BASE,
+                      2 * (int64_t)time_base.den);
+  } else if (frame_rate_ > 0) {
+    int64_t start_time = p_image_stream_->start_time == AV_NOPTS_VALUE
+                             ? 0
+                             : av_rescale_q(p_image_stream_->start_time,
+                                            p_image_stream_->time_base,
+                                            av_make_q(1, AV_TIME_BASE));
+    frame_number = FFMAX(frame_number, 0);
+    time = start_time +
+           (int64_t)((frame_number + 0.5) / frame_rate_ * AV_TIME_BASE);
+  } else {
+    ReportSeek(seek_id, NAN);
+    return;
+  }
+  // Frames of a variable rate may be closer than the step Seek takes for the
+  // same target, so always seek
+  is_approximate_scrub_ = false;
+  is_scrubbing_ = false;
+  last_seek_request_time_ = av_gettime_relative();
+  double now = GetTime();
+  RequestSeek(time, isnan(now) ? 0 : time - (int64_t)(now * AV_TIME_BASE),
+              seek_id);
+}
+
+int VideoState::GetFrameNumber(double time) const {
+  const KeyframeIndex *p_index = p_keyframe_index_;
+
+  if (!p_image_stream_ || isnan(time)) {
+    return -1;
+  }
+  if (p_index && p_index->GetNumberOfFrames() > 0) {
+    return p_index->GetFrameNumber(
+        llrint(time / av_q2d(p_index->GetTimeBase())));
+  }
+  if (frame_rate_ > 0) {
+    double start_time = p_image_stream_->start_time == AV_NOPTS_VALUE
+                            ? 0
+                            : p_image_stream_->start_time *
+                                  av_q2d(p_image_stream_->time_base);
+    return FFMAX((int)floor((time - start_time) * frame_rate_ + 0.001), 0);
+  }
+  return -1;
+}
+
+void VideoState::RequestSeek(int64_t time, int64_t distance,
+                             int64_t seek_id) {
+  std::unique_lock<std::mutex> locker(seek_mutex_);
+  // The reader has not taken the previous seek or not shown its first frame
+  if (seek_request_ || seek_done_) {
+    num_seeks_superseded_++;
+  }
+  int64_t superseded_seek_id = seek_request_ ? seek_id_ : 0;
+  seek_time_ = time;
+  seek_distance_ = distance;
+  seek_id_ = seek_id;
+  seek_request_time_ = av_gettime_relative();
+  seek_request_ = true;
+  locker.unlock();
+  ReportSeek(superseded_seek_id, NAN);
+  WakeUpReadThread();
+}
+
+void VideoState::CompleteSeek(const PacketQueue *p_packet_queue, int serial,
+                              double pts) {
+  std::unique_lock<std::mutex> locker(seek_mutex_);
+  // Also false when the other decoder was first
+  if (!seek_done_ || serial != p_packet_queue->GetSerial()) {
+    return;
+  }
+  seek_done_ = false;
+  int64_t seek_id = in_flight_seek_id_;
+  in_flight_seek_id_ = 0;
+  locker.unlock();
+
+  queue_attachments_request_ = true;
+  seek_latency_ = (av_gettime_relative() - seek_start_time_) / MICRO;
+  av_log(NULL, AV_LOG_VERBOSE, "Seek took %.1f ms, %d superseded\n",
+         seek_latency_ * 1000, num_seeks_superseded_.exchange(0));
+  ReportSeek(seek_id, pts);
+}
+
+void VideoState::ReportSeek(int64_t seek_id, double pts) {
+  if (seek_id && seek_completed_callback) {
+    seek_completed_callback(seek_id, pts);
   }
 }
 
@@ -1281,12 +1753,11 @@ double VideoState::ComputeTargetDelay(double delay) {
 
   /* update delay to follow master synchronisation source */
   if (GetMasterSyncType() != AV_SYNC_VIDEO_MASTER) {
-    Clock *p_master_clock = nullptr;
-    GetMasterClock(&p_master_clock);
-
     /* if video is slave, we try to correct big delays by
     duplicating or deleting a frame */
-    diff = p_image_clock_->GetTime() - p_master_clock->GetTime();
+    // The image clock holds the pts of the frame shown at
+    // frame_last_shown_time_, compare it with the master at that time
+    diff = p_image_clock_->GetTime() - GetMasterTime(frame_last_shown_time_);
 
     /* skip or repeat frame. We take into account the
     delay to compute the threshold. I still don't know
@@ -1311,6 +1782,18 @@ double VideoState::ComputeTargetDelay(double delay) {
 
 /* get the current synchronization type */
 VideoState::AvSyncType VideoState::GetMasterSyncType() const {
+  // Audio is silent while playing backward, which groups don't do
+  if (is_reversing_) {
+    return AV_SYNC_VIDEO_MASTER;
+  }
+  // Image and audio follow the group, also at keyframes only
+  if (has_group_clock_) {
+    return AV_SYNC_EXTERNAL_CLOCK;
+  }
+  // Audio is silent while playing keyframes only
+  if (is_keyframe_only_) {
+    return AV_SYNC_VIDEO_MASTER;
+  }
   if (sync_type_ == AV_SYNC_VIDEO_MASTER) {
     if (p_image_stream_ != nullptr) {
       return AV_SYNC_VIDEO_MASTER;
@@ -1339,6 +1822,104 @@ void VideoState::GetMasterClock(Clock **pp_clock) const {
   }
 }
 
+void VideoState::SetMemoryPriority(double priority) {
+  memory_priority_ = priority;
+  int memory_governor_id = memory_governor_id_;
+  if (memory_governor_id >= 0) {
+    MemoryGovernor::GetInstance().SetPriority(memory_governor_id, priority);
+  }
+}
+
+int64_t VideoState::GetMemoryBudget() const {
+  int memory_governor_id = memory_governor_id_;
+  if (memory_governor_id < 0) {
+    return 0;
+  }
+  return MemoryGovernor::GetInstance().GetBudget(memory_governor_id);
+}
+
+int64_t VideoState::GetMemoryUsage() const {
+  int64_t reverse_bytes = 0;
+  {
+    std::lock_guard<std::mutex> lock(reverse_playback_mutex_);
+    if (p_reverse_playback_) {
+      reverse_bytes = p_reverse_playback_->GetBytes();
+    }
+  }
+  return p_audio_packet_queue_->GetSize() + p_image_packet_queue_->GetSize() +
+         p_image_frame_queue_->GetNumFrames() * image_frame_bytes_ +
+         (frame_cache_usage_callback ? frame_cache_usage_callback() : 0) +
+         reverse_bytes;
+}
+
+void VideoState::SetMemoryBudget(int64_t bytes) {
+  int64_t share = bytes;
+  if (image_frame_bytes_ > 0 && frame_cache_budget_callback) {
+    int64_t cache_bytes = share / kFrameCacheShare;
+    frame_cache_budget_callback(cache_bytes);
+    bytes -= cache_bytes;
+  }
+  if (image_frame_bytes_ > 0) {
+    int64_t reverse_bytes = share / kReversePlaybackShare;
+    std::lock_guard<std::mutex> lock(reverse_playback_mutex_);
+    reverse_playback_budget_ = reverse_bytes;
+    if (p_reverse_playback_) {
+      p_reverse_playback_->SetBudget(reverse_bytes);
+    }
+    bytes -= reverse_bytes;
+  }
+  int64_t image_bytes = 0;
+  if (image_frame_bytes_ > 0) {
+    // Decoded images take up to half of the share, packets the rest
+    int num_frames = (int)av_clip64(bytes / 2 / image_frame_bytes_,
+                                    kVideoPictureQueueSize,
+                                    kMaxVideoPictureQueueSize);
+    p_image_frame_queue_->SetMaxNumFrames(num_frames);
+    image_bytes = num_frames * image_frame_bytes_;
+  }
+  int64_t packet_bytes =
+      av_clip64(bytes - image_bytes, kMinQueueSize, INT_MAX);
+  // Audio packets are a small part of most media, a quarter holds many seconds
+  int64_t audio_bytes = !p_image_stream_  ? packet_bytes
+                        : p_audio_stream_ ? packet_bytes / kAudioPacketQueueShare
+                                          : 0;
+  p_audio_packet_queue_->SetMaxSize((int)audio_bytes);
+  p_image_packet_queue_->SetMaxSize((int)(packet_bytes - audio_bytes));
+  // The reader may read further
+  WakeUpReadThread();
+}
+
+double VideoState::GetMasterTime(double wall_time) const {
+  if (has_group_clock_) {
+    std::lock_guard<std::mutex> lock(group_clock_mutex_);
+    if (group_clock_) {
+      return group_clock_(wall_time);
+    }
+  }
+  Clock *p_master_clock = nullptr;
+  GetMasterClock(&p_master_clock);
+  return p_master_clock->GetTime();
+}
+
+void VideoState::SetGroupClock(
+    const std::function<double(double)> &group_clock) {
+  std::lock_guard<std::mutex> lock(group_clock_mutex_);
+  group_clock_ = group_clock;
+  has_group_clock_ = (bool)group_clock;
+}
+
+double VideoState::GetGroupDrift() const {
+  std::lock_guard<std::mutex> lock(group_clock_mutex_);
+  if (!group_clock_) {
+    return NAN;
+  }
+  if (HasImageStream()) {
+    return p_image_clock_->GetTime() - group_clock_(frame_last_shown_time_);
+  }
+  return p_audio_clock_->GetTime() -
+         group_clock_(av_gettime_relative() / MICRO);
+}
+
 /* prepare a new audio buffer */
 #ifdef SDL_ENABLED
 void VideoState::GetAudioCallback(uint8_t *stream, int len, int audio_volume) {
@@ -1386,12 +1967,17 @@ void VideoState::GetAudioCallback(uint8_t *stream, int len) {
   }
   audio_write_buffer_size_ = audio_buffer_size_ - audio_buffer_index_;
   if (!isnan(audio_pts_)) {
-    /* Let's assume the audio driver that is used by SDL has two periods. */
-    p_audio_clock_->SetTime(
-        audio_pts_ -
-            (double)(2 * audio_hw_buffer_size_ + audio_write_buffer_size_) /
-                audio_params_target_.bytes_per_sec_,
-        audio_serial_);
+    double bytes_per_sec = audio_params_target_.bytes_per_sec_;
+    double latency = audio_output_latency_;
+    if (latency < 0) {
+      /* Let's assume the audio driver that is used by SDL has two periods. */
+      latency = (double)(2 * audio_hw_buffer_size_) / bytes_per_sec;
+    }
+    p_audio_clock_->SetTime(audio_pts_ - latency -
+                                (double)audio_write_buffer_size_ /
+                                    bytes_per_sec -
+                                audio_sync_delay_,
+                            audio_serial_);
     // Sync external clock to audio clock
     Clock::SyncMasterToSlave(p_external_clock_, p_audio_clock_,
                              kAvNoSyncThreshold);
@@ -1399,11 +1985,15 @@ void VideoState::GetAudioCallback(uint8_t *stream, int len) {
 }
 
 int VideoState::SetSpeed(double requested_speed) {
+  // Only video plays backward
+  if (requested_speed < 0 && !p_image_stream_) {
+    return -1;
+  }
   // If we request a different rates
   if (current_speed_ != requested_speed) {
     requested_speed_ = requested_speed;
     speed_request_ = true;
-    continue_read_thread_.notify_one();
+    WakeUpReadThread();
   }
   return 0;
 }
@@ -12,8 +12,12 @@
 #include "Clock.h"
 #include "Decoder.h"
 #include "FrameQueue.h"
+#include "KeyframeIndex.h"
+#include "MediaCache.h"
+#include "MemoryGovernor.h"
 #include "PacketQueue.h"
 #include "PlayerState.h"
+#include "ReversePlayback.h"
 
 extern "C" {
 #include "libavcodec/avfft.h"
@@ -53,6 +57,13 @@ public:
     AV_SYNC_EXTERNAL_CLOCK, /* synchronize to an external clock */
   };
 
+  enum SeekMode {
+    SEEK_AUTO,  /* approximate while scrubbing, exact otherwise */
+    SEEK_EXACT, /* decode up to the seek time */
+    SEEK_APPROXIMATE, /* show the keyframe before the seek time until an exact
+                         seek */
+  };
+
   static double kAvSyncThresholdMax;
   static int kEnableSeekByBytes;
 
@@ -88,6 +99,22 @@ public:
     step_to_next_frame_callback = func;
   }
 
+  // A frame cache of the player takes part of the memory share; the governor
+  // calls set_budget with its part. Set before StartStream.
+  inline void
+  SetFrameCacheCallbacks(const std::function<void(int64_t)> &set_budget,
+                         const std::function<int64_t()> &get_usage) {
+    frame_cache_budget_callback = set_budget;
+    frame_cache_usage_callback = get_usage;
+  }
+
+  // Seeks with an id are reported with the pts of their first frame once it
+  // is queued, or with NaN when a newer seek replaced them
+  inline void
+  SetSeekCompletedCallback(const std::function<void(int64_t, double)> &func) {
+    seek_completed_callback = func;
+  }
+
   /* Controls */
   inline int GetFrameWidth() const { return frame_width_; }
   inline int GetFrameHeight() const { return frame_height_; }
@@ -104,18 +131,65 @@ public:
   } // current time in sec
   inline void ToggleMute() { is_muted_ = !is_muted_; }
   void SetPts(double pts, int serial);
-  void Seek(int64_t time, int64_t distance);
+  // Returns right away; a seek that arrives before the reader took the
+  // previous one replaces it
+  void Seek(int64_t time, int64_t distance, SeekMode mode = SEEK_AUTO,
+            int64_t seek_id = 0);
+  // Seeks exactly to the frame counted from 0 in presentation order; until the
+  // keyframe index is built frames are counted at the nominal frame rate
+  void SeekToFrame(int frame_number, int64_t seek_id = 0);
+  // Number of the frame shown, -1 if unknown
+  inline int GetFrameNumber() const { return GetFrameNumber(GetTime()); }
+  // Number of the frame at time (in seconds), -1 if unknown
+  int GetFrameNumber(double time) const;
+  // Time from the request of the last completed seek to its first frame in
+  // sec, NaN before the first
+  inline double GetSeekLatency() const { return seek_latency_; }
+  // True from the request of a seek until its first frame is queued
+  inline bool IsSeeking() const {
+    // In the order the reader hands the seek on
+    return seek_request_ || seek_taken_ || seek_done_;
+  }
 
   inline bool IsPaused() const { return is_paused_; }
 
-  inline void SetPaused(bool is_paused) { is_paused_ = is_paused; }
+  inline void SetPaused(bool is_paused) {
+    is_paused_ = is_paused;
+    // The reader only loops at the end of file when not paused
+    WakeUpReadThread();
+  }
 
   inline int IsStepping() const { return is_stepping_; }
-  inline void SetStepping(bool is_stepping) { is_stepping_ = is_stepping; }
+  inline void SetStepping(bool is_stepping) {
+    is_stepping_ = is_stepping;
+    // A step interrupts reverse playback, the reader switches to decoding
+    // forward
+    if (is_stepping) {
+      WakeUpReadThread();
+    }
+  }
+
+  // True while playing at a negative speed; the display then shows the frames
+  // of GetReverseFrame instead of the image frame queue
+  inline bool IsReversing() const { return is_reversing_; }
+
+  // Takes the next frame of reverse playback once it is due and sets the image
+  // clock to its pts; returns nullptr if the shown frame stays and lowers
+  // p_remaining_time to the time until the next frame is due. The caller frees
+  // the frame with av_frame_free.
+  AVFrame *GetReverseFrame(double *p_remaining_time, double *p_pts);
 
   int SetSpeed(double requested_speed);
   inline double GetSpeed() const { return current_speed_; }
 
+  // Playing faster than speed in either direction decodes keyframes only, as
+  // does scrubbing; infinity turns it off for playback
+  inline void SetKeyframeOnlySpeed(double speed) {
+    keyframe_only_speed_ = speed;
+    WakeUpReadThread();
+  }
+  inline bool IsKeyframeOnly() const { return is_keyframe_only_; }
+
   inline int GetNumFrameDropsEarly() const { return num_frame_drops_early_; }
 
   inline const void GetFilename(char **pp_filename) const {
@@ -179,6 +253,15 @@ public:
   /* get the current master clock */
   void GetMasterClock(Clock **pp_clock) const;
 
+  // Makes the clock of a playback group the master, which maps a wall time in
+  // sec to the stream time to show; nullptr returns to the own clocks once no
+  // thread reads the group clock anymore
+  void SetGroupClock(const std::function<double(double)> &group_clock);
+
+  // Pts of the frame shown minus the group time when it was due in sec, for
+  // audio only the audio clock minus the group time now; NaN if not grouped
+  double GetGroupDrift() const;
+
   void TogglePauseAndMute(bool mute = false);
 
   inline double GetFrameRate() const {
@@ -192,24 +275,70 @@ public:
   void GetAudioCallback(uint8_t *stream, int len);
 #endif // SDL_ENABLED
 
+  // Seconds of audio queued between GetAudioCallback and the speaker; if
+  // negative two hardware buffers are assumed, like ffplay does for SDL
+  inline void SetAudioOutputLatency(double latency) {
+    audio_output_latency_ = latency;
+  }
+
+  // Extra delay of the audio output in seconds, e.g. for external speakers
+  inline void SetAudioSyncDelay(double delay) { audio_sync_delay_ = delay; }
+  inline double GetAudioSyncDelay() const { return audio_sync_delay_; }
+
   inline bool GetAudioDisabled() const { return audio_disabled_; }
 
   inline bool GetVideoDisabled() const { return video_disabled_; }
 
+  // Directory of the media cache, nullptr or empty to disable it; takes effect
+  // in StartStream
+  void SetMediaCacheDirectory(const char *cache_dir);
+  inline MediaCache::Status GetMediaCacheStatus() const {
+    return media_cache_status_;
+  }
+
+  inline int GetImageStreamIndex() const { return image_stream_index_; }
+
+  // Index of the image stream once the background scan finished, nullptr
+  // before; it lives as long as the video state
+  inline const KeyframeIndex *GetKeyframeIndex() const {
+    return p_keyframe_index_.load();
+  }
+
   inline int64_t GetStartTime() const {
     return start_time_ != AV_NOPTS_VALUE ? start_time_ : 0;
   }
 
+  // Weighs the share of this player in the budget of the memory governor,
+  // 1 by default
+  void SetMemoryPriority(double priority);
+  // Share of the budget of the memory governor in bytes, 0 until the stream
+  // started
+  int64_t GetMemoryBudget() const;
+  // Bytes of the packets, decoded images and cached frames held
+  int64_t GetMemoryUsage() const;
+
 private:
   bool abort_request_;
   std::atomic<bool> is_paused_;
   bool queue_attachments_request_;
 
-  bool seek_done_;
+  std::atomic<bool> seek_done_; // until the first frame after the seek
   std::atomic<bool> seek_request_;
+  std::atomic<bool> seek_taken_; // while the reader seeks the demuxer
   int64_t seek_time_;
   int64_t seek_distance_; // Signed distance between the current time and the
                           // seek time
+  // Guards the requested seek, the reader takes it while holding it
+  std::mutex seek_mutex_;
+  int64_t seek_request_time_;             // in microseconds
+  int64_t seek_id_;                       // of the requested seek, 0 if none
+  int64_t in_flight_seek_id_;             // of the seek taken by the reader
+  // Time of the seek taken by the reader, which the decoders skip to; a newer
+  // request changes the seek time but not this until the reader takes it
+  std::atomic<int64_t> in_flight_seek_time_;
+  std::atomic<int64_t> seek_start_time_;  // request time of the seek in flight
+  std::atomic<int> num_seeks_superseded_; // since the last completed seek
+  std::atomic<double> seek_latency_;
   AvSyncType sync_type_;  // default is AV_SYNC_AUDIO_MASTER
   double frame_rate_;     // Frame rate in Hz (frames per second)
 
@@ -235,8 +364,12 @@ private:
   int last_video_stream_;
   int last_audio_stream_;
 
+  // The reader thread sleeps on continue_read_thread_ when the queues are full
+  // or at the end of file until the wake up count changes. Consumers freeing
+  // queue space and seek, speed, pause, and abort requests increment it.
+  std::mutex read_wait_mutex_;
   std::condition_variable continue_read_thread_;
-  std::condition_variable continue_after_seek_;
+  uint64_t read_wakeup_count_;
 
   char *filename_;
 
@@ -254,6 +387,33 @@ private:
   Decoder *p_image_decoder_;
 
   std::thread *p_reader_thread_;
+  // Built in the background after the streams are open; seeks fall back to
+  // the container index until it is published
+  std::atomic<KeyframeIndex *> p_keyframe_index_;
+  std::atomic<bool> abort_keyframe_index_;
+  std::thread *p_keyframe_index_thread_;
+  char *media_cache_dir_;
+  MediaCache *p_media_cache_; // only used by StartStream and the index thread
+  MediaCache::Status media_cache_status_;
+  // Decodes backward while playing at a negative speed; started and stopped
+  // by the reader thread, which reads nothing meanwhile
+  ReversePlayback *p_reverse_playback_;
+  // Guards the creation of the reverse playback and its budget
+  mutable std::mutex reverse_playback_mutex_;
+  int64_t reverse_playback_budget_;
+  std::atomic<bool> is_reversing_;
+  std::atomic<double> reverse_last_pts_; // of the last frame shown backward
+  // Fast playback and scrubbing read and decode keyframes only and leave the
+  // audio silent; switched by the reader thread
+  std::atomic<double> keyframe_only_speed_;
+  std::atomic<bool> is_keyframe_only_;
+  // Far seeks in quick succession scrub: they show the keyframe before the
+  // seek time, and the reader seeks exactly once they settle
+  std::atomic<bool> is_scrubbing_;
+  // Approximate seeks scrub until an exact seek ends the scrub, however long
+  // the caller pauses in between
+  std::atomic<bool> is_approximate_scrub_;
+  std::atomic<int64_t> last_seek_request_time_; // in microseconds
   AVInputFormat *p_input_format_;
   AVFormatContext *p_format_context;
   struct SwrContext *swr_ctx;
@@ -276,6 +436,8 @@ private:
   unsigned int audio_buffer1_size_;
   int audio_buffer_index_; // in bytes
   int audio_write_buffer_size_;
+  std::atomic<double> audio_output_latency_;
+  std::atomic<double> audio_sync_delay_;
   std::atomic<bool> is_muted_;
   struct AudioParams audio_parms_source_;
   struct AudioParams audio_params_target_;
@@ -285,6 +447,24 @@ private:
   int num_loop_;                 // loop through the video
   double frame_last_shown_time_; // Time when the last frame was shown
 
+  // Memory governor registration from StartStream on, -1 before
+  std::atomic<int> memory_governor_id_;
+  std::atomic<double> memory_priority_;
+  int64_t image_frame_bytes_; // of a decoded image, 0 if none
+
+  // Splits the share of the memory budget among the frame cache, decoded
+  // images and the packet queues, which limit the reader
+  void SetMemoryBudget(int64_t bytes);
+
+  // Set by the playback group, read by the display and audio threads
+  mutable std::mutex group_clock_mutex_;
+  std::function<double(double)> group_clock_;
+  std::atomic<bool> has_group_clock_;
+
+  // Time of the master clock in sec; only the group clock moves with the wall
+  // time, the stream clocks hold the time they were last set to
+  double GetMasterTime(double wall_time) const;
+
   inline int CompareAudioFormats(enum AVSampleFormat fmt1,
                                  int64_t channel_count1,
                                  enum AVSampleFormat fmt2,
@@ -346,21 +526,58 @@ private:
   std::function<void()>
       destroy_callback; // TODO(fraudies): Possibly clean-up through destructor
   std::function<void()> step_to_next_frame_callback;
+  std::function<void(int64_t)> frame_cache_budget_callback;
+  std::function<int64_t()> frame_cache_usage_callback;
+  std::function<void(int64_t, double)> seek_completed_callback;
   VideoState(int audio_buffer_size);
 
   // get the current synchronization type
   AvSyncType GetMasterSyncType() const;
+
+  // Seeks the demuxer to the keyframe preceding time (in AV_TIME_BASE)
+  int SeekToKeyframe(int64_t time);
+  void BuildKeyframeIndex();
+
+  // Called by the reader thread; stopping requests a seek to the last frame
+  // shown so that forward playback continues from there
+  void StartReverse(double pts);
+  void StopReverse();
+  // Time between two frames shown backward, one frame if unknown
+  double ComputeReverseDuration(double last_pts, double pts) const;
+  // Called by the reader thread
+  void SetKeyframeOnly(bool keyframe_only);
+  // Requests a seek without touching the scrubbing state
+  void RequestSeek(int64_t time, int64_t distance, int64_t seek_id = 0);
+  // Called with the first frame queued after a seek; frames of a packet queue
+  // serial from before the seek are ignored
+  void CompleteSeek(const PacketQueue *p_packet_queue, int serial, double pts);
+  void ReportSeek(int64_t seek_id, double pts);
+
+  void WakeUpReadThread();
+  uint64_t GetReadWakeupCount();
+  // Blocks until the wake up count differs from count or abort is requested,
+  // while scrubbing at most until the seeks settle
+  void WaitForReadWakeup(uint64_t count);
   static bool kEnableShowFormat;
   static bool kEnableFastDecode;
   static bool kEnableGeneratePts;
-  static int kMaxQueueSize;
+  static int kMinQueueSize;
+  static int kAudioPacketQueueShare;
+  static int kFrameCacheShare;
+  static int kReversePlaybackShare;
   static int kMinFrames;
+  static int64_t kCachedProbeSize;
+  static int64_t kReversePlaybackBytes;
+  static double kKeyframeOnlySpeed;
+  static int64_t kScrubInterval;
+  static int64_t kScrubMinDistance;
   static double kAvSyncThresholdMin;
   static double kAvSyncFrameDupThreshold;
   static double kAvNoSyncThreshold;
   static int kSampleCorrectionMaxPercent;
   static int kAudioDiffAvgNum;
   static int kVideoPictureQueueSize;
+  static int kMaxVideoPictureQueueSize;
   static int kSampleQueueSize;
 
   static int CreateVideoState(VideoState **pp_video_state,
@@ -33,11 +33,12 @@ extern "C" {
  * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
  * Method:    ffmpegInitPlayer
  * Signature:
- * ([JLjava/lang/String;Ljavax/sound/sampled/AudioFormat;Ljava/awt/color/ColorSpace;I)I
+ * ([JLjava/lang/String;Ljavax/sound/sampled/AudioFormat;Ljava/awt/color/ColorSpace;IILjava/lang/String;)I
  */
 JNIEXPORT jint JNICALL
 Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegInitPlayer(
-    JNIEnv *, jobject, jlongArray, jstring, jobject, jobject, jint);
+    JNIEnv *, jobject, jlongArray, jstring, jobject, jobject, jint, jint,
+    jstring);
 
 /*
  * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
@@ -171,6 +172,15 @@ JNIEXPORT jint JNICALL
 Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetDuration(
     JNIEnv *, jobject, jlong, jdoubleArray);
 
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegGetStartTime
+ * Signature: (J[D)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetStartTime(
+    JNIEnv *, jobject, jlong, jdoubleArray);
+
 /*
  * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
  * Method:    ffmpegSeek
@@ -253,6 +263,294 @@ JNIEXPORT jint JNICALL
 Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegUpdateAudioData(
     JNIEnv *, jobject, jlong, jbyteArray);
 
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetAudioRingBuffer
+ * Signature: (JLjava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetAudioRingBuffer(
+    JNIEnv *, jobject, jlong, jobject);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetAudioBufferSize
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetAudioBufferSize(
+    JNIEnv *, jobject, jlong, jint);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetImageBuffer
+ * Signature: (JLjava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetImageBuffer(
+    JNIEnv *, jobject, jlong, jobject);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegUpdateImageBuffer
+ * Signature: (J[J[D)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegUpdateImageBuffer(
+    JNIEnv *, jobject, jlong, jlongArray, jdoubleArray);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetImageOutputSize
+ * Signature: (JII)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetImageOutputSize(
+    JNIEnv *, jobject, jlong, jint, jint);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetScalerFlags
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetScalerFlags(
+    JNIEnv *, jobject, jlong, jint);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegGetMediaCacheStatus
+ * Signature: (J[I)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetMediaCacheStatus(
+    JNIEnv *, jobject, jlong, jintArray);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegIsKeyframeIndexReady
+ * Signature: (J[Z)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegIsKeyframeIndexReady(
+    JNIEnv *, jobject, jlong, jbooleanArray);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetFrameCacheSize
+ * Signature: (JJ)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetFrameCacheSize(
+    JNIEnv *, jobject, jlong, jlong);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetKeyframeOnlyRate
+ * Signature: (JF)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetKeyframeOnlyRate(
+    JNIEnv *, jobject, jlong, jfloat);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSeekWithMode
+ * Signature: (JDIJ)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSeekWithMode(
+    JNIEnv *, jobject, jlong, jdouble, jint, jlong);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegGetSeekLatency
+ * Signature: (J[D)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetSeekLatency(
+    JNIEnv *, jobject, jlong, jdoubleArray);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSeekToFrame
+ * Signature: (JJJ)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSeekToFrame(
+    JNIEnv *, jobject, jlong, jlong, jlong);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegGetFrameNumber
+ * Signature: (J[J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetFrameNumber(
+    JNIEnv *, jobject, jlong, jlongArray);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetStateSnapshot
+ * Signature: (JLjava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetStateSnapshot(
+    JNIEnv *, jobject, jlong, jobject);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetEventRing
+ * Signature: (JLjava/nio/ByteBuffer;J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetEventRing(
+    JNIEnv *, jobject, jlong, jobject, jlong);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegWaitForEventRings
+ * Signature: (JJ)J
+ */
+JNIEXPORT jlong JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegWaitForEventRings(
+    JNIEnv *, jclass, jlong, jlong);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegCreatePlaybackGroup
+ * Signature: ([J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegCreatePlaybackGroup(
+    JNIEnv *, jclass, jlongArray);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegDisposePlaybackGroup
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegDisposePlaybackGroup(
+    JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegJoinPlaybackGroup
+ * Signature: (JJD)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegJoinPlaybackGroup(
+    JNIEnv *, jclass, jlong, jlong, jdouble);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegLeavePlaybackGroup
+ * Signature: (JJ)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegLeavePlaybackGroup(
+    JNIEnv *, jclass, jlong, jlong);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegPlayPlaybackGroup
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegPlayPlaybackGroup(
+    JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegPausePlaybackGroup
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegPausePlaybackGroup(
+    JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetPlaybackGroupRate
+ * Signature: (JF)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetPlaybackGroupRate(
+    JNIEnv *, jclass, jlong, jfloat);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSeekPlaybackGroup
+ * Signature: (JD)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSeekPlaybackGroup(
+    JNIEnv *, jclass, jlong, jdouble);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegGetPlaybackGroupTime
+ * Signature: (J[D)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetPlaybackGroupTime(
+    JNIEnv *, jclass, jlong, jdoubleArray);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegGetPlaybackGroupDrift
+ * Signature: (JJ[D)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetPlaybackGroupDrift(
+    JNIEnv *, jclass, jlong, jlong, jdoubleArray);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegGetPlaybackGroupDriftSpread
+ * Signature: (J[D)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetPlaybackGroupDriftSpread(
+    JNIEnv *, jclass, jlong, jdoubleArray);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetMemoryPriority
+ * Signature: (JD)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetMemoryPriority(
+    JNIEnv *, jobject, jlong, jdouble);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegGetMemoryUsage
+ * Signature: (J[J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetMemoryUsage(
+    JNIEnv *, jobject, jlong, jlongArray);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegSetMemoryBudget
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegSetMemoryBudget(
+    JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer
+ * Method:    ffmpegGetProcessMemoryUsage
+ * Signature: ([J)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_datavyu_plugins_ffmpeg_FfmpegJavaMediaPlayer_ffmpegGetProcessMemoryUsage(
+    JNIEnv *, jclass, jlongArray);
+
 #ifdef __cplusplus
 }
 #endif
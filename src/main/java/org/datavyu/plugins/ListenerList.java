@@ -0,0 +1,189 @@
+package org.datavyu.plugins;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Weakly referenced listeners of one kind, dispatched to by the event dispatcher of a player
+ *
+ * <p>The list is copied on write, so the dispatcher iterates it without locks while other
+ * threads add or remove listeners. A listener whose callback blocks the dispatcher for longer
+ * than SLOW_CALLBACK_NANOS is isolated: its later callbacks run in order on a small executor shared
+ * by all players, so that it no longer delays the other listeners and players. An isolated listener
+ * that falls behind by more than MAX_PENDING_CALLBACKS loses its oldest intermediate callbacks;
+ * terminal ones, e.g. onStop or onError, are always delivered.
+ */
+final class ListenerList<T> {
+
+  private static Logger logger = LogManager.getLogger(ListenerList.class);
+
+  static final long SLOW_CALLBACK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+  static final int MAX_PENDING_CALLBACKS = 64;
+
+  private static final int SLOW_LISTENER_THREADS = 2;
+
+  private static final Executor SLOW_LISTENER_EXECUTOR = createSlowListenerExecutor();
+
+  private static Executor createSlowListenerExecutor() {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            SLOW_LISTENER_THREADS,
+            SLOW_LISTENER_THREADS,
+            30,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+              Thread thread = new Thread(runnable, "Media Player SlowListenerThread");
+              thread.setDaemon(true);
+              return thread;
+            });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private final class Entry {
+    private final WeakReference<T> reference;
+    /** Null until a callback was slow; only the dispatcher sets it */
+    private volatile IsolatedListener isolated = null;
+
+    private Entry(T listener) {
+      reference = new WeakReference<>(listener);
+    }
+  }
+
+  private static final class PendingCallback {
+    private final Runnable callback;
+    private final boolean terminal;
+
+    private PendingCallback(Runnable callback, boolean terminal) {
+      this.callback = callback;
+      this.terminal = terminal;
+    }
+  }
+
+  /** Runs the callbacks of one listener in order on the slow listener executor */
+  private final class IsolatedListener implements Runnable {
+    private final ArrayDeque<PendingCallback> pending = new ArrayDeque<>();
+    private boolean scheduled = false;
+
+    synchronized void post(Runnable callback, boolean terminal) {
+      if (pending.size() >= MAX_PENDING_CALLBACKS && dropOldestIntermediate()) {
+        logger.warn("Dropped a callback of a listener that is behind");
+      }
+      pending.add(new PendingCallback(callback, terminal));
+      if (!scheduled) {
+        scheduled = true;
+        executor.execute(this);
+      }
+    }
+
+    /** Only terminal callbacks are pending when there is no intermediate one to drop */
+    private boolean dropOldestIntermediate() {
+      for (Iterator<PendingCallback> it = pending.iterator(); it.hasNext(); ) {
+        if (!it.next().terminal) {
+          it.remove();
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        PendingCallback pendingCallback;
+        synchronized (this) {
+          pendingCallback = pending.poll();
+          if (pendingCallback == null) {
+            scheduled = false;
+            return;
+          }
+        }
+        try {
+          pendingCallback.callback.run();
+        } catch (RuntimeException e) {
+          logger.error("Listener failed", e);
+        }
+      }
+    }
+  }
+
+  private final List<Entry> entries = new CopyOnWriteArrayList<>();
+  private final Executor executor;
+
+  ListenerList() {
+    this(SLOW_LISTENER_EXECUTOR);
+  }
+
+  /** @param executor Runs the callbacks of isolated listeners */
+  ListenerList(Executor executor) {
+    this.executor = executor;
+  }
+
+  void add(T listener) {
+    entries.add(new Entry(listener));
+  }
+
+  /** Removes the listener and the listeners that were garbage collected */
+  void remove(T listener) {
+    entries.removeIf(
+        entry -> {
+          T l = entry.reference.get();
+          return l == null || l == listener;
+        });
+  }
+
+  void clear() {
+    entries.clear();
+  }
+
+  /** Calls back every listener; one thread at a time may dispatch */
+  void dispatch(Consumer<T> callback) {
+    dispatch(callback, false);
+  }
+
+  /**
+   * Calls back every listener; one thread at a time may dispatch
+   *
+   * @param callback Calls back one listener
+   * @param terminal Whether the callback reports a transition that a lagging listener must not
+   *     miss, e.g. a stop or an error
+   */
+  void dispatch(Consumer<T> callback, boolean terminal) {
+    for (Entry entry : entries) {
+      T listener = entry.reference.get();
+      if (listener == null) {
+        entries.remove(entry);
+        continue;
+      }
+      IsolatedListener isolated = entry.isolated;
+      if (isolated != null) {
+        isolated.post(() -> callback.accept(listener), terminal);
+        continue;
+      }
+      long start = System.nanoTime();
+      try {
+        callback.accept(listener);
+      } catch (RuntimeException e) {
+        logger.error("Listener failed", e);
+      }
+      long nanos = System.nanoTime() - start;
+      if (nanos > SLOW_CALLBACK_NANOS) {
+        logger.warn(
+            "Listener " + listener + " took " + nanos / 1000000 + " ms, calling it back apart");
+        entry.isolated = new IsolatedListener();
+      }
+    }
+  }
+}
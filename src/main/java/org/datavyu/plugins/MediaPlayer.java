@@ -1,5 +1,7 @@
 package org.datavyu.plugins;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * This interface is similar to the one in javafx But at the time (July 2018) we
  * decided against making a dependency on javafx
@@ -194,6 +196,34 @@ public interface MediaPlayer {
    */
   void seek(double streamTime);
 
+  /**
+   * Seeks like {@link #seek(double)} and tells when the seek has landed. The future completes with
+   * the presentation time of the first frame shown for the seek, which may differ from streamTime
+   * for approximate seeks; it is cancelled if a newer seek replaces this one before it lands, and
+   * completes exceptionally if the player fails to seek.
+   *
+   * @param streamTime The time in seconds to which to seek.
+   * @param mode How precisely the seek lands
+   * @return The presentation time in seconds that the seek landed on
+   */
+  CompletableFuture<Double> seekAsync(double streamTime, SeekMode mode);
+
+  /**
+   * Seeks exactly to a frame, independent of the frame rate or start time of the media. Frames
+   * are counted from 0 in presentation order; numbers past the last frame seek to the last frame.
+   *
+   * @param frameNumber The number of the frame to show
+   * @return The presentation time in seconds of the frame, as for {@link #seekAsync}
+   */
+  CompletableFuture<Double> seekToFrame(long frameNumber);
+
+  /**
+   * Gets the number of the frame shown, counted like for {@link #seekToFrame}.
+   *
+   * @return The frame number, -1 if unknown
+   */
+  long getCurrentFrameNumber();
+
   /**
    * Get the width of the image in pixels
    *
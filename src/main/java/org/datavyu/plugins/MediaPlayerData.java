@@ -2,6 +2,7 @@ package org.datavyu.plugins;
 
 import javax.sound.sampled.AudioFormat;
 import java.awt.color.ColorSpace;
+import java.nio.ByteBuffer;
 
 /**
  * This provides the interface to the media player data when we
@@ -53,4 +54,34 @@ public interface MediaPlayerData extends MediaPlayer {
    * @param data The data that is updated on the native side
    */
   void updateImageData(byte[] data);
+
+  /**
+   * Update the direct byte buffer with the most recent image data to play
+   *
+   * <p>The buffer is registered with the native side on first use and the image is converted
+   * straight into its memory, avoiding any array pinning or copying through JNI. Callers should
+   * pass the same buffer on every call; passing a different buffer registers it instead.
+   *
+   * @param buffer The direct buffer that is updated on the native side
+   * @return The number of the frame held by the buffer; unchanged if no newer frame was written
+   */
+  long updateImageData(ByteBuffer buffer);
+
+  /**
+   * Returns the time until the next image is due for display, as computed by the last call to
+   * {@link #updateImageData(ByteBuffer)}
+   *
+   * @return The delay in seconds; infinite while paused, when no image comes until the state
+   *     changes or the player seeks
+   */
+  double getImageDisplayDelay();
+
+  /**
+   * Sets the size at which image data is delivered; the native side converts and scales the frame
+   * in one pass. Sizes larger than the source are clamped to the source size.
+   *
+   * @param width The width in pixels
+   * @param height The height in pixels
+   */
+  void setImageOutputSize(int width, int height);
 }
@@ -0,0 +1,205 @@
+package org.datavyu.plugins;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongBinaryOperator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.datavyu.util.DirectMemory;
+
+/**
+ * Reader side of the ring through which the native player posts its events
+ *
+ * <p>Instead of a JNI upcall per event from the decoding and display threads, the native side
+ * writes a compact record into a slot of this ring in shared direct memory and the event
+ * dispatcher of the player drains the ring in batches. Native threads claim slots by advancing the
+ * tail; a slot's sequence is its position while free and its position + 1 once the record is
+ * written, and the reader hands the slot back for the next lap by setting it to its position +
+ * capacity. The reader does not poll: once drained it parks the ring, and the native poster that
+ * finds the ring parked unparks it and signals the waiter thread that all rings share. The waiter
+ * blocks in a native call rather than the poster calling up into java, and wakes the readers of
+ * the rings that have events. The layout must match EventRing.h: the tail at byte 0, the capacity
+ * at byte 64, the overflow count at byte 72, the parked flag at byte 80, and the slots from byte
+ * 128 on, each holding the sequence, type, code, time, seek id, and posting time.
+ */
+final class NativeEventRing {
+  private static Logger logger = LogManager.getLogger(NativeEventRing.class);
+
+  static final int PLAYER_STATE = 1;
+  static final int MEDIA_ERROR = 2;
+  static final int SEEK_COMPLETED = 3;
+
+  private static final int CAPACITY_OFFSET = 64;
+  private static final int OVERFLOWS_OFFSET = 72;
+  private static final int PARKED_OFFSET = 80;
+  private static final int HEADER_SIZE = 128;
+
+  private static final int SEQUENCE_OFFSET = 0;
+  private static final int TYPE_OFFSET = 8;
+  private static final int CODE_OFFSET = 12;
+  private static final int TIME_OFFSET = 16;
+  private static final int SEEK_ID_OFFSET = 24;
+  private static final int POST_TIME_OFFSET = 32;
+  private static final int SLOT_SIZE = 40;
+
+  /** Bounds a wait of the waiter thread, which then looks at all rings */
+  private static final long WAIT_MILLIS = 1000;
+
+  /** Wakes up the reader of each ring, see wakeUpWith */
+  private static final Map<NativeEventRing, Runnable> readers = new ConcurrentHashMap<>();
+
+  private static Thread waiter = null;
+
+  /** Receives the drained events, on the thread draining */
+  interface Handler {
+    /**
+     * @param type One of PLAYER_STATE, MEDIA_ERROR, or SEEK_COMPLETED
+     * @param code The player event id for a state, the error code for an error
+     * @param time The presentation time of a state or where a seek landed
+     * @param seekId The id of the seek that completed
+     */
+    void onNativeEvent(int type, int code, double time, long seekId);
+  }
+
+  private final ByteBuffer buffer;
+  private final long address;
+  private final int mask;
+
+  /** The position of the next slot to read, only advanced by the drain */
+  private volatile long head = 0;
+
+  private volatile long eventCount = 0;
+  private volatile long totalLatency = 0;
+  private volatile long maxLatency = 0;
+
+  /** @param capacity The number of slots, a power of two */
+  NativeEventRing(int capacity) {
+    if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity " + capacity + " is not a power of two");
+    }
+    buffer = DirectMemory.allocateAligned(HEADER_SIZE + capacity * SLOT_SIZE);
+    address = DirectMemory.address(buffer);
+    mask = capacity - 1;
+    for (int slot = 0; slot < capacity; slot++) {
+      DirectMemory.putLongOrdered(address + HEADER_SIZE + slot * SLOT_SIZE, slot);
+    }
+    DirectMemory.putIntOrdered(address + CAPACITY_OFFSET, capacity);
+  }
+
+  /** The buffer to register with the native side */
+  ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * Passes at most maxEvents of the posted events to the handler in the order they were posted.
+   * One thread at a time may drain.
+   *
+   * @return The number of events passed
+   */
+  int drain(Handler handler, int maxEvents) {
+    int drained = 0;
+    while (drained < maxEvents) {
+      long slot = address + HEADER_SIZE + (head & mask) * SLOT_SIZE;
+      if (DirectMemory.getLongVolatile(slot + SEQUENCE_OFFSET) != head + 1) {
+        break; // empty, or the poster has not finished writing
+      }
+      int type = DirectMemory.getIntVolatile(slot + TYPE_OFFSET);
+      int code = DirectMemory.getIntVolatile(slot + CODE_OFFSET);
+      double time = Double.longBitsToDouble(DirectMemory.getLongVolatile(slot + TIME_OFFSET));
+      long seekId = DirectMemory.getLongVolatile(slot + SEEK_ID_OFFSET);
+      long postTime = DirectMemory.getLongVolatile(slot + POST_TIME_OFFSET);
+      DirectMemory.putLongOrdered(slot + SEQUENCE_OFFSET, head + mask + 1);
+      head++;
+      drained++;
+
+      long latency = Math.max(System.nanoTime() - postTime, 0);
+      totalLatency += latency;
+      maxLatency = Math.max(maxLatency, latency);
+      eventCount++;
+
+      handler.onNativeEvent(type, code, time, seekId);
+    }
+    return drained;
+  }
+
+  /**
+   * Parks the ring, so that the native side wakes the reader with the next event. Call from the
+   * thread draining, after draining.
+   *
+   * @return False if an event arrived before the ring was parked; the reader drains again then,
+   *     and may get a wake up it does not need
+   */
+  boolean park() {
+    DirectMemory.putIntVolatile(address + PARKED_OFFSET, 1);
+    long slot = address + HEADER_SIZE + (head & mask) * SLOT_SIZE;
+    return DirectMemory.getLongVolatile(slot + SEQUENCE_OFFSET) != head + 1;
+  }
+
+  /**
+   * Runs wakeUp, e.g. to schedule the reader, whenever the native side posted into this ring after
+   * it was parked. The first call starts the waiter thread, which calls waitForWakeUp with the wake
+   * up count it returned last, -1 at first, and WAIT_MILLIS. That native call returns the count of
+   * wake ups so far once it differs from the given one or the time is up.
+   */
+  void wakeUpWith(Runnable wakeUp, LongBinaryOperator waitForWakeUp) {
+    readers.put(this, wakeUp);
+    synchronized (NativeEventRing.class) {
+      if (waiter == null) {
+        waiter = new Thread(() -> waitForWakeUps(waitForWakeUp), "Media Player EventRingWaiter");
+        waiter.setDaemon(true);
+        waiter.start();
+      }
+    }
+  }
+
+  /** Stops waking the reader, e.g. once the native player is gone */
+  void close() {
+    readers.remove(this);
+  }
+
+  private static void waitForWakeUps(LongBinaryOperator waitForWakeUp) {
+    long wakeUps = -1;
+    try {
+      while (true) {
+        wakeUps = waitForWakeUp.applyAsLong(wakeUps, WAIT_MILLIS);
+        for (Map.Entry<NativeEventRing, Runnable> reader : readers.entrySet()) {
+          if (reader.getKey().hasEvents()) {
+            reader.getValue().run();
+          }
+        }
+      }
+    } catch (RuntimeException | LinkageError e) {
+      logger.error("Event ring waiter failed", e);
+    }
+  }
+
+  /** Whether the next slot is ready to read; any thread may ask */
+  private boolean hasEvents() {
+    long position = head;
+    long slot = address + HEADER_SIZE + (position & mask) * SLOT_SIZE;
+    return DirectMemory.getLongVolatile(slot + SEQUENCE_OFFSET) == position + 1;
+  }
+
+  /** The number of events drained so far */
+  long getEventCount() {
+    return eventCount;
+  }
+
+  /** Mean nanoseconds from posting an event to draining it, -1 if none was drained */
+  long getMeanLatency() {
+    long count = eventCount;
+    return count > 0 ? totalLatency / count : -1;
+  }
+
+  /** Most nanoseconds from posting an event to draining it, -1 if none was drained */
+  long getMaxLatency() {
+    return eventCount > 0 ? maxLatency : -1;
+  }
+
+  /** The number of events that did not fit; the native side dropped them */
+  long getOverflowCount() {
+    return DirectMemory.getLongVolatile(address + OVERFLOWS_OFFSET);
+  }
+}
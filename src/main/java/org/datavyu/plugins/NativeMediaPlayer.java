@@ -4,15 +4,20 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.datavyu.plugins.ffmpeg.FfmpegSdlMediaPlayer.SdlPlayerKeyEvent;
 
-import java.lang.ref.WeakReference;
 import java.net.URI;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.ListIterator;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongBinaryOperator;
 
 public abstract class NativeMediaPlayer implements MediaPlayer {
 
@@ -27,12 +32,27 @@ public abstract class NativeMediaPlayer implements MediaPlayer {
   public static final int eventPlayerFinished = 106;
   public static final int eventPlayerError = 107;
 
-  private final List<WeakReference<MediaErrorListener>> errorListeners = new ArrayList<>();
-  private final List<WeakReference<PlayerStateListener>> playerStateListeners = new ArrayList<>();
+  /** Slots of the native event ring; the native player drops and counts events that don't fit */
+  private static final int EVENT_RING_CAPACITY = 256;
+
+  /** Events dispatched per drain before checking whether the dispatcher was stopped */
+  private static final int EVENT_RING_BATCH = 64;
+
+  /** Wakes the dispatcher, e.g. to dispatch the held state events */
+  private static final PlayerEvent WAKE_UP = new PlayerEvent();
+
+  private final ListenerList<MediaErrorListener> errorListeners = new ListenerList<>();
+  private final ListenerList<PlayerStateListener> playerStateListeners = new ListenerList<>();
 
   protected long nativeMediaRef = 0;
-  private PlayerStateEvent.PlayerState playerState = PlayerStateEvent.PlayerState.UNKNOWN;
-  private EventQueueThread eventLoop = new EventQueueThread();
+  /** The state last dispatched; a state event repeating it is dropped */
+  private volatile PlayerStateEvent.PlayerState playerState =
+      PlayerStateEvent.PlayerState.UNKNOWN;
+  /** While false, state events are held back, see holdStateEvents */
+  private volatile boolean stateEventsReleased = true;
+  private EventDispatcher eventLoop = new EventDispatcher(PlayerExecutor.getShared());
+  /** Null until the native player posts its events into the ring */
+  private volatile NativeEventRing eventRing = null;
   protected final Lock disposeLock = new ReentrantLock();
   protected boolean isDisposed = false;
   private double startTime = 0.0;
@@ -42,6 +62,42 @@ public abstract class NativeMediaPlayer implements MediaPlayer {
 
   protected float playBackRate = 1f;
 
+  /** The latest seek not yet passed to the player; a newer seek replaces and cancels it */
+  private final AtomicReference<SeekRequest> pendingSeek = new AtomicReference<>();
+
+  /** Ids start at 1, the native player takes 0 for a seek nobody waits on */
+  private final AtomicLong lastSeekId = new AtomicLong();
+
+  /** Seeks passed to the player that have not landed yet, by id */
+  private final Map<Long, CompletableFuture<Double>> seeksInFlight = new ConcurrentHashMap<>();
+
+  private static final class SeekRequest {
+    private final double streamTime;
+    private final SeekMode mode;
+    /** Negative when seeking to the stream time */
+    private final long frameNumber;
+    private final long id;
+    private final CompletableFuture<Double> landed = new CompletableFuture<>();
+
+    private SeekRequest(double streamTime, SeekMode mode, long frameNumber, long id) {
+      this.streamTime = streamTime;
+      this.mode = mode;
+      this.frameNumber = frameNumber;
+      this.id = id;
+    }
+  }
+
+  /** A seek landed on the time, or was replaced by a newer one if the time is NaN */
+  private static final class SeekCompletedEvent extends PlayerEvent {
+    private final long seekId;
+    private final double time;
+
+    private SeekCompletedEvent(long seekId, double time) {
+      this.seekId = seekId;
+      this.time = time;
+    }
+  }
+
   protected String mediaPath;
 
   private static String resolveURI(URI mediaPath) {
@@ -91,116 +147,235 @@ public abstract class NativeMediaPlayer implements MediaPlayer {
     return nativeMediaRef;
   }
 
-  private class EventQueueThread extends Thread {
-    private final BlockingQueue<PlayerEvent> eventQueue = new LinkedBlockingQueue<>();
+  /**
+   * Holds back the state events until releaseStateEvents is called, e.g. so that listeners get
+   * the READY event of the native player once the java side is initialized too. The held events
+   * are dispatched in order on release; the dispatcher does not wait meanwhile.
+   */
+  protected void holdStateEvents() {
+    stateEventsReleased = false;
+  }
+
+  /** Dispatches the held state events, see holdStateEvents */
+  protected void releaseStateEvents() {
+    stateEventsReleased = true;
+    sendPlayerEvent(WAKE_UP);
+  }
+
+  /**
+   * Creates the ring through which the native player posts its events instead of calling the
+   * send methods below. The ring is kept until the player is disposed.
+   *
+   * @param waitForWakeUp The native call that waits for a poster to unpark a ring, see
+   *     NativeEventRing.wakeUpWith
+   * @return The buffer of the ring to register with the native player
+   */
+  protected ByteBuffer openEventRing(LongBinaryOperator waitForWakeUp) {
+    NativeEventRing ring = new NativeEventRing(EVENT_RING_CAPACITY);
+    eventRing = ring;
+    ring.wakeUpWith(
+        () -> {
+          EventDispatcher dispatcher = eventLoop;
+          if (dispatcher != null) {
+            dispatcher.wakeUp();
+          }
+        },
+        waitForWakeUp);
+    sendPlayerEvent(WAKE_UP); // drain the ring once, then wait for the native player to wake us
+    return ring.getBuffer();
+  }
+
+  /**
+   * Dispatches the events of the player to its listeners in order, as a task on the executor that
+   * all players share. The task runs while there are events to dispatch. With a ring, it parks the
+   * ring once drained and the waiter of the rings wakes it with the next event, so idle players
+   * cost nothing.
+   */
+  private class EventDispatcher implements Runnable, NativeEventRing.Handler {
+    private final PlayerExecutor executor;
+    private final Queue<PlayerEvent> eventQueue = new ConcurrentLinkedQueue<>();
+    /** Set while the task is queued or running, so that it never runs twice at once */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    /** State events held back, see holdStateEvents */
+    private final ArrayDeque<PlayerStateEvent> heldStateEvents = new ArrayDeque<>();
+    private volatile boolean started = false;
     private volatile boolean stopped = false;
 
-    EventQueueThread() {
-      setName("Media Player EventQueueThread");
-      setDaemon(true);
+    EventDispatcher(PlayerExecutor executor) {
+      this.executor = executor;
+    }
+
+    /** Dispatches the events posted so far and from now on */
+    void start() {
+      started = true;
+      wakeUp();
+    }
+
+    private void wakeUp() {
+      if (started && !stopped && scheduled.compareAndSet(false, true)) {
+        executor.execute(this);
+      }
     }
 
     @Override
     public void run() {
-      while (!stopped) {
-        try {
-          // trying to take an event from the queue.
-          // this method will block until an event becomes available.
-          PlayerEvent evt = eventQueue.take();
-
-          if (!stopped) {
-            if (evt instanceof PlayerStateEvent) {
-              HandleStateEvents((PlayerStateEvent) evt);
-            } else if (evt instanceof MediaErrorEvent) {
-              HandleErrorEvents((MediaErrorEvent) evt);
-            } else if (evt instanceof SdlPlayerKeyEvent) {
-              HandleSdlKeyEvents((SdlPlayerKeyEvent) evt);
-            }
-          }
-        } catch (Exception e) {
-          System.err.println(e);
-          // eventQueue.take() can throw InterruptedException,
-          // also in rare case it can throw wrong
-          // IllegalMonitorStateException
-          // so we catch Exception
-          // nothing to do, restart the loop unless it was properly stopped.
+      try {
+        if (!stopped) {
+          dispatch();
+        }
+      } catch (Exception e) {
+        System.err.println(e);
+      } finally {
+        scheduled.set(false);
+      }
+      if (stopped) {
+        eventQueue.clear();
+        return;
+      }
+      // An event posted after the queue was emptied found the task still scheduled, and one
+      // posted into the ring before it was parked did not wake the task
+      NativeEventRing ring = eventRing;
+      if (!eventQueue.isEmpty() || (ring != null && !ring.park())) {
+        wakeUp();
+      }
+    }
+
+    private void dispatch() {
+      PlayerEvent evt;
+      while (!stopped && (evt = eventQueue.poll()) != null) {
+        if (evt instanceof PlayerStateEvent) {
+          HandleStateEvents((PlayerStateEvent) evt);
+        } else if (evt instanceof MediaErrorEvent) {
+          HandleErrorEvents((MediaErrorEvent) evt);
+        } else if (evt instanceof SdlPlayerKeyEvent) {
+          HandleSdlKeyEvents((SdlPlayerKeyEvent) evt);
+        } else if (evt instanceof SeekCompletedEvent) {
+          HandleSeekCompletedEvents(
+              ((SeekCompletedEvent) evt).seekId, ((SeekCompletedEvent) evt).time);
         }
       }
 
-      eventQueue.clear();
+      NativeEventRing ring = eventRing;
+      if (ring != null) {
+        while (!stopped && ring.drain(this, EVENT_RING_BATCH) > 0) {}
+      }
+
+      while (stateEventsReleased && !stopped && !heldStateEvents.isEmpty()) {
+        DispatchStateEvent(heldStateEvents.poll());
+      }
     }
 
     private void HandleStateEvents(PlayerStateEvent evt) {
-      playerState = evt.getState();
+      if (!stateEventsReleased || !heldStateEvents.isEmpty()) {
+        heldStateEvents.add(evt);
+      } else {
+        DispatchStateEvent(evt);
+      }
+    }
 
-      for (ListIterator<WeakReference<PlayerStateListener>> it =
-              playerStateListeners.listIterator();
-          it.hasNext(); ) {
-        PlayerStateListener listener = it.next().get();
-        if (listener != null) {
-          switch (playerState) {
-            case READY:
-              listener.onReady(evt);
-              break;
-
-            case PLAYING:
-              listener.onPlaying(evt);
-              break;
-
-            case PAUSED:
-              listener.onPause(evt);
-              break;
-
-            case STOPPED:
-              listener.onStop(evt);
-              break;
-
-            case STALLED:
-              listener.onStall(evt);
-              break;
-
-            case FINISHED:
-              listener.onFinish(evt);
-              break;
-
-            case HALTED:
-              listener.onHalt(evt);
-              break;
-
-            default:
-              break;
-          }
-        } else {
-          it.remove();
-        }
+    /** Whether an event of the state would be dropped anyway, to skip creating it */
+    private boolean IsRedundantState(PlayerStateEvent.PlayerState state) {
+      return stateEventsReleased && heldStateEvents.isEmpty() && state == playerState;
+    }
+
+    private void DispatchStateEvent(PlayerStateEvent evt) {
+      if (evt.getState() == playerState) {
+        return; // e.g. PAUSED again after a seek while paused
       }
+      playerState = evt.getState();
+
+      playerStateListeners.dispatch(
+          listener -> {
+            switch (evt.getState()) {
+              case READY:
+                listener.onReady(evt);
+                break;
+
+              case PLAYING:
+                listener.onPlaying(evt);
+                break;
+
+              case PAUSED:
+                listener.onPause(evt);
+                break;
+
+              case STOPPED:
+                listener.onStop(evt);
+                break;
+
+              case STALLED:
+                listener.onStall(evt);
+                break;
+
+              case FINISHED:
+                listener.onFinish(evt);
+                break;
+
+              case HALTED:
+                listener.onHalt(evt);
+                break;
+
+              default:
+                break;
+            }
+          },
+          IsTerminalState(evt.getState()));
+    }
+
+    /** Whether a lagging listener must still be told about the state */
+    private boolean IsTerminalState(PlayerStateEvent.PlayerState state) {
+      return state == PlayerStateEvent.PlayerState.STOPPED
+          || state == PlayerStateEvent.PlayerState.FINISHED
+          || state == PlayerStateEvent.PlayerState.HALTED;
     }
 
     private void HandleErrorEvents(MediaErrorEvent evt) {
-      for (ListIterator<WeakReference<MediaErrorListener>> it = errorListeners.listIterator();
-          it.hasNext(); ) {
-        MediaErrorListener l = it.next().get();
-        if (l != null) {
-          l.onError(evt.getSource(), evt.getErrorCode(), evt.getMessage());
+      errorListeners.dispatch(
+          listener -> listener.onError(evt.getSource(), evt.getErrorCode(), evt.getMessage()),
+          true);
+    }
+
+    private void HandleSeekCompletedEvents(long seekId, double time) {
+      CompletableFuture<Double> landed = seeksInFlight.remove(seekId);
+      if (landed != null) {
+        if (Double.isNaN(time)) {
+          landed.cancel(false);
         } else {
-          it.remove();
+          landed.complete(time);
         }
       }
     }
 
+    @Override
+    public void onNativeEvent(int type, int code, double time, long seekId) {
+      switch (type) {
+        case NativeEventRing.PLAYER_STATE:
+          PlayerStateEvent.PlayerState state = toPlayerState(code);
+          if (state != null && !IsRedundantState(state)) {
+            HandleStateEvents(new PlayerStateEvent(state, time));
+          }
+          break;
+        case NativeEventRing.MEDIA_ERROR:
+          HandleErrorEvents(
+              new MediaErrorEvent(NativeMediaPlayer.this, MediaError.getFromCode(code)));
+          break;
+        case NativeEventRing.SEEK_COMPLETED:
+          HandleSeekCompletedEvents(seekId, time);
+          break;
+        default:
+          break;
+      }
+    }
 
     public void postEvent(PlayerEvent event) {
       eventQueue.offer(event);
+      wakeUp();
     }
 
-    /** Signals the thread to terminate. */
+    /** Stops dispatching; a running task finishes the event at hand */
     public void terminateLoop() {
       stopped = true;
-      // put an event to unblock eventQueue.take()
-      try {
-        eventQueue.put(new PlayerEvent());
-      } catch (InterruptedException ex) {
-      }
+      eventQueue.clear();
     }
   }
 
@@ -211,41 +386,28 @@ public abstract class NativeMediaPlayer implements MediaPlayer {
   @Override
   public void addMediaErrorListener(MediaErrorListener listener) {
     if (listener != null) {
-      this.errorListeners.add(new WeakReference<>(listener));
+      errorListeners.add(listener);
     }
   }
 
   @Override
   public void removeMediaErrorListener(MediaErrorListener listener) {
     if (listener != null) {
-      for (ListIterator<WeakReference<MediaErrorListener>> it = errorListeners.listIterator();
-          it.hasNext(); ) {
-        MediaErrorListener l = it.next().get();
-        if (l == null || l == listener) {
-          it.remove();
-        }
-      }
+      errorListeners.remove(listener);
     }
   }
 
   @Override
   public void addMediaPlayerStateListener(PlayerStateListener listener) {
     if (listener != null) {
-      playerStateListeners.add(new WeakReference(listener));
+      playerStateListeners.add(listener);
     }
   }
 
   @Override
   public void removeMediaPlayerStateListener(PlayerStateListener listener) {
     if (listener != null) {
-      for (ListIterator<WeakReference<PlayerStateListener>> it =
-              playerStateListeners.listIterator();
-          it.hasNext(); ) {
-        PlayerStateListener l = it.next().get();
-        if (l == null || l == listener) {
-          it.remove();
-        }
-      }
+      playerStateListeners.remove(listener);
     }
   }
 
@@ -302,6 +464,41 @@ public abstract class NativeMediaPlayer implements MediaPlayer {
   // protected abstract void playerSetStopTime(double stopTime) throws MediaException;
 
   protected abstract void playerSeek(double streamTime) throws MediaException;
+
+  /**
+   * Players without seek modes seek as they always do; not knowing when the seek lands, they
+   * report it as landed on the requested time right away
+   */
+  protected void playerSeek(double streamTime, SeekMode mode, long seekId)
+      throws MediaException {
+    playerSeek(streamTime);
+    sendSeekCompletedEvent(seekId, streamTime);
+  }
+
+  /**
+   * The presentation time of the first frame, from which players without a frame index count
+   * frames; players whose streams do not start at 0 override it
+   */
+  protected double playerGetStreamStartTime() throws MediaException {
+    return 0.0;
+  }
+
+  /** Players without a frame index count frames at the nominal frame rate */
+  protected void playerSeekToFrame(long frameNumber, long seekId) throws MediaException {
+    double fps = playerGetFps();
+    if (fps > 0) {
+      playerSeek(playerGetStreamStartTime() + frameNumber / fps, SeekMode.EXACT, seekId);
+    } else {
+      sendSeekCompletedEvent(seekId, Double.NaN);
+    }
+  }
+
+  protected long playerGetCurrentFrameNumber() throws MediaException {
+    double fps = playerGetFps();
+    double time = playerGetPresentationTime() - playerGetStreamStartTime();
+    // Tolerate the rounding of a time on the frame
+    return fps > 0 && time >= 0 ? (long) Math.floor(time * fps + 1e-3) : -1;
+  }
   
   protected abstract void playerDispose();
 
@@ -461,6 +658,22 @@ public abstract class NativeMediaPlayer implements MediaPlayer {
     return -1.0;
   }
 
+  @Override
+  public long getCurrentFrameNumber() {
+    if (disposeLock.tryLock()) {
+      try {
+        if (!isDisposed) {
+          return playerGetCurrentFrameNumber();
+        }
+      } catch (MediaException me) {
+        sendPlayerEvent(new MediaErrorEvent(this, me.getMediaError()));
+      } finally {
+        disposeLock.unlock();
+      }
+    }
+    return -1;
+  }
+
   @Override
   public double getFps() {
     if (disposeLock.tryLock()) {
@@ -661,6 +874,23 @@ public abstract class NativeMediaPlayer implements MediaPlayer {
 
   @Override
   public void seek(double streamTime) {
+    seek(streamTime, SeekMode.AUTO);
+  }
+
+  /**
+   * Seeks like {@link #seek(double)} with the given precision. Seeks are never dropped: while
+   * another call holds the player only the latest seek is kept, and the native player replaces a
+   * seek it has not started yet with a newer one.
+   *
+   * @param streamTime The time in seconds to which to seek.
+   * @param mode How precisely the seek lands
+   */
+  public void seek(double streamTime, SeekMode mode) {
+    seekAsync(streamTime, mode);
+  }
+
+  @Override
+  public CompletableFuture<Double> seekAsync(double streamTime, SeekMode mode) {
 
     if (streamTime < 0.0) {
       streamTime = 0.0;
@@ -671,15 +901,76 @@ public abstract class NativeMediaPlayer implements MediaPlayer {
       }
     }
 
-    if (disposeLock.tryLock()) {
-      try {
-        playerSeek(streamTime);
-      } catch (MediaException me) {
-        sendPlayerEvent(new MediaErrorEvent(this, me.getMediaError()));
-      } finally {
-        disposeLock.unlock();
+    return submitSeek(new SeekRequest(streamTime, mode, -1, lastSeekId.incrementAndGet()));
+  }
+
+  @Override
+  public CompletableFuture<Double> seekToFrame(long frameNumber) {
+    return submitSeek(
+        new SeekRequest(
+            Double.NaN, SeekMode.EXACT, Math.max(frameNumber, 0), lastSeekId.incrementAndGet()));
+  }
+
+  /**
+   * Mean nanoseconds from the native player posting an event to its dispatch, for the events that
+   * went through the native event ring
+   *
+   * @return The mean latency, -1 if no event went through the ring
+   */
+  public long getMeanEventLatency() {
+    NativeEventRing ring = eventRing;
+    return ring != null ? ring.getMeanLatency() : -1;
+  }
+
+  /**
+   * Most nanoseconds from the native player posting an event to its dispatch, for the events that
+   * went through the native event ring
+   *
+   * @return The maximum latency, -1 if no event went through the ring
+   */
+  public long getMaxEventLatency() {
+    NativeEventRing ring = eventRing;
+    return ring != null ? ring.getMaxLatency() : -1;
+  }
+
+  /** @return The number of events the native player dropped because the event ring was full */
+  public long getEventRingOverflowCount() {
+    NativeEventRing ring = eventRing;
+    return ring != null ? ring.getOverflowCount() : 0;
+  }
+
+  private CompletableFuture<Double> submitSeek(SeekRequest seek) {
+    SeekRequest replaced = pendingSeek.getAndSet(seek);
+    if (replaced != null) {
+      replaced.landed.cancel(false);
+    }
+    // Waits rather than tries the lock: a seek racing a getter must not be dropped, and the
+    // closing exact seek of a scrub must land. Only a disposed player cancels it.
+    disposeLock.lock();
+    SeekRequest request = null;
+    try {
+      // A newer seek may have taken ours along, or ours a former one
+      request = pendingSeek.getAndSet(null);
+      if (request != null) {
+        if (isDisposed) {
+          request.landed.cancel(false);
+        } else {
+          seeksInFlight.put(request.id, request.landed);
+          if (request.frameNumber >= 0) {
+            playerSeekToFrame(request.frameNumber, request.id);
+          } else {
+            playerSeek(request.streamTime, request.mode, request.id);
+          }
+        }
       }
+    } catch (MediaException me) {
+      seeksInFlight.remove(request.id);
+      request.landed.completeExceptionally(me);
+      sendPlayerEvent(new MediaErrorEvent(this, me.getMediaError()));
+    } finally {
+      disposeLock.unlock();
     }
+    return seek.landed;
   }
 
   protected void sendPlayerEvent(PlayerEvent evt) {
@@ -718,14 +1009,21 @@ public abstract class NativeMediaPlayer implements MediaPlayer {
 
         // Terminate native layer
         playerDispose();
-
-        if (playerStateListeners != null) {
-          playerStateListeners.clear();
+        // The native player no longer writes into the ring
+        NativeEventRing ring = eventRing;
+        if (ring != null) {
+          ring.close();
+          eventRing = null;
         }
 
-        if (errorListeners != null) {
-          errorListeners.clear();
+        playerStateListeners.clear();
+        errorListeners.clear();
+
+        // The native player is gone, no seek lands anymore
+        for (CompletableFuture<Double> landed : seeksInFlight.values()) {
+          landed.cancel(false);
         }
+        seeksInFlight.clear();
 
         nativeMediaRef = 0;
         isDisposed = true;
@@ -763,35 +1061,41 @@ public abstract class NativeMediaPlayer implements MediaPlayer {
   // ***** Non-JNI methods called by the native layer. These methods are called
   // ***** from the native layer via the invocation API. Their purpose is to
   // ***** dispatch certain events to the Java layer. Each of these methods
-  // ***** posts an event on the <code>EventQueueThread</code> which in turn
+  // ***** posts an event on the <code>EventDispatcher</code> which in turn
   // ***** forwards the event to any registered listeners.
   // **************************************************************************
   protected void sendPlayerMediaErrorEvent(int errorCode) {
     sendPlayerEvent(new MediaErrorEvent(this, MediaError.getFromCode(errorCode)));
   }
 
+  protected void sendSeekCompletedEvent(long seekId, double time) {
+    sendPlayerEvent(new SeekCompletedEvent(seekId, time));
+  }
+
   protected void sendPlayerStateEvent(int eventID, double time) {
+    PlayerStateEvent.PlayerState state = toPlayerState(eventID);
+    if (state != null) {
+      sendPlayerEvent(new PlayerStateEvent(state, time));
+    }
+  }
+
+  /** The state of a native player event id, null for the ids that are not dispatched */
+  private static PlayerStateEvent.PlayerState toPlayerState(int eventID) {
     switch (eventID) {
       case eventPlayerReady:
-        sendPlayerEvent(new PlayerStateEvent(PlayerStateEvent.PlayerState.READY, time));
-        break;
+        return PlayerStateEvent.PlayerState.READY;
       case eventPlayerPlaying:
-        sendPlayerEvent(new PlayerStateEvent(PlayerStateEvent.PlayerState.PLAYING, time));
-        break;
+        return PlayerStateEvent.PlayerState.PLAYING;
       case eventPlayerPaused:
-        sendPlayerEvent(new PlayerStateEvent(PlayerStateEvent.PlayerState.PAUSED, time));
-        break;
+        return PlayerStateEvent.PlayerState.PAUSED;
       case eventPlayerStopped:
-        sendPlayerEvent(new PlayerStateEvent(PlayerStateEvent.PlayerState.STOPPED, time));
-        break;
+        return PlayerStateEvent.PlayerState.STOPPED;
       case eventPlayerStalled:
-        sendPlayerEvent(new PlayerStateEvent(PlayerStateEvent.PlayerState.STALLED, time));
-        break;
+        return PlayerStateEvent.PlayerState.STALLED;
       case eventPlayerFinished:
-        sendPlayerEvent(new PlayerStateEvent(PlayerStateEvent.PlayerState.FINISHED, time));
-        break;
+        return PlayerStateEvent.PlayerState.FINISHED;
       default:
-        break;
+        return null;
     }
   }
 }
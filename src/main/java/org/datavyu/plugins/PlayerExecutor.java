@@ -0,0 +1,133 @@
+package org.datavyu.plugins;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs the work that players hand out, like dispatching their events, on threads shared by all
+ * players, so that the number of threads stays flat as players are added
+ *
+ * <p>By default all players share an executor that runs tasks on virtual threads when the runtime
+ * has them (Java 21 and later) and on a small fixed pool of daemon threads otherwise. Another one
+ * can be set with setShared; players created afterwards use it. Tasks should not block for long,
+ * as they may hold one of few pool threads.
+ */
+public abstract class PlayerExecutor {
+
+  private static Logger logger = LogManager.getLogger(PlayerExecutor.class);
+
+  private static PlayerExecutor shared = null;
+
+  /** Runs the task as soon as possible */
+  public abstract void execute(Runnable task);
+
+  /** Runs the task once after the delay */
+  public abstract void schedule(Runnable task, long delay, TimeUnit unit);
+
+  /** @return The executor of the players created from now on */
+  public static synchronized PlayerExecutor getShared() {
+    if (shared == null) {
+      shared = newVirtualThreads();
+      if (shared == null) {
+        int numberOfThreads =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        shared = newFixedPool(numberOfThreads);
+      }
+      logger.info("Players share " + shared);
+    }
+    return shared;
+  }
+
+  /**
+   * Sets the executor of the players created from now on; players created before keep theirs
+   *
+   * @param executor The executor, null for the default one
+   */
+  public static synchronized void setShared(PlayerExecutor executor) {
+    shared = executor;
+  }
+
+  /** @return An executor running the tasks on a fixed number of daemon threads */
+  public static PlayerExecutor newFixedPool(int numberOfThreads) {
+    return new FixedPool(numberOfThreads);
+  }
+
+  /** @return An executor running each task on a new virtual thread; null without them */
+  public static PlayerExecutor newVirtualThreads() {
+    try {
+      // Through reflection, the plugin is compiled for Java 8
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return new VirtualThreads((ExecutorService) factory.invoke(null));
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  private static ThreadFactory daemonThreadFactory(String name) {
+    AtomicInteger number = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, name + "-" + number.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private static final class FixedPool extends PlayerExecutor {
+    private final ScheduledThreadPoolExecutor pool;
+
+    private FixedPool(int numberOfThreads) {
+      pool =
+          new ScheduledThreadPoolExecutor(
+              numberOfThreads, daemonThreadFactory("Media Player Executor"));
+      pool.setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      pool.execute(task);
+    }
+
+    @Override
+    public void schedule(Runnable task, long delay, TimeUnit unit) {
+      pool.schedule(task, delay, unit);
+    }
+
+    @Override
+    public String toString() {
+      return "a pool of " + pool.getCorePoolSize() + " threads";
+    }
+  }
+
+  private static final class VirtualThreads extends PlayerExecutor {
+    private final ExecutorService executor;
+    /** Only hands the delayed tasks over to virtual threads */
+    private final ScheduledThreadPoolExecutor timer =
+        new ScheduledThreadPoolExecutor(1, daemonThreadFactory("Media Player Timer"));
+
+    private VirtualThreads(ExecutorService executor) {
+      this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      executor.execute(task);
+    }
+
+    @Override
+    public void schedule(Runnable task, long delay, TimeUnit unit) {
+      timer.schedule(() -> executor.execute(task), delay, unit);
+    }
+
+    @Override
+    public String toString() {
+      return "virtual threads";
+    }
+  }
+}
@@ -0,0 +1,18 @@
+package org.datavyu.plugins;
+
+/**
+ * How precisely a seek lands.
+ *
+ * <p>The order matches the seek modes of the native code.
+ */
+public enum SeekMode {
+  /** Approximate while seeks follow each other closely, exact otherwise */
+  AUTO,
+  /** Shows the frame at the seek time, e.g. when releasing the timeline */
+  EXACT,
+  /**
+   * Shows the keyframe at or before the seek time, e.g. while dragging the timeline. The player
+   * keeps showing keyframes until an {@link #EXACT} seek ends the drag.
+   */
+  APPROXIMATE
+}
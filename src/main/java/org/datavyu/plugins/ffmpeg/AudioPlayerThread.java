@@ -32,10 +32,58 @@ class AudioPlayerThread extends Thread {
     return STEREO_FORMAT;
   }
 
+  /** Audio written to the line at once at 1x; about one video frame */
+  private static final double BUFFER_DURATION = 0.025; // in sec
+  /** Above this rate the buffer stops growing */
+  private static final float MAX_BUFFER_RATE = 8F;
+  private static final int DEFAULT_BUFFER_SIZE = 4 * 1024; // 4 kB
+
+  /**
+   * Get the number of bytes to write to the sound line at once
+   *
+   * <p>The buffer covers a fixed duration of audio that grows with the playback rate since decoding
+   * gets more expensive per buffer, but never exceeds half of the line buffer so the line can
+   * accept a buffer while it still plays the previous one.
+   *
+   * @param audioFormat The audio format of the line
+   * @param lineBufferSize The buffer size of the sound line; 0 if not known yet
+   * @param rate The playback rate
+   * @return The buffer size in bytes; a multiple of the frame size
+   */
+  static int getBufferSize(AudioFormat audioFormat, int lineBufferSize, float rate) {
+    int frameSize = audioFormat.getFrameSize();
+    float bytesPerSecond = audioFormat.getFrameRate() * frameSize;
+    if (frameSize <= 0 || bytesPerSecond <= 0) {
+      return DEFAULT_BUFFER_SIZE;
+    }
+    double scale = Math.min(Math.max(Math.abs(rate), 1F), MAX_BUFFER_RATE);
+    int size = (int) (bytesPerSecond * BUFFER_DURATION * scale);
+    if (lineBufferSize > 0) {
+      size = Math.min(size, lineBufferSize / 2);
+    }
+    return Math.max(size - size % frameSize, frameSize);
+  }
+
+  /** Largest size returned by {@link #getBufferSize} for any rate */
+  static int getMaxBufferSize(AudioFormat audioFormat, int lineBufferSize) {
+    return getBufferSize(audioFormat, lineBufferSize, MAX_BUFFER_RATE);
+  }
+
   private MediaPlayerData mediaPlayerData;
   private SourceDataLine soundLine = null;
   private volatile boolean stopped = false;
   private byte[] data;
+  /** Size for data, applied by the player thread before its next write */
+  private volatile int bufferSize;
+  /** Ring filled ahead by the native side; null to pull each buffer through updateAudioData */
+  private AudioRingBuffer audioRing = null;
+  private float bytesPerSecond;
+  /** The line only accepts whole frames */
+  private int frameSize;
+  /** Times the sound line ran dry before a write */
+  private volatile long underrunCount = 0;
+  /** Times a write blocked for longer than two buffers because the line did not drain in time */
+  private volatile long overrunCount = 0;
 
   AudioPlayerThread(MediaPlayerData mediaPlayerData) {
     this.mediaPlayerData = mediaPlayerData;
@@ -43,6 +91,13 @@ class AudioPlayerThread extends Thread {
     setDaemon(false);
   }
 
+  /**
+   * Opens and starts the sound line
+   *
+   * @param audioFormat The audio format of the line
+   * @param bufferSize The number of bytes written to the line at once
+   * @throws LineUnavailableException If the line can't be opened
+   */
   public void init(AudioFormat audioFormat, int bufferSize) throws LineUnavailableException {
     // Get the data line
     DataLine.Info info = new DataLine.Info(SourceDataLine.class, audioFormat);
@@ -52,12 +107,50 @@ class AudioPlayerThread extends Thread {
     volumeControl = (FloatControl) soundLine.getControl(FloatControl.Type.MASTER_GAIN);
     muteControl = (BooleanControl) soundLine.getControl(BooleanControl.Type.MUTE);
 
+    frameSize = audioFormat.getFrameSize();
+    bytesPerSecond = audioFormat.getFrameRate() * frameSize;
+    this.bufferSize = bufferSize;
     data = new byte[bufferSize];
     soundLine.start();
 
     isInit = true;
   }
 
+  /**
+   * Drain the ring instead of pulling each buffer from the native side; call before start
+   *
+   * @param audioRing The ring registered with the native side
+   */
+  void setAudioRing(AudioRingBuffer audioRing) {
+    this.audioRing = audioRing;
+  }
+
+  /** Get the size of the sound line buffer in bytes; valid after init */
+  int getLineBufferSize() {
+    return soundLine.getBufferSize();
+  }
+
+  /**
+   * Change the number of bytes written to the line at once
+   *
+   * @param bufferSize The new buffer size; a multiple of the frame size
+   */
+  void setBufferSize(int bufferSize) {
+    this.bufferSize = bufferSize;
+  }
+
+  int getBufferSize() {
+    return bufferSize;
+  }
+
+  long getUnderrunCount() {
+    return underrunCount;
+  }
+
+  long getOverrunCount() {
+    return overrunCount;
+  }
+
   public boolean isInit() {
     return isInit;
   }
@@ -89,11 +182,58 @@ class AudioPlayerThread extends Thread {
 
   @Override
   public void run() {
+    if (audioRing != null) {
+      drainRing();
+      return;
+    }
     while (!stopped) {
+      resizeData();
       mediaPlayerData.updateAudioData(data);
-      // Write blocks when data can't be consumed fast enough
       // Since we handle the pause natively we don't have to buffer non-written bytes here
-      soundLine.write(data, 0, data.length);
+      write(data.length);
+    }
+  }
+
+  private void resizeData() {
+    int size = bufferSize;
+    if (data.length != size) {
+      data = new byte[size];
+    }
+  }
+
+  /** Writes len bytes of data to the line, blocking when it can't be consumed fast enough */
+  private void write(int len) {
+    // Only this thread updates the counters
+    boolean played = soundLine.getLongFramePosition() > 0;
+    if (played && soundLine.available() == soundLine.getBufferSize()) {
+      underrunCount++;
+    }
+    long start = System.nanoTime();
+    soundLine.write(data, 0, len);
+    if ((System.nanoTime() - start) / 1e9 > 2 * len / bytesPerSecond) {
+      overrunCount++;
+    }
+  }
+
+  private void drainRing() {
+    while (!stopped) {
+      resizeData();
+      audioRing.setLineQueued(soundLine.getBufferSize() - soundLine.available());
+      int fill = audioRing.getFill();
+      int read = audioRing.read(data, 0, Math.min(data.length, fill - fill % frameSize));
+      if (read == 0) {
+        // The native side fills the ring ahead of time, also with silence when paused, so an
+        // empty ring means it fell behind; give it a moment rather than spinning
+        try {
+          // A quarter of the time it takes to play one buffer
+          Thread.sleep(Math.max(1, (long) (250 * data.length / bytesPerSecond)));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        continue;
+      }
+      write(read);
     }
   }
 
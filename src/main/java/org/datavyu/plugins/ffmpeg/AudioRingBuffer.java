@@ -0,0 +1,82 @@
+package org.datavyu.plugins.ffmpeg;
+
+import java.nio.ByteBuffer;
+import org.datavyu.util.DirectMemory;
+
+/**
+ * Consumer side of the single producer/single consumer audio ring shared with the native player
+ *
+ * <p>The native side decodes audio into the ring on its own thread and the {@link
+ * AudioPlayerThread} drains it into the sound line, so no JNI call is made per audio buffer. The
+ * layout must match AudioRingBuffer.h: the write index at byte 0, the read index at byte 64, the
+ * bytes queued in the sound line at byte 128, and the data from byte 192 on.
+ */
+final class AudioRingBuffer {
+  private static final int WRITE_INDEX_OFFSET = 0;
+  private static final int READ_INDEX_OFFSET = 64;
+  private static final int LINE_QUEUED_OFFSET = 128;
+  private static final int HEADER_SIZE = 192;
+
+  private final ByteBuffer buffer;
+  private final ByteBuffer data;
+  private final long address;
+  private final int capacity;
+
+  /**
+   * Creates a ring that can hold at least minCapacity bytes
+   *
+   * @param minCapacity The minimum number of data bytes; rounded up to a power of two
+   */
+  AudioRingBuffer(int minCapacity) {
+    capacity = Integer.highestOneBit(Math.max(minCapacity, 2) * 2 - 1);
+    buffer = DirectMemory.allocateAligned(HEADER_SIZE + capacity);
+    address = DirectMemory.address(buffer);
+    buffer.position(HEADER_SIZE);
+    data = buffer.slice();
+    buffer.clear();
+  }
+
+  /** The buffer to register with the native side */
+  ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  int getCapacity() {
+    return capacity;
+  }
+
+  /** Bytes written by the native side but not yet read */
+  int getFill() {
+    long writeIndex = DirectMemory.getLongVolatile(address + WRITE_INDEX_OFFSET);
+    long readIndex = DirectMemory.getLongVolatile(address + READ_INDEX_OFFSET);
+    return (int) (writeIndex - readIndex);
+  }
+
+  /**
+   * Reads up to len bytes into dst
+   *
+   * @return The number of bytes read; 0 if the ring is empty
+   */
+  int read(byte[] dst, int off, int len) {
+    // Only this thread stores the read index; acquire the write index to see the data
+    long readIndex = DirectMemory.getLongVolatile(address + READ_INDEX_OFFSET);
+    long writeIndex = DirectMemory.getLongVolatile(address + WRITE_INDEX_OFFSET);
+    int count = (int) Math.min(len, writeIndex - readIndex);
+    int read = 0;
+    while (read < count) {
+      int offset = (int) ((readIndex + read) & (capacity - 1));
+      int chunk = Math.min(capacity - offset, count - read);
+      data.position(offset);
+      data.get(dst, off + read, chunk);
+      read += chunk;
+    }
+    // Release the bytes back to the native side
+    DirectMemory.putLongOrdered(address + READ_INDEX_OFFSET, readIndex + read);
+    return read;
+  }
+
+  /** Reports the bytes queued in the sound line so the native clock can account for them */
+  void setLineQueued(long bytes) {
+    DirectMemory.putLongOrdered(address + LINE_QUEUED_OFFSET, bytes);
+  }
+}
@@ -4,6 +4,7 @@ import org.datavyu.plugins.MediaError;
 import org.datavyu.plugins.MediaException;
 import org.datavyu.plugins.MediaPlayerData;
 import org.datavyu.plugins.SdlKeyEventListener;
+import org.datavyu.plugins.SeekMode;
 import org.datavyu.util.LibraryLoader;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -13,7 +14,9 @@ import javax.sound.sampled.LineUnavailableException;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.color.ColorSpace;
+import java.io.File;
 import java.net.URI;
+import java.nio.ByteBuffer;
 
 import static java.awt.color.ColorSpace.CS_sRGB;
 
@@ -30,11 +33,77 @@ public final class FfmpegJavaMediaPlayer extends FfmpegMediaPlayer implements Me
   private AudioPlayerThread audioPlayerThread = null;
   private ImageCanvasPlayerThread imageCanvasPlayerThread = null;
   private Container container;
-  private static final int AUDIO_BUFFER_SIZE = 4 * 1024; // 4 kB
+  /** The ring holds this many of the largest audio buffers; the native side fills half of it */
+  private static final int AUDIO_RING_BUFFERS = 8;
+  /** Audio shared with the native side; referenced until dispose to keep its memory alive */
+  private AudioRingBuffer audioRing = null;
+  /** State published by the native side for the getters; null until registered and after dispose */
+  private volatile PlayerStateSnapshot stateSnapshot = null;
   private AudioFormat audioFormat;
   private ColorSpace colorSpace;
+  private PixelLayout pixelLayout;
+  /** The direct buffer currently registered with the native side; kept to pin its memory */
+  private ByteBuffer imageBuffer = null;
+  /** Out values of the last image update: frame number and time until the next frame is due */
+  private final long[] imageFrameNumber = new long[1];
+  private final double[] imageDisplayDelay = new double[1];
+  /** The group this player plays in, null if none */
+  private volatile PlaybackGroup playbackGroup = null;
+  /** Weighs the share of the player in the memory budget of the process */
+  private volatile double memoryPriority = 1.0;
+  /** A hidden player shows no images, it gets this fraction of its share */
+  private static final double HIDDEN_MEMORY_PRIORITY = 0.25;
   private static final Logger LOGGER = LogManager.getFormatterLogger(FfmpegJavaMediaPlayer.class);
 
+  /** Scaler used when the image is delivered at a smaller size than its source */
+  public enum ScalerQuality {
+    /** Fastest, lowest quality; good for thumbnails */
+    FAST_BILINEAR(0x1),
+    /** Default, best quality */
+    BICUBIC(0x4),
+    /** Averages source pixels; good for large reduction factors */
+    AREA(0x20);
+
+    /** The matching libswscale flag */
+    private final int swsFlags;
+
+    ScalerQuality(int swsFlags) {
+      this.swsFlags = swsFlags;
+    }
+  }
+
+  /** Memory layout of the image data handed from the native side to java */
+  public enum PixelLayout {
+    /** Three bytes per pixel backing a byte ComponentColorModel */
+    BYTE_RGB(3),
+    /** One native-endian 0x00RRGGBB int per pixel backing a TYPE_INT_RGB image */
+    INT_RGB(4);
+
+    private final int bytesPerPixel;
+
+    PixelLayout(int bytesPerPixel) {
+      this.bytesPerPixel = bytesPerPixel;
+    }
+
+    public int getBytesPerPixel() {
+      return bytesPerPixel;
+    }
+  }
+
+  /** Outcome of looking up the media in the media cache when the player opened it */
+  public enum MediaCacheStatus {
+    /** There is no cache directory or the media is not a local file */
+    DISABLED,
+    /** The media was probed and its entry created */
+    MISS,
+    /** The probe was restored from the entry */
+    HIT
+  }
+
+  /** Where opened media keep their probe results and keyframe index; null disables the cache */
+  private static volatile File mediaCacheDirectory =
+      new File(System.getProperty("java.io.tmpdir"), "datavyu-media-cache");
+
   static {
     try {
       LibraryLoader.extract(FFMPEG_DEPENDENCIES);
@@ -51,17 +120,37 @@ public final class FfmpegJavaMediaPlayer extends FfmpegMediaPlayer implements Me
    * @param container The Container to display
    * @param audioFormat The audio format used for playback
    * @param colorSpace The color space used for playback
+   * @param pixelLayout The memory layout of the image data
    */
   public FfmpegJavaMediaPlayer(
-      URI mediaPath, Container container, AudioFormat audioFormat, ColorSpace colorSpace) {
+      URI mediaPath,
+      Container container,
+      AudioFormat audioFormat,
+      ColorSpace colorSpace,
+      PixelLayout pixelLayout) {
     super(mediaPath);
     this.container = container;
     this.audioFormat = audioFormat;
     this.colorSpace = colorSpace;
+    this.pixelLayout = pixelLayout;
     this.audioPlayerThread = new AudioPlayerThread(this);
     this.imageCanvasPlayerThread = new ImageCanvasPlayerThread(this);
   }
 
+  /**
+   * Create an ffmpeg media player instance and play through java Datavyu container, using packed
+   * int pixels which Java2D blits fastest
+   *
+   * @param mediaPath The File source
+   * @param container The Container to display
+   * @param audioFormat The audio format used for playback
+   * @param colorSpace The color space used for playback
+   */
+  public FfmpegJavaMediaPlayer(
+      URI mediaPath, Container container, AudioFormat audioFormat, ColorSpace colorSpace) {
+    this(mediaPath, container, audioFormat, colorSpace, PixelLayout.INT_RGB);
+  }
+
   /**
    * Create an ffmpeg media player instance and play through java framework
    *
@@ -89,17 +178,73 @@ public final class FfmpegJavaMediaPlayer extends FfmpegMediaPlayer implements Me
         ColorSpace.getInstance(ColorSpace.CS_sRGB));
   }
 
+  /**
+   * Sets the directory of the media cache for players initialized afterwards
+   *
+   * <p>Each opened media gets an entry in it with its stream parameters, keyframe index, and frame
+   * timestamps, so that opening the unchanged media again skips most of the probing and the index
+   * scan.
+   *
+   * @param directory The cache directory, created if missing; null disables the cache
+   */
+  public static void setMediaCacheDirectory(File directory) {
+    mediaCacheDirectory = directory;
+  }
+
+  /** @return The directory of the media cache; null if the cache is disabled */
+  public static File getMediaCacheDirectory() {
+    return mediaCacheDirectory;
+  }
+
+  /** Returns the path of the cache directory, or null if it is disabled or cannot be created */
+  private static String prepareMediaCacheDirectory() {
+    File directory = mediaCacheDirectory;
+    if (directory == null) {
+      return null;
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      LOGGER.warn("Unable to create media cache directory %s", directory);
+      return null;
+    }
+    return directory.getAbsolutePath();
+  }
+
   private void initAndStartAudioPlayer() {
+    AudioFormat format = getAudioFormat();
     try {
-      audioPlayerThread.init(getAudioFormat(), AUDIO_BUFFER_SIZE);
-      audioPlayerThread.start();
+      audioPlayerThread.init(format, AudioPlayerThread.getBufferSize(format, 0, 1F));
     } catch (LineUnavailableException lu) {
       throwMediaErrorException(MediaError.ERROR_FFMPEG_AUDIO_LINE_UNAVAILABLE.code(), lu);
     }
+    // Now that the line is open size the buffers for it
+    int lineBufferSize = audioPlayerThread.getLineBufferSize();
+    audioRing =
+        new AudioRingBuffer(
+            AUDIO_RING_BUFFERS * AudioPlayerThread.getMaxBufferSize(format, lineBufferSize));
+    updateAudioBufferSize(1F);
+    int rc = ffmpegSetAudioRingBuffer(getNativeMediaRef(), audioRing.getBuffer());
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+    audioPlayerThread.setAudioRing(audioRing);
+    audioPlayerThread.start();
+  }
+
+  /** Sizes the audio buffers of the native side and the audio thread for the rate */
+  private void updateAudioBufferSize(float rate) {
+    int bufferSize =
+        AudioPlayerThread.getBufferSize(
+            getAudioFormat(), audioPlayerThread.getLineBufferSize(), rate);
+    int rc = ffmpegSetAudioBufferSize(getNativeMediaRef(), bufferSize);
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+    audioPlayerThread.setBufferSize(bufferSize);
   }
 
   private void initAndStartImagePlayer() {
-    imageCanvasPlayerThread.init(getColorSpace(), getImageWidth(), getImageHeight(), container);
+    imageCanvasPlayerThread.init(
+        getColorSpace(), pixelLayout, getImageWidth(), getImageHeight(), container);
     imageCanvasPlayerThread.start();
   }
 
@@ -108,25 +253,51 @@ public final class FfmpegJavaMediaPlayer extends FfmpegMediaPlayer implements Me
     initNative(); // start the event queue, make sure to register all state/error listeners before
     long[] newNativeMediaRef = new long[1];
 
-    int rc =
-        ffmpegInitPlayer(newNativeMediaRef, mediaPath, audioFormat, colorSpace, AUDIO_BUFFER_SIZE);
-    if (0 != rc) {
-      throwMediaErrorException(rc, null);
-    }
+    try {
+      int rc =
+          ffmpegInitPlayer(
+              newNativeMediaRef,
+              mediaPath,
+              audioFormat,
+              colorSpace,
+              pixelLayout.getBytesPerPixel(),
+              AudioPlayerThread.getBufferSize(audioFormat, 0, 1F),
+              prepareMediaCacheDirectory());
+      if (0 != rc) {
+        throwMediaErrorException(rc, null);
+      }
 
-    nativeMediaRef = newNativeMediaRef[0];
+      nativeMediaRef = newNativeMediaRef[0];
+      LOGGER.info("Media cache %s for %s", getMediaCacheStatus(), mediaPath);
+
+      // From now on the native threads post their events instead of calling up
+      rc =
+          ffmpegSetEventRing(
+              getNativeMediaRef(),
+              openEventRing(FfmpegJavaMediaPlayer::ffmpegWaitForEventRings),
+              System.nanoTime());
+      if (0 != rc) {
+        throwMediaErrorException(rc, null);
+      }
 
-    // If we have audio data consume it
-    if (hasAudioData()) {
-      initAndStartAudioPlayer();
-    }
-    // If we have image data consume it
-    if (hasImageData()) {
-      initAndStartImagePlayer();
-    }
+      // The native side publishes the state once right away
+      PlayerStateSnapshot snapshot = new PlayerStateSnapshot();
+      rc = ffmpegSetStateSnapshot(getNativeMediaRef(), snapshot.getBuffer());
+      if (0 != rc) {
+        throwMediaErrorException(rc, null);
+      }
+      stateSnapshot = snapshot;
 
-    synchronized (initLock) {
-      initLock.notify();
+      // If we have audio data consume it
+      if (hasAudioData()) {
+        initAndStartAudioPlayer();
+      }
+      // If we have image data consume it
+      if (hasImageData()) {
+        initAndStartImagePlayer();
+      }
+    } finally {
+      releaseStateEvents();
     }
   }
 
@@ -154,6 +325,7 @@ public final class FfmpegJavaMediaPlayer extends FfmpegMediaPlayer implements Me
     if (0 != rc) {
       throwMediaErrorException(rc, null);
     }
+    wakeUpImagePlayer();
   }
 
   @Override
@@ -162,6 +334,7 @@ public final class FfmpegJavaMediaPlayer extends FfmpegMediaPlayer implements Me
     if (0 != rc) {
       throwMediaErrorException(rc, null);
     }
+    wakeUpImagePlayer();
 
     playerSetRate(1.0F);
   }
@@ -172,6 +345,7 @@ public final class FfmpegJavaMediaPlayer extends FfmpegMediaPlayer implements Me
     if (0 != rc) {
       throwMediaErrorException(rc, null);
     }
+    wakeUpImagePlayer();
   }
 
   @Override
@@ -180,6 +354,7 @@ public final class FfmpegJavaMediaPlayer extends FfmpegMediaPlayer implements Me
     if (0 != rc) {
       throwMediaErrorException(rc, null);
     }
+    wakeUpImagePlayer();
   }
 
   @Override
@@ -188,6 +363,7 @@ public final class FfmpegJavaMediaPlayer extends FfmpegMediaPlayer implements Me
     if (0 != rc) {
       throwMediaErrorException(rc, null);
     }
+    wakeUpImagePlayer();
   }
 
   @Override
@@ -196,6 +372,7 @@ public final class FfmpegJavaMediaPlayer extends FfmpegMediaPlayer implements Me
     if (0 != rc) {
       throwMediaErrorException(rc, null);
     }
+    wakeUpImagePlayer();
   }
 
   @Override
@@ -214,6 +391,68 @@ public final class FfmpegJavaMediaPlayer extends FfmpegMediaPlayer implements Me
     if (0 != rc) {
       throwMediaErrorException(rc, null);
     }
+    if (audioPlayerThread.isInit()) {
+      updateAudioBufferSize(rate);
+    }
+    wakeUpImagePlayer();
+  }
+
+  // The getters polled by the UI read the published state, without taking the dispose lock that
+  // a concurrent call may hold
+  @Override
+  public double getPresentationTime() {
+    PlayerStateSnapshot snapshot = stateSnapshot;
+    return snapshot != null ? snapshot.getTime() : super.getPresentationTime();
+  }
+
+  @Override
+  public long getCurrentFrameNumber() {
+    PlayerStateSnapshot snapshot = stateSnapshot;
+    return snapshot != null ? snapshot.getFrameNumber() : super.getCurrentFrameNumber();
+  }
+
+  @Override
+  public float getRate() {
+    PlayerStateSnapshot snapshot = stateSnapshot;
+    if (snapshot == null) {
+      return super.getRate();
+    }
+    return playerIsSeekPlaybackEnabled() ? playBackRate : (float) snapshot.getSpeed();
+  }
+
+  @Override
+  public double getFps() {
+    PlayerStateSnapshot snapshot = stateSnapshot;
+    return snapshot != null ? snapshot.getFrameRate() : super.getFps();
+  }
+
+  @Override
+  public double getDuration() {
+    PlayerStateSnapshot snapshot = stateSnapshot;
+    return snapshot != null ? snapshot.getDuration() : super.getDuration();
+  }
+
+  @Override
+  public int getImageWidth() {
+    PlayerStateSnapshot snapshot = stateSnapshot;
+    return snapshot != null ? snapshot.getImageWidth() : super.getImageWidth();
+  }
+
+  @Override
+  public int getImageHeight() {
+    PlayerStateSnapshot snapshot = stateSnapshot;
+    return snapshot != null ? snapshot.getImageHeight() : super.getImageHeight();
+  }
+
+  /** Plays backward natively, only rates beyond 32x in either direction are emulated by seeks */
+  @Override
+  protected boolean playerIsSeekPlaybackEnabled() {
+    return playBackRate < -32F || playBackRate > 32F;
+  }
+
+  @Override
+  protected boolean playerRateIsSupported(final float rate) {
+    return -32F <= rate && rate <= 32F;
   }
 
   @Override
@@ -292,15 +531,57 @@ public final class FfmpegJavaMediaPlayer extends FfmpegMediaPlayer implements Me
     }
   }
 
+  @Override
+  protected double playerGetStreamStartTime() throws MediaException {
+    double[] startTime = new double[1];
+    int rc = ffmpegGetStartTime(getNativeMediaRef(), startTime);
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+    return startTime[0];
+  }
+
   @Override
   protected void playerSeek(double streamTime) throws MediaException {
     int rc = ffmpegSeek(getNativeMediaRef(), streamTime);
     if (0 != rc) {
       throwMediaErrorException(rc, null);
     }
+    wakeUpImagePlayer();
     LOGGER.trace("Player is seeking to " + streamTime + " sec");
   }
 
+  @Override
+  protected void playerSeek(double streamTime, SeekMode mode, long seekId)
+      throws MediaException {
+    int rc = ffmpegSeekWithMode(getNativeMediaRef(), streamTime, mode.ordinal(), seekId);
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+    wakeUpImagePlayer();
+    LOGGER.trace("Player is seeking to " + streamTime + " sec, " + mode);
+  }
+
+  @Override
+  protected void playerSeekToFrame(long frameNumber, long seekId) throws MediaException {
+    int rc = ffmpegSeekToFrame(getNativeMediaRef(), frameNumber, seekId);
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+    wakeUpImagePlayer();
+    LOGGER.trace("Player is seeking to frame " + frameNumber);
+  }
+
+  @Override
+  protected long playerGetCurrentFrameNumber() throws MediaException {
+    long[] frameNumber = new long[1];
+    int rc = ffmpegGetFrameNumber(getNativeMediaRef(), frameNumber);
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+    return frameNumber[0];
+  }
+
   @Override
   protected int playerGetWindowWidth() throws MediaException {
     return this.container.getWidth();
@@ -319,11 +600,13 @@ public final class FfmpegJavaMediaPlayer extends FfmpegMediaPlayer implements Me
   @Override
   protected void playerShowWindow() throws MediaException {
     this.container.setVisible(true);
+    updateMemoryPriority();
   }
 
   @Override
   protected void playerHideWindow() throws MediaException {
     this.container.setVisible(false);
+    updateMemoryPriority();
   }
 
   @Override
@@ -333,12 +616,19 @@ public final class FfmpegJavaMediaPlayer extends FfmpegMediaPlayer implements Me
 
   @Override
   protected void playerDispose() {
+    // The getters fall back to the disposed checks of the base class
+    stateSnapshot = null;
     if (imageCanvasPlayerThread.isInit()) {
       imageCanvasPlayerThread.terminate();
     }
     if (audioPlayerThread.isInit()) {
       audioPlayerThread.terminate();
     }
+    PlaybackGroup group = playbackGroup;
+    if (group != null) {
+      // The native group keeps no hold on the pipeline
+      group.remove(this);
+    }
 
     ffmpegDisposePlayer(getNativeMediaRef());
   }
@@ -426,6 +716,310 @@ public final class FfmpegJavaMediaPlayer extends FfmpegMediaPlayer implements Me
     }
   }
 
+  @Override
+  public long updateImageData(ByteBuffer buffer) {
+    if (!buffer.isDirect()) {
+      throw new IllegalArgumentException("Image buffer must be a direct buffer");
+    }
+    int rc;
+    if (buffer != imageBuffer) {
+      rc = ffmpegSetImageBuffer(getNativeMediaRef(), buffer);
+      if (0 != rc) {
+        throwMediaErrorException(rc, null);
+      }
+      imageBuffer = buffer;
+    }
+    rc = ffmpegUpdateImageBuffer(getNativeMediaRef(), imageFrameNumber, imageDisplayDelay);
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+    return imageFrameNumber[0];
+  }
+
+  /** The image player waits for the next frame to be due, a new state or seek brings it earlier */
+  private void wakeUpImagePlayer() {
+    if (imageCanvasPlayerThread.isInit()) {
+      imageCanvasPlayerThread.wakeUp();
+    }
+  }
+
+  @Override
+  public double getImageDisplayDelay() {
+    return imageDisplayDelay[0];
+  }
+
+  @Override
+  public void setImageOutputSize(int width, int height) {
+    int rc = ffmpegSetImageOutputSize(getNativeMediaRef(), width, height);
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+  }
+
+  /**
+   * Selects the scaler used when the image is displayed smaller than its source, trading quality
+   * for throughput
+   *
+   * @param quality The scaler quality
+   */
+  public void setScalerQuality(ScalerQuality quality) {
+    int rc = ffmpegSetScalerFlags(getNativeMediaRef(), quality.swsFlags);
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+    wakeUpImagePlayer();
+  }
+
+  /**
+   * Get the fraction of the audio ring that holds decoded audio not yet handed to the sound line
+   *
+   * @return The fill level between 0 and 1; 0 if there is no audio
+   */
+  public double getAudioBufferFillLevel() {
+    AudioRingBuffer ring = audioRing;
+    return ring == null ? 0 : (double) ring.getFill() / ring.getCapacity();
+  }
+
+  /**
+   * Get the number of bytes currently written to the sound line at once; it scales with the
+   * playback rate
+   *
+   * @return The audio buffer size in bytes; 0 if there is no audio
+   */
+  public int getAudioBufferSize() {
+    return audioPlayerThread.isInit() ? audioPlayerThread.getBufferSize() : 0;
+  }
+
+  /**
+   * Get the number of times the sound line ran dry, an audible gap; if this grows the audio buffer
+   * is too small for the machine
+   *
+   * @return The underrun count since the player started
+   */
+  public long getAudioUnderrunCount() {
+    return audioPlayerThread.getUnderrunCount();
+  }
+
+  /**
+   * Get the number of times the sound line did not accept a buffer within two buffer durations;
+   * if this grows the output device plays slower than expected and audio lags behind
+   *
+   * @return The overrun count since the player started
+   */
+  public long getAudioOverrunCount() {
+    return audioPlayerThread.getOverrunCount();
+  }
+
+  /**
+   * Get whether opening the media restored its probe from the media cache
+   *
+   * @return The media cache status
+   */
+  public MediaCacheStatus getMediaCacheStatus() {
+    int[] status = new int[1];
+    int rc = ffmpegGetMediaCacheStatus(getNativeMediaRef(), status);
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+    return MediaCacheStatus.values()[status[0]];
+  }
+
+  /**
+   * Get whether the keyframe index of the image stream is available. The first open of a media
+   * builds it in the background; until then seeks fall back to the container index.
+   *
+   * @return True once the keyframe index is built or loaded from the media cache
+   */
+  public boolean isKeyframeIndexReady() {
+    boolean[] ready = new boolean[1];
+    int rc = ffmpegIsKeyframeIndexReady(getNativeMediaRef(), ready);
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+    return ready[0];
+  }
+
+  /**
+   * Sets the memory budget of the decoded frames kept around the paused position. Stepping
+   * backward shows a cached frame instead of seeking and decoding its GOP again; the least
+   * recently used frames are dropped when the budget is exceeded. The default is 64 MiB. The cache
+   * holds at most its part of the player's share of the memory budget, which may be less.
+   *
+   * @param bytes The budget in bytes, 0 disables the cache
+   */
+  public void setFrameCacheSize(long bytes) {
+    if (bytes < 0) {
+      throw new IllegalArgumentException("Negative frame cache size " + bytes);
+    }
+    int rc = ffmpegSetFrameCacheSize(getNativeMediaRef(), bytes);
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+  }
+
+  /**
+   * Sets the rate above which playback, forward or backward, decodes keyframes only. Most frames
+   * would be dropped as late at such rates anyway; the audio is silent meanwhile. Scrubbing, far
+   * seeks in quick succession, also shows keyframes only until the seeks settle. The default is
+   * 8x.
+   *
+   * @param rate The absolute rate, {@link Float#POSITIVE_INFINITY} decodes every frame at any rate
+   */
+  public void setKeyframeOnlyRate(float rate) {
+    if (!(rate >= 1F)) {
+      throw new IllegalArgumentException("Keyframe only rate below 1x " + rate);
+    }
+    int rc = ffmpegSetKeyframeOnlyRate(getNativeMediaRef(), rate);
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+  }
+
+  /**
+   * Get the time from the request of the last completed seek to its first decoded frame. Seeks
+   * replaced by newer ones before they completed do not count.
+   *
+   * @return The latency in seconds, NaN before the first seek completed
+   */
+  public double getSeekLatency() {
+    double[] latency = new double[1];
+    int rc = ffmpegGetSeekLatency(getNativeMediaRef(), latency);
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+    return latency[0];
+  }
+
+  /**
+   * Sets the memory budget that all players of the process share for packets read ahead, decoded
+   * images, cached frames and frames decoded for reverse playback. Each player gets a share in
+   * proportion to the size of its images and its priority, but never less than it needs to play;
+   * the shares are rebalanced as players come and go, are shown or hidden. The default is 512 MiB.
+   *
+   * @param bytes The budget in bytes
+   */
+  public static void setMemoryBudget(long bytes) {
+    if (bytes < 0) {
+      throw new IllegalArgumentException("Negative memory budget " + bytes);
+    }
+    int rc = ffmpegSetMemoryBudget(bytes);
+    if (0 != rc) {
+      MediaError error = MediaError.getFromCode(rc);
+      throw new MediaException(error.description(), null, error);
+    }
+  }
+
+  /** @return The memory budget that all players of the process share in bytes */
+  public static long getMemoryBudget() {
+    return getProcessMemoryUsage()[0];
+  }
+
+  /** @return The bytes held by all players of the process; may exceed the budget */
+  public static long getMemoryUsage() {
+    return getProcessMemoryUsage()[1];
+  }
+
+  /** Budget and usage */
+  private static long[] getProcessMemoryUsage() {
+    long[] usage = new long[2];
+    int rc = ffmpegGetProcessMemoryUsage(usage);
+    if (0 != rc) {
+      MediaError error = MediaError.getFromCode(rc);
+      throw new MediaException(error.description(), null, error);
+    }
+    return usage;
+  }
+
+  /**
+   * Weighs the share of this player in the memory budget, relative to other players. A hidden
+   * player gets a quarter of the share of its priority.
+   *
+   * @param priority The priority, 1 by default
+   */
+  public void setMemoryPriority(double priority) {
+    if (!(priority >= 0)) {
+      throw new IllegalArgumentException("Negative memory priority " + priority);
+    }
+    memoryPriority = priority;
+    updateMemoryPriority();
+  }
+
+  private void updateMemoryPriority() {
+    double priority = memoryPriority;
+    if (container != null && !container.isVisible()) {
+      priority *= HIDDEN_MEMORY_PRIORITY;
+    }
+    int rc = ffmpegSetMemoryPriority(getNativeMediaRef(), priority);
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+  }
+
+  /** @return The share of this player in the memory budget in bytes, 0 before it is ready */
+  public long getPlayerMemoryBudget() {
+    return getPlayerMemoryUsage(0);
+  }
+
+  /** @return The bytes of the packets, decoded images and cached frames this player holds */
+  public long getPlayerMemoryUsage() {
+    return getPlayerMemoryUsage(1);
+  }
+
+  private long getPlayerMemoryUsage(int index) {
+    long[] usage = new long[2];
+    int rc = ffmpegGetMemoryUsage(getNativeMediaRef(), usage);
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+    return usage[index];
+  }
+
+  /** @return The group this player plays in, null if none */
+  public PlaybackGroup getPlaybackGroup() {
+    return playbackGroup;
+  }
+
+  /** Called by the group while holding its lock */
+  void joinPlaybackGroup(PlaybackGroup group, long refGroup, double offset) {
+    int rc = ffmpegJoinPlaybackGroup(refGroup, getNativeMediaRef(), offset);
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+    playbackGroup = group;
+  }
+
+  /** Called by the group while holding its lock */
+  void leavePlaybackGroup(long refGroup) {
+    playbackGroup = null;
+    int rc = ffmpegLeavePlaybackGroup(refGroup, getNativeMediaRef());
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+  }
+
+  /** Takes over the rate that the group set on the native side */
+  void playbackGroupRateChanged(float rate) {
+    playBackRate = rate;
+    if (audioPlayerThread.isInit()) {
+      updateAudioBufferSize(rate);
+    }
+    wakeUpImagePlayer();
+  }
+
+  /** The group played, paused, or sought on the native side */
+  void playbackGroupStateChanged() {
+    wakeUpImagePlayer();
+  }
+
+  double getPlaybackGroupDrift(long refGroup) {
+    double[] drift = new double[1];
+    int rc = ffmpegGetPlaybackGroupDrift(refGroup, getNativeMediaRef(), drift);
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+    return drift[0];
+  }
+
   @Override
   protected void HandleSdlKeyEvents(FfmpegSdlMediaPlayer.SdlPlayerKeyEvent evt) {
     throw new IllegalArgumentException();
@@ -446,7 +1040,9 @@ public final class FfmpegJavaMediaPlayer extends FfmpegMediaPlayer implements Me
       String sourcePath,
       AudioFormat requestedAudioFormat,
       ColorSpace requestedColorFormat,
-      int audioBufferSizeInBy);
+      int bytesPerPixel,
+      int audioBufferSizeInBy,
+      String mediaCacheDirectory);
 
   private native int ffmpegDisposePlayer(long refNativeMedia);
 
@@ -476,8 +1072,13 @@ public final class FfmpegJavaMediaPlayer extends FfmpegMediaPlayer implements Me
 
   private native int ffmpegGetDuration(long refNativeMedia, double[] duration);
 
+  private native int ffmpegGetStartTime(long refNativeMedia, double[] startTime);
+
   private native int ffmpegSeek(long refNativeMedia, double streamTime);
 
+  private native int ffmpegSeekWithMode(
+      long refNativeMedia, double streamTime, int mode, long seekId);
+
   private native int ffmpegHasAudioData(long refNativeMedia, boolean[] hasData);
 
   private native int ffmpegHasImageData(long refNativeMedia, boolean[] hasData);
@@ -493,4 +1094,70 @@ public final class FfmpegJavaMediaPlayer extends FfmpegMediaPlayer implements Me
   private native int ffmpegUpdateImageData(long refNativeMedia, byte[] data);
 
   private native int ffmpegUpdateAudioData(long refNativeMedia, byte[] data);
+
+  private native int ffmpegSetAudioRingBuffer(long refNativeMedia, ByteBuffer buffer);
+
+  private native int ffmpegSetAudioBufferSize(long refNativeMedia, int size);
+
+  private native int ffmpegSetImageBuffer(long refNativeMedia, ByteBuffer buffer);
+
+  private native int ffmpegUpdateImageBuffer(
+      long refNativeMedia, long[] frameNumber, double[] displayDelay);
+
+  private native int ffmpegSetImageOutputSize(long refNativeMedia, int width, int height);
+
+  private native int ffmpegSetScalerFlags(long refNativeMedia, int flags);
+
+  private native int ffmpegGetMediaCacheStatus(long refNativeMedia, int[] status);
+
+  private native int ffmpegIsKeyframeIndexReady(long refNativeMedia, boolean[] ready);
+
+  private native int ffmpegSetFrameCacheSize(long refNativeMedia, long maxBytes);
+
+  private native int ffmpegSetKeyframeOnlyRate(long refNativeMedia, float rate);
+
+  private native int ffmpegGetSeekLatency(long refNativeMedia, double[] latency);
+
+  private native int ffmpegSeekToFrame(long refNativeMedia, long frameNumber, long seekId);
+
+  private native int ffmpegGetFrameNumber(long refNativeMedia, long[] frameNumber);
+
+  private native int ffmpegSetStateSnapshot(long refNativeMedia, ByteBuffer buffer);
+
+  private native int ffmpegSetEventRing(long refNativeMedia, ByteBuffer buffer, long nanoTime);
+
+  private static native long ffmpegWaitForEventRings(long wakeUps, long timeoutMillis);
+
+  // Native methods of the playback group, in this class to share its library
+  static native int ffmpegCreatePlaybackGroup(long[] newNativeGroup);
+
+  static native int ffmpegDisposePlaybackGroup(long refNativeGroup);
+
+  private static native int ffmpegJoinPlaybackGroup(
+      long refNativeGroup, long refNativeMedia, double offset);
+
+  private static native int ffmpegLeavePlaybackGroup(long refNativeGroup, long refNativeMedia);
+
+  static native int ffmpegPlayPlaybackGroup(long refNativeGroup);
+
+  static native int ffmpegPausePlaybackGroup(long refNativeGroup);
+
+  static native int ffmpegSetPlaybackGroupRate(long refNativeGroup, float rate);
+
+  static native int ffmpegSeekPlaybackGroup(long refNativeGroup, double time);
+
+  static native int ffmpegGetPlaybackGroupTime(long refNativeGroup, double[] time);
+
+  private static native int ffmpegGetPlaybackGroupDrift(
+      long refNativeGroup, long refNativeMedia, double[] drift);
+
+  static native int ffmpegGetPlaybackGroupDriftSpread(long refNativeGroup, double[] spread);
+
+  private native int ffmpegSetMemoryPriority(long refNativeMedia, double priority);
+
+  private native int ffmpegGetMemoryUsage(long refNativeMedia, long[] usage);
+
+  private static native int ffmpegSetMemoryBudget(long bytes);
+
+  private static native int ffmpegGetProcessMemoryUsage(long[] usage);
 }
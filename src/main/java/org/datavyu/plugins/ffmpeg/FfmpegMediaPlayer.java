@@ -2,18 +2,12 @@ package org.datavyu.plugins.ffmpeg;
 
 import org.datavyu.plugins.DatavyuMediaPlayer;
 import org.datavyu.plugins.MediaException;
-import org.datavyu.plugins.PlayerStateEvent;
 
-import org.datavyu.plugins.PlayerStateListener;
 import java.net.URI;
 
 /** Uses ffmpeg to decode and transcode (optional) image and audio data */
 abstract class FfmpegMediaPlayer extends DatavyuMediaPlayer {
 
-  private PlayerStateListener stateListener;
-
-  protected final Object initLock = new Object();
-
   protected double startTime = 0.0;
 
   /**
@@ -23,8 +17,8 @@ abstract class FfmpegMediaPlayer extends DatavyuMediaPlayer {
    */
   protected FfmpegMediaPlayer(URI mediaPath) {
     super(mediaPath);
-    stateListener = new FfmpegPlayerStateListener();
-    this.addMediaPlayerStateListener(stateListener);
+    // Listeners get READY once init has set up the java side too, to read a correct PTS
+    holdStateEvents();
   }
 
   @Override
@@ -47,38 +41,4 @@ abstract class FfmpegMediaPlayer extends DatavyuMediaPlayer {
   protected boolean playerRateIsSupported(final float rate) {
     return 0F <= rate && rate <= 32F;
   }
-
-  class FfmpegPlayerStateListener implements PlayerStateListener {
-
-    @Override
-    public void onReady(PlayerStateEvent evt) {
-      synchronized (initLock) {
-        try {
-          // wait for the initialization of the Java Side
-          // This will make sure to have a correct PTS
-          initLock.wait(100);
-        } catch (InterruptedException e) {
-          e.printStackTrace();
-        }
-      }
-    }
-
-    @Override
-    public void onPlaying(PlayerStateEvent evt) {}
-
-    @Override
-    public void onPause(PlayerStateEvent evt) {}
-
-    @Override
-    public void onStop(PlayerStateEvent evt) {}
-
-    @Override
-    public void onStall(PlayerStateEvent evt) {}
-
-    @Override
-    public void onFinish(PlayerStateEvent evt) {}
-
-    @Override
-    public void onHalt(PlayerStateEvent evt) {}
-  }
 }
@@ -42,12 +42,16 @@ public final class FfmpegSdlMediaPlayer extends FfmpegMediaPlayer {
     initNative(); // start the event queue, make sure to register all state/error listeners before
     long[] newNativeMediaRef = new long[1];
 
-    int rc = ffmpegInitPlayer(newNativeMediaRef, mediaPath);
-    if (0 != rc) {
-      throwMediaErrorException(rc, null);
-    }
+    try {
+      int rc = ffmpegInitPlayer(newNativeMediaRef, mediaPath);
+      if (0 != rc) {
+        throwMediaErrorException(rc, null);
+      }
 
-    nativeMediaRef = newNativeMediaRef[0];
+      nativeMediaRef = newNativeMediaRef[0];
+    } finally {
+      releaseStateEvents();
+    }
   }
 
   @Override
@@ -214,6 +218,16 @@ public final class FfmpegSdlMediaPlayer extends FfmpegMediaPlayer {
     }
   }
 
+  @Override
+  protected double playerGetStreamStartTime() throws MediaException {
+    double[] startTime = new double[1];
+    int rc = ffmpegGetStartTime(getNativeMediaRef(), startTime);
+    if (0 != rc) {
+      throwMediaErrorException(rc, null);
+    }
+    return startTime[0];
+  }
+
   @Override
   protected void playerSeek(double streamTime) throws MediaException {
     int rc = ffmpegSeek(getNativeMediaRef(), streamTime);
@@ -402,6 +416,8 @@ public final class FfmpegSdlMediaPlayer extends FfmpegMediaPlayer {
 
   protected native int ffmpegGetDuration(long refNativeMedia, double[] duration);
 
+  protected native int ffmpegGetStartTime(long refNativeMedia, double[] startTime);
+
   protected native int ffmpegSeek(long refNativeMedia, double streamTime);
 
   protected native int ffmpegGetImageWidth(long refNativeMedia, int[] width);
@@ -5,6 +5,9 @@ import org.datavyu.plugins.MediaPlayerData;
 import java.awt.*;
 import java.awt.color.ColorSpace;
 import java.awt.image.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.Hashtable;
 
 /**
@@ -20,23 +23,48 @@ import java.util.Hashtable;
  */
 class ImageCanvasPlayerThread extends Thread {
   private MediaPlayerData mediaPlayerData;
-  private SampleModel sm;
   private ComponentColorModel cm;
   private Hashtable<String, String> properties = new Hashtable<>();
   private BufferedImage image;
+  /**
+   * Raster of the image; frames go in through setDataElements, never through its backing array,
+   * so that Java2D keeps the image managed and draws it from an accelerated copy
+   */
+  private WritableRaster raster;
+  private FfmpegJavaMediaPlayer.PixelLayout pixelLayout;
+  /** Frame pixels for the BYTE_RGB layout, sized for the source so that any output size fits */
   private byte[] data;
+  /** Frame pixels for the INT_RGB layout */
+  private int[] intData;
+  /** Direct buffer the native side converts frames into; registered once during init */
+  private ByteBuffer imageBuffer;
+  /** Native-order int view of the image buffer for the INT_RGB layout */
+  private IntBuffer intImageBuffer;
   private Canvas canvas;
   private BufferStrategy strategy;
-  private static final int NUM_COLOR_CHANNELS = 3;
   private static final int NUM_BUFFERS = 3;
   private volatile boolean terminate = false;
   private int imgWidth;
   private int imgHeight;
-  private static final double REFRESH_PERIOD = 0.01; // >= 1/fps
+  /** The size the native side scales the image to, at most the source size */
+  private int outWidth;
+  private int outHeight;
+  /**
+   * Redraw an unchanged frame at this period to recover lost buffer contents; exposed contents
+   * are redrawn right away when the canvas asks to be painted
+   */
+  private static final double IDLE_REDRAW_PERIOD = 1.0; // sec
   private static final double TO_MILLIS = 1000.0;
 
   private boolean isInit = false;
 
+  /** Cuts the wait for the next frame short, e.g. when the player changes its state or seeks */
+  private final Object wakeUpLock = new Object();
+  private boolean isWokenUp = false;
+
+  /** The number of the frame currently shown; the native side increments it for new frames */
+  private long frameNumber = -1;
+
   /**
    * x1 and y1 are respectively the x and y coordinates of the left, upper corner of the destination
    * rectangle.
@@ -74,7 +102,7 @@ class ImageCanvasPlayerThread extends Thread {
             return;
           }
           scaleImage(); // calculate the coordinate of the target image
-          graphics.drawImage(image, x1, y1, x2, y2, 0, 0, this.imgWidth, this.imgHeight, null);
+          graphics.drawImage(image, x1, y1, x2, y2, 0, 0, this.outWidth, this.outHeight, null);
           graphics.dispose();
         } while (strategy.contentsRestored());
         strategy.show();
@@ -111,25 +139,79 @@ class ImageCanvasPlayerThread extends Thread {
     y2 = canvasHeight + y1;
   }
 
-  public void init(ColorSpace colorSpace, int width, int height, Container container) {
+  /**
+   * Ask the native side to scale the image to the size it takes on the canvas, so that the draw is
+   * close to a 1:1 blit. Only scales down; Java2D upscales an accelerated image cheaply.
+   */
+  private void updateOutputSize() {
+    if (canvas.getWidth() <= 0 || canvas.getHeight() <= 0) {
+      return;
+    }
+    scaleImage();
+    int width = Math.max(1, Math.min(x2 - x1, imgWidth));
+    int height = Math.max(1, Math.min(y2 - y1, imgHeight));
+    if (width != outWidth || height != outHeight) {
+      mediaPlayerData.setImageOutputSize(width, height);
+      outWidth = width;
+      outHeight = height;
+      createImage();
+    }
+  }
+
+  /**
+   * Create the image at the output size. Packed ints are drawn through Java2D's INT_RGB loops,
+   * which are much faster than the generic loops used for a 3-byte ComponentColorModel.
+   */
+  private void createImage() {
+    if (pixelLayout == FfmpegJavaMediaPlayer.PixelLayout.INT_RGB) {
+      image = new BufferedImage(outWidth, outHeight, BufferedImage.TYPE_INT_RGB);
+    } else {
+      image = new BufferedImage(
+          cm, cm.createCompatibleWritableRaster(outWidth, outHeight), false, properties);
+    }
+    raster = image.getRaster();
+  }
+
+  public void init(
+      ColorSpace colorSpace,
+      FfmpegJavaMediaPlayer.PixelLayout pixelLayout,
+      int width,
+      int height,
+      Container container) {
+    this.pixelLayout = pixelLayout;
     this.imgWidth = width;
     this.imgHeight = height;
-    // Allocate byte buffer
-    this.data = new byte[this.imgWidth * this.imgHeight * NUM_COLOR_CHANNELS];
+    this.outWidth = width;
+    this.outHeight = height;
+    // Allocate the buffers, the native side writes ints in native byte order
+    int numPixels = this.imgWidth * this.imgHeight;
+    this.imageBuffer =
+        ByteBuffer.allocateDirect(numPixels * pixelLayout.getBytesPerPixel())
+            .order(ByteOrder.nativeOrder());
+    if (pixelLayout == FfmpegJavaMediaPlayer.PixelLayout.INT_RGB) {
+      this.intImageBuffer = imageBuffer.asIntBuffer();
+      this.intData = new int[numPixels];
+    } else {
+      this.data = new byte[numPixels * pixelLayout.getBytesPerPixel()];
+    }
     // Update the Image buffer to Pull a frame from the queue and update
     // the PTS from NaN to 0.0 sec
-    mediaPlayerData.updateImageData(data);
+    frameNumber = mediaPlayerData.updateImageData(imageBuffer);
     // Set defaults
     cm = new ComponentColorModel(
             colorSpace, false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
-    sm = cm.createCompatibleSampleModel(this.imgWidth, this.imgHeight);
-    // Initialize an empty image
-    DataBufferByte dataBuffer = new DataBufferByte(this.data, this.imgWidth * this.imgHeight);
-    WritableRaster raster = WritableRaster.createWritableRaster(sm, dataBuffer, new Point(0, 0));
-    // Create the original image
-    image = new BufferedImage(cm, raster, false, properties);
+    // Create the image once; later frames are written into its raster
+    createImage();
+    copyImageBuffer();
     // Create the canvas and add it to the center of the Container
-    this.canvas = new Canvas();
+    this.canvas =
+        new Canvas() {
+          @Override
+          public void paint(Graphics graphics) {
+            // Exposed or resized; the player thread draws
+            wakeUp();
+          }
+        };
     // Add a black background to the canvas
     this.canvas.setBackground(Color.BLACK);
     container.add(canvas, BorderLayout.CENTER);
@@ -144,38 +226,80 @@ class ImageCanvasPlayerThread extends Thread {
     isInit = true;
   }
 
+  /**
+   * Copy the native frame into the image raster. Setting the data elements marks the image as
+   * changed, so Java2D uploads it once and draws later redraws of the frame from its cached copy.
+   */
+  private void copyImageBuffer() {
+    int numPixels = outWidth * outHeight;
+    if (pixelLayout == FfmpegJavaMediaPlayer.PixelLayout.INT_RGB) {
+      intImageBuffer.rewind();
+      intImageBuffer.get(intData, 0, numPixels);
+      raster.setDataElements(0, 0, outWidth, outHeight, intData);
+    } else {
+      imageBuffer.rewind();
+      imageBuffer.get(data, 0, numPixels * pixelLayout.getBytesPerPixel());
+      raster.setDataElements(0, 0, outWidth, outHeight, data);
+    }
+  }
+
   public boolean isInit() {
     return isInit;
   }
 
   public void run() {
+    Dimension drawnSize = canvas.getSize();
+    long lastDrawn = System.currentTimeMillis();
     while (!terminate) {
       long start = System.currentTimeMillis();
-      // Get the next image data -- may return the same data if no newer data is available
-      mediaPlayerData.updateImageData(data);
-      // Create data buffer
-      DataBufferByte dataBuffer = new DataBufferByte(data, imgWidth * imgHeight);
-      // Create writable raster
-      WritableRaster raster = WritableRaster.createWritableRaster(sm, dataBuffer, new Point(0, 0));
-      // Create the original image
-      image = new BufferedImage(cm, raster, false, properties);
-      // Update the display
-      updateDisplay();
-      // Compute the wait time as update time - time taken
-      double waitTime = REFRESH_PERIOD - (System.currentTimeMillis() - start) / TO_MILLIS;
+      updateOutputSize();
+      // Get the next image data -- the frame number is unchanged if no newer data is available
+      long newFrameNumber = mediaPlayerData.updateImageData(imageBuffer);
+      boolean frameChanged = newFrameNumber != frameNumber;
+      if (frameChanged) {
+        frameNumber = newFrameNumber;
+        copyImageBuffer();
+      }
+      // Only redraw for a new frame, a resize, or the occasional idle refresh
+      Dimension size = canvas.getSize();
+      if (frameChanged
+          || !size.equals(drawnSize)
+          || (start - lastDrawn) / TO_MILLIS >= IDLE_REDRAW_PERIOD) {
+        updateDisplay();
+        drawnSize = size;
+        lastDrawn = start;
+      }
+      // Wait until the next frame is due or until woken up
+      double delay = Math.min(mediaPlayerData.getImageDisplayDelay(), IDLE_REDRAW_PERIOD);
+      waitForWakeUp(delay - (System.currentTimeMillis() - start) / TO_MILLIS);
+    }
+  }
+
+  private void waitForWakeUp(double waitTime) {
+    synchronized (wakeUpLock) {
       // If we need to wait
-      if (waitTime > 0) {
+      if (!isWokenUp && waitTime * TO_MILLIS >= 1) {
         try {
-          Thread.sleep((long) (waitTime * TO_MILLIS));
+          wakeUpLock.wait((long) (waitTime * TO_MILLIS));
         } catch (InterruptedException ie) {
           // do nothing
         }
       }
+      isWokenUp = false;
+    }
+  }
+
+  /** Looks for a new frame right away instead of when the current one is due */
+  public void wakeUp() {
+    synchronized (wakeUpLock) {
+      isWokenUp = true;
+      wakeUpLock.notify();
     }
   }
 
   public void terminate() {
     terminate = true;
     isInit = false;
+    wakeUp();
   }
 }
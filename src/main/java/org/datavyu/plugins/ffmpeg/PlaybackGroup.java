@@ -0,0 +1,168 @@
+package org.datavyu.plugins.ffmpeg;
+
+import org.datavyu.plugins.MediaError;
+import org.datavyu.plugins.MediaException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Plays several players on one timeline
+ *
+ * <p>The members of a group time their display and audio against the clock of the group instead
+ * of their own clocks, each shifted by its offset: a member shows the stream time group time +
+ * offset. Play, pause, rate, and seek of the group apply to all members under one native lock and
+ * move the clock of the group once, so that the players no longer need to be sought back in line
+ * from time to time. Members drop or repeat frames and stretch their audio to follow the group;
+ * how far a member is off is reported as its drift.
+ *
+ * <p>While grouped, a player should be controlled through its group only. A disposed player
+ * leaves its group, a closed group lets go of its members.
+ */
+public final class PlaybackGroup implements AutoCloseable {
+
+  /** Faster rates are emulated by seeks in each player, which cannot follow a shared clock */
+  public static final float MAX_RATE = 32F;
+
+  private final Set<FfmpegJavaMediaPlayer> members = new LinkedHashSet<>();
+
+  private long nativeGroupRef;
+
+  private float rate = 1F;
+
+  public PlaybackGroup() {
+    long[] groupHandle = new long[1];
+    check(FfmpegJavaMediaPlayer.ffmpegCreatePlaybackGroup(groupHandle));
+    nativeGroupRef = groupHandle[0];
+  }
+
+  private static void check(int rc) {
+    if (0 != rc) {
+      MediaError error = MediaError.getFromCode(rc);
+      throw new MediaException(error.description(), null, error);
+    }
+  }
+
+  private long getNativeGroupRef() {
+    if (nativeGroupRef == 0) {
+      throw new IllegalStateException("The playback group is closed");
+    }
+    return nativeGroupRef;
+  }
+
+  /**
+   * Adds the player and brings it in line: it seeks to the group time + offset and takes the rate
+   * and the play state of the group
+   *
+   * @param player An initialized player that is in no other group
+   * @param offset The stream time of the player in seconds when the group time is 0
+   */
+  public synchronized void add(FfmpegJavaMediaPlayer player, double offset) {
+    if (player.getPlaybackGroup() != null) {
+      throw new IllegalArgumentException("The player is in a playback group already");
+    }
+    player.joinPlaybackGroup(this, getNativeGroupRef(), offset);
+    members.add(player);
+    player.playbackGroupRateChanged(getRate());
+  }
+
+  /** Lets the player go on its own clock from where it is; does nothing for a non member */
+  public synchronized void remove(FfmpegJavaMediaPlayer player) {
+    if (members.remove(player)) {
+      player.leavePlaybackGroup(getNativeGroupRef());
+    }
+  }
+
+  /** @return The members in the order they were added */
+  public synchronized Set<FfmpegJavaMediaPlayer> getMembers() {
+    return new LinkedHashSet<>(members);
+  }
+
+  public synchronized void play() {
+    check(FfmpegJavaMediaPlayer.ffmpegPlayPlaybackGroup(getNativeGroupRef()));
+    stateChanged();
+  }
+
+  public synchronized void pause() {
+    check(FfmpegJavaMediaPlayer.ffmpegPausePlaybackGroup(getNativeGroupRef()));
+    stateChanged();
+  }
+
+  /**
+   * @param rate The rate, from 0 to MAX_RATE; a group plays forward only, its members don't follow
+   *     the clock of the group while playing backward
+   */
+  public synchronized void setRate(float rate) {
+    if (!(rate >= 0 && rate <= MAX_RATE)) {
+      throw new IllegalArgumentException("Rate " + rate + " not within 0 and " + MAX_RATE + "x");
+    }
+    check(FfmpegJavaMediaPlayer.ffmpegSetPlaybackGroupRate(getNativeGroupRef(), rate));
+    this.rate = rate;
+    for (FfmpegJavaMediaPlayer player : members) {
+      player.playbackGroupRateChanged(rate);
+    }
+  }
+
+  private void stateChanged() {
+    for (FfmpegJavaMediaPlayer player : members) {
+      player.playbackGroupStateChanged();
+    }
+  }
+
+  public synchronized float getRate() {
+    return rate;
+  }
+
+  /** @param time The group time in seconds; each member seeks to it + its offset */
+  public synchronized void seek(double time) {
+    check(FfmpegJavaMediaPlayer.ffmpegSeekPlaybackGroup(getNativeGroupRef(), time));
+    stateChanged();
+  }
+
+  /** @return The group time in seconds */
+  public synchronized double getTime() {
+    double[] time = new double[1];
+    check(FfmpegJavaMediaPlayer.ffmpegGetPlaybackGroupTime(getNativeGroupRef(), time));
+    return time[0];
+  }
+
+  /**
+   * Get how far the member is off: the stream time of the frame it shows minus the group time +
+   * its offset when the frame was due
+   *
+   * @param player A member
+   * @return The drift in seconds, positive if ahead, NaN until the member shows a frame
+   */
+  public synchronized double getDrift(FfmpegJavaMediaPlayer player) {
+    if (!members.contains(player)) {
+      throw new IllegalArgumentException("The player is not in this playback group");
+    }
+    return player.getPlaybackGroupDrift(getNativeGroupRef());
+  }
+
+  /**
+   * Get how far the members are off from each other
+   *
+   * @return The largest minus the smallest drift of the members in seconds
+   */
+  public synchronized double getDriftSpread() {
+    double[] spread = new double[1];
+    check(
+        FfmpegJavaMediaPlayer.ffmpegGetPlaybackGroupDriftSpread(getNativeGroupRef(), spread));
+    return spread[0];
+  }
+
+  /** Lets go of the members, which play on their own clocks from where they are */
+  @Override
+  public synchronized void close() {
+    if (nativeGroupRef == 0) {
+      return;
+    }
+    for (FfmpegJavaMediaPlayer player : new ArrayList<>(members)) {
+      remove(player);
+    }
+    FfmpegJavaMediaPlayer.ffmpegDisposePlaybackGroup(nativeGroupRef);
+    nativeGroupRef = 0;
+  }
+}
@@ -0,0 +1,153 @@
+package org.datavyu.plugins.ffmpeg;
+
+import java.nio.ByteBuffer;
+import org.datavyu.util.DirectMemory;
+
+/**
+ * Reader side of the player state that the native player publishes into shared direct memory
+ *
+ * <p>The native side writes the state whenever it changes or a frame is shown, so the getters that
+ * the UI polls read it without locks or JNI calls. A sequence counter guards the fields: it is odd
+ * while the native side writes and changes with every write, so a read that saw it odd or changed
+ * is retried. The getters read one field each and allocate nothing; read copies all fields into a
+ * state the caller owns and reuses, so that they come from the same write.
+ * The layout must match PlayerStateSnapshot.h: the sequence at byte 0, then the presentation time,
+ * speed, frame rate, duration, and frame number as 8 byte values, followed by the player state,
+ * seek serial, image width, and image height as 4 byte values.
+ */
+final class PlayerStateSnapshot {
+  private static final int SEQUENCE_OFFSET = 0;
+  private static final int TIME_OFFSET = 8;
+  private static final int SPEED_OFFSET = 16;
+  private static final int FRAME_RATE_OFFSET = 24;
+  private static final int DURATION_OFFSET = 32;
+  private static final int FRAME_NUMBER_OFFSET = 40;
+  private static final int PLAYER_STATE_OFFSET = 48;
+  private static final int SERIAL_OFFSET = 52;
+  private static final int IMAGE_WIDTH_OFFSET = 56;
+  private static final int IMAGE_HEIGHT_OFFSET = 60;
+  private static final int SIZE = 64;
+
+  private final ByteBuffer buffer = DirectMemory.allocateAligned(SIZE);
+  private final long address = DirectMemory.address(buffer);
+
+  /** The fields of one published state */
+  static final class State {
+    double time;
+    double speed;
+    double frameRate;
+    double duration;
+    /** The number of the frame shown, -1 if unknown */
+    long frameNumber;
+    /** The native PlayerState, in the order of the native enum */
+    int playerState;
+    /** Changes with every seek */
+    int serial;
+    int imageWidth;
+    int imageHeight;
+  }
+
+  /** The buffer to register with the native side */
+  ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * Copies the fields of one published state, retrying until no write overlapped the copy
+   *
+   * @param state The state to copy into, which the caller may reuse for every read
+   * @return The state
+   */
+  State read(State state) {
+    while (true) {
+      long sequence = DirectMemory.getLongVolatile(address + SEQUENCE_OFFSET);
+      if ((sequence & 1) != 0) {
+        continue;
+      }
+      state.time = Double.longBitsToDouble(DirectMemory.getLongVolatile(address + TIME_OFFSET));
+      state.speed = Double.longBitsToDouble(DirectMemory.getLongVolatile(address + SPEED_OFFSET));
+      state.frameRate =
+          Double.longBitsToDouble(DirectMemory.getLongVolatile(address + FRAME_RATE_OFFSET));
+      state.duration =
+          Double.longBitsToDouble(DirectMemory.getLongVolatile(address + DURATION_OFFSET));
+      state.frameNumber = DirectMemory.getLongVolatile(address + FRAME_NUMBER_OFFSET);
+      state.playerState = DirectMemory.getIntVolatile(address + PLAYER_STATE_OFFSET);
+      state.serial = DirectMemory.getIntVolatile(address + SERIAL_OFFSET);
+      state.imageWidth = DirectMemory.getIntVolatile(address + IMAGE_WIDTH_OFFSET);
+      state.imageHeight = DirectMemory.getIntVolatile(address + IMAGE_HEIGHT_OFFSET);
+      DirectMemory.loadFence();
+      if (sequence == DirectMemory.getLongVolatile(address + SEQUENCE_OFFSET)) {
+        return state;
+      }
+    }
+  }
+
+  /** Reads one 8 byte field, retrying until no write overlapped the read; allocates nothing */
+  private long readLong(int offset) {
+    while (true) {
+      long sequence = DirectMemory.getLongVolatile(address + SEQUENCE_OFFSET);
+      if ((sequence & 1) != 0) {
+        continue;
+      }
+      long value = DirectMemory.getLongVolatile(address + offset);
+      DirectMemory.loadFence();
+      if (sequence == DirectMemory.getLongVolatile(address + SEQUENCE_OFFSET)) {
+        return value;
+      }
+    }
+  }
+
+  /** Reads one 4 byte field, retrying until no write overlapped the read; allocates nothing */
+  private int readInt(int offset) {
+    while (true) {
+      long sequence = DirectMemory.getLongVolatile(address + SEQUENCE_OFFSET);
+      if ((sequence & 1) != 0) {
+        continue;
+      }
+      int value = DirectMemory.getIntVolatile(address + offset);
+      DirectMemory.loadFence();
+      if (sequence == DirectMemory.getLongVolatile(address + SEQUENCE_OFFSET)) {
+        return value;
+      }
+    }
+  }
+
+  double getTime() {
+    return Double.longBitsToDouble(readLong(TIME_OFFSET));
+  }
+
+  double getSpeed() {
+    return Double.longBitsToDouble(readLong(SPEED_OFFSET));
+  }
+
+  double getFrameRate() {
+    return Double.longBitsToDouble(readLong(FRAME_RATE_OFFSET));
+  }
+
+  double getDuration() {
+    return Double.longBitsToDouble(readLong(DURATION_OFFSET));
+  }
+
+  /** The number of the frame shown, -1 if unknown */
+  long getFrameNumber() {
+    return readLong(FRAME_NUMBER_OFFSET);
+  }
+
+  /** The native PlayerState, in the order of the native enum */
+  int getPlayerState() {
+    return readInt(PLAYER_STATE_OFFSET);
+  }
+
+  /** Changes with every seek */
+  int getSerial() {
+    return readInt(SERIAL_OFFSET);
+  }
+
+  int getImageWidth() {
+    return readInt(IMAGE_WIDTH_OFFSET);
+  }
+
+  int getImageHeight() {
+    return readInt(IMAGE_HEIGHT_OFFSET);
+  }
+}
@@ -0,0 +1,102 @@
+package org.datavyu.util;
+
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import sun.misc.Unsafe;
+
+/**
+ * Ordered access to longs in direct buffers that are shared with native code
+ *
+ * <p>ByteBuffer reads and writes are plain accesses that the JIT may reorder or hoist out of loops.
+ * Memory shared with a native thread needs acquire loads and release stores instead; on Java 8
+ * these are only available through sun.misc.Unsafe, an internal API that this class depends on
+ * directly. It is the only user of Unsafe in the plugin, so moving to VarHandles once the build
+ * targets Java 9 or later only touches this file.
+ */
+@SuppressWarnings("sunapi") // sun.misc.Unsafe is internal; kept to this class on purpose
+public final class DirectMemory {
+  private static final Unsafe UNSAFE;
+  private static final long ADDRESS_OFFSET;
+
+  static {
+    try {
+      Field field = Unsafe.class.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      UNSAFE = (Unsafe) field.get(null);
+      ADDRESS_OFFSET = UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private DirectMemory() {}
+
+  /**
+   * Allocates a zeroed direct buffer in native byte order whose address is aligned to 64 bytes
+   *
+   * @param capacity The capacity in bytes
+   * @return The aligned buffer
+   */
+  public static ByteBuffer allocateAligned(int capacity) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(capacity + 63);
+    int offset = (int) (-address(buffer) & 63);
+    buffer.position(offset);
+    buffer.limit(offset + capacity);
+    return buffer.slice().order(ByteOrder.nativeOrder());
+  }
+
+  /**
+   * Returns the native address of a direct buffer
+   *
+   * @param buffer The direct buffer
+   * @return The address of the first byte of the buffer
+   */
+  public static long address(ByteBuffer buffer) {
+    if (!buffer.isDirect()) {
+      throw new IllegalArgumentException("Buffer must be a direct buffer");
+    }
+    return UNSAFE.getLong(buffer, ADDRESS_OFFSET);
+  }
+
+  /** Loads the long at address with acquire semantics */
+  public static long getLongVolatile(long address) {
+    return UNSAFE.getLongVolatile(null, address);
+  }
+
+  /** Stores the long at address with release semantics */
+  public static void putLongOrdered(long address, long value) {
+    UNSAFE.putOrderedLong(null, address, value);
+  }
+
+  /** Loads the int at address with acquire semantics */
+  public static int getIntVolatile(long address) {
+    return UNSAFE.getIntVolatile(null, address);
+  }
+
+  /** Stores the int at address with release semantics */
+  public static void putIntOrdered(long address, int value) {
+    UNSAFE.putOrderedInt(null, address, value);
+  }
+
+  /** Stores the int at address, ordered before any later load */
+  public static void putIntVolatile(long address, int value) {
+    UNSAFE.putIntVolatile(null, address, value);
+  }
+
+  /** Issues a load-load fence */
+  public static void loadFence() {
+    UNSAFE.loadFence();
+  }
+
+  /** Issues a store-store fence */
+  public static void storeFence() {
+    UNSAFE.storeFence();
+  }
+
+  /** Issues a fence that orders stores before later loads too */
+  public static void fullFence() {
+    UNSAFE.fullFence();
+  }
+}
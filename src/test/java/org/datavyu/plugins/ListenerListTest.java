@@ -0,0 +1,139 @@
+package org.datavyu.plugins;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntConsumer;
+import org.testng.annotations.Test;
+
+/** Dispatches to listeners while others come and go, and isolates slow ones */
+public class ListenerListTest {
+
+  @Test
+  public void testDispatchesWhileListenersChange() throws InterruptedException {
+    ListenerList<IntConsumer> listeners = new ListenerList<>(Runnable::run);
+    List<Integer> received = new CopyOnWriteArrayList<>();
+    IntConsumer kept = received::add;
+    listeners.add(kept);
+
+    Thread changer =
+        new Thread(
+            () -> {
+              for (int i = 0; i < 10000; i++) {
+                IntConsumer passing = value -> {};
+                listeners.add(passing);
+                listeners.remove(passing);
+              }
+            });
+    changer.start();
+    for (int value = 0; value < 10000; value++) {
+      final int event = value;
+      listeners.dispatch(listener -> listener.accept(event));
+    }
+    changer.join();
+
+    assertEquals(received.size(), 10000);
+    for (int value = 0; value < 10000; value++) {
+      assertEquals((int) received.get(value), value);
+    }
+  }
+
+  @Test
+  public void testIsolatesSlowListeners() {
+    List<Runnable> deferred = new ArrayList<>();
+    ListenerList<IntConsumer> listeners = new ListenerList<>(deferred::add);
+    List<Integer> slowReceived = new ArrayList<>();
+    List<Integer> fastReceived = new ArrayList<>();
+    listeners.add(
+        value -> {
+          if (value == 0) {
+            try {
+              Thread.sleep(ListenerList.SLOW_CALLBACK_NANOS / 1000000 + 10);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+          slowReceived.add(value);
+        });
+    IntConsumer fast = fastReceived::add;
+    listeners.add(fast);
+
+    for (int value = 0; value < 3; value++) {
+      final int event = value;
+      listeners.dispatch(listener -> listener.accept(event));
+    }
+    // The first, slow callback ran on the dispatching thread, the later ones wait for the executor
+    assertEquals(slowReceived.size(), 1);
+    assertEquals(fastReceived.size(), 3);
+    assertEquals(deferred.size(), 1);
+
+    deferred.remove(0).run();
+    assertEquals(slowReceived.toString(), "[0, 1, 2]");
+  }
+
+  @Test
+  public void testDropsTheOldestCallbacksOfALaggingListener() {
+    List<Runnable> deferred = new ArrayList<>();
+    ListenerList<IntConsumer> listeners = new ListenerList<>(deferred::add);
+    List<Integer> received = new ArrayList<>();
+    listeners.add(
+        value -> {
+          if (value == 0) {
+            try {
+              Thread.sleep(ListenerList.SLOW_CALLBACK_NANOS / 1000000 + 10);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+          received.add(value);
+        });
+
+    int numberOfEvents = ListenerList.MAX_PENDING_CALLBACKS + 11;
+    for (int value = 0; value < numberOfEvents; value++) {
+      final int event = value;
+      listeners.dispatch(listener -> listener.accept(event));
+    }
+    deferred.remove(0).run();
+
+    assertEquals(received.size(), 1 + ListenerList.MAX_PENDING_CALLBACKS);
+    assertEquals((int) received.get(1), numberOfEvents - ListenerList.MAX_PENDING_CALLBACKS);
+    assertEquals((int) received.get(received.size() - 1), numberOfEvents - 1);
+    assertTrue(deferred.isEmpty());
+  }
+
+  @Test
+  public void testKeepsTheTerminalCallbacksOfALaggingListener() {
+    List<Runnable> deferred = new ArrayList<>();
+    ListenerList<IntConsumer> listeners = new ListenerList<>(deferred::add);
+    List<Integer> received = new ArrayList<>();
+    listeners.add(
+        value -> {
+          if (value == 0) {
+            try {
+              Thread.sleep(ListenerList.SLOW_CALLBACK_NANOS / 1000000 + 10);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+          received.add(value);
+        });
+
+    // Events 1 and 2 are terminal, e.g. a stop and an error, and are followed by many others
+    int numberOfEvents = ListenerList.MAX_PENDING_CALLBACKS + 11;
+    for (int value = 0; value < numberOfEvents; value++) {
+      final int event = value;
+      listeners.dispatch(listener -> listener.accept(event), value == 1 || value == 2);
+    }
+    deferred.remove(0).run();
+
+    assertEquals(received.size(), 1 + ListenerList.MAX_PENDING_CALLBACKS);
+    assertEquals((int) received.get(1), 1);
+    assertEquals((int) received.get(2), 2);
+    assertEquals((int) received.get(3), numberOfEvents - ListenerList.MAX_PENDING_CALLBACKS + 2);
+    assertEquals((int) received.get(received.size() - 1), numberOfEvents - 1);
+    assertTrue(deferred.isEmpty());
+  }
+}
@@ -0,0 +1,188 @@
+package org.datavyu.plugins;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import org.datavyu.util.DirectMemory;
+import org.testng.annotations.Test;
+
+/**
+ * Drains the event ring while java threads play the native posters, claiming and filling slots
+ * the way EventRing.cpp does. Does not need the native libraries.
+ */
+public class NativeEventRingTest {
+  private static final int NUMBER_OF_EVENTS = 1 << 20;
+
+  /** Posts like EventRing::Post; synchronized in place of the compare and swap on the tail */
+  private static synchronized boolean post(
+      long address, int type, int code, double time, long seekId) {
+    long position = DirectMemory.getLongVolatile(address);
+    int capacity = DirectMemory.getIntVolatile(address + 64);
+    long slot = address + 128 + (position & (capacity - 1)) * 40;
+    if (DirectMemory.getLongVolatile(slot) < position) {
+      DirectMemory.putLongOrdered(address + 72, DirectMemory.getLongVolatile(address + 72) + 1);
+      return false;
+    }
+    DirectMemory.putLongOrdered(address, position + 1);
+    DirectMemory.putIntOrdered(slot + 8, type);
+    DirectMemory.putIntOrdered(slot + 12, code);
+    DirectMemory.putLongOrdered(slot + 16, Double.doubleToLongBits(time));
+    DirectMemory.putLongOrdered(slot + 24, seekId);
+    DirectMemory.putLongOrdered(slot + 32, System.nanoTime());
+    DirectMemory.putLongOrdered(slot, position + 1);
+    return true;
+  }
+
+  /** Unparks like EventRing::Unpark, returns true if the poster has to wake the reader */
+  private static synchronized boolean unpark(long address) {
+    DirectMemory.fullFence();
+    if (DirectMemory.getIntVolatile(address + 80) == 0) {
+      return false;
+    }
+    DirectMemory.putIntVolatile(address + 80, 0);
+    return true;
+  }
+
+  @Test
+  public void testDrainsInPostingOrder() {
+    NativeEventRing ring = new NativeEventRing(8);
+    long address = DirectMemory.address(ring.getBuffer());
+    assertEquals(ring.getMeanLatency(), -1);
+    assertTrue(post(address, NativeEventRing.PLAYER_STATE, 102, 1.5, 0));
+    assertTrue(post(address, NativeEventRing.SEEK_COMPLETED, 0, 2.5, 7));
+    assertTrue(post(address, NativeEventRing.MEDIA_ERROR, 42, 0, 0));
+
+    List<String> events = new ArrayList<>();
+    NativeEventRing.Handler handler =
+        (type, code, time, seekId) -> events.add(type + " " + code + " " + time + " " + seekId);
+    assertEquals(ring.drain(handler, 2), 2);
+    assertEquals(ring.drain(handler, 2), 1);
+    assertEquals(ring.drain(handler, 2), 0);
+
+    assertEquals(events.get(0), "1 102 1.5 0");
+    assertEquals(events.get(1), "3 0 2.5 7");
+    assertEquals(events.get(2), "2 42 0.0 0");
+    assertEquals(ring.getEventCount(), 3);
+    assertTrue(ring.getMeanLatency() >= 0);
+    assertTrue(ring.getMaxLatency() >= ring.getMeanLatency());
+  }
+
+  @Test
+  public void testRejectsEventsWhenFull() {
+    NativeEventRing ring = new NativeEventRing(4);
+    long address = DirectMemory.address(ring.getBuffer());
+    for (int i = 0; i < 4; i++) {
+      assertTrue(post(address, NativeEventRing.SEEK_COMPLETED, 0, i, i));
+    }
+    assertFalse(post(address, NativeEventRing.SEEK_COMPLETED, 0, 4, 4));
+    assertEquals(ring.getOverflowCount(), 1);
+
+    // Draining frees the slots for the next lap
+    assertEquals(ring.drain((type, code, time, seekId) -> {}, 2), 2);
+    assertTrue(post(address, NativeEventRing.SEEK_COMPLETED, 0, 4, 4));
+    assertTrue(post(address, NativeEventRing.SEEK_COMPLETED, 0, 5, 5));
+    assertFalse(post(address, NativeEventRing.SEEK_COMPLETED, 0, 6, 6));
+
+    long[] next = {2};
+    assertEquals(
+        ring.drain((type, code, time, seekId) -> assertEquals(seekId, next[0]++), 8), 4);
+    assertEquals(next[0], 6);
+  }
+
+  @Test
+  public void testDrainsWhatManyPostersPost() throws InterruptedException {
+    NativeEventRing ring = new NativeEventRing(64);
+    long address = DirectMemory.address(ring.getBuffer());
+    int numberOfPosters = 4;
+    List<Thread> posters = new ArrayList<>();
+    for (int poster = 0; poster < numberOfPosters; poster++) {
+      final int code = poster;
+      Thread thread =
+          new Thread(
+              () -> {
+                for (long seekId = 1; seekId <= NUMBER_OF_EVENTS / numberOfPosters; ) {
+                  if (post(address, NativeEventRing.SEEK_COMPLETED, code, seekId, seekId)) {
+                    seekId++;
+                  } else {
+                    Thread.yield();
+                  }
+                }
+              });
+      posters.add(thread);
+      thread.start();
+    }
+
+    // Each poster's events arrive in its order and intact
+    long[] lastSeekIds = new long[numberOfPosters];
+    long drained = 0;
+    while (drained < NUMBER_OF_EVENTS) {
+      drained +=
+          ring.drain(
+              (type, code, time, seekId) -> {
+                assertEquals(seekId, lastSeekIds[code] + 1);
+                assertEquals(time, (double) seekId);
+                lastSeekIds[code] = seekId;
+              },
+              16);
+    }
+    for (Thread thread : posters) {
+      thread.join();
+    }
+    assertEquals(ring.drain((type, code, time, seekId) -> {}, 16), 0);
+  }
+
+  @Test
+  public void testParksUntilAnEventIsPosted() {
+    NativeEventRing ring = new NativeEventRing(8);
+    long address = DirectMemory.address(ring.getBuffer());
+    assertFalse(unpark(address));
+    assertTrue(ring.park());
+    assertTrue(post(address, NativeEventRing.PLAYER_STATE, 102, 1.5, 0));
+    // Only the first poster after parking wakes the reader
+    assertTrue(unpark(address));
+    assertTrue(post(address, NativeEventRing.PLAYER_STATE, 103, 2.5, 0));
+    assertFalse(unpark(address));
+
+    // Events that arrived before parking are drained instead
+    assertFalse(ring.park());
+    assertEquals(ring.drain((type, code, time, seekId) -> {}, 8), 2);
+    assertTrue(ring.park());
+  }
+
+  @Test
+  public void testWokenUpForEveryEvent() throws InterruptedException {
+    NativeEventRing ring = new NativeEventRing(64);
+    long address = DirectMemory.address(ring.getBuffer());
+    Semaphore wakeUps = new Semaphore(0);
+    Thread poster =
+        new Thread(
+            () -> {
+              for (long seekId = 1; seekId <= NUMBER_OF_EVENTS / 4; ) {
+                if (post(address, NativeEventRing.SEEK_COMPLETED, 0, seekId, seekId)) {
+                  seekId++;
+                  if (unpark(address)) {
+                    wakeUps.release();
+                  }
+                } else {
+                  Thread.yield();
+                }
+              }
+            });
+    poster.start();
+
+    // Never polls: waits for a wake up whenever the ring is parked
+    long drained = 0;
+    while (drained < NUMBER_OF_EVENTS / 4) {
+      drained += ring.drain((type, code, time, seekId) -> {}, 16);
+      if (drained < NUMBER_OF_EVENTS / 4 && ring.park()) {
+        wakeUps.acquire();
+      }
+    }
+    poster.join();
+    assertEquals(drained, NUMBER_OF_EVENTS / 4);
+  }
+}
@@ -0,0 +1,75 @@
+package org.datavyu.plugins;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.testng.annotations.Test;
+
+/** Runs tasks now and later on the executors that players share */
+public class PlayerExecutorTest {
+
+  private static void testRunsTasks(PlayerExecutor executor) throws InterruptedException {
+    int numberOfTasks = 1000;
+    CountDownLatch done = new CountDownLatch(2 * numberOfTasks);
+    // Asserted here rather than in the tasks, whose failures the executor would swallow
+    AtomicLong shortestDelay = new AtomicLong(Long.MAX_VALUE);
+    for (int task = 0; task < numberOfTasks; task++) {
+      executor.execute(done::countDown);
+      long start = System.nanoTime();
+      executor.schedule(
+          () -> {
+            shortestDelay.accumulateAndGet(System.nanoTime() - start, Math::min);
+            done.countDown();
+          },
+          5,
+          TimeUnit.MILLISECONDS);
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertTrue(shortestDelay.get() >= TimeUnit.MILLISECONDS.toNanos(5));
+  }
+
+  @Test
+  public void testFixedPoolKeepsItsThreads() throws InterruptedException {
+    PlayerExecutor executor = PlayerExecutor.newFixedPool(2);
+    Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    CountDownLatch done = new CountDownLatch(100);
+    for (int task = 0; task < 100; task++) {
+      executor.execute(
+          () -> {
+            threads.add(Thread.currentThread());
+            done.countDown();
+          });
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertTrue(threads.size() <= 2);
+    testRunsTasks(executor);
+  }
+
+  @Test
+  public void testVirtualThreadsWhenTheRuntimeHasThem() throws InterruptedException {
+    PlayerExecutor executor = PlayerExecutor.newVirtualThreads();
+    boolean hasVirtualThreads = true;
+    try {
+      Thread.class.getMethod("ofVirtual");
+    } catch (NoSuchMethodException e) {
+      hasVirtualThreads = false;
+    }
+    assertEquals(executor != null, hasVirtualThreads);
+    if (executor != null) {
+      testRunsTasks(executor);
+    }
+  }
+
+  @Test
+  public void testSharesOneExecutor() {
+    PlayerExecutor shared = PlayerExecutor.getShared();
+    assertNotNull(shared);
+    assertTrue(shared == PlayerExecutor.getShared());
+  }
+}
@@ -0,0 +1,38 @@
+package org.datavyu.plugins.ffmpeg;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import javax.sound.sampled.AudioFormat;
+import org.testng.annotations.Test;
+
+/** Checks how the audio buffer size follows the format, line buffer, and playback rate */
+public class AudioBufferSizeTest {
+  private static final AudioFormat MONO_FORMAT = AudioPlayerThread.getMonoFormat();
+  private static final int LINE_BUFFER_SIZE = 44100; // 0.5 sec of mono 16 bit
+
+  @Test
+  public void testBufferSizeIsWholeFrames() {
+    for (float rate : new float[] {0.5F, 1F, 1.5F, 3F, 32F}) {
+      int size = AudioPlayerThread.getBufferSize(MONO_FORMAT, LINE_BUFFER_SIZE, rate);
+      assertEquals(size % MONO_FORMAT.getFrameSize(), 0);
+    }
+  }
+
+  @Test
+  public void testBufferSizeGrowsWithRate() {
+    int normal = AudioPlayerThread.getBufferSize(MONO_FORMAT, LINE_BUFFER_SIZE, 1F);
+    int fast = AudioPlayerThread.getBufferSize(MONO_FORMAT, LINE_BUFFER_SIZE, 4F);
+    assertTrue(fast > normal);
+    assertEquals(AudioPlayerThread.getBufferSize(MONO_FORMAT, LINE_BUFFER_SIZE, -1F), normal);
+    assertEquals(AudioPlayerThread.getBufferSize(MONO_FORMAT, LINE_BUFFER_SIZE, 0.25F), normal);
+  }
+
+  @Test
+  public void testBufferSizeFitsTwiceIntoLine() {
+    assertEquals(
+        AudioPlayerThread.getBufferSize(MONO_FORMAT, LINE_BUFFER_SIZE, 32F),
+        AudioPlayerThread.getMaxBufferSize(MONO_FORMAT, LINE_BUFFER_SIZE));
+    assertTrue(AudioPlayerThread.getBufferSize(MONO_FORMAT, 4096, 32F) <= 2048);
+  }
+}
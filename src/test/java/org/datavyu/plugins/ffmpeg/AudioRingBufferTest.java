@@ -0,0 +1,64 @@
+package org.datavyu.plugins.ffmpeg;
+
+import static org.testng.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.datavyu.util.DirectMemory;
+import org.testng.annotations.Test;
+
+/**
+ * Drains the audio ring while a java thread plays the native producer, writing the data region and
+ * publishing the write index the way AudioRingBuffer.cpp does. Does not need the native libraries.
+ */
+public class AudioRingBufferTest {
+  private static final int HEADER_SIZE = 192;
+  private static final int NUMBER_OF_BYTES = 1 << 22;
+
+  @Test
+  public void testCapacityIsPowerOfTwo() {
+    assertEquals(new AudioRingBuffer(4096).getCapacity(), 4096);
+    assertEquals(new AudioRingBuffer(5000).getCapacity(), 8192);
+  }
+
+  @Test
+  public void testReadWhatWasWrittenAcrossWraparound() throws InterruptedException {
+    AudioRingBuffer ring = new AudioRingBuffer(1000);
+    ByteBuffer shared = ring.getBuffer().duplicate().order(ByteOrder.nativeOrder());
+    int capacity = ring.getCapacity();
+
+    long address = DirectMemory.address(ring.getBuffer());
+
+    // No lock on either side: the producer publishes its data with a release store of the write
+    // index and the ring reads it with an acquire load, as with the native producer
+    Thread producer =
+        new Thread(
+            () -> {
+              long writeIndex = 0;
+              while (writeIndex < NUMBER_OF_BYTES) {
+                long consumed = DirectMemory.getLongVolatile(address + 64);
+                int free = capacity - (int) (writeIndex - consumed);
+                int len = Math.min(Math.min(free, 333), (int) (NUMBER_OF_BYTES - writeIndex));
+                for (int i = 0; i < len; i++) {
+                  long index = writeIndex + i;
+                  shared.put(HEADER_SIZE + (int) (index & (capacity - 1)), (byte) index);
+                }
+                writeIndex += len;
+                DirectMemory.putLongOrdered(address, writeIndex);
+              }
+            });
+    producer.start();
+
+    byte[] data = new byte[257];
+    long readIndex = 0;
+    while (readIndex < NUMBER_OF_BYTES) {
+      int read = ring.read(data, 0, data.length);
+      for (int i = 0; i < read; i++) {
+        assertEquals(data[i], (byte) (readIndex + i));
+      }
+      readIndex += read;
+    }
+    producer.join();
+    assertEquals(ring.getFill(), 0);
+  }
+}
@@ -0,0 +1,165 @@
+package org.datavyu.plugins.ffmpeg;
+
+import static org.testng.Assert.assertEquals;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Hashtable;
+import java.util.Random;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.testng.annotations.Test;
+
+/**
+ * Measures the time per frame to copy a 1080p frame from the native buffer into the image and draw
+ * it into a smaller surface, the way {@link ImageCanvasPlayerThread} does, for the byte and the
+ * packed int pixel layouts. The shipped path writes the raster through setDataElements, which keeps
+ * the image managed; it is compared with copying into the raster's backing array, which makes the
+ * image unmanaged. Redraws of an unchanged frame, e.g. on resize or expose, are timed apart. Checks
+ * that the drawn pixels are those of the frame. Does not need the native libraries.
+ */
+public class DrawImageBenchmark {
+  private static final Logger logger = LogManager.getFormatterLogger(DrawImageBenchmark.class);
+
+  private static final int IMAGE_WIDTH = 1920;
+  private static final int IMAGE_HEIGHT = 1080;
+  private static final int TARGET_WIDTH = 1280;
+  private static final int TARGET_HEIGHT = 720;
+  private static final int WARM_UP_FRAMES = 50;
+  private static final int NUMBER_OF_FRAMES = 200;
+
+  /** Copies the native frame into the image, the way the player thread does */
+  private interface FrameCopy {
+    void copy(BufferedImage image);
+  }
+
+  /** Create the destination surface; a display compatible image if a display is available */
+  private static BufferedImage createTarget() {
+    if (GraphicsEnvironment.isHeadless()) {
+      return new BufferedImage(TARGET_WIDTH, TARGET_HEIGHT, BufferedImage.TYPE_INT_RGB);
+    }
+    return GraphicsEnvironment.getLocalGraphicsEnvironment()
+        .getDefaultScreenDevice()
+        .getDefaultConfiguration()
+        .createCompatibleImage(TARGET_WIDTH, TARGET_HEIGHT, Transparency.OPAQUE);
+  }
+
+  private static void draw(Graphics2D graphics, BufferedImage image) {
+    graphics.drawImage(
+        image, 0, 0, TARGET_WIDTH, TARGET_HEIGHT, 0, 0, IMAGE_WIDTH, IMAGE_HEIGHT, null);
+  }
+
+  /**
+   * Returns the average time in ms to copy a new frame into the image and draw it, or with
+   * copyEveryFrame false to draw the same frame again. Checks that the surface shows the frame.
+   */
+  private static double timeDraw(
+      BufferedImage image, FrameCopy frameCopy, boolean copyEveryFrame, int expectedRgb) {
+    BufferedImage target = createTarget();
+    Graphics2D graphics = target.createGraphics();
+    frameCopy.copy(image);
+    long start = 0;
+    for (int i = 0; i < WARM_UP_FRAMES + NUMBER_OF_FRAMES; i++) {
+      if (i == WARM_UP_FRAMES) {
+        start = System.nanoTime();
+      }
+      if (copyEveryFrame) {
+        frameCopy.copy(image);
+      }
+      draw(graphics, image);
+    }
+    double time = (System.nanoTime() - start) / 1e6 / NUMBER_OF_FRAMES;
+    graphics.dispose();
+    // The top left pixel of the surface samples the top left pixel of the frame
+    assertEquals(target.getRGB(0, 0) & 0xFFFFFF, expectedRgb);
+    return time;
+  }
+
+  @Test
+  public void testDrawImageTimePerFrame() {
+    Random random = new Random(0);
+    int numPixels = IMAGE_WIDTH * IMAGE_HEIGHT;
+
+    // BYTE_RGB: three bytes per pixel in R, G, B order
+    ComponentColorModel cm =
+        new ComponentColorModel(
+            ColorSpace.getInstance(ColorSpace.CS_sRGB),
+            false,
+            false,
+            Transparency.OPAQUE,
+            DataBuffer.TYPE_BYTE);
+    ByteBuffer byteFrame = ByteBuffer.allocateDirect(numPixels * 3);
+    byte[] bytes = new byte[numPixels * 3];
+    random.nextBytes(bytes);
+    byteFrame.put(bytes);
+    int byteRgb = (bytes[0] & 0xFF) << 16 | (bytes[1] & 0xFF) << 8 | (bytes[2] & 0xFF);
+    byte[] byteData = new byte[numPixels * 3];
+    FrameCopy byteSetDataElements =
+        image -> {
+          byteFrame.rewind();
+          byteFrame.get(byteData);
+          image.getRaster().setDataElements(0, 0, IMAGE_WIDTH, IMAGE_HEIGHT, byteData);
+        };
+    FrameCopy byteBackingArray =
+        image -> {
+          byteFrame.rewind();
+          byteFrame.get(((DataBufferByte) image.getRaster().getDataBuffer()).getData());
+        };
+
+    // INT_RGB: packed ints in native byte order
+    ByteBuffer intBytes = ByteBuffer.allocateDirect(numPixels * 4).order(ByteOrder.nativeOrder());
+    IntBuffer intFrame = intBytes.asIntBuffer();
+    for (int i = 0; i < numPixels; i++) {
+      intFrame.put(random.nextInt() & 0xFFFFFF);
+    }
+    int intRgb = intFrame.get(0);
+    int[] intData = new int[numPixels];
+    FrameCopy intSetDataElements =
+        image -> {
+          intFrame.rewind();
+          intFrame.get(intData);
+          image.getRaster().setDataElements(0, 0, IMAGE_WIDTH, IMAGE_HEIGHT, intData);
+        };
+    FrameCopy intBackingArray =
+        image -> {
+          intFrame.rewind();
+          intFrame.get(((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+        };
+
+    for (boolean copyEveryFrame : new boolean[] {true, false}) {
+      double byteManaged =
+          timeDraw(createByteImage(cm), byteSetDataElements, copyEveryFrame, byteRgb);
+      double byteUnmanaged =
+          timeDraw(createByteImage(cm), byteBackingArray, copyEveryFrame, byteRgb);
+      double intManaged = timeDraw(createIntImage(), intSetDataElements, copyEveryFrame, intRgb);
+      double intUnmanaged = timeDraw(createIntImage(), intBackingArray, copyEveryFrame, intRgb);
+      logger.info(
+          "%s per frame - BYTE_RGB: %.2f ms (backing array %.2f ms)"
+              + " - INT_RGB: %.2f ms (backing array %.2f ms)",
+          copyEveryFrame ? "Copy and draw" : "Redraw",
+          byteManaged,
+          byteUnmanaged,
+          intManaged,
+          intUnmanaged);
+    }
+  }
+
+  private static BufferedImage createByteImage(ComponentColorModel cm) {
+    return new BufferedImage(
+        cm, cm.createCompatibleWritableRaster(IMAGE_WIDTH, IMAGE_HEIGHT), false, new Hashtable<>());
+  }
+
+  private static BufferedImage createIntImage() {
+    return new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+  }
+}
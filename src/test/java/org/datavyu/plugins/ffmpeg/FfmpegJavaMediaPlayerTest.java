@@ -1,11 +1,17 @@
 package org.datavyu.plugins.ffmpeg;
 
+import static org.testng.Assert.assertEquals;
+
 import java.awt.Container;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import javax.swing.JDialog;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.datavyu.plugins.MediaException;
 import org.datavyu.plugins.MediaPlayer;
+import org.datavyu.plugins.ffmpeg.FfmpegJavaMediaPlayer.MediaCacheStatus;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
@@ -102,6 +108,12 @@ public class FfmpegJavaMediaPlayerTest extends MediaPlayerTest {
     super.testSeek(builder, mediaInformation);
   }
 
+  @Test(dataProvider = "shortMedia")
+  public void testSeekToFrame(Builder builder, MediaInformation mediaInformation)
+      throws Exception {
+    super.testSeekToFrame(builder, mediaInformation);
+  }
+
   @Test(dataProvider = "shortMedia")
   public void testSeekAtStart(Builder builder, MediaInformation mediaInformation) {
     super.testSeekAtStart(builder, mediaInformation);
@@ -131,4 +143,28 @@ public class FfmpegJavaMediaPlayerTest extends MediaPlayerTest {
   public void testRates(Builder builder, MediaInformation mediaInformation) {
     super.testRates(builder, mediaInformation);
   }
+
+  @Test
+  public void testMediaCache() throws IOException {
+    File previousDirectory = FfmpegJavaMediaPlayer.getMediaCacheDirectory();
+    FfmpegJavaMediaPlayer.setMediaCacheDirectory(
+        Files.createTempDirectory("media-cache").toFile());
+    try {
+      MediaCacheStatus[] statuses = new MediaCacheStatus[2];
+      double[] durations = new double[2];
+      for (int i = 0; i < statuses.length; i++) {
+        MediaPlayerSync player =
+            new FfmpegBuilder().withMedia(SHORT_MEDIA).withContainer(new JDialog()).build();
+        FfmpegJavaMediaPlayer mediaPlayer = (FfmpegJavaMediaPlayer) player.getMediaPlayer();
+        statuses[i] = mediaPlayer.getMediaCacheStatus();
+        durations[i] = mediaPlayer.getDuration();
+        player.disposeMediaPlayerSync();
+      }
+      assertEquals(statuses[0], MediaCacheStatus.MISS);
+      assertEquals(statuses[1], MediaCacheStatus.HIT);
+      assertEquals(durations[1], durations[0], 1e-6);
+    } finally {
+      FfmpegJavaMediaPlayer.setMediaCacheDirectory(previousDirectory);
+    }
+  }
 }
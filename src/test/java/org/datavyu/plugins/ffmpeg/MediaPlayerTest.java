@@ -15,6 +15,7 @@ import org.datavyu.plugins.PlayerStateEvent.PlayerState;
 import java.io.File;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -284,6 +285,29 @@ public class MediaPlayerTest {
     player.disposeMediaPlayerSync();
   }
 
+  protected void testSeekToFrame(Builder builder, MediaInformation mediaInformation)
+      throws Exception {
+    logger.info("Seek to frame Test");
+    MediaPlayerSync player = builder.build();
+    double startTime = mediaInformation.getStartTime();
+    double duration = mediaInformation.getDuration();
+    double fps = mediaInformation.getFramesPerSecond();
+    for (double seekTime : createSeekTimes(startTime, duration)) {
+      long frameNumber = (long) ((seekTime - startTime) * fps);
+      double landedTime =
+          player.getMediaPlayer().seekToFrame(frameNumber).get(1, TimeUnit.SECONDS);
+      // The seek lands when its frame is queued, the display takes it soon after
+      sleep(100);
+      long actualFrameNumber = player.getMediaPlayer().getCurrentFrameNumber();
+      logger.debug(
+          "Seek to frame " + frameNumber + " - Actual frame " + actualFrameNumber + " at "
+              + landedTime + " s");
+      assertEquals(actualFrameNumber, frameNumber);
+      assertEquals(landedTime, startTime + frameNumber / fps, SEEK_TOLERANCE_IN_SECONDS);
+    }
+    player.disposeMediaPlayerSync();
+  }
+
   protected void testSeekAtStart(Builder builder, MediaInformation mediaInformation) {
     logger.info("Seek at start Test");
     MediaPlayerSync player = builder.build();
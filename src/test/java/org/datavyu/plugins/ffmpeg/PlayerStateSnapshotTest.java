@@ -0,0 +1,104 @@
+package org.datavyu.plugins.ffmpeg;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import org.datavyu.util.DirectMemory;
+import org.testng.annotations.Test;
+
+/**
+ * Reads the state snapshot while a java thread plays the native writer, bumping the sequence
+ * around each write the way PlayerStateSnapshot.cpp does. Does not need the native libraries.
+ */
+public class PlayerStateSnapshotTest {
+  private static final int NUMBER_OF_WRITES = 1 << 20;
+
+  /** Writes the fields like the native side, value in every field */
+  private static void publish(long address, long value) {
+    long sequence = DirectMemory.getLongVolatile(address);
+    DirectMemory.putLongOrdered(address, sequence + 1);
+    DirectMemory.storeFence();
+    DirectMemory.putLongOrdered(address + 8, Double.doubleToLongBits(value));
+    DirectMemory.putLongOrdered(address + 16, Double.doubleToLongBits(value / 2.0));
+    DirectMemory.putLongOrdered(address + 24, Double.doubleToLongBits(30.0));
+    DirectMemory.putLongOrdered(address + 32, Double.doubleToLongBits(value * 2.0));
+    DirectMemory.putLongOrdered(address + 40, value);
+    DirectMemory.putIntOrdered(address + 48, 2);
+    DirectMemory.putIntOrdered(address + 52, (int) value);
+    DirectMemory.putIntOrdered(address + 56, 640);
+    DirectMemory.putIntOrdered(address + 60, 480);
+    DirectMemory.putLongOrdered(address, sequence + 2);
+  }
+
+  @Test
+  public void testReadsTheLayoutOfTheNativeSide() {
+    PlayerStateSnapshot snapshot = new PlayerStateSnapshot();
+    ByteBuffer buffer = snapshot.getBuffer();
+    assertEquals(buffer.capacity(), 64);
+    publish(DirectMemory.address(buffer), 12);
+
+    assertEquals(snapshot.getTime(), 12.0);
+    assertEquals(snapshot.getSpeed(), 6.0);
+    assertEquals(snapshot.getFrameRate(), 30.0);
+    assertEquals(snapshot.getDuration(), 24.0);
+    assertEquals(snapshot.getFrameNumber(), 12);
+    assertEquals(snapshot.getPlayerState(), 2);
+    assertEquals(snapshot.getSerial(), 12);
+    assertEquals(snapshot.getImageWidth(), 640);
+    assertEquals(snapshot.getImageHeight(), 480);
+  }
+
+  @Test
+  public void testReadsOnlyPublishedValues() throws InterruptedException {
+    PlayerStateSnapshot snapshot = new PlayerStateSnapshot();
+    long address = DirectMemory.address(snapshot.getBuffer());
+    publish(address, 0);
+
+    Thread writer =
+        new Thread(
+            () -> {
+              for (long value = 1; value <= NUMBER_OF_WRITES; value++) {
+                publish(address, value);
+              }
+            });
+    writer.start();
+
+    long lastFrameNumber = 0;
+    while (lastFrameNumber < NUMBER_OF_WRITES) {
+      long frameNumber = snapshot.getFrameNumber();
+      double time = snapshot.getTime();
+      assertTrue(frameNumber >= lastFrameNumber, "Frame number went back");
+      // Published after the frame number read, so at least as recent
+      assertTrue(time >= frameNumber, "Time " + time + " older than frame " + frameNumber);
+      lastFrameNumber = frameNumber;
+    }
+    writer.join();
+  }
+
+  @Test
+  public void testReadsAllFieldsOfOneWrite() throws InterruptedException {
+    PlayerStateSnapshot snapshot = new PlayerStateSnapshot();
+    long address = DirectMemory.address(snapshot.getBuffer());
+    publish(address, 0);
+
+    Thread writer =
+        new Thread(
+            () -> {
+              for (long value = 1; value <= NUMBER_OF_WRITES; value++) {
+                publish(address, value);
+              }
+            });
+    writer.start();
+
+    PlayerStateSnapshot.State state = new PlayerStateSnapshot.State();
+    do {
+      snapshot.read(state);
+      assertEquals(state.speed, state.time / 2.0);
+      assertEquals(state.duration, state.time * 2.0);
+      assertEquals(state.frameNumber, (long) state.time);
+      assertEquals(state.serial, (int) state.time);
+    } while (state.frameNumber < NUMBER_OF_WRITES);
+    writer.join();
+  }
+}
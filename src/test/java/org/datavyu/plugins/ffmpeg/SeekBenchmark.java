@@ -0,0 +1,101 @@
+package org.datavyu.plugins.ffmpeg;
+
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.swing.JDialog;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.datavyu.plugins.MediaPlayer;
+import org.datavyu.plugins.SeekMode;
+import org.testng.annotations.Test;
+
+/**
+ * Measures the time from a seek request until it lands on the target time, over random
+ * targets in the long test media. The first open builds the keyframe index in the background, so
+ * the measurement waits for it; later opens load the persisted index.
+ */
+public class SeekBenchmark {
+  private static final Logger logger = LogManager.getFormatterLogger(SeekBenchmark.class);
+
+  private static final int NUMBER_OF_SEEKS = 50;
+  private static final double SEEK_TOLERANCE_IN_SECONDS = 0.1;
+  private static final long SEEK_TIMEOUT_IN_MILLIS = 5000;
+  private static final long INDEX_TIMEOUT_IN_MILLIS = 30000;
+  private static final long INDEX_POLL_IN_MILLIS = 10;
+
+  /** Waits until the keyframe index is ready; measures the container index on timeout */
+  private static void waitForKeyframeIndex(FfmpegJavaMediaPlayer mediaPlayer)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + INDEX_TIMEOUT_IN_MILLIS;
+    while (!mediaPlayer.isKeyframeIndexReady()) {
+      if (System.currentTimeMillis() >= deadline) {
+        logger.warn("Keyframe index not ready after %d ms", INDEX_TIMEOUT_IN_MILLIS);
+        return;
+      }
+      Thread.sleep(INDEX_POLL_IN_MILLIS);
+    }
+  }
+
+  /** Returns the time in ms until the seek to seekTime has landed; -1 on timeout */
+  private static double timeSeek(MediaPlayer mediaPlayer, double seekTime)
+      throws InterruptedException {
+    long start = System.nanoTime();
+    try {
+      double landedTime =
+          mediaPlayer
+              .seekAsync(seekTime, SeekMode.EXACT)
+              .get(SEEK_TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS);
+      assertTrue(
+          Math.abs(landedTime - seekTime) < SEEK_TOLERANCE_IN_SECONDS,
+          "Seek to " + seekTime + " landed on " + landedTime);
+    } catch (ExecutionException | TimeoutException e) {
+      return -1;
+    }
+    return (System.nanoTime() - start) / 1e6;
+  }
+
+  @Test
+  public void testSeekLatency() throws InterruptedException {
+    MediaInformation media = MediaPlayerTest.LONG_MEDIA;
+    MediaPlayerSync player =
+        new FfmpegJavaMediaPlayerTest.FfmpegBuilder()
+            .withMedia(media)
+            .withContainer(new JDialog())
+            .build();
+    FfmpegJavaMediaPlayer mediaPlayer = (FfmpegJavaMediaPlayer) player.getMediaPlayer();
+    waitForKeyframeIndex(mediaPlayer);
+
+    Random random = new Random(0);
+    double[] times = new double[NUMBER_OF_SEEKS];
+    int timeouts = 0;
+    int count = 0;
+    for (int i = 0; i < NUMBER_OF_SEEKS; i++) {
+      double seekTime =
+          media.getStartTime() + random.nextDouble() * (media.getDuration() - media.getStartTime());
+      double time = timeSeek(mediaPlayer, seekTime);
+      if (time < 0) {
+        timeouts++;
+      } else {
+        times[count++] = time;
+      }
+    }
+    player.disposeMediaPlayerSync();
+
+    double[] measured = Arrays.copyOf(times, count);
+    Arrays.sort(measured);
+    assertTrue(count > 0, "No seek finished");
+    logger.info(
+        "Seek latency - mean: %.1f ms - median: %.1f ms - p95: %.1f ms - max: %.1f ms - "
+            + "timeouts: %d",
+        Arrays.stream(measured).average().getAsDouble(),
+        measured[count / 2],
+        measured[Math.min(count - 1, (int) (0.95 * count))],
+        measured[count - 1],
+        timeouts);
+  }
+}